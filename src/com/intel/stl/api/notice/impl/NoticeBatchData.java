@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.api.notice.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.intel.stl.api.subnet.LinkRecordBean;
+import com.intel.stl.api.subnet.NodeRecordBean;
+import com.intel.stl.api.subnet.PortRecordBean;
+import com.intel.stl.api.subnet.impl.SAHelper;
+import com.intel.stl.datamanager.DatabaseManager;
+
+/**
+ * The fabric data needed to process one batch of notices. A node, its links
+ * and its ports are retrieved only once per batch, no matter how many notices
+ * mention it. For large batches, such as the notice storm caused by a switch
+ * reboot, nodes, links and ports are retrieved with one query per type for the
+ * whole fabric instead of one query per LID.
+ */
+public class NoticeBatchData {
+
+    /**
+     * Number of notices in a batch from which whole fabric queries are used
+     */
+    public static final int BULK_THRESHOLD = 32;
+
+    private final String subnetName;
+
+    private final DatabaseManager dbMgr;
+
+    private final SAHelper helper;
+
+    private final boolean bulk;
+
+    private final Map<Integer, NodeRecordBean> nodesByLid =
+            new HashMap<Integer, NodeRecordBean>();
+
+    private final Map<Long, NodeRecordBean> nodesByPortGuid =
+            new HashMap<Long, NodeRecordBean>();
+
+    private final Map<Integer, List<LinkRecordBean>> linksByLid =
+            new HashMap<Integer, List<LinkRecordBean>>();
+
+    private final Map<Integer, List<PortRecordBean>> portsByLid =
+            new HashMap<Integer, List<PortRecordBean>>();
+
+    private final Map<Long, NodeRecordBean> dbNodesByGuid =
+            new HashMap<Long, NodeRecordBean>();
+
+    private final Map<Integer, List<LinkRecordBean>> dbLinksByLid =
+            new HashMap<Integer, List<LinkRecordBean>>();
+
+    private boolean nodesLoaded;
+
+    private boolean linksLoaded;
+
+    private boolean portsLoaded;
+
+    private boolean dbNodesLoaded;
+
+    private boolean dbLinksLoaded;
+
+    public NoticeBatchData(String subnetName, DatabaseManager dbMgr,
+            SAHelper helper, int numNotices) {
+        this.subnetName = subnetName;
+        this.dbMgr = dbMgr;
+        this.helper = helper;
+        this.bulk = numNotices >= BULK_THRESHOLD;
+    }
+
+    /**
+     * @return true if whole fabric queries are used for this batch
+     */
+    public boolean isBulk() {
+        return bulk;
+    }
+
+    public NodeRecordBean getNode(int lid) throws Exception {
+        if (bulk) {
+            loadNodes();
+        } else if (!nodesByLid.containsKey(lid)) {
+            nodesByLid.put(lid, helper.getNode(lid));
+        }
+        return nodesByLid.get(lid);
+    }
+
+    public NodeRecordBean getNode(long portGuid) throws Exception {
+        if (bulk) {
+            loadNodes();
+        } else if (!nodesByPortGuid.containsKey(portGuid)) {
+            NodeRecordBean node = helper.getNode(portGuid);
+            nodesByPortGuid.put(portGuid, node);
+            if (node != null) {
+                nodesByLid.put(node.getLid(), node);
+            }
+        }
+        return nodesByPortGuid.get(portGuid);
+    }
+
+    public List<LinkRecordBean> getLinks(int lid) throws Exception {
+        if (bulk) {
+            loadLinks();
+        } else if (!linksByLid.containsKey(lid)) {
+            linksByLid.put(lid, helper.getLinks(lid));
+        }
+        return getList(linksByLid, lid);
+    }
+
+    public List<PortRecordBean> getPorts(int lid) throws Exception {
+        if (bulk) {
+            loadPorts();
+        } else if (!portsByLid.containsKey(lid)) {
+            portsByLid.put(lid, helper.getPorts(lid));
+        }
+        return getList(portsByLid, lid);
+    }
+
+    /**
+     * 
+     * <i>Description:</i> returns a node as stored in the database. This is
+     * used for nodes that are no longer known by the FM.
+     * 
+     * @param nodeGUID
+     * @return the node, or null if it is not in the database
+     * @throws Exception
+     */
+    public NodeRecordBean getDBNode(long nodeGUID) throws Exception {
+        if (bulk) {
+            loadDBNodes();
+        } else if (!dbNodesByGuid.containsKey(nodeGUID)) {
+            dbNodesByGuid.put(nodeGUID, dbMgr.getNode(subnetName, nodeGUID));
+        }
+        return dbNodesByGuid.get(nodeGUID);
+    }
+
+    /**
+     * 
+     * <i>Description:</i> returns the links of a node as stored in the
+     * database
+     * 
+     * @param lid
+     * @return the links whose source is the node
+     * @throws Exception
+     */
+    public List<LinkRecordBean> getDBLinks(int lid) throws Exception {
+        if (bulk) {
+            loadDBLinks();
+        } else if (!dbLinksByLid.containsKey(lid)) {
+            dbLinksByLid.put(lid, dbMgr.getLinks(subnetName, lid));
+        }
+        return getList(dbLinksByLid, lid);
+    }
+
+    private void loadNodes() throws Exception {
+        if (nodesLoaded) {
+            return;
+        }
+        List<NodeRecordBean> nodes = helper.getNodes();
+        if (nodes != null) {
+            for (NodeRecordBean node : nodes) {
+                nodesByLid.put(node.getLid(), node);
+                nodesByPortGuid.put(node.getNodeInfo().getPortGUID(), node);
+            }
+        }
+        nodesLoaded = true;
+    }
+
+    private void loadLinks() throws Exception {
+        if (linksLoaded) {
+            return;
+        }
+        List<LinkRecordBean> links = helper.getLinks();
+        if (links != null) {
+            for (LinkRecordBean link : links) {
+                addToList(linksByLid, link.getFromLID(), link);
+            }
+        }
+        linksLoaded = true;
+    }
+
+    private void loadPorts() throws Exception {
+        if (portsLoaded) {
+            return;
+        }
+        List<PortRecordBean> ports = helper.getPorts();
+        if (ports != null) {
+            for (PortRecordBean port : ports) {
+                addToList(portsByLid, port.getEndPortLID(), port);
+            }
+        }
+        portsLoaded = true;
+    }
+
+    private void loadDBNodes() throws Exception {
+        if (dbNodesLoaded) {
+            return;
+        }
+        for (NodeRecordBean node : dbMgr.getNodes(subnetName)) {
+            dbNodesByGuid.put(node.getNodeInfo().getNodeGUID(), node);
+        }
+        dbNodesLoaded = true;
+    }
+
+    private void loadDBLinks() throws Exception {
+        if (dbLinksLoaded) {
+            return;
+        }
+        for (LinkRecordBean link : dbMgr.getLinks(subnetName)) {
+            addToList(dbLinksByLid, link.getFromLID(), link);
+        }
+        dbLinksLoaded = true;
+    }
+
+    private <E> void addToList(Map<Integer, List<E>> map, int lid, E element) {
+        List<E> list = map.get(lid);
+        if (list == null) {
+            list = new ArrayList<E>();
+            map.put(lid, list);
+        }
+        list.add(element);
+    }
+
+    private <E> List<E> getList(Map<Integer, List<E>> map, int lid) {
+        List<E> list = map.get(lid);
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return list;
+    }
+}
@@ -28,6 +28,7 @@
 package com.intel.stl.api.notice.impl;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.intel.stl.api.notice.NoticeBean;
@@ -55,6 +56,9 @@ public class NoticeProcess implements Serializable {
 
     private final NoticeBean notice;
 
+    // notices for the same LID that were collapsed into this one
+    private final List<NoticeBean> mergedNotices = new ArrayList<NoticeBean>();
+
     public NoticeProcess(NoticeBean notice) {
         this.notice = notice;
     }
@@ -94,6 +98,33 @@ public class NoticeProcess implements Serializable {
         return notice;
     }
 
+    /**
+     * @return the notices that were collapsed into this one
+     */
+    public List<NoticeBean> getMergedNotices() {
+        return mergedNotices;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> collapses an earlier NoticeProcess for the same LID
+     * into this one. The earlier notice, and any notices it had absorbed, are
+     * completed together with this one.
+     * 
+     * @param other
+     *            the NoticeProcess superseded by this one
+     * @return the number of notices merged
+     */
+    public int merge(NoticeProcess other) {
+        int merged = other.mergedNotices.size();
+        mergedNotices.addAll(other.mergedNotices);
+        if (other.notice != null) {
+            mergedNotices.add(other.notice);
+            merged += 1;
+        }
+        return merged;
+    }
+
     /**
      * @param lid
      *            the lid to set
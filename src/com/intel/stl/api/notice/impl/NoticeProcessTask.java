@@ -28,8 +28,11 @@
 package com.intel.stl.api.notice.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Future;
 
@@ -64,6 +67,13 @@ public class NoticeProcessTask extends AsyncTask<Future<Boolean>> {
     private static Logger log = LoggerFactory
             .getLogger(NoticeProcessTask.class);
 
+    /**
+     * Max number of times to wait for PM in one batch. Notices received while
+     * waiting join the batch and need another wait; after the last wait they
+     * are left to the next task.
+     */
+    private static final int MAX_PM_WAITS = 3;
+
     private final DatabaseManager dbMgr;
 
     private final String subnetName;
@@ -74,6 +84,8 @@ public class NoticeProcessTask extends AsyncTask<Future<Boolean>> {
 
     private List<NoticeWrapper> noticeWrappers;
 
+    private int mergedNotices;
+
     public NoticeProcessTask(String subnetName, DatabaseManager dbMgr,
             CacheManager cacheMgr) {
         this.dbMgr = dbMgr;
@@ -90,11 +102,23 @@ public class NoticeProcessTask extends AsyncTask<Future<Boolean>> {
         return noticeWrappers;
     }
 
+    /**
+     * @return the number of notices that were collapsed into another notice
+     *         for the same LID in the last batch
+     */
+    public int getMergedNotices() {
+        return mergedNotices;
+    }
+
     /**
      * process the list of notices. The thread pool size is 2, so, two
      * NoticeProcessingService can be processing at same time, so make this a
      * synchronized method.
      * 
+     * Notices are processed in batches: all notices received by the time PM
+     * has been updated are processed together, traps for the same LID are
+     * collapsed into one, and the fabric data needed is retrieved once per
+     * batch.
      */
     @Override
     public Future<Boolean> process() throws Exception {
@@ -119,28 +143,54 @@ public class NoticeProcessTask extends AsyncTask<Future<Boolean>> {
         // next sweep. To ensure we get correct data, we need wait here until
         // we are sure PM is updated, i.e. latest image number changed at least
         // once
-        long t = System.currentTimeMillis();
-        boolean success;
-        try {
-            // When there is a connection error, this will fail, causing the
-            // notice not to be processed
-            success = waitPM();
-        } catch (Exception e) {
-            success = false;
+        for (int wait = 1; wait <= MAX_PM_WAITS; wait++) {
+            long t = System.currentTimeMillis();
+            boolean success;
+            try {
+                // When there is a connection error, this will fail, causing
+                // the notice not to be processed
+                success = waitPM();
+            } catch (Exception e) {
+                success = false;
+            }
+            log.info("waited " + (System.currentTimeMillis() - t)
+                    + " ms for PM. State: success=" + success);
+            if (wait == MAX_PM_WAITS) {
+                break;
+            }
+
+            // Notices that arrived while we were waiting join this batch, but
+            // PM must be updated for them as well, so wait again. The tasks
+            // submitted for them will find nothing to process.
+            List<NoticeBean> lateNotices =
+                    dbMgr.getNotices(subnetName, NoticeStatus.RECEIVED,
+                            NoticeStatus.INFLIGHT);
+            if (lateNotices.isEmpty()) {
+                break;
+            }
+            log.info("Adding " + lateNotices.size()
+                    + " notices received while waiting for PM");
+            notices.addAll(lateNotices);
         }
-        log.info("waited " + (System.currentTimeMillis() - t)
-                + " ms for PM. State: success=" + success);
+
+        Set<Long> failedNotices = new HashSet<Long>();
+        NoticeBatchData data =
+                new NoticeBatchData(subnetName, dbMgr, helper, notices.size());
 
         // prepare notices
         noticeWrappers = new ArrayList<NoticeWrapper>(notices.size());
         for (NoticeBean notice : notices) {
-            NoticeWrapper nw = prepareNotice(notice);
+            NoticeWrapper nw = prepareNotice(notice, data, failedNotices);
             noticeWrappers.add(nw);
         }
 
         // We pack as much work as possible using multiple threads; but first we
         // need to get information from the FM
-        List<NoticeProcess> noticePrcs = createNoticeProcesses(noticeWrappers);
+        List<NoticeProcess> noticePrcs =
+                createNoticeProcesses(noticeWrappers, data, failedNotices);
+        log.info("Processing " + notices.size() + " notices as "
+                + noticePrcs.size() + " updates; " + mergedNotices
+                + " notices merged" + (data.isBulk() ? " (bulk)" : ""));
 
         // Start the thread to update the database; no wait, just keep a hold of
         // the Future.
@@ -156,29 +206,35 @@ public class NoticeProcessTask extends AsyncTask<Future<Boolean>> {
         // topology update. This will cause synchronization issues!! It's
         // important to update these caches again after DB update is done. See
         // SubnetContextImpl#processNotices for the code.
+        List<Long> processedNotices = new ArrayList<Long>(notices.size());
         for (NoticeProcess noticeProcess : noticePrcs) {
+            // Update the complete flag for each notice, including the ones
+            // merged into this NoticeProcess
+            Collection<Long> status = processedNotices;
             try {
                 cacheMgr.updateCaches(noticeProcess);
-                // Update the complete flag for each notice.
-                if (noticeProcess.getNotice() != null) {
-                    dbMgr.updateNotice(subnetName, noticeProcess.getNotice()
-                            .getId(), NoticeStatus.PROCESSED);
-                }
             } catch (Exception e) {
                 log.error("Error while updating caches for notice "
-                        + noticeProcess.getNotice().getId() + ": "
                         + noticeProcess.getNotice(), e);
-                if (noticeProcess.getNotice() != null) {
-                    dbMgr.updateNotice(subnetName, noticeProcess.getNotice()
-                            .getId(), NoticeStatus.FEERROR);
-                }
+                status = failedNotices;
+            }
+            if (noticeProcess.getNotice() != null) {
+                status.add(noticeProcess.getNotice().getId());
+            }
+            for (NoticeBean merged : noticeProcess.getMergedNotices()) {
+                status.add(merged.getId());
             }
         }
+        dbMgr.updateNotices(subnetName, processedNotices,
+                NoticeStatus.PROCESSED);
+        dbMgr.updateNotices(subnetName, new ArrayList<Long>(failedNotices),
+                NoticeStatus.FEERROR);
         log.info("Notices have been processed");
         return result;
     }
 
-    private NoticeWrapper prepareNotice(NoticeBean notice) {
+    private NoticeWrapper prepareNotice(NoticeBean notice,
+            NoticeBatchData data, Set<Long> failedNotices) {
         TrapType trapType = getTrapType(notice);
         NoticeWrapper nw = new NoticeWrapper(notice, trapType);
         long guid = -1;
@@ -189,10 +245,10 @@ public class NoticeProcessTask extends AsyncTask<Future<Boolean>> {
                 case GID_NOW_IN_SERVICE: {
                     GIDBean gid = TrapDetail.getGID(notice.getData());
                     guid = gid.getInterfaceID();
-                    node = helper.getNode(guid);
+                    node = data.getNode(guid);
                     if (node != null) {
                         lid = node.getLid();
-                        List<LinkRecordBean> links = helper.getLinks(lid);
+                        List<LinkRecordBean> links = data.getLinks(lid);
                         nw.addRelatedNodes(getRelatedNodes(links));
                     }
                     break;
@@ -200,23 +256,23 @@ public class NoticeProcessTask extends AsyncTask<Future<Boolean>> {
                 case GID_OUT_OF_SERVICE: {
                     GIDBean gid = TrapDetail.getGID(notice.getData());
                     guid = gid.getInterfaceID();
-                    node = dbMgr.getNode(subnetName, guid);
+                    node = data.getDBNode(guid);
                     if (node != null) {
                         lid = node.getLid();
-                        LinkRecordBean link =
-                                dbMgr.getLinkBySource(subnetName, lid,
-                                        (short) 1);
-                        nw.addRelatedNode(link.getToLID());
+                        for (LinkRecordBean link : data.getDBLinks(lid)) {
+                            if (link.getFromPortIndex() == 1) {
+                                nw.addRelatedNode(link.getToLID());
+                            }
+                        }
                     }
                     break;
                 }
                 case LINK_PORT_CHANGE_STATE:
                     lid = TrapDetail.getLid(notice.getData());
-                    node = helper.getNode(lid);
-                    List<LinkRecordBean> links =
-                            dbMgr.getLinks(subnetName, lid);
+                    node = data.getNode(lid);
+                    List<LinkRecordBean> links = data.getDBLinks(lid);
                     nw.addRelatedNodes(getRelatedNodes(links));
-                    links = helper.getLinks(lid);
+                    links = data.getLinks(lid);
                     nw.addRelatedNodes(getRelatedNodes(links));
                     break;
                 case FE_CONNECTION_LOST:
@@ -232,55 +288,108 @@ public class NoticeProcessTask extends AsyncTask<Future<Boolean>> {
                             + StringUtils.longHexString(guid) + " or LID="
                             + lid + " mentioned in notice: " + notice);
                 }
-                dbMgr.updateNotice(subnetName, notice.getId(),
-                        NoticeStatus.FEERROR);
+                failedNotices.add(notice.getId());
             }
         } catch (Exception e) {
             log.error("Error while preparing notice " + notice.getId() + ": "
                     + notice, e);
-            dbMgr.updateNotice(subnetName, notice.getId(), NoticeStatus.FEERROR);
+            failedNotices.add(notice.getId());
         }
         nw.setNode(node);
         return nw;
     }
 
+    /**
+     * 
+     * <i>Description:</i> creates the NoticeProcesses for a batch of notices.
+     * Traps for the same LID are collapsed: the latest GID trap decides the
+     * state of a node, and a port state change, whether reported by a trap or
+     * implied by a related node, is resolved by reading again all the ports
+     * and links of the LID, so one per LID is enough.
+     * 
+     * @param noticeWrappers
+     *            the prepared notices
+     * @param data
+     *            the fabric data of the batch
+     * @param failedNotices
+     *            the ids of the notices that could not be processed
+     * @return the NoticeProcesses, at most two per LID
+     */
     private List<NoticeProcess> createNoticeProcesses(
-            List<NoticeWrapper> noticeWrappers) {
-        List<NoticeProcess> noticePrcs = new ArrayList<NoticeProcess>();
+            List<NoticeWrapper> noticeWrappers, NoticeBatchData data,
+            Set<Long> failedNotices) {
+        mergedNotices = 0;
+        Map<Long, NoticeProcess> processes =
+                new LinkedHashMap<Long, NoticeProcess>();
         for (NoticeWrapper nw : noticeWrappers) {
+            NoticeBean notice = nw.getNotice();
+            NodeRecordBean node = nw.getNode();
+            if (node == null || failedNotices.contains(notice.getId())) {
+                continue;
+            }
             try {
-                NodeRecordBean node = nw.getNode();
-                if (node != null) {
-                    NoticeProcess np =
-                            createNoticeProcess(nw.getNotice(),
-                                    nw.getTrapType(), node);
-                    if (np != null) {
-                        noticePrcs.add(np);
-                    }
-
-                    for (int relatedLid : nw.getRelatedNodes()) {
-                        node = helper.getNode(relatedLid);
-                        np =
-                                createNoticeProcess(null,
-                                        TrapType.LINK_PORT_CHANGE_STATE, node);
-                        if (np != null) {
-                            noticePrcs.add(np);
-                        }
-                    }
+                addNoticeProcess(processes,
+                        createNoticeProcess(notice, nw.getTrapType(), node));
+                for (int relatedLid : nw.getRelatedNodes()) {
+                    node = data.getNode(relatedLid);
+                    addNoticeProcess(processes,
+                            createNoticeProcess(null,
+                                    TrapType.LINK_PORT_CHANGE_STATE, node));
                 }
             } catch (Exception e) {
-                NoticeBean notice = nw.getNotice();
                 log.error("Error while processing notice " + notice.getId()
                         + ": " + notice, e);
-                dbMgr.updateNotice(subnetName, notice.getId(),
-                        NoticeStatus.FEERROR);
-                continue;
+                failedNotices.add(notice.getId());
             }
         }
 
+        List<NoticeProcess> noticePrcs =
+                new ArrayList<NoticeProcess>(processes.size());
+        for (NoticeProcess np : processes.values()) {
+            try {
+                // For the current three trap types we support we would need to
+                // refresh port information; this might need to be fine tuned
+                // when other traps are added
+                np.setPorts(data.getPorts(np.getLid()));
+                np.setLinks(data.getLinks(np.getLid()));
+                noticePrcs.add(np);
+            } catch (Exception e) {
+                log.error("Error while processing notices for LID "
+                        + np.getLid(), e);
+                if (np.getNotice() != null) {
+                    failedNotices.add(np.getNotice().getId());
+                }
+                for (NoticeBean merged : np.getMergedNotices()) {
+                    failedNotices.add(merged.getId());
+                }
+            }
+        }
         return noticePrcs;
     }
 
+    private void addNoticeProcess(Map<Long, NoticeProcess> processes,
+            NoticeProcess np) {
+        if (np == null) {
+            return;
+        }
+        TrapType trapType = np.getTrapType();
+        boolean gidTrap =
+                trapType == TrapType.GID_NOW_IN_SERVICE
+                        || trapType == TrapType.GID_OUT_OF_SERVICE;
+        long key = ((long) np.getLid() << 1) | (gidTrap ? 1 : 0);
+        NoticeProcess prev = processes.get(key);
+        if (prev != null) {
+            if (np.getNotice() == null) {
+                // implied by a related node; the existing one does the same
+                return;
+            }
+            mergedNotices += np.merge(prev);
+            // keep the order in which the latest traps were received
+            processes.remove(key);
+        }
+        processes.put(key, np);
+    }
+
     protected Set<Integer> getRelatedNodes(List<LinkRecordBean> links) {
         Set<Integer> res = new HashSet<Integer>();
         for (LinkRecordBean link : links) {
@@ -302,11 +411,6 @@ public class NoticeProcessTask extends AsyncTask<Future<Boolean>> {
 
         np.setLid(lid);
         np.setNode(node);
-        // For the current three trap types we support we would need to
-        // refresh port information; this might need to be fine tuned when other
-        // traps are added
-        np.setPorts(helper.getPorts(lid));
-        np.setLinks(helper.getLinks(lid));
         return np;
     }
 
@@ -27,7 +27,9 @@
 
 package com.intel.stl.api.performance;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import com.intel.stl.api.IRandomable;
 import com.intel.stl.api.subnet.Selection;
@@ -61,6 +63,25 @@ public interface IPerformanceApi extends IRandomable {
 
     PortCountersBean getPortCounters(int lid, short portNum);
 
+    /**
+     * 
+     * <i>Description:</i> retrieves the counters of many ports concurrently.
+     * All requests are sent at once and spread over the connection pool, so a
+     * large table costs about one round trip instead of one per port.
+     * 
+     * @param ports
+     *            the ports to query
+     * @param listener
+     *            optional listener notified for each port as soon as its
+     *            counters arrive, so callers can fill a view progressively;
+     *            may be null
+     * @return the counters of the ports that were retrieved
+     */
+    Map<PortId, PortCountersBean> getPortCounters(Collection<PortId> ports,
+            IPortCountersListener listener);
+
+    Map<PortId, PortCountersBean> getPortCounters(Collection<PortId> ports);
+
     PortCountersBean getPortCountersHistory(int lid, short portNum,
             long imageID, int imageOffset);
 
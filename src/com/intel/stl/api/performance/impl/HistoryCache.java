@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.api.performance.impl;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Shared cache of PA history results. A history query names an image with an
+ * image number and an offset; as long as the image number is not the live
+ * image (0), the answer never changes, so charts that backfill the same image
+ * can share one PA round trip. Concurrent requests for the same key wait on
+ * the request already in flight instead of issuing their own.
+ */
+public class HistoryCache {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final Map<List<Object>, FutureTask<?>> entries;
+
+    public HistoryCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public HistoryCache(final int capacity) {
+        entries = new LinkedHashMap<List<Object>, FutureTask<?>>(16, 0.75f,
+                true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<List<Object>, FutureTask<?>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * 
+     * <i>Description:</i> returns the cached result for a key, or runs the
+     * loader on the calling thread if no other thread is already loading it.
+     * Null results and failures are not cached; a caller that was waiting on
+     * a failed load retries with its own loader.
+     * 
+     * @param imageNumber
+     *            the image number of the query; 0 (the live image) bypasses
+     *            the cache
+     * @param loader
+     *            the query to run on a cache miss
+     * @param keys
+     *            the values identifying the query, e.g. the query type, the
+     *            source name and the image offset
+     * @return the query result
+     * @throws Exception
+     *             the failure of the loader run by this thread
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(long imageNumber, Callable<T> loader, Object... keys)
+            throws Exception {
+        if (imageNumber == 0) {
+            return loader.call();
+        }
+
+        Object[] keyValues = Arrays.copyOf(keys, keys.length + 1);
+        keyValues[keys.length] = imageNumber;
+        List<Object> key = Arrays.asList(keyValues);
+        while (true) {
+            FutureTask<T> task = null;
+            boolean owner = false;
+            synchronized (entries) {
+                task = (FutureTask<T>) entries.get(key);
+                if (task == null) {
+                    task = new FutureTask<T>(loader);
+                    entries.put(key, task);
+                    owner = true;
+                }
+            }
+            if (owner) {
+                task.run();
+            }
+
+            try {
+                T res = task.get();
+                if (res == null) {
+                    remove(key, task);
+                }
+                return res;
+            } catch (ExecutionException e) {
+                remove(key, task);
+                if (owner) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    } else {
+                        throw e;
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private void remove(List<Object> key, FutureTask<?> task) {
+        synchronized (entries) {
+            if (entries.get(key) == task) {
+                entries.remove(key);
+            }
+        }
+    }
+}
@@ -27,16 +27,22 @@
 
 package com.intel.stl.api.performance.impl;
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.intel.stl.api.performance.FocusPortsRspBean;
 import com.intel.stl.api.performance.GroupConfigRspBean;
 import com.intel.stl.api.performance.GroupInfoBean;
 import com.intel.stl.api.performance.GroupListBean;
+import com.intel.stl.api.performance.IPortCountersListener;
 import com.intel.stl.api.performance.ImageIdBean;
 import com.intel.stl.api.performance.ImageInfoBean;
 import com.intel.stl.api.performance.PMConfigBean;
 import com.intel.stl.api.performance.PortCountersBean;
+import com.intel.stl.api.performance.PortId;
 import com.intel.stl.api.performance.VFConfigRspBean;
 import com.intel.stl.api.performance.VFFocusPortsRspBean;
 import com.intel.stl.api.performance.VFInfoBean;
@@ -64,10 +70,17 @@ import com.intel.stl.fecdriver.messages.command.pa.FVCmdGetVFFocusPort;
 import com.intel.stl.fecdriver.messages.command.pa.FVCmdGetVFInfo;
 import com.intel.stl.fecdriver.messages.command.pa.FVCmdGetVFList;
 import com.intel.stl.fecdriver.messages.command.pa.FVCmdGetVFPortCounters;
+import com.intel.stl.fecdriver.session.RequestCancelledByUserException;
 
 /**
  */
 public class PAHelper extends FEHelper {
+    /**
+     * How often, in milliseconds, a batch of port counter requests is checked
+     * for completed responses
+     */
+    private static final long BATCH_POLL_INTERVAL = 5;
+
     public PAHelper(IStatement statement) {
         super(statement);
     }
@@ -124,6 +137,88 @@ public class PAHelper extends FEHelper {
         return statement.execute(cmd);
     }
 
+    /**
+     * 
+     * <i>Description:</i> requests the counters of all the given ports at
+     * once, so the requests are spread over the connection pool and pipelined
+     * instead of being sent one round trip at a time. The listener is notified
+     * for each port as soon as its counters are available, in the order the
+     * responses arrive.
+     * 
+     * @param ports
+     *            the ports
+     * @param listener
+     *            the listener notified for each port
+     * @throws Exception
+     *             if the requests cannot be submitted
+     */
+    public void getPortCounters(Collection<PortId> ports,
+            IPortCountersListener listener) throws Exception {
+        Map<PortId, FVCmdGetPortCounters> cmds =
+                new LinkedHashMap<PortId, FVCmdGetPortCounters>();
+        for (PortId port : ports) {
+            if (!cmds.containsKey(port)) {
+                FVCmdGetPortCounters cmd = new FVCmdGetPortCounters(
+                        new InputLidPortNumber(port.getLid(),
+                                (byte) port.getPortNum()));
+                statement.submit(cmd);
+                cmds.put(port, cmd);
+            }
+        }
+        Map<PortId, FVCmdGetPortCounters> pending =
+                new LinkedHashMap<PortId, FVCmdGetPortCounters>(cmds);
+        long deadline = System.currentTimeMillis() + statement.getTimeout();
+        try {
+            while (!pending.isEmpty()) {
+                // Once the batch is overdue, wait for the remaining responses
+                // one by one so that timeouts are processed as usual
+                boolean overdue = System.currentTimeMillis() >= deadline;
+                boolean delivered = false;
+                Iterator<Map.Entry<PortId, FVCmdGetPortCounters>> it =
+                        pending.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<PortId, FVCmdGetPortCounters> entry = it.next();
+                    if (overdue || entry.getValue().getResponse().isDone()) {
+                        it.remove();
+                        deliverPortCounters(entry.getKey(), entry.getValue(),
+                                listener);
+                        delivered = true;
+                    }
+                }
+                if (!delivered) {
+                    try {
+                        Thread.sleep(BATCH_POLL_INTERVAL);
+                    } catch (InterruptedException e) {
+                        throw new RequestCancelledByUserException();
+                    }
+                }
+            }
+        } catch (RequestCancelledByUserException e) {
+            // don't leave the rest of the batch waiting for responses nobody
+            // will read
+            for (FVCmdGetPortCounters cmd : pending.values()) {
+                if (!cmd.getResponse().isDone()) {
+                    cmd.getResponse().cancel(true);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void deliverPortCounters(PortId port, FVCmdGetPortCounters cmd,
+            IPortCountersListener listener) throws Exception {
+        PortCountersBean bean = null;
+        try {
+            bean = statement.getResult(cmd);
+        } catch (RequestCancelledByUserException e) {
+            throw e;
+        } catch (Exception e) {
+            listener.onError(port, e);
+            return;
+        }
+        listener.onPortCounters(port, bean);
+    }
+
     public PortCountersBean getPortCounterHistory(int lid, short portNum,
             long imageID, int imageOffset) throws Exception {
         FVCmdGetPortCounters cmd =
@@ -45,10 +45,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -66,6 +68,7 @@ import com.intel.stl.api.performance.GroupConfigRspBean;
 import com.intel.stl.api.performance.GroupInfoBean;
 import com.intel.stl.api.performance.GroupListBean;
 import com.intel.stl.api.performance.IPerformanceApi;
+import com.intel.stl.api.performance.IPortCountersListener;
 import com.intel.stl.api.performance.ImageIdBean;
 import com.intel.stl.api.performance.ImageInfoBean;
 import com.intel.stl.api.performance.PMConfigBean;
@@ -74,6 +77,7 @@ import com.intel.stl.api.performance.PerformanceException;
 import com.intel.stl.api.performance.PerformanceRequestCancelledException;
 import com.intel.stl.api.performance.PortConfigBean;
 import com.intel.stl.api.performance.PortCountersBean;
+import com.intel.stl.api.performance.PortId;
 import com.intel.stl.api.performance.VFConfigRspBean;
 import com.intel.stl.api.performance.VFFocusPortsRspBean;
 import com.intel.stl.api.performance.VFInfoBean;
@@ -140,6 +144,8 @@ public class PerformanceApi implements IPerformanceApi {
 
     private final CircularBuffer<ImageIdBean, ImageInfoBean> imageInfoCache;
 
+    private final HistoryCache historyCache = new HistoryCache();
+
     private final ConcurrentLinkedQueue<GroupInfoBean> groupInfoSaveBuffer;
 
     private List<GroupListBean> groupList;
@@ -214,13 +220,21 @@ public class PerformanceApi implements IPerformanceApi {
      * @see com.intel.hpc.stl.api.IPerformanceApi#getImageInfoBean(long, int)
      */
     @Override
-    public ImageInfoBean getImageInfo(long imageNumber, int imageOffset) {
+    public ImageInfoBean getImageInfo(final long imageNumber,
+            final int imageOffset) {
         try {
-            ImageInfoBean res = helper.getImageInfo(imageNumber, imageOffset);
-            if (addRandom && res != null) {
-                randomizer.randomImageInfo(res, getNumNodes());
-            }
-            return res;
+            return historyCache.get(imageNumber,
+                    new Callable<ImageInfoBean>() {
+                        @Override
+                        public ImageInfoBean call() throws Exception {
+                            ImageInfoBean res = helper
+                                    .getImageInfo(imageNumber, imageOffset);
+                            if (addRandom && res != null) {
+                                randomizer.randomImageInfo(res, getNumNodes());
+                            }
+                            return res;
+                        }
+                    }, "ImageInfo", imageOffset);
         } catch (Exception e) {
             throw getPerformanceException(e);
         }
@@ -305,24 +319,30 @@ public class PerformanceApi implements IPerformanceApi {
     }
 
     @Override
-    public GroupInfoBean getGroupInfoHistory(String name, long imageID,
-            int imageOffset) {
+    public GroupInfoBean getGroupInfoHistory(final String name,
+            final long imageID, final int imageOffset) {
         try {
-            GroupInfoBean groupInfo =
-                    helper.getGroupInfoHistory(name, imageID, imageOffset);
-
-            if (groupInfo != null) {
-                if (!setTimeInfo(groupInfo.getImageId(), groupInfo)) {
-                    // Don't return groupInfo without timestamp. imageInfo can
-                    // be null if the FE request is cancelled while waiting for
-                    // FV command response.
-                    groupInfo = null;
-                } else if (addRandom) {
-                    randomizer.randomGroupInfo(groupInfo);
+            return historyCache.get(imageID, new Callable<GroupInfoBean>() {
+                @Override
+                public GroupInfoBean call() throws Exception {
+                    GroupInfoBean groupInfo = helper.getGroupInfoHistory(name,
+                            imageID, imageOffset);
+
+                    if (groupInfo != null) {
+                        if (!setHistoryTimeInfo(groupInfo.getImageId(),
+                                groupInfo)) {
+                            // Don't return groupInfo without timestamp.
+                            // imageInfo can be null if the FE request is
+                            // cancelled while waiting for FV command response.
+                            groupInfo = null;
+                        } else if (addRandom) {
+                            randomizer.randomGroupInfo(groupInfo);
+                        }
+
+                    }
+                    return groupInfo;
                 }
-
-            }
-            return groupInfo;
+            }, "GroupInfo", name, imageOffset);
         } catch (Exception e) {
             throw getPerformanceException(e);
         }
@@ -439,8 +459,7 @@ public class PerformanceApi implements IPerformanceApi {
      * @see com.intel.hpc.stl.api.IPerformanceApi#getDeviceGroup(int, short)
      */
     @Override
-    public synchronized PortCountersBean getPortCounters(int lid,
-            short portNum) {
+    public PortCountersBean getPortCounters(int lid, short portNum) {
         try {
             PortCountersBean bean = helper.getPortCounter(lid, portNum);
             if (bean != null) {
@@ -458,20 +477,83 @@ public class PerformanceApi implements IPerformanceApi {
     }
 
     @Override
-    public PortCountersBean getPortCountersHistory(int lid, short portNum,
-            long imageID, int imageOffset) {
-        try {
-            PortCountersBean bean = helper.getPortCounterHistory(lid, portNum,
-                    imageID, imageOffset);
-            if (bean != null) {
-                if (!setTimeInfo(bean.getImageId(), bean)) {
-                    // Don't return bean without timestamp. imageInfo can
-                    // be null if the FE request is cancelled while waiting for
-                    // FV command response.
-                    bean = null;
+    public Map<PortId, PortCountersBean> getPortCounters(
+            Collection<PortId> ports) {
+        return getPortCounters(ports, null);
+    }
+
+    @Override
+    public Map<PortId, PortCountersBean> getPortCounters(
+            Collection<PortId> ports, final IPortCountersListener listener) {
+        final Map<PortId, PortCountersBean> res =
+                new LinkedHashMap<PortId, PortCountersBean>();
+        final List<Exception> errors = new ArrayList<Exception>();
+        IPortCountersListener collector = new IPortCountersListener() {
+
+            @Override
+            public void onPortCounters(PortId port, PortCountersBean bean) {
+                try {
+                    if (bean != null) {
+                        setTimeInfo(bean.getImageId(), bean);
+                        if (addRandom) {
+                            randomizer.randomPortCounters(bean);
+                        }
+                    }
+                } catch (Exception e) {
+                    onError(port, e);
+                    return;
+                }
+                res.put(port, bean);
+                if (listener != null) {
+                    listener.onPortCounters(port, bean);
                 }
             }
-            return bean;
+
+            @Override
+            public void onError(PortId port, Exception error) {
+                errors.add(error);
+                if (listener != null) {
+                    listener.onError(port, getPerformanceException(error));
+                }
+            }
+        };
+
+        try {
+            helper.getPortCounters(ports, collector);
+        } catch (Exception e) {
+            throw getPerformanceException(e);
+        }
+        if (!errors.isEmpty()) {
+            Exception first = errors.get(0);
+            if (res.isEmpty()) {
+                throw getPerformanceException(first);
+            }
+            log.warn("Failed to get port counters for {} of {} ports",
+                    errors.size(), ports.size());
+        }
+        return res;
+    }
+
+    @Override
+    public PortCountersBean getPortCountersHistory(final int lid,
+            final short portNum, final long imageID, final int imageOffset) {
+        try {
+            return historyCache.get(imageID, new Callable<PortCountersBean>() {
+                @Override
+                public PortCountersBean call() throws Exception {
+                    PortCountersBean bean = helper.getPortCounterHistory(lid,
+                            portNum, imageID, imageOffset);
+                    if (bean != null) {
+                        if (!setHistoryTimeInfo(bean.getImageId(), bean)) {
+                            // Don't return bean without timestamp. imageInfo
+                            // can be null if the FE request is cancelled while
+                            // waiting for FV command response.
+                            bean = null;
+                        }
+                    }
+                    return bean;
+                }
+            }, "PortCounters", lid, portNum, imageOffset);
         } catch (Exception e) {
             throw getPerformanceException(e);
         }
@@ -575,23 +657,28 @@ public class PerformanceApi implements IPerformanceApi {
      * int)
      */
     @Override
-    public VFInfoBean getVFInfoHistory(String name, long imageID,
-            int imageOffset) {
+    public VFInfoBean getVFInfoHistory(final String name, final long imageID,
+            final int imageOffset) {
         try {
-            VFInfoBean bean =
-                    helper.getVFInfoHistory(name, imageID, imageOffset);
-            if (bean != null) {
-                if (!setTimeInfo(bean.getImageId(), bean)) {
-                    // Don't return bean without timestamp. imageInfo can
-                    // be null if the FE request is cancelled while waiting for
-                    // FV command response.
-                    bean = null;
+            return historyCache.get(imageID, new Callable<VFInfoBean>() {
+                @Override
+                public VFInfoBean call() throws Exception {
+                    VFInfoBean bean =
+                            helper.getVFInfoHistory(name, imageID, imageOffset);
+                    if (bean != null) {
+                        if (!setHistoryTimeInfo(bean.getImageId(), bean)) {
+                            // Don't return bean without timestamp. imageInfo
+                            // can be null if the FE request is cancelled while
+                            // waiting for FV command response.
+                            bean = null;
+                        }
+                    }
+                    if (addRandom && bean != null) {
+                        randomizer.randomVFInfo(bean);
+                    }
+                    return bean;
                 }
-            }
-            if (addRandom && bean != null) {
-                randomizer.randomVFInfo(bean);
-            }
-            return bean;
+            }, "VFInfo", name, imageOffset);
         } catch (PerformanceRequestCancelledException e) {
             throw e;
         } catch (Exception e) {
@@ -710,20 +797,30 @@ public class PerformanceApi implements IPerformanceApi {
      * lang.String, int, short, int)
      */
     @Override
-    public VFPortCountersBean getVFPortCountersHistory(String vfName, int lid,
-            short portNum, long imageID, int imageOffset) {
+    public VFPortCountersBean getVFPortCountersHistory(final String vfName,
+            final int lid, final short portNum, final long imageID,
+            final int imageOffset) {
         try {
-            VFPortCountersBean bean = helper.getVFPortCounterHistory(vfName,
-                    lid, portNum, imageID, imageOffset);
-            if (bean != null) {
-                if (!setTimeInfo(bean.getImageId(), bean)) {
-                    // Don't return bean without timestamp. imageInfo can
-                    // be null if the FE request is cancelled while waiting for
-                    // FV command response.
-                    bean = null;
-                }
-            }
-            return bean;
+            return historyCache.get(imageID,
+                    new Callable<VFPortCountersBean>() {
+                        @Override
+                        public VFPortCountersBean call() throws Exception {
+                            VFPortCountersBean bean =
+                                    helper.getVFPortCounterHistory(vfName, lid,
+                                            portNum, imageID, imageOffset);
+                            if (bean != null) {
+                                if (!setHistoryTimeInfo(bean.getImageId(),
+                                        bean)) {
+                                    // Don't return bean without timestamp.
+                                    // imageInfo can be null if the FE request
+                                    // is cancelled while waiting for FV
+                                    // command response.
+                                    bean = null;
+                                }
+                            }
+                            return bean;
+                        }
+                    }, "VFPortCounters", vfName, lid, portNum, imageOffset);
         } catch (PerformanceRequestCancelledException e) {
             throw e;
         } catch (Exception e) {
@@ -839,6 +936,76 @@ public class PerformanceApi implements IPerformanceApi {
         }
     }
 
+    /**
+     * 
+     * <i>Description:</i> finds the ImageInfo of a history image. Unlike
+     * {@link #getImageInfo(ImageIdBean)} this doesn't ask the FE for the
+     * latest image, which a history image never is; ImageInfo saved in the
+     * database is used before the FE is queried, and the result is shared
+     * through the history cache.
+     * 
+     * @param imageId
+     *            the image id
+     * @return the ImageInfo or null if it can't be found
+     * @throws Exception
+     */
+    private ImageInfoBean getHistoryImageInfo(final ImageIdBean imageId)
+            throws Exception {
+        ImageInfoBean imageInfo = imageInfoCache.get(imageId);
+        if (imageInfo != null) {
+            return imageInfo;
+        }
+
+        return historyCache.get(imageId.getImageNumber(),
+                new Callable<ImageInfoBean>() {
+                    @Override
+                    public ImageInfoBean call() throws Exception {
+                        ImageInfoBean res = getStoredImageInfo(imageId);
+                        if (res == null) {
+                            res = helper.getImageInfo(imageId);
+                        }
+                        return res;
+                    }
+                }, "ImageId", imageId.getImageOffset());
+    }
+
+    private ImageInfoBean getStoredImageInfo(ImageIdBean imageId) {
+        if (imageId.getImageOffset() != 0) {
+            // saved ImageInfo is always identified by an absolute image number
+            return null;
+        }
+
+        try {
+            List<ImageInfoBean> imageInfos = dbServer.getImageInfo(
+                    getConnectionDescription().getName(),
+                    imageId.getImageNumber());
+            for (ImageInfoBean imageInfo : imageInfos) {
+                if (imageId.equals(imageInfo.getImageId())) {
+                    return imageInfo;
+                }
+            }
+        } catch (PerformanceDataNotFoundException e) {
+            // not saved; ask the FE
+        } catch (DatabaseException e) {
+            log.warn("Error reading ImageInfo for image {}: {}",
+                    imageId.getImageNumber(), StringUtils.getErrorMessage(e));
+        }
+        return null;
+    }
+
+    private boolean setHistoryTimeInfo(ImageIdBean imageId, ITimestamped data)
+            throws Exception {
+        ImageInfoBean imageInfo =
+                imageId == null ? null : getHistoryImageInfo(imageId);
+        if (imageInfo != null) {
+            data.setTimestamp(imageInfo.getSweepStart());
+            data.setImageInterval(imageInfo.getImageInterval());
+            return true;
+        } else {
+            return false;
+        }
+    }
+
     protected boolean setTimeInfo(ImageIdBean imageId,
             Collection<? extends ITimestamped> data) throws Exception {
         ImageInfoBean imageInfo =
@@ -958,6 +1125,7 @@ public class PerformanceApi implements IPerformanceApi {
     public synchronized void reset() {
         vfList = null;
         groupList = null;
+        historyCache.clear();
         // will reset cacheMgr in SubnetContext.
     }
 
@@ -970,6 +1138,7 @@ public class PerformanceApi implements IPerformanceApi {
     public void cleanup() {
         helper.close();
         groupInfoSaveBuffer.clear();
+        historyCache.clear();
     }
 
 }
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.api.subnet;
+
+import java.io.Serializable;
+
+/**
+ * Load and latency figures for one FE connection of a subnet
+ */
+public class ConnectionStatisticsBean implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String name;
+
+    private boolean connected;
+
+    private boolean noticeConnection;
+
+    private int inFlight;
+
+    private int maxInFlight;
+
+    private long packetsSent;
+
+    private long responsesReceived;
+
+    private long bytesReceived;
+
+    private double avgBatchSize;
+
+    private double avgLatency;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public void setConnected(boolean connected) {
+        this.connected = connected;
+    }
+
+    public boolean isNoticeConnection() {
+        return noticeConnection;
+    }
+
+    public void setNoticeConnection(boolean noticeConnection) {
+        this.noticeConnection = noticeConnection;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public void setInFlight(int inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public void setPacketsSent(long packetsSent) {
+        this.packetsSent = packetsSent;
+    }
+
+    public long getResponsesReceived() {
+        return responsesReceived;
+    }
+
+    public void setResponsesReceived(long responsesReceived) {
+        this.responsesReceived = responsesReceived;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public void setBytesReceived(long bytesReceived) {
+        this.bytesReceived = bytesReceived;
+    }
+
+    public double getAvgBatchSize() {
+        return avgBatchSize;
+    }
+
+    public void setAvgBatchSize(double avgBatchSize) {
+        this.avgBatchSize = avgBatchSize;
+    }
+
+    /**
+     * @return the moving average request latency in milliseconds
+     */
+    public double getAvgLatency() {
+        return avgLatency;
+    }
+
+    public void setAvgLatency(double avgLatency) {
+        this.avgLatency = avgLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionStatisticsBean [name=" + name + ", connected="
+                + connected + ", noticeConnection=" + noticeConnection
+                + ", inFlight=" + inFlight + ", maxInFlight=" + maxInFlight
+                + ", packetsSent=" + packetsSent + ", responsesReceived="
+                + responsesReceived + ", bytesReceived=" + bytesReceived
+                + ", avgBatchSize=" + avgBatchSize + ", avgLatency="
+                + avgLatency + "]";
+    }
+
+}
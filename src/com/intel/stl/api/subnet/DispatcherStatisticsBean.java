@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.api.subnet;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Snapshot of the request dispatcher of a subnet: how many requests are
+ * waiting for a connection, how the connection pool is loaded and how long
+ * requests take to be answered by the FE
+ */
+public class DispatcherStatisticsBean implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int queueDepth;
+
+    private int handlerThreads;
+
+    private long p50Latency;
+
+    private long p99Latency;
+
+    private List<ConnectionStatisticsBean> connections =
+            new ArrayList<ConnectionStatisticsBean>();
+
+    /**
+     * @return the number of requests waiting to be assigned to a connection
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    public int getHandlerThreads() {
+        return handlerThreads;
+    }
+
+    public void setHandlerThreads(int handlerThreads) {
+        this.handlerThreads = handlerThreads;
+    }
+
+    /**
+     * @return the median latency, in milliseconds, of the most recent requests
+     */
+    public long getP50Latency() {
+        return p50Latency;
+    }
+
+    public void setP50Latency(long p50Latency) {
+        this.p50Latency = p50Latency;
+    }
+
+    /**
+     * @return the 99th percentile latency, in milliseconds, of the most recent
+     *         requests
+     */
+    public long getP99Latency() {
+        return p99Latency;
+    }
+
+    public void setP99Latency(long p99Latency) {
+        this.p99Latency = p99Latency;
+    }
+
+    public int getNumConnections() {
+        return connections.size();
+    }
+
+    /**
+     * @return the number of requests assigned to connections that are waiting
+     *         for a response
+     */
+    public int getInFlight() {
+        int res = 0;
+        for (ConnectionStatisticsBean conn : connections) {
+            res += conn.getInFlight();
+        }
+        return res;
+    }
+
+    public List<ConnectionStatisticsBean> getConnections() {
+        return connections;
+    }
+
+    public void setConnections(List<ConnectionStatisticsBean> connections) {
+        this.connections = connections;
+    }
+
+    @Override
+    public String toString() {
+        return "DispatcherStatisticsBean [queueDepth=" + queueDepth
+                + ", handlerThreads=" + handlerThreads + ", p50Latency="
+                + p50Latency + ", p99Latency=" + p99Latency + ", connections="
+                + connections + "]";
+    }
+
+}
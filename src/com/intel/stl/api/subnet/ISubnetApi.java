@@ -29,6 +29,9 @@ package com.intel.stl.api.subnet;
 
 import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+
+import com.intel.stl.api.ICancelChecker;
 
 public interface ISubnetApi {
     SubnetDescription getConnectionDescription();
@@ -108,6 +111,24 @@ public interface ISubnetApi {
 
     List<TraceRecordBean> getTrace(int sourceLid, int targetLid);
 
+    /**
+     * 
+     * <i>Description:</i> traces between every pair of the given nodes. Routes
+     * are computed in parallel from the cached forwarding tables and links; the
+     * SA is only queried for pairs that cannot be traced locally.
+     * 
+     * @param lids
+     *            the node LIDs
+     * @param cancelChecker
+     *            checked before each trace; the remaining traces are skipped
+     *            once it is cancelled. May be null.
+     * @return traces keyed by source LID and then target LID, where the
+     *         targets of a source are the LIDs after it in <code>lids</code>.
+     *         Pairs without a trace are not in the map.
+     */
+    Map<Integer, Map<Integer, List<TraceRecordBean>>> getTraces(
+            List<Integer> lids, ICancelChecker cancelChecker);
+
     List<SC2SLMTRecordBean> getSC2SLMTs();
 
     SC2SLMTRecordBean getSC2SLMT(int lid);
@@ -126,6 +147,26 @@ public interface ISubnetApi {
 
     FabricInfoBean getFabricInfo();
 
+    /**
+     * 
+     * <i>Description:</i> returns the current load on the FE request
+     * dispatcher for this subnet: queued requests, requests in flight per
+     * connection and p50/p99 request latency
+     * 
+     * @return dispatcher statistics
+     */
+    DispatcherStatisticsBean getDispatcherStatistics();
+
+    /**
+     * 
+     * <i>Description:</i> whether the topology returned by this API was
+     * restored from the last saved snapshot and is still being reconciled
+     * with the FM, so it may be out of date
+     * 
+     * @return true if the topology may be out of date
+     */
+    boolean isTopologyStale();
+
     /**
      * 
      * <i>Description:</i> refresh all data from scratch
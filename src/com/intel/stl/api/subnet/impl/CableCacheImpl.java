@@ -29,6 +29,7 @@ package com.intel.stl.api.subnet.impl;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -159,13 +160,16 @@ public class CableCacheImpl extends
     @Override
     protected Map<Integer, List<CableRecordBean>> retrieveObjectForCache()
             throws Exception {
-        List<CableRecordBean> cables = helper.getCables();
-        log.info("Retrieve " + (cables == null ? 0 : cables.size())
-                + " Cable Infos from FE");
+        // stream the cable records into the map instead of holding them all
+        // in a list first
+        Iterator<CableRecordBean> cables = helper.iterateCables();
         Map<Integer, List<CableRecordBean>> map = null;
+        int count = 0;
         if (cables != null) {
             map = new HashMap<Integer, List<CableRecordBean>>();
-            for (CableRecordBean cable : cables) {
+            while (cables.hasNext()) {
+                CableRecordBean cable = cables.next();
+                count++;
                 int lid = cable.getLid();
                 if (map.containsKey(lid)) {
                     map.get(lid).add(cable);
@@ -177,6 +181,7 @@ public class CableCacheImpl extends
                 }
             }
         }
+        log.info("Retrieve " + count + " Cable Infos from FE");
         return map;
     }
 
@@ -28,9 +28,11 @@
 package com.intel.stl.api.subnet.impl;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.intel.stl.api.notice.impl.NoticeProcess;
 import com.intel.stl.api.subnet.LFTRecordBean;
@@ -40,11 +42,17 @@ import com.intel.stl.configuration.MemoryCache;
 public class LFTCacheImpl extends
         MemoryCache<Map<Integer, List<LFTRecordBean>>> implements LFTCache {
 
+    /**
+     * Rough memory used by an LFT block record, for the cache memory budget
+     */
+    private static final long LFT_SIZE = 128;
+
     private final SAHelper helper;
 
     public LFTCacheImpl(CacheManager cacheMgr) {
         super(cacheMgr);
         this.helper = cacheMgr.getSAHelper();
+        setRefreshMode(RefreshMode.BACKGROUND);
     }
 
     @Override
@@ -92,7 +100,7 @@ public class LFTCacheImpl extends
         try {
             res = helper.getLFTs(lid);
             if (res != null && !res.isEmpty()) {
-                setCacheReady(false); // Force a refresh on next call;
+                queueReload(lid);
             }
         } catch (Exception e) {
             log.error("Error getting LFT by lid " + lid, e);
@@ -105,13 +113,17 @@ public class LFTCacheImpl extends
     @Override
     protected Map<Integer, List<LFTRecordBean>> retrieveObjectForCache()
             throws Exception {
-        List<LFTRecordBean> lfts = helper.getLFTs();
-        log.info("Retrieve " + (lfts == null ? 0 : lfts.size())
-                + " LFTs from FE");
+        // stream the LFT blocks into the map instead of holding them all
+        // in a list first
+        Iterator<LFTRecordBean> lfts = helper.iterateLFTs();
         Map<Integer, List<LFTRecordBean>> map = null;
+        int count = 0;
         if (lfts != null) {
-            map = new HashMap<Integer, List<LFTRecordBean>>();
-            for (LFTRecordBean lft : lfts) {
+            // modified by notices and reloads while readers use it
+            map = new ConcurrentHashMap<Integer, List<LFTRecordBean>>();
+            while (lfts.hasNext()) {
+                LFTRecordBean lft = lfts.next();
+                count++;
                 int lid = lft.getLid();
                 if (map.containsKey(lid)) {
                     map.get(lid).add(lft);
@@ -122,6 +134,7 @@ public class LFTCacheImpl extends
                 }
             }
         }
+        log.info("Retrieve " + count + " LFTs from FE");
         return map;
     }
 
@@ -142,6 +155,40 @@ public class LFTCacheImpl extends
         return true;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.intel.stl.configuration.MemoryCache#reloadObjects(java.lang.Object,
+     * java.util.Collection)
+     */
+    @Override
+    protected boolean reloadObjects(Map<Integer, List<LFTRecordBean>> map,
+            Collection<Integer> lids) throws Exception {
+        for (int lid : lids) {
+            List<LFTRecordBean> lfts = helper.getLFTs(lid);
+            if (lfts != null && !lfts.isEmpty()) {
+                map.put(lid, lfts);
+            } else {
+                map.remove(lid);
+            }
+        }
+        log.info("Reloaded LFTs of " + lids.size() + " switches from FE");
+        return true;
+    }
+
+    @Override
+    protected long estimateSize(Map<Integer, List<LFTRecordBean>> map) {
+        if (map == null) {
+            return 0;
+        }
+        long count = 0;
+        for (List<LFTRecordBean> lfts : map.values()) {
+            count += lfts.size();
+        }
+        return count * LFT_SIZE;
+    }
+
     @Override
     protected RuntimeException processRefreshCacheException(Exception e) {
         return SubnetApi.getSubnetException(e);
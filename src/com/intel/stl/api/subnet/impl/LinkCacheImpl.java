@@ -30,7 +30,7 @@ package com.intel.stl.api.subnet.impl;
 import static com.intel.stl.common.STLMessages.STL30058_LINK_NOT_FOUND_CACHE_ALL;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -44,32 +44,35 @@ import com.intel.stl.api.subnet.SubnetDataNotFoundException;
 import com.intel.stl.configuration.CacheManager;
 import com.intel.stl.configuration.MemoryCache;
 
-public class LinkCacheImpl extends MemoryCache<List<LinkRecordBean>> implements
-        LinkCache {
+public class LinkCacheImpl extends MemoryCache<LinkIndex> implements LinkCache {
+
+    /**
+     * Rough memory used by a link record and its index entries, for the cache
+     * memory budget
+     */
+    private static final long LINK_SIZE = 128;
 
     private final SAHelper helper;
 
     public LinkCacheImpl(CacheManager cacheMgr) {
         super(cacheMgr);
         this.helper = cacheMgr.getSAHelper();
+        setRefreshMode(RefreshMode.BACKGROUND);
     }
 
+    /**
+     * Returns a read-only view of the cached links. The view is not a copy,
+     * but it is never modified; links added by notices go into a new list.
+     */
     @Override
     public List<LinkRecordBean> getLinks(boolean includeInactive)
             throws SubnetDataNotFoundException {
-        List<LinkRecordBean> res = new ArrayList<LinkRecordBean>();
-
-        List<LinkRecordBean> links = getCachedObject();
-        if (links != null && !links.isEmpty()) {
-            for (LinkRecordBean link : links) {
-                if (includeInactive || link.isActive()) {
-                    res.add(link);
-                }
-            }
-        }
+        LinkIndex index = getCachedObject();
 
-        if (!res.isEmpty()) {
-            return Collections.unmodifiableList(res);
+        List<LinkRecordBean> res =
+                index == null ? null : index.getLinks(includeInactive);
+        if (res != null && !res.isEmpty()) {
+            return res;
         } else {
             throw new SubnetDataNotFoundException(
                     STL30058_LINK_NOT_FOUND_CACHE_ALL);
@@ -79,18 +82,16 @@ public class LinkCacheImpl extends MemoryCache<List<LinkRecordBean>> implements
     @Override
     public LinkRecordBean getLinkBySource(int lid, short portNum)
             throws SubnetDataNotFoundException {
-        List<LinkRecordBean> links = getLinks(true);
-        for (LinkRecordBean link : links) {
-            if (link.getFromLID() == lid && link.getFromPortIndex() == portNum) {
-                return link;
-            }
+        LinkRecordBean res = getLinkIndex().getLinkBySource(lid, portNum);
+        if (res != null) {
+            return res;
         }
 
         // might be a new node
         try {
-            links = helper.getLinks(lid);
+            List<LinkRecordBean> links = helper.getLinks(lid);
             if (links != null && !links.isEmpty()) {
-                setCacheReady(false); // Force a refresh on next call
+                queueReload(lid);
                 for (LinkRecordBean link : links) {
                     if (link.getFromPortIndex() == portNum) {
                         return link;
@@ -110,20 +111,18 @@ public class LinkCacheImpl extends MemoryCache<List<LinkRecordBean>> implements
     @Override
     public LinkRecordBean getLinkByDestination(int lid, short portNum)
             throws SubnetDataNotFoundException {
-        List<LinkRecordBean> links = getLinks(true);
-        for (LinkRecordBean link : links) {
-            if (link.getToLID() == lid && link.getToPortIndex() == portNum) {
-                return link;
-            }
+        LinkRecordBean res = getLinkIndex().getLinkByDestination(lid, portNum);
+        if (res != null) {
+            return res;
         }
 
         // might be a new node
         try {
-            links = helper.getLinks(lid);
+            List<LinkRecordBean> links = helper.getLinks(lid);
             if (links != null && !links.isEmpty()) {
                 for (LinkRecordBean link : links) {
                     if (link.getFromPortIndex() == portNum) {
-                        setCacheReady(false); // Force a refresh on next call
+                        queueReload(lid);
                         return new LinkRecordBean(link.getToLID(),
                                 link.getToPortIndex(), link.getFromLID(),
                                 link.getFromPortIndex());
@@ -140,11 +139,71 @@ public class LinkCacheImpl extends MemoryCache<List<LinkRecordBean>> implements
         throw new SubnetDataNotFoundException(STL30058_LINK_NOT_FOUND_CACHE_ALL);
     }
 
+    /**
+     * 
+     * <i>Description:</i> the cached link index
+     * 
+     * @return the link index
+     * @throws SubnetDataNotFoundException
+     *             if there are no links in the cache
+     */
+    protected LinkIndex getLinkIndex() throws SubnetDataNotFoundException {
+        LinkIndex index = getCachedObject();
+        if (index == null || index.getLinks(true).isEmpty()) {
+            throw new SubnetDataNotFoundException(
+                    STL30058_LINK_NOT_FOUND_CACHE_ALL);
+        }
+        return index;
+    }
+
     @Override
-    protected List<LinkRecordBean> retrieveObjectForCache() throws Exception {
-        List<LinkRecordBean> res = helper.getLinks();
-        log.info("Retrieve " + (res == null ? 0 : res.size())
+    protected LinkIndex retrieveObjectForCache() throws Exception {
+        List<LinkRecordBean> links = helper.getLinks();
+        log.info("Retrieve " + (links == null ? 0 : links.size())
                 + " links from FE");
+        if (links == null) {
+            return null;
+        }
+        LinkIndex snapshot = getStaleObject();
+        if (snapshot != null) {
+            links = reconcile(snapshot, links);
+        }
+        return new LinkIndex(links);
+    }
+
+    /**
+     * 
+     * <i>Description:</i> reconciles the links restored from a snapshot with
+     * the links from the FM. Restored links that didn't change are kept, so
+     * only the differences replace what the UI is already showing.
+     * 
+     * @param snapshot
+     *            the restored links
+     * @param links
+     *            the links from the FM
+     * @return the links to cache
+     */
+    protected List<LinkRecordBean> reconcile(LinkIndex snapshot,
+            List<LinkRecordBean> links) {
+        List<LinkRecordBean> res = new ArrayList<LinkRecordBean>(links.size());
+        int changed = 0;
+        for (LinkRecordBean link : links) {
+            LinkRecordBean cached = snapshot.getLinkBySource(link.getFromLID(),
+                    link.getFromPortIndex());
+            if (cached != null && cached.getToLID() == link.getToLID()
+                    && cached.getToPortIndex() == link.getToPortIndex()
+                    && cached.isActive() == link.isActive()) {
+                res.add(cached);
+            } else {
+                res.add(link);
+                changed += 1;
+            }
+        }
+        int removed =
+                snapshot.getLinks(true).size() - (links.size() - changed);
+        log.info("Reconciled link snapshot with FM: " + changed
+                + " links new or changed, " + Math.max(0, removed)
+                + " gone or replaced");
         return res;
     }
 
@@ -152,18 +211,18 @@ public class LinkCacheImpl extends MemoryCache<List<LinkRecordBean>> implements
     public boolean refreshCache(NoticeProcess notice) throws Exception {
         // If there was an exception during refreshCache(), this will rethrow
         // the exception
-        List<LinkRecordBean> links = getCachedObject();
-        // If links is null, most probably DBLinkCache is in use
-        if (links == null) {
+        LinkIndex index = getCachedObject();
+        // If index is null, most probably DBLinkCache is in use
+        if (index == null) {
             log.info("No links from FM");
             return false;
         }
         switch (notice.getTrapType()) {
             case GID_NOW_IN_SERVICE:
-                resetLinks(notice, true);
+                resetLinks(index, notice.getLid(), notice.getLinks(), true);
                 break;
             case GID_OUT_OF_SERVICE:
-                resetLinks(notice, false);
+                resetLinks(index, notice.getLid(), notice.getLinks(), false);
                 break;
             case LINK_PORT_CHANGE_STATE:
                 Map<Short, PortState> portMap = new HashMap<Short, PortState>();
@@ -172,7 +231,7 @@ public class LinkCacheImpl extends MemoryCache<List<LinkRecordBean>> implements
                             port.getPortInfo().getPortStates().getPortState();
                     portMap.put(port.getPortNum(), portState);
                 }
-                resetLinksUsingPortMap(notice, portMap);
+                resetLinksUsingPortMap(index, notice, portMap);
                 break;
             default:
                 break;
@@ -181,15 +240,36 @@ public class LinkCacheImpl extends MemoryCache<List<LinkRecordBean>> implements
         return true;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.intel.stl.configuration.MemoryCache#reloadObjects(java.lang.Object,
+     * java.util.Collection)
+     */
+    @Override
+    protected boolean reloadObjects(LinkIndex index, Collection<Integer> lids)
+            throws Exception {
+        for (int lid : lids) {
+            resetLinks(index, lid, helper.getLinks(lid), true);
+        }
+        log.info("Reloaded links of " + lids.size() + " nodes from FE");
+        return true;
+    }
+
+    @Override
+    protected long estimateSize(LinkIndex index) {
+        return index == null ? 0 : index.getLinks(true).size() * LINK_SIZE;
+    }
+
     @Override
     protected RuntimeException processRefreshCacheException(Exception e) {
         return SubnetApi.getSubnetException(e);
     }
 
-    private void resetLinks(NoticeProcess notice, boolean status) {
-        List<LinkRecordBean> links = getCachedObject();
-        int lid = notice.getLid();
-        List<LinkRecordBean> newLinks = notice.getLinks();
+    private void resetLinks(LinkIndex index, int lid,
+            List<LinkRecordBean> newLinks, boolean status) {
+        LinkRecordBean[] links = index.getNodeLinks(lid);
         if (newLinks == null) {
             // No link records in the FM for this lid. The rule is: if no
             // corresponding record in the FM, then record in cache should be
@@ -197,32 +277,28 @@ public class LinkCacheImpl extends MemoryCache<List<LinkRecordBean>> implements
             // would correct itself later. A SaveTopology would delete the link
             // if the condition persists.
             for (LinkRecordBean link : links) {
-                if (link.getFromLID() == lid || link.getToLID() == lid) {
-                    link.setActive(false);
-                }
+                index.setActive(link, false);
             }
         } else {
             // newLinks is R/O; copy it for this logic
             List<LinkRecordBean> rwNewLinks =
                     new ArrayList<LinkRecordBean>(newLinks);
             for (LinkRecordBean link : links) {
-                if (link.getFromLID() == lid || link.getToLID() == lid) {
-                    processLink(link, status, rwNewLinks);
-                }
+                processLink(index, link, status, rwNewLinks);
             }
             // At this point, newLinks should have only non-matching links that
             // need to be added to the cache
             if (rwNewLinks.size() > 0) {
                 for (LinkRecordBean newLink : rwNewLinks) {
                     newLink.setActive(status);
-                    links.add(newLink);
                 }
+                index.addLinks(rwNewLinks);
             }
         }
     }
 
-    private void processLink(LinkRecordBean memLink, boolean status,
-            List<LinkRecordBean> newLinks) {
+    private void processLink(LinkIndex index, LinkRecordBean memLink,
+            boolean status, List<LinkRecordBean> newLinks) {
         Iterator<LinkRecordBean> it = newLinks.iterator();
         boolean found = false;
         while (it.hasNext()) {
@@ -232,23 +308,22 @@ public class LinkCacheImpl extends MemoryCache<List<LinkRecordBean>> implements
                     && memLink.getToLID() == newLink.getToLID()
                     && memLink.getToPortIndex() == newLink.getToPortIndex()) {
                 found = true;
-                memLink.setActive(status);
+                index.setActive(memLink, status);
                 // Do not process this link again
                 it.remove();
             }
         }
         if (!found) {
             // See the rule about No corresponding records in the FM above
-            memLink.setActive(false);
+            index.setActive(memLink, false);
         }
 
     }
 
-    private void resetLinksUsingPortMap(NoticeProcess notice,
+    private void resetLinksUsingPortMap(LinkIndex index, NoticeProcess notice,
             Map<Short, PortState> portMap) {
-        List<LinkRecordBean> links = getCachedObject();
         int lid = notice.getLid();
-        for (LinkRecordBean link : links) {
+        for (LinkRecordBean link : index.getNodeLinks(lid)) {
             PortState portState = null;
             if (link.getFromLID() == lid) {
                 portState = portMap.get(link.getFromPortIndex());
@@ -258,11 +333,7 @@ public class LinkCacheImpl extends MemoryCache<List<LinkRecordBean>> implements
             if (portState == null) {
                 continue;
             }
-            if (portState == PortState.ACTIVE) {
-                link.setActive(true);
-            } else {
-                link.setActive(false);
-            }
+            index.setActive(link, portState == PortState.ACTIVE);
         }
     }
 }
@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.api.subnet.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.intel.stl.api.subnet.LinkRecordBean;
+import com.intel.stl.common.LongObjectMap;
+
+/**
+ * Link lookup tables used by LinkCacheImpl. Links are indexed by their source
+ * and destination (LID, port) with primitive keyed maps, and every LID has an
+ * array of the links that start or end on it. Link lists handed out are
+ * read-only snapshots that are replaced, not modified, when links are added.
+ */
+public class LinkIndex {
+    private static final LinkRecordBean[] NO_LINKS = new LinkRecordBean[0];
+
+    private volatile List<LinkRecordBean> links;
+
+    // active links, null when it needs to be recalculated
+    private volatile List<LinkRecordBean> activeLinks;
+
+    private final LongObjectMap<LinkRecordBean> linksBySource;
+
+    private final LongObjectMap<LinkRecordBean> linksByDestination;
+
+    private final LongObjectMap<LinkRecordBean[]> linksByLid;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public LinkIndex(List<LinkRecordBean> links) {
+        this.links =
+                Collections.unmodifiableList(new ArrayList<LinkRecordBean>(
+                        links));
+        linksBySource = new LongObjectMap<LinkRecordBean>(links.size());
+        linksByDestination = new LongObjectMap<LinkRecordBean>(links.size());
+        linksByLid = new LongObjectMap<LinkRecordBean[]>(links.size() / 4);
+        indexLinks(links);
+    }
+
+    /**
+     * 
+     * <i>Description:</i> returns a read-only view of the links
+     * 
+     * @param includeInactive
+     *            whether to include inactive links
+     * @return the links
+     */
+    public List<LinkRecordBean> getLinks(boolean includeInactive) {
+        if (includeInactive) {
+            return links;
+        }
+
+        List<LinkRecordBean> res = activeLinks;
+        if (res != null) {
+            return res;
+        }
+
+        // rebuild under the write lock so a concurrent setActive or addLinks
+        // can't be overwritten by a stale list
+        lock.writeLock().lock();
+        try {
+            res = activeLinks;
+            if (res == null) {
+                List<LinkRecordBean> active =
+                        new ArrayList<LinkRecordBean>(links.size());
+                for (LinkRecordBean link : links) {
+                    if (link.isActive()) {
+                        active.add(link);
+                    }
+                }
+                res = Collections.unmodifiableList(active);
+                activeLinks = res;
+            }
+            return res;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public LinkRecordBean getLinkBySource(int lid, short portNum) {
+        lock.readLock().lock();
+        try {
+            return linksBySource.get(getKey(lid, portNum));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public LinkRecordBean getLinkByDestination(int lid, short portNum) {
+        lock.readLock().lock();
+        try {
+            return linksByDestination.get(getKey(lid, portNum));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 
+     * <i>Description:</i> the links starting or ending on a node
+     * 
+     * @param lid
+     *            the node LID
+     * @return the node's links; do not modify the returned array
+     */
+    public LinkRecordBean[] getNodeLinks(int lid) {
+        lock.readLock().lock();
+        try {
+            LinkRecordBean[] res = linksByLid.get(lid);
+            return res == null ? NO_LINKS : res;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void addLinks(Collection<LinkRecordBean> newLinks) {
+        if (newLinks.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            List<LinkRecordBean> all =
+                    new ArrayList<LinkRecordBean>(links.size()
+                            + newLinks.size());
+            all.addAll(links);
+            all.addAll(newLinks);
+            links = Collections.unmodifiableList(all);
+            activeLinks = null;
+            indexLinks(newLinks);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 
+     * <i>Description:</i> changes the state of an indexed link. Link state
+     * should be changed through this method so the active links view stays
+     * consistent.
+     * 
+     * @param link
+     * @param active
+     */
+    public void setActive(LinkRecordBean link, boolean active) {
+        lock.writeLock().lock();
+        try {
+            if (link.isActive() != active) {
+                link.setActive(active);
+                activeLinks = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void indexLinks(Collection<LinkRecordBean> newLinks) {
+        LongObjectMap<List<LinkRecordBean>> nodeLinks =
+                new LongObjectMap<List<LinkRecordBean>>();
+        for (LinkRecordBean link : newLinks) {
+            putLink(linksBySource,
+                    getKey(link.getFromLID(), link.getFromPortIndex()), link);
+            putLink(linksByDestination,
+                    getKey(link.getToLID(), link.getToPortIndex()), link);
+            addNodeLink(nodeLinks, link.getFromLID(), link);
+            if (link.getToLID() != link.getFromLID()) {
+                addNodeLink(nodeLinks, link.getToLID(), link);
+            }
+        }
+        // extend each node's array once per batch of links
+        for (long lid : nodeLinks.keys()) {
+            List<LinkRecordBean> added = nodeLinks.get(lid);
+            LinkRecordBean[] current = linksByLid.get(lid);
+            int size = current == null ? 0 : current.length;
+            LinkRecordBean[] res = new LinkRecordBean[size + added.size()];
+            if (current != null) {
+                System.arraycopy(current, 0, res, 0, size);
+            }
+            for (LinkRecordBean link : added) {
+                res[size++] = link;
+            }
+            linksByLid.put(lid, res);
+        }
+    }
+
+    private void putLink(LongObjectMap<LinkRecordBean> map, long key,
+            LinkRecordBean link) {
+        LinkRecordBean current = map.get(key);
+        // a port may have an old, inactive link and a new one after a cable
+        // change; prefer the active one
+        if (current == null || link.isActive() || !current.isActive()) {
+            map.put(key, link);
+        }
+    }
+
+    private void addNodeLink(LongObjectMap<List<LinkRecordBean>> nodeLinks,
+            int lid, LinkRecordBean link) {
+        List<LinkRecordBean> list = nodeLinks.get(lid);
+        if (list == null) {
+            list = new ArrayList<LinkRecordBean>();
+            nodeLinks.put(lid, list);
+        }
+        list.add(link);
+    }
+
+    private static long getKey(int lid, int portNum) {
+        return ((long) lid << 8) | (portNum & 0xff);
+    }
+
+    @Override
+    public String toString() {
+        return "LinkIndex [links=" + links.size() + ", linksBySource="
+                + linksBySource + ", linksByDestination=" + linksByDestination
+                + "]";
+    }
+}
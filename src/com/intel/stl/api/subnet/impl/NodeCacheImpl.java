@@ -35,10 +35,7 @@ import static com.intel.stl.common.STLMessages.STL30061_NODE_NOT_FOUND_CACHE_ALL
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumMap;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
 
 import com.intel.stl.api.StringUtils;
 import com.intel.stl.api.notice.impl.NoticeProcess;
@@ -49,53 +46,43 @@ import com.intel.stl.api.subnet.SubnetDataNotFoundException;
 import com.intel.stl.configuration.CacheManager;
 import com.intel.stl.configuration.MemoryCache;
 
-public class NodeCacheImpl extends MemoryCache<Map<Integer, NodeRecordBean>>
-        implements NodeCache {
+public class NodeCacheImpl extends MemoryCache<NodeIndex> implements NodeCache {
 
-    // distribution with active nodes only
-    private final AtomicReference<EnumMap<NodeType, Integer>> nodesTypeDist;
-
-    // distribution with active and inactive nodes
-    private final AtomicReference<EnumMap<NodeType, Integer>> nodesTypeDist2;
+    /**
+     * Rough memory used by a node record and its index entries, for the cache
+     * memory budget
+     */
+    private static final long NODE_SIZE = 512;
 
     private final SAHelper helper;
 
     public NodeCacheImpl(CacheManager cacheMgr) {
         super(cacheMgr);
         this.helper = cacheMgr.getSAHelper();
-        this.nodesTypeDist =
-                new AtomicReference<EnumMap<NodeType, Integer>>(null);
-        this.nodesTypeDist2 =
-                new AtomicReference<EnumMap<NodeType, Integer>>(null);
+        setRefreshMode(RefreshMode.BACKGROUND);
     }
 
     @Override
     public List<NodeRecordBean> getNodes(boolean includeInactive)
             throws SubnetDataNotFoundException {
-        Map<Integer, NodeRecordBean> map = getCachedObject();
+        NodeIndex index = getCachedObject();
 
-        List<NodeRecordBean> res = new ArrayList<NodeRecordBean>();
-        if (map != null && !map.isEmpty()) {
-            for (NodeRecordBean node : map.values()) {
-                if (includeInactive || node.isActive()) {
-                    res.add(node);
-                }
+        if (index != null) {
+            List<NodeRecordBean> res = index.getNodes(includeInactive);
+            if (!res.isEmpty()) {
+                return res;
             }
         }
-        if (!res.isEmpty()) {
-            return res;
-        } else {
-            throw new SubnetDataNotFoundException(
-                    STL30061_NODE_NOT_FOUND_CACHE_ALL);
-        }
+        throw new SubnetDataNotFoundException(
+                STL30061_NODE_NOT_FOUND_CACHE_ALL);
     }
 
     @Override
     public NodeRecordBean getNode(int lid) throws SubnetDataNotFoundException {
-        Map<Integer, NodeRecordBean> nodeMap = getCachedObject();
+        NodeIndex index = getCachedObject();
 
-        if (nodeMap != null && !nodeMap.isEmpty()) {
-            NodeRecordBean node = nodeMap.get(lid);
+        if (index != null) {
+            NodeRecordBean node = index.getNode(lid);
             if (node != null) {
                 return node;
             }
@@ -115,7 +102,7 @@ public class NodeCacheImpl extends MemoryCache<Map<Integer, NodeRecordBean>>
         }
 
         if (node != null) {
-            setCacheReady(false); // Force a refresh on next call
+            queueReload(node.getLid());
             return node;
         } else {
             throw new SubnetDataNotFoundException(
@@ -126,14 +113,12 @@ public class NodeCacheImpl extends MemoryCache<Map<Integer, NodeRecordBean>>
     @Override
     public NodeRecordBean getNode(long portGuid)
             throws SubnetDataNotFoundException {
-        Map<Integer, NodeRecordBean> nodeMap = getCachedObject();
+        NodeIndex index = getCachedObject();
 
-        if (nodeMap != null && !nodeMap.isEmpty()) {
-            Collection<NodeRecordBean> nodes = nodeMap.values();
-            for (NodeRecordBean node : nodes) {
-                if (node.getNodeInfo().getPortGUID() == portGuid) {
-                    return node;
-                }
+        if (index != null) {
+            NodeRecordBean node = index.getNodeByPortGuid(portGuid);
+            if (node != null) {
+                return node;
             }
         }
 
@@ -151,7 +136,7 @@ public class NodeCacheImpl extends MemoryCache<Map<Integer, NodeRecordBean>>
         }
 
         if (node != null) {
-            setCacheReady(false); // Force a refresh on next call
+            queueReload(node.getLid());
             return node;
         } else {
             throw new SubnetDataNotFoundException(
@@ -159,83 +144,126 @@ public class NodeCacheImpl extends MemoryCache<Map<Integer, NodeRecordBean>>
         }
     }
 
+    /**
+     * Type distributions are maintained incrementally by the NodeIndex, so
+     * they are always consistent with the cached nodes and <code>refresh</code>
+     * has no extra effect.
+     */
     @Override
     public EnumMap<NodeType, Integer> getNodesTypeDist(boolean includeInactive,
             boolean refresh) throws SubnetDataNotFoundException {
-        if (includeInactive) {
-            return getNodesTypeDist(refresh);
+        NodeIndex index = getCachedObject();
+
+        if (index != null && !index.isEmpty()) {
+            return index.getTypeDist(includeInactive);
         } else {
-            return getActiveNodesTypeDist(refresh);
+            throw new SubnetDataNotFoundException(
+                    STL30057_NODE_TYPE_DIST_FOUND_IN_CACHE);
         }
     }
 
-    protected EnumMap<NodeType, Integer> getActiveNodesTypeDist(boolean refresh)
-            throws SubnetDataNotFoundException {
-        if (refresh || nodesTypeDist.get() == null) {
-            Map<Integer, NodeRecordBean> nodeMap = getCachedObject();
-
-            if (nodeMap != null && !nodeMap.isEmpty()) {
-                EnumMap<NodeType, Integer> nodesTypeDistMap =
-                        new EnumMap<NodeType, Integer>(NodeType.class);
-
-                Collection<NodeRecordBean> nodes = nodeMap.values();
-                for (NodeRecordBean node : nodes) {
-                    if (node.isActive()) {
-                        NodeType type = node.getNodeType();
-                        Integer count = nodesTypeDistMap.get(type);
-                        nodesTypeDistMap.put(type, count == null ? 1
-                                : (count + 1));
-                    }
-                }
-                nodesTypeDist.set(nodesTypeDistMap);
-            } else {
-                throw new SubnetDataNotFoundException(
-                        STL30057_NODE_TYPE_DIST_FOUND_IN_CACHE);
+    @Override
+    protected NodeIndex retrieveObjectForCache() throws Exception {
+        List<NodeRecordBean> nodes = helper.getNodes();
+        log.info("Retrieve " + (nodes == null ? 0 : nodes.size())
+                + " nodes from FE");
+        NodeIndex index = null;
+        if (nodes != null) {
+            NodeIndex snapshot = getStaleObject();
+            if (snapshot != null) {
+                nodes = reconcile(snapshot, nodes);
             }
+            index = new NodeIndex(nodes);
         }
-        return nodesTypeDist.get();
+        return index;
     }
 
-    protected EnumMap<NodeType, Integer> getNodesTypeDist(boolean refresh)
-            throws SubnetDataNotFoundException {
-        if (refresh || nodesTypeDist2.get() == null) {
-            Map<Integer, NodeRecordBean> nodeMap = getCachedObject();
-
-            if (nodeMap != null && !nodeMap.isEmpty()) {
-                EnumMap<NodeType, Integer> nodesTypeDistMap =
-                        new EnumMap<NodeType, Integer>(NodeType.class);
-
-                Collection<NodeRecordBean> nodes = nodeMap.values();
-                for (NodeRecordBean node : nodes) {
-                    NodeType type = node.getNodeType();
-                    Integer count = nodesTypeDistMap.get(type);
-                    nodesTypeDistMap.put(type, count == null ? 1 : (count + 1));
-                }
-                nodesTypeDist2.set(nodesTypeDistMap);
+    /**
+     * 
+     * <i>Description:</i> reconciles the nodes restored from a snapshot with
+     * the nodes from the FM. Restored nodes that didn't change are kept, so
+     * only the differences replace what the UI is already showing.
+     * 
+     * @param snapshot
+     *            the restored nodes
+     * @param nodes
+     *            the nodes from the FM
+     * @return the nodes to cache
+     */
+    protected List<NodeRecordBean> reconcile(NodeIndex snapshot,
+            List<NodeRecordBean> nodes) {
+        List<NodeRecordBean> res = new ArrayList<NodeRecordBean>(nodes.size());
+        int changed = 0;
+        for (NodeRecordBean node : nodes) {
+            NodeRecordBean cached = snapshot.getNode(node.getLid());
+            if (cached != null && isSameNode(cached, node)) {
+                res.add(cached);
             } else {
-                throw new SubnetDataNotFoundException(
-                        STL30057_NODE_TYPE_DIST_FOUND_IN_CACHE);
+                res.add(node);
+                changed += 1;
             }
         }
-        return nodesTypeDist2.get();
+        int removed = snapshot.size() - (nodes.size() - changed);
+        log.info("Reconciled node snapshot with FM: " + changed
+                + " nodes new or changed, " + Math.max(0, removed)
+                + " gone or replaced");
+        return res;
+    }
+
+    private boolean isSameNode(NodeRecordBean node1, NodeRecordBean node2) {
+        NodeInfoBean info1 = node1.getNodeInfo();
+        NodeInfoBean info2 = node2.getNodeInfo();
+        if (node1.isActive() != node2.isActive() || info1 == null
+                || info2 == null) {
+            return false;
+        }
+        String desc1 = node1.getNodeDesc();
+        String desc2 = node2.getNodeDesc();
+        return (desc1 == null ? desc2 == null : desc1.equals(desc2))
+                && info1.getNodeGUID() == info2.getNodeGUID()
+                && info1.getPortGUID() == info2.getPortGUID()
+                && info1.getSysImageGUID() == info2.getSysImageGUID()
+                && info1.getNodeType() == info2.getNodeType()
+                && info1.getNumPorts() == info2.getNumPorts()
+                && info1.getLocalPortNum() == info2.getLocalPortNum()
+                && info1.getPartitionCap() == info2.getPartitionCap()
+                && info1.getDeviceID() == info2.getDeviceID()
+                && info1.getRevision() == info2.getRevision()
+                && info1.getVendorID() == info2.getVendorID()
+                && info1.getBaseVersion() == info2.getBaseVersion()
+                && info1.getClassVersion() == info2.getClassVersion();
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.intel.stl.configuration.MemoryCache#reloadObjects(java.lang.Object,
+     * java.util.Collection)
+     */
     @Override
-    protected Map<Integer, NodeRecordBean> retrieveObjectForCache()
+    protected boolean reloadObjects(NodeIndex index, Collection<Integer> lids)
             throws Exception {
-        List<NodeRecordBean> nodes = helper.getNodes();
-        log.info("Retrieve " + (nodes == null ? 0 : nodes.size())
-                + " nodes from FE");
-        Map<Integer, NodeRecordBean> map = null;
-        if (nodes != null) {
-            map = new HashMap<Integer, NodeRecordBean>();
-            for (NodeRecordBean node : nodes) {
-                map.put(node.getLid(), node);
+        for (int lid : lids) {
+            NodeRecordBean node = helper.getNode(lid);
+            if (node != null) {
+                NodeRecordBean cached = index.getNode(lid);
+                if (cached == null
+                        || cached.getNodeInfo().getNodeGUID() != node
+                                .getNodeInfo().getNodeGUID()) {
+                    index.putNode(node);
+                } else {
+                    index.setActive(cached, true);
+                }
             }
         }
-        nodesTypeDist.set(null);
-        nodesTypeDist2.set(null);
-        return map;
+        log.info("Reloaded " + lids.size() + " nodes from FE");
+        return true;
+    }
+
+    @Override
+    protected long estimateSize(NodeIndex index) {
+        return index == null ? 0 : index.size() * NODE_SIZE;
     }
 
     /*
@@ -253,23 +281,21 @@ public class NodeCacheImpl extends MemoryCache<Map<Integer, NodeRecordBean>>
     public boolean refreshCache(NoticeProcess notice) throws Exception {
         // If there was an exception during refreshCache(), this will rethrow
         // the exception
-        Map<Integer, NodeRecordBean> nodeMap = getCachedObject();
-        // If nodeMap is null, most probably DBNodeCache is in use
-        if (nodeMap == null) {
-            log.info("Node map is null");
+        NodeIndex index = getCachedObject();
+        // If index is null, most probably DBNodeCache is in use
+        if (index == null) {
+            log.info("Node index is null");
             return false;
         }
         switch (notice.getTrapType()) {
             case GID_NOW_IN_SERVICE:
-                resetNode(notice, true);
+                resetNode(index, notice, true);
                 break;
             case GID_OUT_OF_SERVICE:
-                resetNode(notice, false);
+                resetNode(index, notice, false);
             default:
                 break;
         }
-        nodesTypeDist.set(null);
-        nodesTypeDist2.set(null);
 
         return true;
     }
@@ -279,10 +305,10 @@ public class NodeCacheImpl extends MemoryCache<Map<Integer, NodeRecordBean>>
         return SubnetApi.getSubnetException(e);
     }
 
-    private void resetNode(NoticeProcess notice, boolean status) {
-        Map<Integer, NodeRecordBean> nodeMap = getCachedObject();
+    private void resetNode(NodeIndex index, NoticeProcess notice,
+            boolean status) {
         int lid = notice.getLid();
-        NodeRecordBean node = nodeMap.get(lid);
+        NodeRecordBean node = index.getNode(lid);
         NodeRecordBean newNode = notice.getNode();
         if (node != null && newNode != null) {
             NodeInfoBean nodeInfo = node.getNodeInfo();
@@ -292,13 +318,13 @@ public class NodeCacheImpl extends MemoryCache<Map<Integer, NodeRecordBean>>
                 log.info("Node GUID in cache does not match GUID in FM");
                 setCacheReady(false);
             }
-            node.setActive(status);
+            index.setActive(node, status);
         } else {
             if (node == null) {
                 // No node in cache
                 if (newNode != null) {
                     newNode.setActive(status);
-                    nodeMap.put(lid, newNode);
+                    index.putNode(newNode);
                 } else {
                     log.error("Notice for node with lid " + lid
                             + " to set active status to " + status
@@ -307,7 +333,7 @@ public class NodeCacheImpl extends MemoryCache<Map<Integer, NodeRecordBean>>
             } else {
                 // There is a node in cache but no node in the FM. Apply rule,
                 // no FM definition, resource set to inactive
-                node.setActive(false);
+                index.setActive(node, false);
             }
         }
     }
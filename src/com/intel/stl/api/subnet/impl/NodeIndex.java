@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.api.subnet.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.intel.stl.api.subnet.NodeRecordBean;
+import com.intel.stl.api.subnet.NodeType;
+import com.intel.stl.common.LongObjectMap;
+
+/**
+ * Node lookup tables used by NodeCacheImpl. Nodes are indexed by LID and by
+ * port GUID with primitive keyed maps, and the node type distributions are
+ * kept as counters that are updated as nodes are added or change state.
+ */
+public class NodeIndex {
+    private static final NodeType[] TYPES = NodeType.values();
+
+    private final LongObjectMap<NodeRecordBean> nodesByLid;
+
+    private final LongObjectMap<NodeRecordBean> nodesByPortGuid;
+
+    // counters indexed by NodeType ordinal
+    private final int[] typeCount = new int[TYPES.length];
+
+    private final int[] activeTypeCount = new int[TYPES.length];
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public NodeIndex(Collection<NodeRecordBean> nodes) {
+        nodesByLid = new LongObjectMap<NodeRecordBean>(nodes.size());
+        nodesByPortGuid = new LongObjectMap<NodeRecordBean>(nodes.size());
+        for (NodeRecordBean node : nodes) {
+            addNode(node);
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodesByLid.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public NodeRecordBean getNode(int lid) {
+        lock.readLock().lock();
+        try {
+            return nodesByLid.get(lid);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public NodeRecordBean getNodeByPortGuid(long portGuid) {
+        lock.readLock().lock();
+        try {
+            return nodesByPortGuid.get(portGuid);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<NodeRecordBean> getNodes(boolean includeInactive) {
+        lock.readLock().lock();
+        try {
+            List<NodeRecordBean> nodes = nodesByLid.values();
+            if (includeInactive) {
+                return nodes;
+            }
+            List<NodeRecordBean> res = new ArrayList<NodeRecordBean>();
+            for (NodeRecordBean node : nodes) {
+                if (node.isActive()) {
+                    res.add(node);
+                }
+            }
+            return res;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 
+     * <i>Description:</i> adds a node, replacing the node with the same LID if
+     * there is one
+     * 
+     * @param node
+     *            the node to add
+     */
+    public void putNode(NodeRecordBean node) {
+        lock.writeLock().lock();
+        try {
+            addNode(node);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 
+     * <i>Description:</i> changes the active state of an indexed node. Node
+     * state should be changed through this method so the active node type
+     * distribution stays consistent.
+     * 
+     * @param node
+     *            the node
+     * @param active
+     *            the new state
+     */
+    public void setActive(NodeRecordBean node, boolean active) {
+        lock.writeLock().lock();
+        try {
+            if (node.isActive() != active) {
+                if (nodesByLid.get(node.getLid()) == node) {
+                    count(node, active ? 1 : -1, false);
+                }
+            }
+            node.setActive(active);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 
+     * <i>Description:</i> returns the number of nodes of each type. Node types
+     * without nodes are not in the returned map.
+     * 
+     * @param includeInactive
+     *            whether to count inactive nodes
+     * @return the node type distribution
+     */
+    public EnumMap<NodeType, Integer> getTypeDist(boolean includeInactive) {
+        EnumMap<NodeType, Integer> res =
+                new EnumMap<NodeType, Integer>(NodeType.class);
+        int[] counts = includeInactive ? typeCount : activeTypeCount;
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < TYPES.length; i++) {
+                if (counts[i] > 0) {
+                    res.put(TYPES[i], counts[i]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return res;
+    }
+
+    private void addNode(NodeRecordBean node) {
+        NodeRecordBean old = nodesByLid.put(node.getLid(), node);
+        if (old != null) {
+            long oldGuid = old.getNodeInfo().getPortGUID();
+            if (nodesByPortGuid.get(oldGuid) == old) {
+                nodesByPortGuid.remove(oldGuid);
+            }
+            count(old, -1, true);
+        }
+        nodesByPortGuid.put(node.getNodeInfo().getPortGUID(), node);
+        count(node, 1, true);
+    }
+
+    private void count(NodeRecordBean node, int delta, boolean all) {
+        NodeType type = node.getNodeType();
+        if (type == null) {
+            return;
+        }
+        int ordinal = type.ordinal();
+        if (all) {
+            typeCount[ordinal] += delta;
+            if (node.isActive()) {
+                activeTypeCount[ordinal] += delta;
+            }
+        } else {
+            activeTypeCount[ordinal] += delta;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NodeIndex [nodesByLid=" + nodesByLid + ", nodesByPortGuid="
+                + nodesByPortGuid + "]";
+    }
+}
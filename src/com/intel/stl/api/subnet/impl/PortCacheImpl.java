@@ -27,10 +27,22 @@
 
 package com.intel.stl.api.subnet.impl;
 
+import static com.intel.stl.configuration.AppSettings.CACHE_PORT_CHECKINTERVAL;
+
+import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.intel.stl.api.NodeState;
@@ -45,9 +57,14 @@ import com.intel.stl.common.STLMessages;
 import com.intel.stl.common.SimpleCache;
 import com.intel.stl.configuration.CacheManager;
 import com.intel.stl.configuration.MemoryCache;
+import com.intel.stl.configuration.ResultHandler;
 
 public class PortCacheImpl extends MemoryCache<SimpleCache<Integer, PortArray>>
         implements PortCache {
+    private static final long MILLISECONDS_PER_MINUTE = 60 * 1000;
+
+    private static final int DEFAULT_CHECK_INTERVAL = 10; // minutes
+
     private final SimpleCache<Integer, NodeState> portsStates;
 
     private final SimpleCache<Integer, PortArray> portsCache;
@@ -59,11 +76,33 @@ public class PortCacheImpl extends MemoryCache<SimpleCache<Integer, PortArray>>
 
     private final SAHelper helper;
 
+    /**
+     * All ports in the fabric grouped by LID. It is loaded with one full query
+     * the first time it is needed and then kept current with the ports carried
+     * by notices; null until loaded.
+     */
+    private volatile ConcurrentSkipListMap<Integer, List<PortRecordBean>> portTable;
+
+    private final Object tableLock = new Object();
+
+    // LIDs updated by notices while a consistency check is querying the FM,
+    // guarded by tableLock
+    private Set<Integer> changedLids;
+
+    private final long checkInterval;
+
+    private final AtomicLong nextCheck = new AtomicLong(0);
+
+    // whether the port table was restored from a snapshot and has not been
+    // resynced with the FM yet
+    private volatile boolean portsStale;
+
     public PortCacheImpl(CacheManager cacheMgr) {
         super(cacheMgr);
         this.portsTypeDist = new AtomicReference<EnumMap<NodeType, Long>>(null);
         this.subnetPrefix = new AtomicReference<Long>(null);
         this.helper = cacheMgr.getSAHelper();
+        this.checkInterval = getCheckInterval(cacheMgr);
 
         portsCache = createPortsCache();
         portsStates = createPortsStatesCache();
@@ -80,10 +119,13 @@ public class PortCacheImpl extends MemoryCache<SimpleCache<Integer, PortArray>>
     @Override
     public List<PortRecordBean> getPorts() throws SubnetDataNotFoundException {
         try {
-            List<PortRecordBean> ports = helper.getPorts();
-            refresh(ports);
-            if (ports != null) {
-                return ports;
+            Map<Integer, List<PortRecordBean>> table = getPortTable();
+            if (table != null) {
+                List<PortRecordBean> res = new ArrayList<PortRecordBean>();
+                for (List<PortRecordBean> ports : table.values()) {
+                    res.addAll(ports);
+                }
+                return res;
             }
         } catch (Exception e) {
             throw SubnetApi.getSubnetException(e);
@@ -95,34 +137,12 @@ public class PortCacheImpl extends MemoryCache<SimpleCache<Integer, PortArray>>
     @Override
     public PortRecordBean getPortByPortNum(int lid, short portNum)
             throws SubnetDataNotFoundException {
-        PortArray portArray = portsCache.get(lid);
+        PortArray portArray = getPortArray(lid);
         if (portArray != null) {
             PortRecordBean res = portArray.getPort(portNum);
             if (res != null) {
                 return res;
             }
-        } else {
-            try {
-                List<PortRecordBean> ports = helper.getPorts(lid);
-                if (ports != null && !ports.isEmpty()) {
-                    short maxPort = 0;
-                    PortRecordBean res = null;
-                    for (PortRecordBean port : ports) {
-                        if (port.getPortNum() == portNum) {
-                            res = port;
-                        }
-                        if (port.getPortNum() > maxPort) {
-                            maxPort = port.getPortNum();
-                        }
-                    }
-                    portsCache.push(lid, new PortArray(ports, maxPort));
-                    if (res != null) {
-                        return res;
-                    }
-                }
-            } catch (Exception e) {
-                throw SubnetApi.getSubnetException(e);
-            }
         }
 
         throw new SubnetDataNotFoundException(
@@ -133,39 +153,49 @@ public class PortCacheImpl extends MemoryCache<SimpleCache<Integer, PortArray>>
     @Override
     public PortRecordBean getPortByLocalPortNum(int lid, short localPortNum)
             throws SubnetDataNotFoundException {
-        PortArray portArray = portsCache.get(lid);
+        PortArray portArray = getPortArray(lid);
         if (portArray != null) {
             PortRecordBean res = portArray.getPortByLocalPortNum(localPortNum);
             if (res != null) {
                 return res;
             }
-        } else {
-            try {
-                List<PortRecordBean> ports = helper.getPorts(lid);
-                if (ports != null && !ports.isEmpty()) {
+        }
+
+        throw new SubnetDataNotFoundException(
+                STLMessages.STL30064_PORT_NOT_FOUND_CACHE_LOCAL, lid,
+                localPortNum);
+    }
+
+    /**
+     * 
+     * <i>Description:</i> get the ports of a node from cache, querying the FM
+     * on a cache miss
+     * 
+     * @param lid
+     *            the node lid
+     * @return the node's ports, or null if the FM returns no ports
+     */
+    protected PortArray getPortArray(final int lid) {
+        try {
+            return portsCache.get(lid, new Callable<PortArray>() {
+                @Override
+                public PortArray call() throws Exception {
+                    List<PortRecordBean> ports = getNodePorts(lid);
+                    if (ports == null || ports.isEmpty()) {
+                        return null;
+                    }
                     short maxPort = 0;
-                    PortRecordBean res = null;
                     for (PortRecordBean port : ports) {
-                        if (port.getPortInfo().getLocalPortNum() == localPortNum) {
-                            res = port;
-                        }
                         if (port.getPortNum() > maxPort) {
                             maxPort = port.getPortNum();
                         }
                     }
-                    portsCache.push(lid, new PortArray(ports, maxPort));
-                    if (res != null) {
-                        return res;
-                    }
+                    return new PortArray(ports, maxPort);
                 }
-            } catch (Exception e) {
-                throw SubnetApi.getSubnetException(e);
-            }
+            });
+        } catch (Exception e) {
+            throw SubnetApi.getSubnetException(e);
         }
-
-        throw new SubnetDataNotFoundException(
-                STLMessages.STL30064_PORT_NOT_FOUND_CACHE_LOCAL, lid,
-                localPortNum);
     }
 
     @Override
@@ -178,7 +208,7 @@ public class PortCacheImpl extends MemoryCache<SimpleCache<Integer, PortArray>>
             try {
                 NodeCache nodeCache = cacheMgr.acquireNodeCache();
                 NodeRecordBean node = nodeCache.getNode(lid);
-                List<PortRecordBean> ports = helper.getPorts(lid);
+                List<PortRecordBean> ports = getNodePorts(lid);
                 if (ports != null && !ports.isEmpty()) {
                     nodeState =
                             new NodeState(node.getNodeType(), node
@@ -209,7 +239,7 @@ public class PortCacheImpl extends MemoryCache<SimpleCache<Integer, PortArray>>
             try {
                 NodeCache nodeCache = cacheMgr.acquireNodeCache();
                 NodeRecordBean node = nodeCache.getNode(lid);
-                List<PortRecordBean> ports = helper.getPorts(lid);
+                List<PortRecordBean> ports = getNodePorts(lid);
                 if (ports != null && !ports.isEmpty()) {
                     nodeState =
                             new NodeState(node.getNodeType(), node
@@ -235,9 +265,23 @@ public class PortCacheImpl extends MemoryCache<SimpleCache<Integer, PortArray>>
     public EnumMap<NodeType, Long> getPortsTypeDist(
             boolean countInternalMgrPort, boolean refresh)
             throws SubnetDataNotFoundException {
-        if (refresh || portsTypeDist.get() == null) {
-            List<PortRecordBean> ports = getPorts();
-            refresh(ports);
+        try {
+            if (refresh && portTable != null) {
+                // explicit refresh, resync the port table with the FM
+                resync(helper.getPorts(), false);
+            }
+            if (portsTypeDist.get() == null) {
+                Map<Integer, List<PortRecordBean>> table = getPortTable();
+                if (table == null) {
+                    refresh((List<PortRecordBean>) null);
+                } else {
+                    refresh(new PortTableIterator(table));
+                }
+            }
+        } catch (SubnetDataNotFoundException e) {
+            throw e;
+        } catch (Exception e) {
+            throw SubnetApi.getSubnetException(e);
         }
         return portsTypeDist.get();
     }
@@ -251,7 +295,20 @@ public class PortCacheImpl extends MemoryCache<SimpleCache<Integer, PortArray>>
      * @return
      * @throws SubnetDataNotFoundException
      */
-    protected synchronized void refresh(List<PortRecordBean> ports)
+    protected void refresh(List<PortRecordBean> ports)
+            throws SubnetDataNotFoundException {
+        refresh(ports == null ? null : ports.iterator());
+    }
+
+    /**
+     * 
+     * <i>Description:</i> same as {@link #refresh(List)} but consumes the
+     * ports one at a time, so they can be streamed from the FE
+     * 
+     * @param ports
+     * @throws SubnetDataNotFoundException
+     */
+    protected synchronized void refresh(Iterator<PortRecordBean> ports)
             throws SubnetDataNotFoundException {
         if (ports == null) {
             portsStates.clear();
@@ -265,7 +322,11 @@ public class PortCacheImpl extends MemoryCache<SimpleCache<Integer, PortArray>>
         Map<Integer, NodeState> processed = new HashMap<Integer, NodeState>();
         long desiredTotalPorts = 0;
         long realTotalPorts = 0;
-        for (PortRecordBean port : ports) {
+        while (ports.hasNext()) {
+            PortRecordBean port = ports.next();
+            if (subnetPrefix.get() == null) {
+                subnetPrefix.set(port.getPortInfo().getSubnetPrefix());
+            }
             int lid = port.getEndPortLID();
             NodeState state = processed.get(lid);
             if (state == null) {
@@ -304,22 +365,281 @@ public class PortCacheImpl extends MemoryCache<SimpleCache<Integer, PortArray>>
     @Override
     public long getSubnetPrefix() {
         if (subnetPrefix.get() == null) {
-            List<PortRecordBean> ports;
             try {
-                ports = getPorts();
-                if (!ports.isEmpty()) {
-                    long prefix = ports.get(0).getPortInfo().getSubnetPrefix();
-                    subnetPrefix.set(new Long(prefix));
-                } else {
-                    return 0;
-                }
+                // refresh picks up the prefix from the first port
+                getPortsTypeDist(false, true);
             } catch (SubnetDataNotFoundException e) {
                 return 0;
             }
+            if (subnetPrefix.get() == null) {
+                return 0;
+            }
         }
         return subnetPrefix.get();
     }
 
+    /**
+     * 
+     * <i>Description:</i> returns the port table, loading it from the FM the
+     * first time. Once loaded, a consistency check is started in the
+     * background whenever the check interval has elapsed.
+     * 
+     * @return the port table, or null if the FM returns no ports
+     * @throws Exception
+     */
+    protected Map<Integer, List<PortRecordBean>> getPortTable()
+            throws Exception {
+        Map<Integer, List<PortRecordBean>> table = portTable;
+        if (table != null) {
+            checkConsistency();
+            return table;
+        }
+
+        synchronized (tableLock) {
+            if (portTable == null) {
+                // stream the ports so the full list is never held in memory
+                // next to the table
+                Iterator<PortRecordBean> ports = helper.iteratePorts();
+                if (ports != null) {
+                    portTable = createPortTable(ports);
+                    portsTypeDist.set(null);
+                    nextCheck.set(System.currentTimeMillis() + checkInterval);
+                }
+            }
+            return portTable;
+        }
+    }
+
+    /**
+     * 
+     * <i>Description:</i> sets a port table restored from a snapshot of the
+     * last known ports and immediately starts a consistency check, which
+     * replaces the restored ports with the ports from the FM. Nothing is
+     * restored if consistency checks are disabled, since the table would never
+     * be resynced.
+     * 
+     * @param ports
+     *            the restored ports
+     */
+    public void restorePorts(List<PortRecordBean> ports) {
+        if (ports == null || checkInterval <= 0) {
+            return;
+        }
+        synchronized (tableLock) {
+            if (portTable != null) {
+                return;
+            }
+            portTable = createPortTable(ports.iterator());
+            portsTypeDist.set(null);
+            portsStale = true;
+        }
+        nextCheck.set(0);
+        checkConsistency();
+    }
+
+    /**
+     * 
+     * <i>Description:</i> the ports in the port table, without querying the FM
+     * 
+     * @return the ports, or null if the port table is not loaded
+     */
+    public List<PortRecordBean> getLoadedPorts() {
+        Map<Integer, List<PortRecordBean>> table = portTable;
+        if (table == null) {
+            return null;
+        }
+        List<PortRecordBean> res = new ArrayList<PortRecordBean>();
+        Iterator<PortRecordBean> it = new PortTableIterator(table);
+        while (it.hasNext()) {
+            res.add(it.next());
+        }
+        return res;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.intel.stl.configuration.MemoryCache#isStale()
+     */
+    @Override
+    public boolean isStale() {
+        return portsStale && portTable != null;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> the ports of a node, from the port table when it is
+     * loaded; the FM is queried if the table is not loaded or doesn't have the
+     * node
+     * 
+     * @param lid
+     * @return the node's ports
+     * @throws Exception
+     */
+    protected List<PortRecordBean> getNodePorts(int lid) throws Exception {
+        Map<Integer, List<PortRecordBean>> table = portTable;
+        List<PortRecordBean> ports = table == null ? null : table.get(lid);
+        if (ports == null) {
+            ports = helper.getPorts(lid);
+        }
+        return ports;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> starts a background query of all ports to verify the
+     * port table, if the check interval has elapsed and no other check is
+     * running
+     * 
+     */
+    protected void checkConsistency() {
+        if (checkInterval <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long checkTime = nextCheck.get();
+        if (now < checkTime
+                || !nextCheck.compareAndSet(checkTime, Long.MAX_VALUE)) {
+            return;
+        }
+
+        synchronized (tableLock) {
+            changedLids = new HashSet<Integer>();
+        }
+        log.info("Starting port cache consistency check");
+        try {
+            submitConsistencyCheck();
+        } catch (RuntimeException e) {
+            // the check never started; let the next one run on schedule
+            log.warn("Couldn't start port cache consistency check", e);
+            synchronized (tableLock) {
+                changedLids = null;
+            }
+            nextCheck.set(System.currentTimeMillis() + checkInterval);
+        }
+    }
+
+    private void submitConsistencyCheck() {
+        cacheMgr.getProcessingService().submit(new PortQueryTask(helper),
+                new ResultHandler<List<PortRecordBean>>() {
+
+                    @Override
+                    public void onTaskCompleted(
+                            Future<List<PortRecordBean>> result) {
+                        try {
+                            resync(result.get(), true);
+                        } catch (InterruptedException e) {
+                            log.error("Port cache consistency check was "
+                                    + "interrupted", e);
+                        } catch (ExecutionException e) {
+                            log.error("Port cache consistency check failed",
+                                    e.getCause());
+                        } finally {
+                            synchronized (tableLock) {
+                                changedLids = null;
+                            }
+                            nextCheck.set(System.currentTimeMillis()
+                                    + checkInterval);
+                        }
+                    }
+
+                });
+    }
+
+    /**
+     * 
+     * <i>Description:</i> replaces the port table with ports just queried
+     * from the FM
+     * 
+     * @param ports
+     *            all ports in the fabric
+     * @param keepChanged
+     *            whether to keep the ports of LIDs updated by notices since
+     *            the consistency check started; these are newer than the
+     *            queried ports
+     */
+    protected void resync(List<PortRecordBean> ports, boolean keepChanged) {
+        synchronized (tableLock) {
+            ConcurrentSkipListMap<Integer, List<PortRecordBean>> oldTable =
+                    portTable;
+            ConcurrentSkipListMap<Integer, List<PortRecordBean>> newTable =
+                    ports == null ? null : createPortTable(ports.iterator());
+            if (oldTable != null && newTable != null) {
+                if (keepChanged && changedLids != null) {
+                    for (Integer lid : changedLids) {
+                        List<PortRecordBean> current = oldTable.get(lid);
+                        if (current == null) {
+                            newTable.remove(lid);
+                        } else {
+                            newTable.put(lid, current);
+                        }
+                    }
+                }
+                int diffs = countDifferences(oldTable, newTable);
+                if (diffs > 0) {
+                    log.warn("Port cache was inconsistent with FM on " + diffs
+                            + " node(s)");
+                }
+            }
+            portTable = newTable;
+            portsStale = false;
+            portsCache.clear();
+            portsTypeDist.set(null);
+        }
+    }
+
+    private int countDifferences(Map<Integer, List<PortRecordBean>> oldTable,
+            Map<Integer, List<PortRecordBean>> newTable) {
+        int res = 0;
+        for (Map.Entry<Integer, List<PortRecordBean>> entry : newTable
+                .entrySet()) {
+            List<PortRecordBean> oldPorts = oldTable.get(entry.getKey());
+            if (oldPorts == null
+                    || !new HashSet<PortRecordBean>(oldPorts)
+                            .equals(new HashSet<PortRecordBean>(entry
+                                    .getValue()))) {
+                res += 1;
+            }
+        }
+        for (Integer lid : oldTable.keySet()) {
+            if (!newTable.containsKey(lid)) {
+                res += 1;
+            }
+        }
+        return res;
+    }
+
+    private ConcurrentSkipListMap<Integer, List<PortRecordBean>> createPortTable(
+            Iterator<PortRecordBean> ports) {
+        ConcurrentSkipListMap<Integer, List<PortRecordBean>> table =
+                new ConcurrentSkipListMap<Integer, List<PortRecordBean>>();
+        while (ports.hasNext()) {
+            PortRecordBean port = ports.next();
+            int lid = port.getEndPortLID();
+            List<PortRecordBean> nodePorts = table.get(lid);
+            if (nodePorts == null) {
+                nodePorts = new ArrayList<PortRecordBean>();
+                table.put(lid, nodePorts);
+            }
+            nodePorts.add(port);
+        }
+        return table;
+    }
+
+    private long getCheckInterval(CacheManager cacheMgr) {
+        String value =
+                cacheMgr.getAppSetting(CACHE_PORT_CHECKINTERVAL,
+                        Integer.toString(DEFAULT_CHECK_INTERVAL));
+        try {
+            return Long.parseLong(value) * MILLISECONDS_PER_MINUTE;
+        } catch (NumberFormatException e) {
+            log.warn(
+                    "Invalid value for setting '{}'; using default value of {}",
+                    CACHE_PORT_CHECKINTERVAL, DEFAULT_CHECK_INTERVAL, e);
+            return DEFAULT_CHECK_INTERVAL * MILLISECONDS_PER_MINUTE;
+        }
+    }
+
     @Override
     protected SimpleCache<Integer, PortArray> retrieveObjectForCache()
             throws Exception {
@@ -339,17 +659,50 @@ public class PortCacheImpl extends MemoryCache<SimpleCache<Integer, PortArray>>
         portsCache.clear();
         portsTypeDist.set(null);
         subnetPrefix.set(null); // should be unnecessary
+        synchronized (tableLock) {
+            portTable = null;
+            portsStale = false;
+        }
     }
 
     /**
      * Since PortCache is a memory only cache, just update the cache with
      * whatever the FM has. NoticeProcess should have the current Port
-     * information.
+     * information, so only the ports of the notice's node are replaced in the
+     * port table.
      */
     @Override
     public boolean refreshCache(NoticeProcess notice) throws Exception {
-        portsStates.remove(notice.getLid());
-        portsCache.remove(notice.getLid());
+        int lid = notice.getLid();
+        portsStates.remove(lid);
+        portsCache.remove(lid);
+        boolean loaded;
+        synchronized (tableLock) {
+            loaded = portTable != null;
+        }
+        List<PortRecordBean> ports = null;
+        if (loaded) {
+            ports = notice.getPorts();
+            if (ports == null) {
+                // query the FM without holding the lock
+                ports = helper.getPorts(lid);
+            }
+        }
+        synchronized (tableLock) {
+            // a table loaded in the meantime is already up to date
+            if (loaded && portTable != null) {
+                if (ports == null || ports.isEmpty()) {
+                    portTable.remove(lid);
+                } else {
+                    portTable.put(lid,
+                            new ArrayList<PortRecordBean>(ports));
+                }
+                if (changedLids != null) {
+                    changedLids.add(lid);
+                }
+            }
+        }
+        // recalculated from the port table when needed
         portsTypeDist.set(null);
         return true;
     }
@@ -393,4 +746,38 @@ public class PortCacheImpl extends MemoryCache<SimpleCache<Integer, PortArray>>
 
     }
 
+    /**
+     * Iterates the ports in a port table in LID order
+     */
+    private static class PortTableIterator implements Iterator<PortRecordBean> {
+        private final Iterator<List<PortRecordBean>> nodeIt;
+
+        private Iterator<PortRecordBean> portIt;
+
+        public PortTableIterator(Map<Integer, List<PortRecordBean>> table) {
+            nodeIt = table.values().iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while ((portIt == null || !portIt.hasNext()) && nodeIt.hasNext()) {
+                portIt = nodeIt.next().iterator();
+            }
+            return portIt != null && portIt.hasNext();
+        }
+
+        @Override
+        public PortRecordBean next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return portIt.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
 }
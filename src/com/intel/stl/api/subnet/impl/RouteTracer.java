@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.api.subnet.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.intel.stl.api.subnet.LFTRecordBean;
+import com.intel.stl.api.subnet.LinkRecordBean;
+import com.intel.stl.api.subnet.NodeRecordBean;
+import com.intel.stl.api.subnet.NodeType;
+import com.intel.stl.api.subnet.PortRecordBean;
+import com.intel.stl.api.subnet.SAConstants;
+import com.intel.stl.api.subnet.SubnetDataNotFoundException;
+import com.intel.stl.api.subnet.TraceRecordBean;
+import com.intel.stl.common.LongObjectMap;
+import com.intel.stl.configuration.CacheManager;
+
+/**
+ * Computes routes locally from cached data. Starting at the source node, the
+ * egress port of each switch is looked up in its linear forwarding table and
+ * the link on that port gives the next hop, until the target is reached. The
+ * result has the same shape as the SA TraceRecord response, so callers can
+ * use either one.
+ * 
+ * An instance takes a snapshot of the active links when it is created; it is
+ * meant to be used for one batch of traces and may be used by several threads
+ * at the same time.
+ */
+public class RouteTracer {
+    private static final int MAX_HOPS = 64;
+
+    private static final int NO_ROUTE = 0xff;
+
+    // a port with the max LMC of 7 covers 128 LIDs
+    private static final int MAX_LID_RANGE = 1 << 7;
+
+    private static final byte[][] NO_TABLE = new byte[0][];
+
+    private final NodeCache nodeCache;
+
+    private final LFTCache lftCache;
+
+    private final PortCache portCache;
+
+    // active links indexed by source LID and port
+    private final LongObjectMap<LinkRecordBean> linksBySource;
+
+    // forwarding table blocks indexed by switch LID and block number
+    private final ConcurrentHashMap<Integer, byte[][]> tables =
+            new ConcurrentHashMap<Integer, byte[][]>();
+
+    public RouteTracer(CacheManager cacheMgr)
+            throws SubnetDataNotFoundException {
+        nodeCache = cacheMgr.acquireNodeCache();
+        lftCache = cacheMgr.acquireLFTCache();
+        portCache = cacheMgr.acquirePortCache();
+        List<LinkRecordBean> links =
+                cacheMgr.acquireLinkCache().getLinks(false);
+        linksBySource = new LongObjectMap<LinkRecordBean>(links.size());
+        for (LinkRecordBean link : links) {
+            linksBySource.put(getLinkKey(link.getFromLID(),
+                    link.getFromPortIndex()), link);
+        }
+    }
+
+    /**
+     * 
+     * <i>Description:</i> computes the route between two nodes
+     * 
+     * @param sourceLid
+     * @param targetLid
+     * @return the trace records of the nodes on the route, or null if the
+     *         route cannot be computed locally because forwarding table or
+     *         link information is missing or inconsistent
+     * @throws SubnetDataNotFoundException
+     *             if a node on the route is unknown
+     */
+    public List<TraceRecordBean> getTrace(int sourceLid, int targetLid)
+            throws SubnetDataNotFoundException {
+        List<TraceRecordBean> res = new ArrayList<TraceRecordBean>();
+        Set<Integer> visited = new HashSet<Integer>();
+        NodeRecordBean node = nodeCache.getNode(sourceLid);
+        short entryPort = 0;
+        for (int hop = 0; hop < MAX_HOPS; hop++) {
+            int lid = node.getLid();
+            if (isNodeLid(node, targetLid)) {
+                res.add(createRecord(node, entryPort, (short) 0));
+                return res;
+            }
+            if (!visited.add(lid)) {
+                // forwarding loop, tables are probably being updated
+                return null;
+            }
+
+            LinkRecordBean link = null;
+            if (node.getNodeType() == NodeType.SWITCH) {
+                int exitPort = getExitPort(lid, targetLid);
+                if (exitPort < 0 || exitPort == NO_ROUTE) {
+                    return null;
+                }
+                link = linksBySource.get(getLinkKey(lid, exitPort));
+            } else if (hop == 0) {
+                link = getNodeLink(node);
+            }
+            if (link == null) {
+                return null;
+            }
+
+            res.add(createRecord(node, entryPort, link.getFromPortIndex()));
+            entryPort = link.getToPortIndex();
+            node = nodeCache.getNode(link.getToLID());
+        }
+        return null;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> compares two traces on the nodes they go through and
+     * the ports used between them
+     * 
+     * @return true if both traces describe the same route
+     */
+    public static boolean isSameRoute(List<TraceRecordBean> trace1,
+            List<TraceRecordBean> trace2) {
+        if (trace1 == null || trace2 == null) {
+            return trace1 == trace2;
+        }
+        if (trace1.size() != trace2.size()) {
+            return false;
+        }
+        for (int i = 0; i < trace1.size(); i++) {
+            TraceRecordBean r1 = trace1.get(i);
+            TraceRecordBean r2 = trace2.get(i);
+            if (r1.getNodeId() != r2.getNodeId()) {
+                return false;
+            }
+            if (i > 0 && r1.getEntryPort() != r2.getEntryPort()) {
+                return false;
+            }
+            if (i < trace1.size() - 1 && r1.getExitPort() != r2.getExitPort()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> checks whether a LID addresses a node. A port with
+     * a LMC greater than 0 owns the LIDs from its base LID to base LID +
+     * 2^LMC - 1.
+     * 
+     * @param node
+     *            the node
+     * @param lid
+     *            the LID to check
+     * @return true if the LID is one of the node's LIDs
+     */
+    private boolean isNodeLid(NodeRecordBean node, int lid) {
+        int offset = lid - node.getLid();
+        if (offset == 0) {
+            return true;
+        }
+        if (offset < 0 || offset >= MAX_LID_RANGE) {
+            return false;
+        }
+
+        PortRecordBean port = null;
+        try {
+            if (node.getNodeType() == NodeType.SWITCH) {
+                // switch LIDs are assigned to the management port 0
+                port = portCache.getPortByPortNum(node.getLid(), (short) 0);
+            } else {
+                port = portCache.getPortByLocalPortNum(node.getLid(),
+                        node.getNodeInfo().getLocalPortNum());
+            }
+        } catch (SubnetDataNotFoundException e) {
+            return false;
+        }
+        int lmc = port.getPortInfo().getLmc() & 0x07;
+        return offset < (1 << lmc);
+    }
+
+    /**
+     * 
+     * @return the egress port, or -1 if the switch's forwarding table doesn't
+     *         cover the destination
+     */
+    private int getExitPort(int switchLid, int destLid) {
+        byte[][] table = tables.get(switchLid);
+        if (table == null) {
+            table = createTable(lftCache.getLFT(switchLid));
+            tables.put(switchLid, table);
+        }
+        int block = destLid / SAConstants.FDB_DATA_LENGTH;
+        if (block >= table.length || table[block] == null) {
+            return -1;
+        }
+        byte[] data = table[block];
+        int index = destLid % SAConstants.FDB_DATA_LENGTH;
+        return index < data.length ? data[index] & 0xff : -1;
+    }
+
+    private byte[][] createTable(List<LFTRecordBean> lfts) {
+        if (lfts == null || lfts.isEmpty()) {
+            return NO_TABLE;
+        }
+        int maxBlock = -1;
+        for (LFTRecordBean lft : lfts) {
+            maxBlock = Math.max(maxBlock, lft.getBlockNum());
+        }
+        byte[][] res = new byte[maxBlock + 1][];
+        for (LFTRecordBean lft : lfts) {
+            res[lft.getBlockNum()] = lft.getLinearFdbData();
+        }
+        return res;
+    }
+
+    /**
+     * 
+     * @return the link of a node with a single port, such as an HFI port
+     */
+    private LinkRecordBean getNodeLink(NodeRecordBean node) {
+        int numPorts = node.getNodeInfo().getNumPorts();
+        for (int port = 1; port <= numPorts; port++) {
+            LinkRecordBean link =
+                    linksBySource.get(getLinkKey(node.getLid(), port));
+            if (link != null) {
+                return link;
+            }
+        }
+        return null;
+    }
+
+    private TraceRecordBean createRecord(NodeRecordBean node, short entryPort,
+            short exitPort) {
+        TraceRecordBean res = new TraceRecordBean();
+        res.setNodeType(node.getNodeType().getId());
+        res.setNodeId(node.getNodeInfo().getPortGUID());
+        res.setEntryPort(entryPort);
+        res.setExitPort(exitPort);
+        return res;
+    }
+
+    private static long getLinkKey(int lid, int port) {
+        return ((long) lid << 8) | (port & 0xff);
+    }
+}
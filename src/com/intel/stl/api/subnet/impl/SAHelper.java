@@ -27,6 +27,7 @@
 
 package com.intel.stl.api.subnet.impl;
 
+import java.util.Iterator;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -97,6 +98,19 @@ public class SAHelper extends FEHelper {
         return res;
     }
 
+    /**
+     * 
+     * <i>Description:</i> streaming version of {@link #getNodes()}; nodes are
+     * decoded one at a time as the iterator is consumed
+     * 
+     * @return an iterator over all nodes
+     * @throws Exception
+     */
+    public Iterator<NodeRecordBean> iterateNodes() throws Exception {
+        FVCmdGetNodes cmd = new FVCmdGetNodes();
+        return statement.stream(cmd);
+    }
+
     public NodeRecordBean getNode(int lid) throws Exception {
         FVCmdGetNode cmd = new FVCmdGetNode(new InputLid(lid));
         return statement.execute(cmd);
@@ -114,6 +128,18 @@ public class SAHelper extends FEHelper {
         return res;
     }
 
+    /**
+     * 
+     * <i>Description:</i> streaming version of {@link #getLinks()}
+     * 
+     * @return an iterator over all links
+     * @throws Exception
+     */
+    public Iterator<LinkRecordBean> iterateLinks() throws Exception {
+        FVCmdGetLink cmd = new FVCmdGetLink();
+        return statement.stream(cmd);
+    }
+
     public List<LinkRecordBean> getLinks(int lid) throws Exception {
         FVCmdGetLink cmd = new FVCmdGetLink(new InputLid(lid));
         return statement.execute(cmd);
@@ -126,6 +152,18 @@ public class SAHelper extends FEHelper {
         return res;
     }
 
+    /**
+     * 
+     * <i>Description:</i> streaming version of {@link #getPorts()}
+     * 
+     * @return an iterator over all active ports
+     * @throws Exception
+     */
+    public Iterator<PortRecordBean> iteratePorts() throws Exception {
+        FVCmdGetPortInfo cmd = new FVCmdGetPortInfo();
+        return statement.stream(cmd);
+    }
+
     public List<PortRecordBean> getPorts(int lid) throws Exception {
         FVCmdGetPortInfo cmd = new FVCmdGetPortInfo(new InputLid(lid));
         return statement.execute(cmd);
@@ -146,6 +184,18 @@ public class SAHelper extends FEHelper {
         return statement.execute(cmd);
     }
 
+    /**
+     * 
+     * <i>Description:</i> streaming version of {@link #getLFTs()}
+     * 
+     * @return an iterator over all LFT blocks
+     * @throws Exception
+     */
+    public Iterator<LFTRecordBean> iterateLFTs() throws Exception {
+        FVCmdGetLFT cmd = new FVCmdGetLFT();
+        return statement.stream(cmd);
+    }
+
     public List<LFTRecordBean> getLFTs(int lid) throws Exception {
         FVCmdGetLFT cmd = new FVCmdGetLFT(new InputLid(lid));
         return statement.execute(cmd);
@@ -166,6 +216,18 @@ public class SAHelper extends FEHelper {
         return statement.execute(cmd);
     }
 
+    /**
+     * 
+     * <i>Description:</i> streaming version of {@link #getCables()}
+     * 
+     * @return an iterator over all cable records
+     * @throws Exception
+     */
+    public Iterator<CableRecordBean> iterateCables() throws Exception {
+        FVCmdGetCable cmd = new FVCmdGetCable();
+        return statement.stream(cmd);
+    }
+
     public List<CableRecordBean> getCables(int lid) throws Exception {
         FVCmdGetCable cmd = new FVCmdGetCable(new InputLid(lid));
         return statement.execute(cmd);
@@ -27,15 +27,28 @@
 
 package com.intel.stl.api.subnet.impl;
 
+import static com.intel.stl.configuration.AppSettings.SUBNET_ROUTE_CHECK;
+
 import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.intel.stl.api.ICancelChecker;
 import com.intel.stl.api.StringUtils;
 import com.intel.stl.api.configuration.impl.SubnetContextImpl;
 import com.intel.stl.api.subnet.CableRecordBean;
+import com.intel.stl.api.subnet.DispatcherStatisticsBean;
 import com.intel.stl.api.subnet.FabricInfoBean;
 import com.intel.stl.api.subnet.ISubnetApi;
 import com.intel.stl.api.subnet.LFTRecordBean;
@@ -65,13 +78,34 @@ import com.intel.stl.fecdriver.messages.adapter.sa.TraceRecord;
 public class SubnetApi implements ISubnetApi {
     private static Logger log = LoggerFactory.getLogger(SubnetApi.class);
 
+    private static final String THREAD_PREFIX = "tracethread-";
+
+    // route traces of all subnets are computed in parallel on one shared pool
+    private static final ExecutorService traceService =
+            Executors.newFixedThreadPool(Runtime.getRuntime()
+                    .availableProcessors(), new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r,
+                            THREAD_PREFIX + threadCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     private final SubnetContextImpl subnetContext;
 
     private final CacheManager cacheMgr;
 
+    private final boolean checkRoutes;
+
     public SubnetApi(SubnetContextImpl subnetContext) {
         this.subnetContext = subnetContext;
         this.cacheMgr = this.subnetContext.getCacheManager();
+        this.checkRoutes = Boolean.parseBoolean(
+                subnetContext.getAppSetting(SUBNET_ROUTE_CHECK, "false"));
     }
 
     /*
@@ -537,6 +571,112 @@ public class SubnetApi implements ISubnetApi {
         return res;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.intel.stl.api.subnet.ISubnetApi#getTraces(java.util.List,
+     * com.intel.stl.api.ICancelChecker)
+     */
+    @Override
+    public Map<Integer, Map<Integer, List<TraceRecordBean>>> getTraces(
+            List<Integer> lids, final ICancelChecker cancelChecker) {
+        RouteTracer tracer = null;
+        try {
+            tracer = new RouteTracer(cacheMgr);
+        } catch (Exception e) {
+            log.warn("Couldn't trace routes locally, using SA: "
+                    + StringUtils.getErrorMessage(e));
+        }
+
+        Map<Integer, Map<Integer, List<TraceRecordBean>>> res =
+                new LinkedHashMap<Integer, Map<Integer, List<TraceRecordBean>>>();
+        if (lids.size() < 2) {
+            return res;
+        }
+        Map<Integer, Future<Map<Integer, List<TraceRecordBean>>>> futures =
+                new LinkedHashMap<Integer, Future<Map<Integer, List<TraceRecordBean>>>>();
+        try {
+            for (int i = 0; i < lids.size() - 1; i++) {
+                final RouteTracer routeTracer = tracer;
+                final int source = lids.get(i);
+                final List<Integer> targets = lids.subList(i + 1, lids.size());
+                futures.put(source, traceService.submit(
+                        new Callable<Map<Integer, List<TraceRecordBean>>>() {
+                            @Override
+                            public Map<Integer, List<TraceRecordBean>> call()
+                                    throws Exception {
+                                return getTraces(routeTracer, source, targets,
+                                        cancelChecker);
+                            }
+                        }));
+            }
+            for (Map.Entry<Integer, Future<Map<Integer, List<TraceRecordBean>>>> entry : futures
+                    .entrySet()) {
+                if (isCancelled(cancelChecker)) {
+                    break;
+                }
+                res.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw getSubnetException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw getSubnetException(e);
+        } finally {
+            // stop the remaining traces if one failed or the request was
+            // cancelled
+            for (Future<?> future : futures.values()) {
+                future.cancel(true);
+            }
+        }
+        return res;
+    }
+
+    protected Map<Integer, List<TraceRecordBean>> getTraces(RouteTracer tracer,
+            int sourceLid, List<Integer> targetLids,
+            ICancelChecker cancelChecker) {
+        Map<Integer, List<TraceRecordBean>> res =
+                new LinkedHashMap<Integer, List<TraceRecordBean>>();
+        for (int targetLid : targetLids) {
+            if (isCancelled(cancelChecker)) {
+                break;
+            }
+            List<TraceRecordBean> trace = null;
+            if (tracer != null) {
+                try {
+                    trace = tracer.getTrace(sourceLid, targetLid);
+                } catch (SubnetDataNotFoundException e) {
+                    log.warn("Couldn't trace route locally: "
+                            + StringUtils.getErrorMessage(e));
+                }
+            }
+            if (trace == null) {
+                trace = getTrace(sourceLid, targetLid);
+            } else if (checkRoutes) {
+                List<TraceRecordBean> saTrace = getTrace(sourceLid, targetLid);
+                if (!RouteTracer.isSameRoute(trace, saTrace)) {
+                    log.warn("Route from Lid "
+                            + StringUtils.intHexString(sourceLid) + " to Lid "
+                            + StringUtils.intHexString(targetLid)
+                            + " differs from SA trace; using SA trace");
+                    trace = saTrace;
+                }
+            }
+            if (trace != null) {
+                res.put(targetLid, trace);
+            }
+        }
+        return res;
+    }
+
+    private boolean isCancelled(ICancelChecker cancelChecker) {
+        return cancelChecker != null && cancelChecker.isCancelled();
+    }
+
     @Override
     public FabricInfoBean getFabricInfo() {
         FabricInfoBean res = null;
@@ -549,6 +689,16 @@ public class SubnetApi implements ISubnetApi {
         return res;
     }
 
+    @Override
+    public DispatcherStatisticsBean getDispatcherStatistics() {
+        return subnetContext.getSession().getDispatcherStatistics();
+    }
+
+    @Override
+    public boolean isTopologyStale() {
+        return cacheMgr.isTopologyStale();
+    }
+
     public GID.Global getGid(int lid) throws SubnetDataNotFoundException {
         NodeRecordBean node = getNode(lid);
         return new GID.Global(getSubnetPrefix(),
@@ -0,0 +1,361 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.api.subnet.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.intel.stl.api.subnet.LinkRecordBean;
+import com.intel.stl.api.subnet.NodeInfoBean;
+import com.intel.stl.api.subnet.NodeRecordBean;
+import com.intel.stl.api.subnet.PortRecordBean;
+
+/**
+ * Compact binary snapshot of the last known topology of a subnet, used to warm
+ * start the node, link and port caches. Nodes and links are written field by
+ * field; ports, which carry the large PortInfo, are written as a compressed
+ * serialized list. The file is read into memory with a single channel read
+ * and not memory mapped, because a mapping keeps the file locked on Windows
+ * until it is garbage collected and the next save couldn't replace it.
+ * 
+ * <pre>
+ * int     magic
+ * int     version
+ * long    timestamp
+ * int     number of nodes, followed by the nodes
+ * int     number of links, followed by the links
+ * int     length of the compressed ports (0 if none), followed by the ports
+ * </pre>
+ */
+public class TopologySnapshot {
+    private static final int MAGIC = 0x464D5453; // "FMTS"
+
+    private static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final long timestamp;
+
+    private final List<NodeRecordBean> nodes;
+
+    private final List<LinkRecordBean> links;
+
+    private final List<PortRecordBean> ports;
+
+    public TopologySnapshot(long timestamp, List<NodeRecordBean> nodes,
+            List<LinkRecordBean> links, List<PortRecordBean> ports) {
+        this.timestamp = timestamp;
+        this.nodes = nodes;
+        this.links = links;
+        this.ports = ports;
+    }
+
+    /**
+     * @return the time the snapshot was taken
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public List<NodeRecordBean> getNodes() {
+        return nodes;
+    }
+
+    public List<LinkRecordBean> getLinks() {
+        return links;
+    }
+
+    /**
+     * @return the ports, or null if the ports were not loaded when the
+     *         snapshot was taken
+     */
+    public List<PortRecordBean> getPorts() {
+        return ports;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> writes the snapshot to a temporary file that then
+     * replaces the given file, so a reader never sees a partial snapshot
+     * 
+     * @param file
+     *            the snapshot file
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Couldn't create directory " + dir);
+        }
+        File tmpFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(timestamp);
+            out.writeInt(nodes.size());
+            for (NodeRecordBean node : nodes) {
+                writeNode(out, node);
+            }
+            out.writeInt(links.size());
+            for (LinkRecordBean link : links) {
+                writeLink(out, link);
+            }
+            if (ports == null || ports.isEmpty()) {
+                out.writeInt(0);
+            } else {
+                byte[] data = compress(ports);
+                out.writeInt(data.length);
+                out.write(data);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (file.exists() && !file.delete()) {
+            tmpFile.delete();
+            throw new IOException("Couldn't replace snapshot " + file);
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Couldn't rename " + tmpFile + " to "
+                    + file);
+        }
+    }
+
+    /**
+     * 
+     * <i>Description:</i> reads a snapshot
+     * 
+     * @param file
+     *            the snapshot file
+     * @return the snapshot, or null if there is no snapshot file
+     * @throws IOException
+     *             if the file can't be read or is not a valid snapshot
+     */
+    public static TopologySnapshot load(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot file " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Unexpected end of snapshot file "
+                            + file);
+                }
+            }
+            buffer.flip();
+            if (buffer.remaining() < 16 || buffer.getInt() != MAGIC) {
+                throw new IOException("Invalid snapshot file " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version "
+                        + version + " in " + file);
+            }
+            long timestamp = buffer.getLong();
+            int numNodes = buffer.getInt();
+            List<NodeRecordBean> nodes =
+                    new ArrayList<NodeRecordBean>(numNodes);
+            for (int i = 0; i < numNodes; i++) {
+                nodes.add(readNode(buffer));
+            }
+            int numLinks = buffer.getInt();
+            List<LinkRecordBean> links =
+                    new ArrayList<LinkRecordBean>(numLinks);
+            for (int i = 0; i < numLinks; i++) {
+                links.add(readLink(buffer));
+            }
+            List<PortRecordBean> ports = null;
+            int portsLength = buffer.getInt();
+            if (portsLength > 0) {
+                ByteBuffer data = buffer.slice();
+                data.limit(portsLength);
+                ports = decompress(data);
+            }
+            return new TopologySnapshot(timestamp, nodes, links, ports);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException etc. on a truncated file
+            throw new IOException("Invalid snapshot file " + file, e);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void writeNode(DataOutputStream out, NodeRecordBean node)
+            throws IOException {
+        NodeInfoBean info = node.getNodeInfo();
+        out.writeInt(node.getLid());
+        out.writeBoolean(node.isActive());
+        out.writeByte(info.getBaseVersion());
+        out.writeByte(info.getClassVersion());
+        out.writeByte(info.getNodeType());
+        out.writeShort(info.getNumPorts());
+        out.writeLong(info.getSysImageGUID());
+        out.writeLong(info.getNodeGUID());
+        out.writeLong(info.getPortGUID());
+        out.writeInt(info.getPartitionCap());
+        out.writeShort(info.getDeviceID());
+        out.writeInt(info.getRevision());
+        out.writeShort(info.getLocalPortNum());
+        out.writeInt(info.getVendorID());
+        String desc = node.getNodeDesc();
+        if (desc == null) {
+            out.writeShort(-1);
+        } else {
+            byte[] bytes = desc.getBytes(UTF8);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static NodeRecordBean readNode(ByteBuffer buffer) {
+        NodeRecordBean node = new NodeRecordBean();
+        NodeInfoBean info = new NodeInfoBean();
+        node.setLid(buffer.getInt());
+        node.setActive(buffer.get() != 0);
+        info.setBaseVersion(buffer.get());
+        info.setClassVersion(buffer.get());
+        info.setNodeType(buffer.get());
+        info.setNumPorts(buffer.getShort());
+        info.setSysImageGUID(buffer.getLong());
+        info.setNodeGUID(buffer.getLong());
+        info.setPortGUID(buffer.getLong());
+        info.setPartitionCap(buffer.getInt());
+        info.setDeviceID(buffer.getShort());
+        info.setRevision(buffer.getInt());
+        info.setLocalPortNum(buffer.getShort());
+        info.setVendorID(buffer.getInt());
+        node.setNodeInfo(info);
+        short length = buffer.getShort();
+        if (length >= 0) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            node.setNodeDesc(new String(bytes, UTF8));
+        }
+        return node;
+    }
+
+    private static void writeLink(DataOutputStream out, LinkRecordBean link)
+            throws IOException {
+        out.writeInt(link.getFromLID());
+        out.writeShort(link.getFromPortIndex());
+        out.writeInt(link.getToLID());
+        out.writeShort(link.getToPortIndex());
+        out.writeBoolean(link.isActive());
+    }
+
+    private static LinkRecordBean readLink(ByteBuffer buffer) {
+        LinkRecordBean link = new LinkRecordBean(buffer.getInt(),
+                buffer.getShort(), buffer.getInt(), buffer.getShort());
+        link.setActive(buffer.get() != 0);
+        return link;
+    }
+
+    private static byte[] compress(List<PortRecordBean> ports)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out =
+                new ObjectOutputStream(new DeflaterOutputStream(bytes));
+        try {
+            out.writeObject(new ArrayList<PortRecordBean>(ports));
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<PortRecordBean> decompress(ByteBuffer data)
+            throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new InflaterInputStream(
+                new ByteBufferInputStream(data)));
+        try {
+            return (List<PortRecordBean>) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buffer.remaining();
+        }
+    }
+}
@@ -27,6 +27,8 @@
 
 package com.intel.stl.api.subnet.impl;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -45,9 +47,45 @@ public class TopologyUpdateTask extends AsyncTask<Void> {
 
     private final SAHelper helper;
 
+    private final boolean recordTopology;
+
+    private volatile List<NodeRecordBean> nodes;
+
+    private volatile List<LinkRecordBean> links;
+
     public TopologyUpdateTask(SAHelper helper, DatabaseManager dbMgr) {
+        this(helper, dbMgr, false);
+    }
+
+    /**
+     * 
+     * @param helper
+     * @param dbMgr
+     * @param recordTopology
+     *            whether to keep the nodes and links written to the database,
+     *            so they can be saved in a topology snapshot
+     */
+    public TopologyUpdateTask(SAHelper helper, DatabaseManager dbMgr,
+            boolean recordTopology) {
         this.helper = helper;
         this.dbMgr = dbMgr;
+        this.recordTopology = recordTopology;
+    }
+
+    /**
+     * @return the nodes written to the database by the last run, or null if
+     *         the topology is not recorded or the update failed
+     */
+    public List<NodeRecordBean> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the links written to the database by the last run, or null if
+     *         the topology is not recorded or the update failed
+     */
+    public List<LinkRecordBean> getLinks() {
+        return links;
     }
 
     @Override
@@ -56,11 +94,27 @@ public class TopologyUpdateTask extends AsyncTask<Void> {
         String subnetName = subnet.getName();
         log.info("Updating topology in the background for subnet: "
                 + subnetName);
-        List<NodeRecordBean> allNodes = helper.getNodes();
-        List<LinkRecordBean> allLinks = helper.getLinks();
+        // Stream the records so they are decoded one at a time while being
+        // written to the database
+        nodes = null;
+        links = null;
+        Iterator<NodeRecordBean> allNodes = helper.iterateNodes();
+        Iterator<LinkRecordBean> allLinks = helper.iterateLinks();
         if (allNodes == null || allLinks == null) {
             log.error("Subnet manager for subnet " + subnetName
                     + " returned no nodes or no links");
+        } else if (recordTopology) {
+            RecordingIterator<NodeRecordBean> nodeIt =
+                    new RecordingIterator<NodeRecordBean>(allNodes);
+            RecordingIterator<LinkRecordBean> linkIt =
+                    new RecordingIterator<LinkRecordBean>(allLinks);
+            dbMgr.saveTopology(subnet.getName(), nodeIt, linkIt);
+            log.info("Topology has been updated");
+            // only keep a complete topology
+            if (!nodeIt.hasNext() && !linkIt.hasNext()) {
+                nodes = nodeIt.getRecords();
+                links = linkIt.getRecords();
+            }
         } else {
             dbMgr.saveTopology(subnet.getName(), allNodes, allLinks);
             log.info("Topology has been updated");
@@ -68,4 +122,39 @@ public class TopologyUpdateTask extends AsyncTask<Void> {
         return null;
     }
 
+    /**
+     * Keeps the records returned by an iterator while they are streamed to the
+     * database
+     */
+    private static class RecordingIterator<E> implements Iterator<E> {
+        private final Iterator<E> it;
+
+        private final List<E> records = new ArrayList<E>();
+
+        public RecordingIterator(Iterator<E> it) {
+            this.it = it;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return it.hasNext();
+        }
+
+        @Override
+        public E next() {
+            E res = it.next();
+            records.add(res);
+            return res;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public List<E> getRecords() {
+            return records;
+        }
+    }
+
 }
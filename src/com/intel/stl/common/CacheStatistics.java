@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Usage counters of a cache instance. Counters are updated without locking,
+ * so a snapshot taken while the cache is in use is only approximately
+ * consistent.
+ */
+public class CacheStatistics {
+
+    private final AtomicLong hits = new AtomicLong(0);
+
+    private final AtomicLong misses = new AtomicLong(0);
+
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    private final AtomicLong expirations = new AtomicLong(0);
+
+    private final AtomicLong loads = new AtomicLong(0);
+
+    private final AtomicLong loadFailures = new AtomicLong(0);
+
+    private final AtomicLong totalLoadTime = new AtomicLong(0);
+
+    protected void onHit() {
+        hits.incrementAndGet();
+    }
+
+    protected void onMiss() {
+        misses.incrementAndGet();
+    }
+
+    protected void onEviction() {
+        evictions.incrementAndGet();
+    }
+
+    protected void onExpiration() {
+        expirations.incrementAndGet();
+    }
+
+    protected void onLoad(long loadTimeNs, boolean success) {
+        loads.incrementAndGet();
+        totalLoadTime.addAndGet(loadTimeNs);
+        if (!success) {
+            loadFailures.incrementAndGet();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the fraction of lookups that found a value, between 0 and 1
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return the number of items removed to stay within capacity
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of items removed because they outlived their life
+     *         time or their value was reclaimed by the garbage collector
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    public long getLoads() {
+        return loads.get();
+    }
+
+    public long getLoadFailures() {
+        return loadFailures.get();
+    }
+
+    /**
+     * @return the average time spent by loaders on a miss, in milliseconds
+     */
+    public double getAverageLoadTime() {
+        long n = loads.get();
+        return n == 0 ? 0 : totalLoadTime.get() / 1000000.0 / n;
+    }
+
+    public void reset() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+        expirations.set(0);
+        loads.set(0);
+        loadFailures.set(0);
+        totalLoadTime.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics [hits=" + hits + ", misses=" + misses
+                + ", hitRate=" + getHitRate() + ", evictions=" + evictions
+                + ", expirations=" + expirations + ", loads=" + loads
+                + ", loadFailures=" + loadFailures + ", avgLoadTime="
+                + getAverageLoadTime() + "ms]";
+    }
+
+}
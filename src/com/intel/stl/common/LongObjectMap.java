@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An open-addressing hash map with primitive long keys. It avoids boxing the
+ * keys and allocating an entry per mapping, which matters for large lookup
+ * tables such as LID or GUID indexes. Null values are not supported. This
+ * class is not thread safe.
+ */
+public class LongObjectMap<V> {
+    private static final int DEFAULT_EXPECTED_SIZE = 16;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] keys;
+
+    // a null value marks an empty slot
+    private Object[] values;
+
+    private int mask;
+
+    private int resizeThreshold;
+
+    private int size;
+
+    public LongObjectMap() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    public LongObjectMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                    "Expected size must be positive");
+        }
+        allocate(tableSize(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = hash(key) & mask;
+        Object value;
+        while ((value = values[i]) != null) {
+            if (keys[i] == key) {
+                return (V) value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> associates a value with a key
+     * 
+     * @param key
+     *            the key
+     * @param value
+     *            the value, must not be null
+     * @return the previous value for the key, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null value is not supported");
+        }
+        int i = hash(key) & mask;
+        Object current;
+        while ((current = values[i]) != null) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return (V) current;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size += 1;
+        if (size > resizeThreshold) {
+            rehash(values.length << 1);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = hash(key) & mask;
+        Object value;
+        while ((value = values[i]) != null) {
+            if (keys[i] == key) {
+                deleteSlot(i);
+                size -= 1;
+                return (V) value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> copies the keys in no particular order
+     * 
+     * @return array of the keys
+     */
+    public long[] keys() {
+        long[] res = new long[size];
+        int j = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                res[j++] = keys[i];
+            }
+        }
+        return res;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> copies the values in no particular order
+     * 
+     * @return list of the values
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> res = new ArrayList<V>(size);
+        for (Object value : values) {
+            if (value != null) {
+                res.add((V) value);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Removes the entry in a slot and shifts back the following entries of the
+     * same probe sequence, so lookups never need tombstones.
+     */
+    private void deleteSlot(int slot) {
+        int gap = slot;
+        values[gap] = null;
+        int i = (gap + 1) & mask;
+        while (values[i] != null) {
+            int home = hash(keys[i]) & mask;
+            // the entry can fill the gap if the gap is between its home slot
+            // and where it is now
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                values[i] = null;
+                gap = i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            Object value = oldValues[i];
+            if (value != null) {
+                int j = hash(oldKeys[i]) & mask;
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = value;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        // keep the load factor at or below 0.5
+        resizeThreshold =
+                capacity == MAX_CAPACITY ? Integer.MAX_VALUE : capacity / 2;
+    }
+
+    private static int tableSize(int expectedSize) {
+        int capacity = 2;
+        while (capacity < MAX_CAPACITY && capacity / 2 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(long key) {
+        // spread sequential keys such as LIDs over the table
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "LongObjectMap [size=" + size + ", capacity=" + values.length
+                + "]";
+    }
+}
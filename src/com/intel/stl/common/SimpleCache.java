@@ -25,51 +25,109 @@
  * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+
 package com.intel.stl.common;
 
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * A simple LFU (Least-Frequently Used) based cache with life time control
+ * A LFU (Least-Frequently Used) or LRU (Least-Recently Used) based cache with
+ * life time control.
+ * 
+ * Reads do not lock: items are stored in a ConcurrentHashMap and accesses are
+ * recorded in a buffer that is replayed into the eviction order by the next
+ * writer (or by a reader once the buffer fills up, if no one else holds the
+ * eviction lock). The eviction order is kept in linked lists, so recording an
+ * access and choosing a victim are O(1) for both policies; for LFU, items are
+ * grouped by access count in a list of frequency buckets.
+ * 
+ * Items not accessed for longer than their life time are removed by a cleaner
+ * thread shared by all caches, and are never returned by {@link #get(Object)}.
  */
 public class SimpleCache<K, V> {
-    private static final String NAME = "cache_cleanup_thread-";
+    private static Logger log = LoggerFactory.getLogger(SimpleCache.class);
+
+    public enum EvictionPolicy {
+        LFU,
+        LRU
+    }
 
-    private static int THREAD_COUNT = 0;
+    private static final String NAME = "cache_cleanup_thread";
 
     private static final int DEFAULT_CAPACITY = 1000;
 
     private static final long DEFAULT_LEFTTME = 5000; // 5 sec
 
+    /**
+     * Number of buffered reads that makes a reader try to replay them
+     */
+    private static final int READ_BUFFER_THRESHOLD = 64;
+
+    private static final ScheduledExecutorService CLEANER = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     /**
      * Max number of items to cache
      */
-    private int capacity;
+    private volatile int capacity;
 
     /**
      * cached item's life time in MS
      */
     private final long lifeTimeMs;
 
+    private final EvictionPolicy policy;
+
     /**
      * core storage on items
      */
-    private final Map<K, Reference<ValueItem>> cache =
-            new HashMap<K, Reference<ValueItem>>();
+    private final ConcurrentHashMap<K, KeyItem> cache =
+            new ConcurrentHashMap<K, KeyItem>();
 
-    private final LinkedList<KeyItem> keyItems = new LinkedList<KeyItem>();
+    private final ConcurrentLinkedQueue<KeyItem> readBuffer =
+            new ConcurrentLinkedQueue<KeyItem>();
 
-    private long lastCheckTime;
+    private final AtomicInteger readBufferSize = new AtomicInteger(0);
 
-    private long checkInterval;
+    /**
+     * guards the eviction order (lruList and the frequency buckets)
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final ItemList lruList = new ItemList();
+
+    private FrequencyBucket lowestBucket;
+
+    private final long checkInterval;
 
-    private CleanupTask cleanupTask;
+    private final AtomicBoolean cleanupScheduled = new AtomicBoolean(false);
+
+    private final CacheStatistics statistics = new CacheStatistics();
 
     public SimpleCache() {
         this(DEFAULT_CAPACITY, DEFAULT_LEFTTME);
@@ -80,6 +138,10 @@ public class SimpleCache<K, V> {
     }
 
     public SimpleCache(int capacity, long lifeTimeMs) {
+        this(capacity, lifeTimeMs, EvictionPolicy.LFU);
+    }
+
+    public SimpleCache(int capacity, long lifeTimeMs, EvictionPolicy policy) {
         super();
         if (capacity < 0) {
             throw new IllegalArgumentException("Capacity must be positive");
@@ -87,36 +149,49 @@ public class SimpleCache<K, V> {
 
         this.capacity = capacity;
         this.lifeTimeMs = lifeTimeMs;
+        this.policy = policy;
         checkInterval = lifeTimeMs / 4 + 100;
-        cleanupTask = new CleanupTask();
     }
 
-    public synchronized void setCapacity(int capacity) {
+    public void setCapacity(int capacity) {
         if (capacity < 0) {
             throw new IllegalArgumentException("Capacity must be positive");
         }
 
-        this.capacity = capacity;
-        trim();
+        evictionLock.lock();
+        try {
+            this.capacity = capacity;
+            trim();
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
-    public synchronized void push(K key, V value) {
-        Reference<ValueItem> ref = cache.get(key);
-        ValueItem vi = ref == null ? null : ref.get();
-        if (vi == null) {
-            KeyItem ki = new KeyItem(key);
-            vi = new ValueItem(ki, value);
-            ref = createReference(vi);
-            cache.put(key, ref);
-            // replace if already exist
-            keyItems.remove(ki);
-            keyItems.add(ki);
-        } else {
-            vi.setValue(value);
-            vi.getKeyItem().accessed();
-        }
+    public void push(K key, V value) {
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            KeyItem ki = cache.get(key);
+            ValueItem vi = ki == null ? null : ki.getValueItem();
+            if (vi == null) {
+                if (ki != null) {
+                    // value was released already
+                    unlink(ki);
+                }
+                ki = new KeyItem(key);
+                ki.setReference(createReference(new ValueItem(ki, value)));
+                cache.put(key, ki);
+                link(ki);
+            } else {
+                vi.setValue(value);
+                ki.accessed();
+                promote(ki);
+            }
 
-        trim();
+            trim();
+        } finally {
+            evictionLock.unlock();
+        }
         scheduleCleanup();
     }
 
@@ -131,29 +206,92 @@ public class SimpleCache<K, V> {
         return new SoftReference<ValueItem>(vi);
     }
 
-    public synchronized V get(K key) {
-        V res = null;
-        Reference<ValueItem> ref = cache.get(key);
-        if (ref != null) {
-            ValueItem vi = ref.get();
-            if (vi == null) {
-                remove(key);
-            } else {
-                vi.getKeyItem().accessed();
-                res = vi.getValue();
+    public V get(K key) {
+        KeyItem ki = cache.get(key);
+        if (ki == null) {
+            statistics.onMiss();
+            return null;
+        }
+
+        ValueItem vi = ki.getValueItem();
+        long time = System.currentTimeMillis();
+        if (vi == null || !ki.alive(time, lifeTimeMs)) {
+            removeItem(ki);
+            statistics.onExpiration();
+            statistics.onMiss();
+            return null;
+        }
+
+        ki.accessed(time);
+        readBuffer.add(ki);
+        if (readBufferSize.incrementAndGet() >= READ_BUFFER_THRESHOLD
+                && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        statistics.onHit();
+        return vi.getValue();
+    }
+
+    /**
+     * 
+     * <i>Description:</i> returns the cached value for a key, calling the
+     * loader and caching its result on a miss. Concurrent misses on the same
+     * key may call the loader more than once; the last loaded value wins.
+     * 
+     * @param key
+     *            the key
+     * @param loader
+     *            creates the value when it is not cached; a null result is not
+     *            cached
+     * @return the cached or loaded value
+     * @throws Exception
+     *             the exception thrown by the loader
+     */
+    public V get(K key, Callable<V> loader) throws Exception {
+        V res = get(key);
+        if (res == null) {
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                res = loader.call();
+                success = true;
+            } finally {
+                statistics.onLoad(System.nanoTime() - start, success);
+            }
+            if (res != null) {
+                push(key, res);
             }
         }
-        scheduleCleanup();
         return res;
     }
 
-    public synchronized int size() {
+    public int size() {
         return cache.size();
     }
 
-    public synchronized void clear() {
-        cache.clear();
-        keyItems.clear();
+    public void clear() {
+        evictionLock.lock();
+        try {
+            // a concurrent get may still buffer an access to a removed item;
+            // unlinked items are skipped when the buffer is replayed
+            for (KeyItem ki : cache.values()) {
+                ki.linked = false;
+                ki.prev = null;
+                ki.next = null;
+                ki.bucket = null;
+            }
+            cache.clear();
+            readBuffer.clear();
+            readBufferSize.set(0);
+            lruList.clear();
+            lowestBucket = null;
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
     /**
@@ -162,37 +300,50 @@ public class SimpleCache<K, V> {
      * 
      * @param key
      */
-    public synchronized void remove(K key) {
-        Reference<ValueItem> ref = cache.remove(key);
-        ValueItem vi = ref == null ? null : ref.get();
-        if (vi != null) {
-            keyItems.remove(vi.getKeyItem());
-        } else {
-            keyItems.remove(new KeyItem(key));
+    public void remove(K key) {
+        evictionLock.lock();
+        try {
+            KeyItem ki = cache.remove(key);
+            if (ki != null) {
+                unlink(ki);
+            }
+        } finally {
+            evictionLock.unlock();
         }
     }
 
+    public EvictionPolicy getEvictionPolicy() {
+        return policy;
+    }
+
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> evicts items until the cache is within its
+     * capacity. Must be called holding the eviction lock.
+     * 
+     */
     protected void trim() {
-        if (keyItems.size() > capacity) {
-            cleanup();
-
-            if (keyItems.size() > capacity) {
-                Collections.sort(keyItems, keyCountComp);
-                while (keyItems.size() > capacity) {
-                    KeyItem item = keyItems.remove();
-                    cache.remove(item.getKey());
-                }
+        while (cache.size() > capacity) {
+            KeyItem victim = policy == EvictionPolicy.LRU ? lruList.head
+                    : (lowestBucket == null ? null : lowestBucket.head);
+            if (victim == null) {
+                break;
             }
+            cache.remove(victim.getKey(), victim);
+            unlink(victim);
+            statistics.onEviction();
         }
     }
 
     protected void scheduleCleanup() {
-        lastCheckTime = System.currentTimeMillis();
-        if (!cleanupTask.isRunning()) {
-            // set isRunning on main thread to avoid potential sync issue
-            // between main and cleanup thread
-            cleanupTask.isRunning = true;
-            new Thread(cleanupTask, NAME + (++THREAD_COUNT)).start();
+        if (cleanupScheduled.compareAndSet(false, true)) {
+            CleanupTask task = new CleanupTask(this);
+            task.setFuture(CLEANER.scheduleWithFixedDelay(task, checkInterval,
+                    checkInterval, TimeUnit.MILLISECONDS));
         }
     }
 
@@ -202,38 +353,149 @@ public class SimpleCache<K, V> {
      * released already
      * 
      */
-    protected synchronized void cleanup() {
+    protected void cleanup() {
         long time = System.currentTimeMillis();
-        for (int i = keyItems.size() - 1; i >= 0; i--) {
-            KeyItem item = keyItems.get(i);
-            K key = item.getKey();
-            Reference<ValueItem> ref = cache.get(key);
-            if (!item.alive(time, lifeTimeMs) || ref == null
-                    || ref.get() == null) {
-                cache.remove(key);
-                keyItems.remove(i);
+        List<KeyItem> stale = new ArrayList<KeyItem>();
+        for (KeyItem item : cache.values()) {
+            if (!item.alive(time, lifeTimeMs) || item.getValueItem() == null) {
+                stale.add(item);
+            }
+        }
+        for (KeyItem item : stale) {
+            if (removeItem(item)) {
+                statistics.onExpiration();
+            }
+        }
+    }
+
+    private boolean removeItem(KeyItem ki) {
+        evictionLock.lock();
+        try {
+            if (cache.remove(ki.getKey(), ki)) {
+                unlink(ki);
+                return true;
             }
+            return false;
+        } finally {
+            evictionLock.unlock();
         }
     }
 
-    protected Comparator<KeyItem> keyCountComp = new Comparator<KeyItem>() {
+    private void drainReadBuffer() {
+        KeyItem ki;
+        while ((ki = readBuffer.poll()) != null) {
+            readBufferSize.decrementAndGet();
+            promote(ki);
+        }
+    }
 
-        @Override
-        public int compare(KeyItem o1, KeyItem o2) {
-            int c1 = o1.getCount();
-            int c2 = o2.getCount();
-            return c1 > c2 ? 1 : (c1 < c2 ? -1 : 0);
+    private void link(KeyItem ki) {
+        if (policy == EvictionPolicy.LRU) {
+            lruList.append(ki);
+        } else {
+            ki.count = 1;
+            FrequencyBucket bucket = lowestBucket;
+            if (bucket == null || bucket.frequency != 1) {
+                bucket = new FrequencyBucket(1);
+                bucket.next = lowestBucket;
+                if (lowestBucket != null) {
+                    lowestBucket.prev = bucket;
+                }
+                lowestBucket = bucket;
+            }
+            bucket.append(ki);
+            ki.bucket = bucket;
         }
+        ki.linked = true;
+    }
+
+    private void promote(KeyItem ki) {
+        if (!ki.linked) {
+            // removed after the access was recorded
+            return;
+        }
+        if (policy == EvictionPolicy.LRU) {
+            lruList.unlink(ki);
+            lruList.append(ki);
+        } else {
+            FrequencyBucket current = ki.bucket;
+            int frequency = current.frequency + 1;
+            FrequencyBucket next = current.next;
+            if (next == null || next.frequency != frequency) {
+                next = new FrequencyBucket(frequency);
+                next.prev = current;
+                next.next = current.next;
+                if (current.next != null) {
+                    current.next.prev = next;
+                }
+                current.next = next;
+            }
+            current.unlink(ki);
+            next.append(ki);
+            ki.bucket = next;
+            ki.count = frequency;
+            if (current.head == null) {
+                removeBucket(current);
+            }
+        }
+    }
+
+    private void unlink(KeyItem ki) {
+        if (!ki.linked) {
+            return;
+        }
+        if (policy == EvictionPolicy.LRU) {
+            lruList.unlink(ki);
+        } else {
+            FrequencyBucket bucket = ki.bucket;
+            bucket.unlink(ki);
+            ki.bucket = null;
+            if (bucket.head == null) {
+                removeBucket(bucket);
+            }
+        }
+        ki.linked = false;
+    }
+
+    private void removeBucket(FrequencyBucket bucket) {
+        if (bucket.prev == null) {
+            lowestBucket = bucket.next;
+        } else {
+            bucket.prev.next = bucket.next;
+        }
+        if (bucket.next != null) {
+            bucket.next.prev = bucket.prev;
+        }
+        bucket.prev = null;
+        bucket.next = null;
+    }
 
-    };
+    @Override
+    public String toString() {
+        return "SimpleCache [policy=" + policy + ", capacity=" + capacity
+                + ", lifeTimeMs=" + lifeTimeMs + ", size=" + cache.size()
+                + ", " + statistics + "]";
+    }
 
     protected class KeyItem {
+        // guarded by evictionLock
         private int count;
 
-        private long lastAccess;
+        private volatile long lastAccess;
 
         private final K key;
 
+        private volatile Reference<ValueItem> reference;
+
+        // eviction order links, guarded by evictionLock
+        private KeyItem prev;
+
+        private KeyItem next;
+
+        private FrequencyBucket bucket;
+
+        private boolean linked;
+
         public KeyItem(K key) {
             super();
             this.key = key;
@@ -241,8 +503,11 @@ public class SimpleCache<K, V> {
         }
 
         public void accessed() {
-            count += 1;
-            lastAccess = System.currentTimeMillis();
+            accessed(System.currentTimeMillis());
+        }
+
+        public void accessed(long time) {
+            lastAccess = time;
         }
 
         /**
@@ -274,6 +539,18 @@ public class SimpleCache<K, V> {
             return currentTime - lastAccess < lifeTime;
         }
 
+        protected void setReference(Reference<ValueItem> reference) {
+            this.reference = reference;
+        }
+
+        /**
+         * @return the value item, or null if it has been released
+         */
+        protected ValueItem getValueItem() {
+            Reference<ValueItem> ref = reference;
+            return ref == null ? null : ref.get();
+        }
+
         /*
          * (non-Javadoc)
          * 
@@ -339,7 +616,7 @@ public class SimpleCache<K, V> {
     protected class ValueItem {
         private final KeyItem keyItem;
 
-        private V value;
+        private volatile V value;
 
         public ValueItem(KeyItem keyItem, V value) {
             super();
@@ -371,8 +648,79 @@ public class SimpleCache<K, V> {
 
     }
 
-    protected class CleanupTask implements Runnable {
-        private boolean isRunning;
+    /**
+     * Doubly linked list of items, oldest first
+     */
+    private class ItemList {
+        KeyItem head;
+
+        KeyItem tail;
+
+        void append(KeyItem ki) {
+            ki.prev = tail;
+            ki.next = null;
+            if (tail == null) {
+                head = ki;
+            } else {
+                tail.next = ki;
+            }
+            tail = ki;
+        }
+
+        void unlink(KeyItem ki) {
+            if (ki.prev == null) {
+                head = ki.next;
+            } else {
+                ki.prev.next = ki.next;
+            }
+            if (ki.next == null) {
+                tail = ki.prev;
+            } else {
+                ki.next.prev = ki.prev;
+            }
+            ki.prev = null;
+            ki.next = null;
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+        }
+    }
+
+    /**
+     * Items accessed the same number of times; buckets are linked in
+     * increasing frequency order
+     */
+    private class FrequencyBucket extends ItemList {
+        final int frequency;
+
+        FrequencyBucket prev;
+
+        FrequencyBucket next;
+
+        FrequencyBucket(int frequency) {
+            this.frequency = frequency;
+        }
+    }
+
+    /**
+     * Periodic cleanup of one cache on the shared cleaner thread. Holds the
+     * cache weakly so that a cache nobody uses any more can be collected; the
+     * task cancels itself when that happens.
+     */
+    private static class CleanupTask implements Runnable {
+        private final WeakReference<SimpleCache<?, ?>> cacheRef;
+
+        private volatile ScheduledFuture<?> future;
+
+        CleanupTask(SimpleCache<?, ?> cache) {
+            cacheRef = new WeakReference<SimpleCache<?, ?>>(cache);
+        }
+
+        void setFuture(ScheduledFuture<?> future) {
+            this.future = future;
+        }
 
         /*
          * (non-Javadoc)
@@ -381,23 +729,19 @@ public class SimpleCache<K, V> {
          */
         @Override
         public void run() {
-            try {
-                while (System.currentTimeMillis() - lastCheckTime < lifeTimeMs) {
-                    Thread.sleep(checkInterval);
+            SimpleCache<?, ?> cache = cacheRef.get();
+            if (cache == null) {
+                ScheduledFuture<?> f = future;
+                if (f != null) {
+                    f.cancel(false);
                 }
-                cleanup();
-            } catch (InterruptedException e) {
-            } finally {
-                isRunning = false;
+                return;
+            }
+            try {
+                cache.cleanup();
+            } catch (Exception e) {
+                log.error("Exception cleaning up cache {}", cache, e);
             }
         }
-
-        /**
-         * @return the isRunning
-         */
-        public boolean isRunning() {
-            return isRunning;
-        }
-
     }
 }
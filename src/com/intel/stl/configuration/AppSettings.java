@@ -121,6 +121,30 @@ public class AppSettings {
     public static final String PERF_GROUPINFO_RETENTION =
             "perf.groupinfo.retention";
 
+    // Cache settings
+    // Interval (in minutes) between consistency checks of the port cache
+    // against the FM; zero disables the check
+    public static final String CACHE_PORT_CHECKINTERVAL =
+            "cache.port.checkinterval";
+
+    // Memory budget (in MB) for the contents of the memory caches of a subnet;
+    // zero disables the budget
+    public static final String CACHE_MEMORY_BUDGET = "cache.memory.budget";
+
+    // Whether the topology is restored from the last saved snapshot when a
+    // subnet is opened, while the FM is queried in the background
+    public static final String CACHE_WARMSTART = "cache.warmstart";
+
+    // Subnet API settings
+    // Whether to check routes computed locally against the SA trace
+    public static final String SUBNET_ROUTE_CHECK = "subnet.route.check";
+
+    // UI settings
+    // Whether subscriber tasks run when the PM produces a new image instead of
+    // on their own fixed rate schedules
+    public static final String UI_SCHEDULER_IMAGEALIGNED =
+            "ui.scheduler.imagealigned";
+
     private final Properties properties;
 
     public AppSettings(Properties properties) {
@@ -43,7 +43,8 @@ import com.intel.stl.api.notice.impl.NoticeProcess;
  * update of the cache is completed by the first thread that found the flag set
  * to false is finished. Something similar happens when processing a notice: the
  * flag is set to false and all subsequent requests are queued up until the
- * notice is processed.
+ * notice is processed. Memory caches in background refresh mode do not queue
+ * readers once loaded; see MemoryCache.RefreshMode.
  * 
  * 
  */
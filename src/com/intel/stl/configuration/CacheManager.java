@@ -94,6 +94,35 @@ public interface CacheManager {
 
     PAHelper getPAHelper();
 
+    /**
+     * 
+     * <i>Description:</i> returns an application setting, or the default value
+     * if the setting has not been defined
+     * 
+     * @param settingName
+     * @param defaultValue
+     * @return the setting value
+     */
+    String getAppSetting(String settingName, String defaultValue);
+
+    /**
+     * 
+     * <i>Description:</i> returns the memory budget shared by the memory
+     * caches of this subnet
+     * 
+     * @return the memory budget
+     */
+    CacheMemoryBudget getMemoryBudget();
+
+    /**
+     * 
+     * <i>Description:</i> whether the topology caches still hold data restored
+     * from a snapshot that has not been reconciled with the FM yet
+     * 
+     * @return true if the topology may be out of date
+     */
+    boolean isTopologyStale();
+
     void updateCaches(NoticeProcess notice) throws Exception;
 
     void reset();
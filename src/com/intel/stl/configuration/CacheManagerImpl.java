@@ -27,7 +27,10 @@
 
 package com.intel.stl.configuration;
 
+import static com.intel.stl.configuration.AppSettings.APP_DATA_PATH;
 import static com.intel.stl.configuration.AppSettings.APP_DB_SUBNET;
+import static com.intel.stl.configuration.AppSettings.CACHE_MEMORY_BUDGET;
+import static com.intel.stl.configuration.AppSettings.CACHE_WARMSTART;
 import static com.intel.stl.configuration.MemCacheType.CABLE;
 import static com.intel.stl.configuration.MemCacheType.GROUP;
 import static com.intel.stl.configuration.MemCacheType.GROUP_CONF;
@@ -45,6 +48,10 @@ import static com.intel.stl.configuration.MemCacheType.SM;
 import static com.intel.stl.configuration.MemCacheType.SWITCH;
 import static com.intel.stl.configuration.MemCacheType.VLARBTABLE;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -61,19 +68,29 @@ import com.intel.stl.api.performance.impl.GroupCache;
 import com.intel.stl.api.performance.impl.GroupConfCache;
 import com.intel.stl.api.performance.impl.PAHelper;
 import com.intel.stl.api.performance.impl.PMConfigCache;
+import com.intel.stl.api.subnet.LinkRecordBean;
+import com.intel.stl.api.subnet.NodeRecordBean;
+import com.intel.stl.api.subnet.PortRecordBean;
+import com.intel.stl.api.subnet.SubnetDescription;
 import com.intel.stl.api.subnet.impl.CableCache;
 import com.intel.stl.api.subnet.impl.LFTCache;
 import com.intel.stl.api.subnet.impl.LinkCache;
+import com.intel.stl.api.subnet.impl.LinkCacheImpl;
+import com.intel.stl.api.subnet.impl.LinkIndex;
 import com.intel.stl.api.subnet.impl.MFTCache;
 import com.intel.stl.api.subnet.impl.NodeCache;
+import com.intel.stl.api.subnet.impl.NodeCacheImpl;
+import com.intel.stl.api.subnet.impl.NodeIndex;
 import com.intel.stl.api.subnet.impl.PKeyTableCache;
 import com.intel.stl.api.subnet.impl.PortCache;
+import com.intel.stl.api.subnet.impl.PortCacheImpl;
 import com.intel.stl.api.subnet.impl.SAHelper;
 import com.intel.stl.api.subnet.impl.SC2SLMTCache;
 import com.intel.stl.api.subnet.impl.SC2VLNTMTCache;
 import com.intel.stl.api.subnet.impl.SC2VLTMTCache;
 import com.intel.stl.api.subnet.impl.SMCache;
 import com.intel.stl.api.subnet.impl.SwitchCache;
+import com.intel.stl.api.subnet.impl.TopologySnapshot;
 import com.intel.stl.api.subnet.impl.TopologyUpdateTask;
 import com.intel.stl.api.subnet.impl.VLArbTableCache;
 import com.intel.stl.common.STLMessages;
@@ -85,6 +102,14 @@ public class CacheManagerImpl implements CacheManager {
     // After a topology update task failure, no retries for 5 minutes
     private static final long THROTTLE_TIMEOUT = 300000L;
 
+    private static final int DEFAULT_MEMORY_BUDGET = 256; // MB
+
+    private static final long BYTES_PER_MB = 1024L * 1024L;
+
+    private static final String SNAPSHOT_FOLDER = "snapshots";
+
+    private static final String SNAPSHOT_EXTENSION = ".snapshot";
+
     private static Logger log = LoggerFactory.getLogger(CacheManagerImpl.class);
 
     private final SubnetContextImpl subnetContext;
@@ -97,17 +122,24 @@ public class CacheManagerImpl implements CacheManager {
 
     private final boolean useDB;
 
+    private final boolean warmStart;
+
     private final AtomicReference<TopologyUpdateTask> topologyUpdateRef;
 
     private boolean throttleTask = false;
 
     private long lastErrorTimestamp = 0;
 
+    private final CacheMemoryBudget memoryBudget;
+
     public CacheManagerImpl(SubnetContextImpl subnetContext) {
         this.subnetContext = subnetContext;
         this.topologyUpdateRef = new AtomicReference<TopologyUpdateTask>(null);
         this.useDB = Boolean.parseBoolean(
                 subnetContext.getAppSetting(APP_DB_SUBNET, "true"));
+        this.memoryBudget = new CacheMemoryBudget(getMemoryBudgetSize());
+        this.warmStart = Boolean.parseBoolean(
+                subnetContext.getAppSetting(CACHE_WARMSTART, "false"));
     }
 
     @Override
@@ -132,6 +164,30 @@ public class CacheManagerImpl implements CacheManager {
         return session.getPAHelper();
     }
 
+    @Override
+    public String getAppSetting(String settingName, String defaultValue) {
+        return subnetContext.getAppSetting(settingName, defaultValue);
+    }
+
+    @Override
+    public CacheMemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    private long getMemoryBudgetSize() {
+        String value =
+                getAppSetting(CACHE_MEMORY_BUDGET,
+                        Integer.toString(DEFAULT_MEMORY_BUDGET));
+        try {
+            return Long.parseLong(value) * BYTES_PER_MB;
+        } catch (NumberFormatException e) {
+            log.warn(
+                    "Invalid value for setting '{}'; using default value of {}",
+                    CACHE_MEMORY_BUDGET, DEFAULT_MEMORY_BUDGET, e);
+            return DEFAULT_MEMORY_BUDGET * BYTES_PER_MB;
+        }
+    }
+
     @Override
     public NodeCache acquireNodeCache() {
         return (NodeCache) getManagedCache(NODE);
@@ -264,6 +320,109 @@ public class CacheManagerImpl implements CacheManager {
 
     public synchronized void initialize() {
         createCaches();
+        if (warmStart) {
+            restoreSnapshot();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.intel.stl.configuration.CacheManager#isTopologyStale()
+     */
+    @Override
+    public boolean isTopologyStale() {
+        MemCacheType[] types = new MemCacheType[] { NODE, LINK, PORT };
+        for (MemCacheType type : types) {
+            ManagedCache cache = caches.get(type);
+            if (cache instanceof MemoryCache
+                    && ((MemoryCache<?>) cache).isStale()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 
+     * Description: restores nodes, links and ports from the last topology
+     * snapshot of the subnet. The memory caches serve the restored data right
+     * away while they are reconciled with the FM in the background.
+     * 
+     */
+    private void restoreSnapshot() {
+        File file = getSnapshotFile();
+        if (file == null) {
+            return;
+        }
+        TopologySnapshot snapshot = null;
+        try {
+            snapshot = TopologySnapshot.load(file);
+        } catch (IOException e) {
+            log.warn("Couldn't load topology snapshot '" + file + "'", e);
+        }
+        if (snapshot == null) {
+            return;
+        }
+
+        ManagedCache cache = caches.get(NODE);
+        if (cache instanceof NodeCacheImpl) {
+            ((NodeCacheImpl) cache).restoreCachedObject(new NodeIndex(
+                    snapshot.getNodes()));
+        }
+        cache = caches.get(LINK);
+        if (cache instanceof LinkCacheImpl) {
+            ((LinkCacheImpl) cache).restoreCachedObject(new LinkIndex(
+                    snapshot.getLinks()));
+        }
+        cache = caches.get(PORT);
+        if (cache instanceof PortCacheImpl) {
+            ((PortCacheImpl) cache).restorePorts(snapshot.getPorts());
+        }
+        log.info("Restored topology snapshot taken at "
+                + new Date(snapshot.getTimestamp()) + ": "
+                + snapshot.getNodes().size() + " nodes, "
+                + snapshot.getLinks().size() + " links");
+    }
+
+    /**
+     * 
+     * Description: saves the topology just written to the database by a
+     * topology update task, plus the ports if the port cache has loaded them
+     * 
+     * @param task
+     *            the completed topology update task
+     */
+    private void saveSnapshot(TopologyUpdateTask task) {
+        List<NodeRecordBean> nodes = task.getNodes();
+        List<LinkRecordBean> links = task.getLinks();
+        File file = getSnapshotFile();
+        if (nodes == null || links == null || file == null) {
+            return;
+        }
+        List<PortRecordBean> ports = null;
+        ManagedCache cache = caches.get(PORT);
+        if (cache instanceof PortCacheImpl) {
+            ports = ((PortCacheImpl) cache).getLoadedPorts();
+        }
+        try {
+            new TopologySnapshot(System.currentTimeMillis(), nodes, links,
+                    ports).save(file);
+            log.info("Saved topology snapshot '" + file + "'");
+        } catch (IOException e) {
+            log.warn("Couldn't save topology snapshot '" + file + "'", e);
+        }
+    }
+
+    private File getSnapshotFile() {
+        String dataPath = getAppSetting(APP_DATA_PATH, null);
+        SubnetDescription subnet = subnetContext.getSubnetDescription();
+        if (dataPath == null || subnet == null || subnet.getName() == null) {
+            return null;
+        }
+        String name = subnet.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+        return new File(new File(dataPath, SNAPSHOT_FOLDER), name
+                + SNAPSHOT_EXTENSION);
     }
 
     /**
@@ -325,7 +484,8 @@ public class CacheManagerImpl implements CacheManager {
 
             SAHelper helper = subnetContext.getSession().getSAHelper();
             topologyUpdate =
-                    new TopologyUpdateTask(helper, getDatabaseManager());
+                    new TopologyUpdateTask(helper, getDatabaseManager(),
+                            warmStart);
             boolean updated =
                     topologyUpdateRef.compareAndSet(null, topologyUpdate);
             if (!updated) {
@@ -348,6 +508,7 @@ public class CacheManagerImpl implements CacheManager {
             }
         }
 
+        final TopologyUpdateTask task = topologyUpdate;
         getProcessingService().submitSerial(topologyUpdate,
                 new ResultHandler<Void>() {
 
@@ -370,6 +531,9 @@ public class CacheManagerImpl implements CacheManager {
                                     caches.put(cacheType, dbCache);
                                 }
                             }
+                            if (warmStart) {
+                                saveSnapshot(task);
+                            }
                             topologyUpdateRef.set(null);
                             throttleTask = false;
                         } catch (InterruptedException e) {
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.configuration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memory budget shared by the memory caches of a subnet. Memory caches hold
+ * their contents strongly and report an estimate of their size here every time
+ * the contents change. When the total goes over the budget, the least recently
+ * accessed caches are released; a released cache reloads its contents the next
+ * time it is acquired.
+ */
+public class CacheMemoryBudget {
+    private static Logger log = LoggerFactory.getLogger(CacheMemoryBudget.class);
+
+    private final long limit;
+
+    private final Map<MemoryCache<?>, Long> usage =
+            new IdentityHashMap<MemoryCache<?>, Long>();
+
+    private long total;
+
+    /**
+     * 
+     * Description:
+     * 
+     * @param limit
+     *            the budget in bytes; zero or less means no limit
+     */
+    public CacheMemoryBudget(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return the budget in bytes
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the estimated memory used by all caches, in bytes
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> records the estimated size of a cache's contents and
+     * releases other caches if this takes the total over the budget. The cache
+     * reporting its size is never released, so a single cache larger than the
+     * budget stays loaded.
+     * 
+     * @param cache
+     *            the cache
+     * @param size
+     *            the estimated size in bytes; zero when the cache is empty
+     */
+    public void update(MemoryCache<?> cache, long size) {
+        List<MemoryCache<?>> victims = null;
+        synchronized (this) {
+            Long previous =
+                    size > 0 ? usage.put(cache, size) : usage.remove(cache);
+            total += size - (previous == null ? 0 : previous);
+            if (limit > 0 && total > limit) {
+                victims = selectVictims(cache);
+            }
+        }
+        // Caches are released outside of the budget lock; release() does not
+        // block, so it is safe even when called from another cache's refresh
+        if (victims != null) {
+            for (MemoryCache<?> victim : victims) {
+                log.info("Memory budget of " + limit + " bytes exceeded; "
+                        + "releasing " + victim.getClass().getSimpleName());
+                victim.release();
+            }
+        }
+    }
+
+    private List<MemoryCache<?>> selectVictims(MemoryCache<?> keep) {
+        List<MemoryCache<?>> candidates =
+                new ArrayList<MemoryCache<?>>(usage.keySet());
+        candidates.remove(keep);
+        Collections.sort(candidates, new Comparator<MemoryCache<?>>() {
+            @Override
+            public int compare(MemoryCache<?> o1, MemoryCache<?> o2) {
+                long t1 = o1.getLastAccess();
+                long t2 = o2.getLastAccess();
+                return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+
+        List<MemoryCache<?>> res = new ArrayList<MemoryCache<?>>();
+        long remaining = total;
+        for (MemoryCache<?> cache : candidates) {
+            if (remaining <= limit) {
+                break;
+            }
+            remaining -= usage.remove(cache);
+            res.add(cache);
+        }
+        total = remaining;
+        return res;
+    }
+
+}
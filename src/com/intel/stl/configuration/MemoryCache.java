@@ -29,24 +29,79 @@ package com.intel.stl.configuration;
 
 import static com.intel.stl.common.STLMessages.STL60006_EXCEPTION_REFRESHING_CACHE;
 
-import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Base class for caches that keep their contents in memory. The contents are
+ * held strongly; the memory they use is accounted against the subnet's
+ * CacheMemoryBudget, which releases the least recently used caches when the
+ * budget is exceeded.
+ * <p>
+ * A cache in {@link RefreshMode#BACKGROUND} mode never makes readers wait for
+ * a refresh once it has been loaded: when the cache becomes stale, a single
+ * background task refreshes it while readers keep getting the previous
+ * contents. Misses on individual keys are queued with
+ * {@link #queueReload(int)} and reloaded by the same task through
+ * {@link #reloadObjects(Object, Collection)} instead of invalidating the whole
+ * cache.
+ */
 public abstract class MemoryCache<H> extends BaseCache {
     public static final long DEFAULT_TICK_RESOLUTION = 9000; // 1 sec
 
-    private SoftReference<H> cachedObjectReference;
+    /**
+     * Size estimate (in bytes) per element when a cache does not provide its
+     * own estimate
+     */
+    public static final long DEFAULT_ENTRY_SIZE = 256;
+
+    public enum RefreshMode {
+        /**
+         * The thread that finds the cache stale refreshes it; all other
+         * threads acquiring the cache wait until the refresh is done
+         */
+        BLOCKING,
+        /**
+         * A stale cache is refreshed in the background while readers get the
+         * previous contents; only the first load blocks
+         */
+        BACKGROUND
+    }
+
+    private volatile H cachedObject;
 
     // Whatever the Exception received during refreshCache, it should be
     // converted into a RuntimeException by the cache, to reflect the fact that
     // the caller of the cache's interface cannot do much about it. Override
     // processRefreshCacheException() to create your own RuntimeException
-    private RuntimeException refreshException;
+    private volatile RuntimeException refreshException;
 
     private long tickResolution = DEFAULT_TICK_RESOLUTION;
 
+    private volatile RefreshMode refreshMode = RefreshMode.BLOCKING;
+
+    private volatile long lastAccess;
+
+    // whether the cached object was restored from a snapshot and has not been
+    // refreshed from the FM yet
+    private volatile boolean stale;
+
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean(false);
+
+    private final Set<Integer> pendingReloads = Collections
+            .newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    private final CacheMemoryBudget memoryBudget;
+
     public MemoryCache(CacheManager cacheMgr) {
         super(cacheMgr);
-        this.cachedObjectReference = new SoftReference<H>(null);
+        this.memoryBudget = cacheMgr.getMemoryBudget();
     }
 
     /**
@@ -64,6 +119,21 @@ public abstract class MemoryCache<H> extends BaseCache {
         this.tickResolution = tickResolution;
     }
 
+    /**
+     * @return the refreshMode
+     */
+    public RefreshMode getRefreshMode() {
+        return refreshMode;
+    }
+
+    /**
+     * @param refreshMode
+     *            the refreshMode to set
+     */
+    public void setRefreshMode(RefreshMode refreshMode) {
+        this.refreshMode = refreshMode;
+    }
+
     /**
      * 
      * <i>Description:</i> returns the cached object. The only time the cached
@@ -75,19 +145,62 @@ public abstract class MemoryCache<H> extends BaseCache {
      * @return the cached object
      */
     protected H getCachedObject() {
-        if (refreshException != null) {
-            throw refreshException;
+        RuntimeException e = refreshException;
+        if (e != null) {
+            throw e;
         }
-        H res = cachedObjectReference.get();
+        lastAccess = System.currentTimeMillis();
+        H res = cachedObject;
         if (res == null) {
             updateCache();
-            res = cachedObjectReference.get();
+            res = cachedObject;
         }
         return res;
     }
 
     protected void setCachedObject(H cachedObject) {
-        cachedObjectReference = new SoftReference<H>(cachedObject);
+        this.cachedObject = cachedObject;
+        if (memoryBudget != null) {
+            memoryBudget.update(this, estimateSize(cachedObject));
+        }
+    }
+
+    /**
+     * 
+     * <i>Description:</i> sets a cached object restored from a snapshot of the
+     * last known data. The cache is left stale: in
+     * {@link RefreshMode#BACKGROUND} mode readers get the restored object
+     * while a background refresh reconciles it with the FM.
+     * 
+     * @param cachedObject
+     *            the restored object
+     */
+    public void restoreCachedObject(H cachedObject) {
+        setCachedObject(cachedObject);
+        stale = cachedObject != null;
+        cacheReady.set(false);
+        if (stale && refreshMode == RefreshMode.BACKGROUND) {
+            scheduleRefresh();
+        }
+    }
+
+    /**
+     * @return true if the cache holds data restored from a snapshot that has
+     *         not been refreshed from the FM yet
+     */
+    public boolean isStale() {
+        return stale && cachedObject != null;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> returns the restored object while the cache is
+     * stale, so retrieveObjectForCache() can reconcile the FM data with it
+     * 
+     * @return the restored object, or null if the cache is not stale
+     */
+    protected H getStaleObject() {
+        return stale ? cachedObject : null;
     }
 
     protected RuntimeException getRefreshException() {
@@ -96,12 +209,28 @@ public abstract class MemoryCache<H> extends BaseCache {
 
     @Override
     public boolean isCacheReady() {
-        if (cachedObjectReference.get() == null) {
+        if (cachedObject == null) {
             cacheReady.set(false);
         }
         return cacheReady.get();
     }
 
+    /**
+     * In {@link RefreshMode#BACKGROUND} mode, a stale cache that still holds
+     * its previous contents schedules a background refresh and returns
+     * immediately; otherwise the cache is refreshed on the calling thread.
+     */
+    @Override
+    public void updateCache() {
+        if (refreshMode == RefreshMode.BACKGROUND && cachedObject != null) {
+            if (!cacheReady.get()) {
+                scheduleRefresh();
+            }
+            return;
+        }
+        super.updateCache();
+    }
+
     /**
      * cache should be consistent with data retrieved from FE. If error on FE
      * side leads null value or exceptions, cache should reflect this so our UI
@@ -112,19 +241,32 @@ public abstract class MemoryCache<H> extends BaseCache {
      * FE without exception. Ideally this case should be handled through notice.
      * If not, we should set cache to null or empty to ensure consistency. So a
      * caller will be able to figure out something happened. Otherwise, there is
-     * no way to know the change.
+     * no way to know the change. The exception is a cache restored from a
+     * snapshot: it already says the data is not confirmed by the FM, so it
+     * keeps the restored data and stays stale when the refresh fails.
      */
     @Override
     public boolean refreshCache() {
         refreshException = null;
+        // a full refresh supersedes any partial reload
+        pendingReloads.clear();
         try {
             H cachedObject = retrieveObjectForCache();
             setCachedObject(cachedObject);
+            stale = false;
             // reset refreshException if everything is fine
             refreshException = null;
             return true;
         } catch (Exception e) {
+            if (stale && cachedObject != null) {
+                // keep serving the restored snapshot; the cache stays stale
+                // and is refreshed again on the next access
+                log.warn("Couldn't refresh " + getClass().getSimpleName()
+                        + " restored from snapshot", e);
+                return false;
+            }
             setCachedObject(null);
+            stale = false;
             refreshException = processRefreshCacheException(e);
             return false;
         }
@@ -138,6 +280,68 @@ public abstract class MemoryCache<H> extends BaseCache {
     @Override
     public void reset() {
         setCachedObject(null);
+        stale = false;
+        cacheReady.set(false);
+    }
+
+    /**
+     * 
+     * <i>Description:</i> queues a reload of the data for one LID, typically
+     * after a lookup missed a resource that the FM knows about. In
+     * {@link RefreshMode#BLOCKING} mode this simply marks the cache as stale.
+     * 
+     * @param lid
+     *            the LID to reload
+     */
+    protected void queueReload(int lid) {
+        if (refreshMode == RefreshMode.BLOCKING) {
+            setCacheReady(false); // Force a refresh on next call
+            return;
+        }
+        pendingReloads.add(lid);
+        scheduleRefresh();
+    }
+
+    /**
+     * 
+     * <i>Description:</i> reloads the data for a set of LIDs into the cached
+     * object. Called from the background refresh task, holding the same lock
+     * as notice processing. The default implementation returns false, which
+     * makes the cache do a full refresh instead.
+     * 
+     * @param cachedObject
+     *            the current cached object
+     * @param lids
+     *            the LIDs queued through queueReload
+     * @return true if the cached object was updated; false if a full refresh is
+     *         needed
+     * @throws Exception
+     */
+    protected boolean reloadObjects(H cachedObject, Collection<Integer> lids)
+            throws Exception {
+        return false;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> estimates the memory used by a cached object, for
+     * the cache memory budget. The default estimate is
+     * {@link #DEFAULT_ENTRY_SIZE} per element of a collection or map.
+     * 
+     * @param cachedObject
+     *            the cached object, may be null
+     * @return the estimated size in bytes
+     */
+    protected long estimateSize(H cachedObject) {
+        if (cachedObject == null) {
+            return 0;
+        } else if (cachedObject instanceof Collection) {
+            return ((Collection<?>) cachedObject).size() * DEFAULT_ENTRY_SIZE;
+        } else if (cachedObject instanceof Map) {
+            return ((Map<?, ?>) cachedObject).size() * DEFAULT_ENTRY_SIZE;
+        } else {
+            return DEFAULT_ENTRY_SIZE;
+        }
     }
 
     protected abstract H retrieveObjectForCache() throws Exception;
@@ -150,4 +354,72 @@ public abstract class MemoryCache<H> extends BaseCache {
         return new RuntimeException(errorMsg, e);
     }
 
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Drops the cached object without blocking; called by the memory budget.
+     * The cache is reloaded the next time it is acquired.
+     */
+    void release() {
+        cachedObject = null;
+        stale = false;
+        cacheReady.set(false);
+    }
+
+    void revalidate() {
+        try {
+            if (!cacheReady.get()) {
+                super.updateCache();
+            } else if (!pendingReloads.isEmpty()) {
+                reloadPending();
+            }
+        } finally {
+            refreshScheduled.set(false);
+        }
+        // keys queued while this task was finishing would otherwise wait for
+        // the next miss
+        if (!pendingReloads.isEmpty() && cachedObject != null) {
+            scheduleRefresh();
+        }
+    }
+
+    private void scheduleRefresh() {
+        if (refreshScheduled.compareAndSet(false, true)) {
+            try {
+                cacheMgr.getProcessingService().submit(
+                        new CacheRefreshTask(this), null);
+            } catch (RuntimeException e) {
+                refreshScheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private synchronized void reloadPending() {
+        List<Integer> lids = new ArrayList<Integer>(pendingReloads);
+        pendingReloads.removeAll(lids);
+        H current = cachedObject;
+        if (current == null || lids.isEmpty()) {
+            return;
+        }
+
+        boolean reloaded = false;
+        try {
+            reloaded = reloadObjects(current, lids);
+        } catch (Exception e) {
+            log.error("Error reloading " + lids.size() + " LIDs in cache "
+                    + getClass().getSimpleName(), e);
+        }
+        if (reloaded) {
+            if (memoryBudget != null) {
+                memoryBudget.update(this, estimateSize(current));
+            }
+        } else {
+            cacheReady.set(false);
+            super.updateCache();
+        }
+    }
+
 }
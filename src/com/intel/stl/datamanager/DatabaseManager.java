@@ -27,6 +27,7 @@
 package com.intel.stl.datamanager;
 
 import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -98,6 +99,18 @@ public interface DatabaseManager {
     NodeRecordBean getNodeByPortGUID(String subnetName, long portGuid)
             throws SubnetDataNotFoundException;
 
+    /**
+     * Description: streaming variant of saveTopology; nodes and links are
+     * consumed one at a time on the database thread
+     *
+     * @param subnetName
+     * @param nodes
+     * @param links
+     * @throws SubnetDataNotFoundException
+     */
+    void saveTopology(String subnetName, Iterator<NodeRecordBean> nodes,
+            Iterator<LinkRecordBean> links) throws SubnetDataNotFoundException;
+
     void saveTopology(String subnetName, List<NodeRecordBean> nodes,
             List<LinkRecordBean> links) throws SubnetDataNotFoundException;
 
@@ -127,6 +140,9 @@ public interface DatabaseManager {
 
     void saveImageInfos(String subnetName, List<ImageInfoBean> imageInfos);
 
+    List<ImageInfoBean> getImageInfo(String subnetName, long imageNumber)
+            throws PerformanceDataNotFoundException;
+
     int purgeGroupInfos(String subnetName, long ago);
 
     void saveGroupConfig(String subnetName, String groupName,
@@ -154,6 +170,9 @@ public interface DatabaseManager {
     void updateNotice(String subnetName, long noticeId,
             NoticeStatus noticeStatus);
 
+    void updateNotices(String subnetName, List<Long> noticeIds,
+            NoticeStatus noticeStatus);
+
     List<NoticeBean> getNotices(String subnetName, NoticeStatus status);
 
     List<NoticeBean> getNotices(String subnetName, NoticeStatus status,
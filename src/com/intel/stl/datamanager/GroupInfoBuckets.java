@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.datamanager;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.intel.stl.api.performance.CategoryBucketBean;
+import com.intel.stl.api.performance.GroupInfoBean;
+import com.intel.stl.api.performance.UtilStatsBean;
+
+/**
+ * Packed binary format for the bucket lists of a GroupInfoBean (bandwidth
+ * buckets for internal, send and receive traffic, and the internal and external
+ * error category buckets). All buckets of one sweep are stored in a single
+ * column of the GROUP_INFOS table instead of one row per bucket in separate
+ * collection tables.
+ * <p>
+ * The format is a version byte followed by five sections, in the order listed
+ * above. Each section is the number of values followed by the values, all
+ * written as zigzag-encoded variable length integers, so that the small counts
+ * usually found in buckets take a single byte.
+ */
+public class GroupInfoBuckets {
+
+    public static final byte VERSION = 1;
+
+    /**
+     * Upper bound for a packed record; enough for the fixed number of buckets
+     * sent by the PM with room to spare
+     */
+    public static final int MAX_LENGTH = 4096;
+
+    private static final int CATEGORY_FIELDS = 6;
+
+    private GroupInfoBuckets() {
+    }
+
+    /**
+     * 
+     * <i>Description:</i> packs the bucket lists of a group info
+     * 
+     * @param groupInfo
+     *            the group info
+     * @return the packed buckets
+     */
+    public static byte[] pack(GroupInfoBean groupInfo) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        out.write(VERSION);
+        writeBwBuckets(out, groupInfo.getInternalUtilStats());
+        writeBwBuckets(out, groupInfo.getSendUtilStats());
+        writeBwBuckets(out, groupInfo.getRecvUtilStats());
+        writeCategoryBuckets(out, groupInfo.getInternalCategoryStatPorts());
+        writeCategoryBuckets(out, groupInfo.getExternalCategoryStatPorts());
+        return out.toByteArray();
+    }
+
+    /**
+     * 
+     * <i>Description:</i> restores the bucket lists of a group info from their
+     * packed form. Bandwidth buckets are only set on utilization stats that
+     * are present in the group info.
+     * 
+     * @param data
+     *            the packed buckets
+     * @param groupInfo
+     *            the group info to update
+     */
+    public static void unpack(byte[] data, GroupInfoBean groupInfo) {
+        if (data == null || data.length == 0) {
+            return;
+        }
+        if (data[0] != VERSION) {
+            throw new IllegalArgumentException(
+                    "Unsupported group info buckets version " + data[0]);
+        }
+        int[] pos = new int[] { 1 };
+        setBwBuckets(groupInfo.getInternalUtilStats(), readInts(data, pos));
+        setBwBuckets(groupInfo.getSendUtilStats(), readInts(data, pos));
+        setBwBuckets(groupInfo.getRecvUtilStats(), readInts(data, pos));
+        groupInfo.setInternalCategoryStatPorts(readCategoryBuckets(data, pos));
+        groupInfo.setExternalCategoryStatPorts(readCategoryBuckets(data, pos));
+    }
+
+    private static void writeBwBuckets(ByteArrayOutputStream out,
+            UtilStatsBean stats) {
+        List<Integer> buckets = stats == null ? null : stats.getBwBuckets();
+        if (buckets == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, buckets.size());
+        for (Integer value : buckets) {
+            writeVarInt(out, value == null ? 0 : value);
+        }
+    }
+
+    private static void setBwBuckets(UtilStatsBean stats, List<Integer> buckets) {
+        // UtilStatsBean rejects lists of the wrong size; an empty section means
+        // there were no buckets to save
+        if (stats != null && !buckets.isEmpty()) {
+            stats.setBwBuckets(buckets);
+        }
+    }
+
+    private static void writeCategoryBuckets(ByteArrayOutputStream out,
+            List<CategoryBucketBean> buckets) {
+        if (buckets == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, buckets.size() * CATEGORY_FIELDS);
+        for (CategoryBucketBean bucket : buckets) {
+            writeVarInt(out, bucket.getIntegrityErrors());
+            writeVarInt(out, bucket.getCongestion());
+            writeVarInt(out, bucket.getSmaCongestion());
+            writeVarInt(out, bucket.getBubble());
+            writeVarInt(out, bucket.getSecurityErrors());
+            writeVarInt(out, bucket.getRoutingErrors());
+        }
+    }
+
+    private static List<CategoryBucketBean> readCategoryBuckets(byte[] data,
+            int[] pos) {
+        List<Integer> values = readInts(data, pos);
+        List<CategoryBucketBean> res =
+                new ArrayList<CategoryBucketBean>(values.size()
+                        / CATEGORY_FIELDS);
+        for (int i = 0; i + CATEGORY_FIELDS <= values.size(); i +=
+                CATEGORY_FIELDS) {
+            res.add(new CategoryBucketBean(values.get(i), values.get(i + 1),
+                    values.get(i + 2), values.get(i + 3), values.get(i + 4),
+                    values.get(i + 5)));
+        }
+        return res;
+    }
+
+    private static List<Integer> readInts(byte[] data, int[] pos) {
+        int size = readVarInt(data, pos);
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        List<Integer> res = new ArrayList<Integer>(size);
+        for (int i = 0; i < size; i++) {
+            res.add(readVarInt(data, pos));
+        }
+        return res;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7f) != 0) {
+            out.write((zigzag & 0x7f) | 0x80);
+            zigzag >>>= 7;
+        }
+        out.write(zigzag);
+    }
+
+    private static int readVarInt(byte[] data, int[] pos) {
+        int zigzag = 0;
+        int shift = 0;
+        while (true) {
+            if (pos[0] >= data.length || shift > 28) {
+                throw new IllegalArgumentException(
+                        "Corrupted group info buckets");
+            }
+            byte b = data[pos[0]++];
+            zigzag |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
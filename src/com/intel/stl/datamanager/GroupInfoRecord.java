@@ -30,22 +30,23 @@ package com.intel.stl.datamanager;
 import static javax.persistence.FetchType.LAZY;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
 
-import javax.persistence.CollectionTable;
-import javax.persistence.ElementCollection;
+import javax.persistence.Column;
 import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
-import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinColumns;
 import javax.persistence.ManyToOne;
-import javax.persistence.OrderColumn;
 import javax.persistence.Table;
 
 import com.intel.stl.api.performance.GroupInfoBean;
 
+/**
+ * One sweep of performance data for a group. The bandwidth and error category
+ * buckets of the sweep are packed into a single binary column (see
+ * GroupInfoBuckets) so that saving a sweep is a single row insert and history
+ * reads are a range scan over this table only.
+ */
 @Entity
 @Table(name = "GROUP_INFOS")
 public class GroupInfoRecord implements Serializable {
@@ -65,26 +66,10 @@ public class GroupInfoRecord implements Serializable {
 
     private GroupInfoBean groupInfo;
 
-    @ElementCollection(fetch = FetchType.EAGER)
-    @OrderColumn
-    @CollectionTable(name = "GROUP_INFOS_INTERNAL_BWBUCKETS", joinColumns = {
-            @JoinColumn(name = "subnetId"), @JoinColumn(name = "groupName"),
-            @JoinColumn(name = "sweepTimestamp") })
-    private List<Integer> internalBwBuckets;
-
-    @ElementCollection(fetch = FetchType.EAGER)
-    @OrderColumn
-    @CollectionTable(name = "GROUP_INFOS_SEND_BWBUCKETS", joinColumns = {
-            @JoinColumn(name = "subnetId"), @JoinColumn(name = "groupName"),
-            @JoinColumn(name = "sweepTimestamp") })
-    private List<Integer> sendBwBuckets;
-
-    @ElementCollection(fetch = FetchType.EAGER)
-    @OrderColumn
-    @CollectionTable(name = "GROUP_INFOS_RECEIVE_BWBUCKETS", joinColumns = {
-            @JoinColumn(name = "subnetId"), @JoinColumn(name = "groupName"),
-            @JoinColumn(name = "sweepTimestamp") })
-    private List<Integer> receiveBwBuckets;
+    @Column(length = GroupInfoBuckets.MAX_LENGTH)
+    private byte[] buckets;
+
+    private transient boolean bucketsUnpacked;
 
     public GroupInfoRecord() {
     }
@@ -118,68 +103,31 @@ public class GroupInfoRecord implements Serializable {
     }
 
     public GroupInfoBean getGroupInfo() {
-        if (groupInfo.getInternalUtilStats() != null) {
-            groupInfo.getInternalUtilStats().setBwBuckets(internalBwBuckets);
-        }
-        if (groupInfo.getSendUtilStats() != null) {
-            groupInfo.getSendUtilStats().setBwBuckets(sendBwBuckets);
-        }
-        if (groupInfo.getRecvUtilStats() != null) {
-            groupInfo.getRecvUtilStats().setBwBuckets(receiveBwBuckets);
+        if (!bucketsUnpacked && groupInfo != null) {
+            GroupInfoBuckets.unpack(buckets, groupInfo);
+            bucketsUnpacked = true;
         }
         return groupInfo;
     }
 
     public void setGroupInfo(GroupInfoBean groupInfo) {
         if (groupInfo != null) {
-            if (groupInfo.getInternalUtilStats() != null) {
-                this.internalBwBuckets =
-                        groupInfo.getInternalUtilStats().getBwBuckets();
-            } else {
-                this.internalBwBuckets = new ArrayList<Integer>();
-            }
-            if (groupInfo.getSendUtilStats() != null) {
-                this.sendBwBuckets =
-                        groupInfo.getSendUtilStats().getBwBuckets();
-            } else {
-                this.sendBwBuckets = new ArrayList<Integer>();
-            }
-            if (groupInfo.getRecvUtilStats() != null) {
-                this.receiveBwBuckets =
-                        groupInfo.getRecvUtilStats().getBwBuckets();
-            } else {
-                this.receiveBwBuckets = new ArrayList<Integer>();
-            }
+            this.buckets = GroupInfoBuckets.pack(groupInfo);
         } else {
-            this.internalBwBuckets = new ArrayList<Integer>();
-            this.sendBwBuckets = new ArrayList<Integer>();
-            this.receiveBwBuckets = new ArrayList<Integer>();
+            this.buckets = null;
         }
         this.groupInfo = groupInfo;
+        // the bean already holds its buckets
+        this.bucketsUnpacked = true;
     }
 
-    public List<Integer> getInternalBwBuckets() {
-        return internalBwBuckets;
-    }
-
-    public void setInternalBwBuckets(List<Integer> internalBwBuckets) {
-        this.internalBwBuckets = internalBwBuckets;
-    }
-
-    public List<Integer> getSendBwBuckets() {
-        return sendBwBuckets;
-    }
-
-    public void setSendBwBuckets(List<Integer> sendBwBuckets) {
-        this.sendBwBuckets = sendBwBuckets;
-    }
-
-    public List<Integer> getReceiveBwBuckets() {
-        return receiveBwBuckets;
+    public byte[] getBuckets() {
+        return buckets;
     }
 
-    public void setReceiveBwBuckets(List<Integer> receiveBwBuckets) {
-        this.receiveBwBuckets = receiveBwBuckets;
+    public void setBuckets(byte[] buckets) {
+        this.buckets = buckets;
+        this.bucketsUnpacked = false;
     }
 
     @Override
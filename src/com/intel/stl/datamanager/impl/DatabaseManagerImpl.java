@@ -41,6 +41,7 @@ import static com.intel.stl.common.STLMessages.STL30011_ERROR_UPDATING_SCHEMA;
 
 import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -526,9 +527,16 @@ public class DatabaseManagerImpl implements DatabaseManager, AppComponent {
         return call.getResult();
     }
 
+    @Override
+    public void saveTopology(String subnetName, List<NodeRecordBean> nodes,
+            List<LinkRecordBean> links) throws SubnetDataNotFoundException {
+        saveTopology(subnetName, nodes.iterator(), links.iterator());
+    }
+
     @Override
     public void saveTopology(final String subnetName,
-            final List<NodeRecordBean> nodes, final List<LinkRecordBean> links)
+            final Iterator<NodeRecordBean> nodes,
+            final Iterator<LinkRecordBean> links)
                     throws SubnetDataNotFoundException {
         DatabaseCall<Void> call = new DatabaseCallImpl<Void>() {
 
@@ -751,6 +759,26 @@ public class DatabaseManagerImpl implements DatabaseManager, AppComponent {
         call.getResult();
     }
 
+    @Override
+    public List<ImageInfoBean> getImageInfo(final String subnetName,
+            final long imageNumber) throws PerformanceDataNotFoundException {
+        DatabaseCall<List<ImageInfoBean>> call =
+                new DatabaseCallImpl<List<ImageInfoBean>>() {
+
+                    @Override
+                    public List<ImageInfoBean> execute(DatabaseContext ctx)
+                            throws Exception {
+                        PerformanceDAO performanceDao =
+                                ctx.getPerformanceDAO();
+                        return performanceDao.getImageInfo(
+                                ctx.getSubnet(subnetName), imageNumber);
+                    }
+
+                };
+        scheduler.enqueue(call);
+        return call.getResult(PerformanceDataNotFoundException.class);
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -885,6 +913,27 @@ public class DatabaseManagerImpl implements DatabaseManager, AppComponent {
         call.getResult();
     }
 
+    @Override
+    public void updateNotices(final String subnetName,
+            final List<Long> noticeIds, final NoticeStatus noticeStatus) {
+        if (noticeIds.isEmpty()) {
+            return;
+        }
+        DatabaseCall<Void> call = new DatabaseCallImpl<Void>() {
+
+            @Override
+            public Void execute(DatabaseContext ctx) throws Exception {
+                NoticeDAO noticeDao = ctx.getNoticeDAO();
+                noticeDao.updateNotices(ctx.getSubnet(subnetName), noticeIds,
+                        noticeStatus);
+                return null;
+            }
+
+        };
+        scheduler.enqueue(call);
+        call.getResult();
+    }
+
     private void updateSchema(AppSettings settings, AppInfo appInfo)
             throws AppConfigurationException {
         int schemaLevel = settings.getAppSchemaLevel();
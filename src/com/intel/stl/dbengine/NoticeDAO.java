@@ -49,4 +49,7 @@ public interface NoticeDAO {
 
     void updateNotice(SubnetRecord subnet, long noticeId,
             NoticeStatus noticeStatus);
+
+    void updateNotices(SubnetRecord subnet, List<Long> noticeIds,
+            NoticeStatus noticeStatus);
 }
@@ -27,6 +27,7 @@
 
 package com.intel.stl.dbengine;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -58,7 +59,16 @@ public interface SubnetDAO {
     TopologyRecord saveTopology(String subnetName, List<NodeRecordBean> nodes,
             List<LinkRecordBean> links) throws SubnetDataNotFoundException;
 
-    TopologyRecord copyTopology(SubnetRecord subnet,
+    /**
+     * Description: same as saveTopology with lists, but nodes and links are
+     * consumed one at a time so they can be streamed from the FE. Each iterator
+     * is traversed only once.
+     */
+    TopologyRecord saveTopology(String subnetName,
+            Iterator<NodeRecordBean> nodes, Iterator<LinkRecordBean> links)
+            throws SubnetDataNotFoundException;
+
+    TopologyRecord applyTopologyChanges(SubnetRecord subnet,
             Set<TopologyNodeRecord> newNodes, Set<TopologyNodeRecord> updNodes,
             Set<TopologyLinkRecord> newLinks, Set<TopologyLinkRecord> updLinks);
 
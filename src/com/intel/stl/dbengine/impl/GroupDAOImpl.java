@@ -43,7 +43,9 @@ import static com.intel.stl.common.STLMessages.STL30054_GROUP_INFO_NOT_FOUND_TIM
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
@@ -72,7 +74,8 @@ public class GroupDAOImpl extends BaseDAO implements GroupDAO {
 
     protected static int BATCH_SIZE = 1000;
 
-    protected static int BATCH_DELETE = 100;
+    // Keep in sync with hibernate.jdbc.batch_size in persistence.xml
+    protected static int BATCH_INSERT = 50;
 
     public GroupDAOImpl(EntityManager entityManager) {
         super(entityManager);
@@ -285,6 +288,12 @@ public class GroupDAOImpl extends BaseDAO implements GroupDAO {
      * @see com.intel.stl.dbengine.GroupDAO#saveGroupInfo(java.lang.String,
      * java.lang.String, com.intel.stl.datamanager.GroupConfigRecord)
      */
+    /**
+     * Sweeps are inserted in JDBC batches (see hibernate.jdbc.batch_size); each
+     * sweep is a single GROUP_INFOS row since its buckets are packed into one
+     * column. Sweeps already in the database are found with one range query
+     * instead of a lookup per sweep.
+     */
     @Override
     public void saveGroupInfos(SubnetRecord subnet,
             List<GroupInfoBean> groupInfoBeans) {
@@ -292,36 +301,31 @@ public class GroupDAOImpl extends BaseDAO implements GroupDAO {
         keys.append(subnet.getSubnetDescription().getName());
         char separator = '|';
 
+        Set<String> existing = getGroupInfoKeys(subnet, groupInfoBeans);
         startTransaction();
-        long now = System.currentTimeMillis();
-        for (GroupInfoBean groupInfo : groupInfoBeans) {
-            GroupInfoRecord groupInfoRec = createGroupInfo(subnet, groupInfo);
-            GroupInfoRecord dbGroupInfo =
-                    em.find(GroupInfoRecord.class, groupInfoRec.getId());
-            if (dbGroupInfo == null) {
+        int pending = 0;
+        try {
+            for (GroupInfoBean groupInfo : groupInfoBeans) {
+                String key =
+                        getGroupInfoKey(groupInfo.getGroupName(),
+                                groupInfo.getTimestamp());
+                if (!existing.add(key)) {
+                    continue;
+                }
+                GroupInfoRecord groupInfoRec =
+                        createGroupInfo(subnet, groupInfo);
                 em.persist(groupInfoRec);
                 keys.append(separator);
-                GroupInfoId groupInfoId = groupInfoRec.getId();
-                if (groupInfoId != null) {
-                    GroupConfigId groupConfigId = groupInfoId.getGroupID();
-                    if (groupConfigId != null) {
-                        String subnetGroup = groupConfigId.getSubnetGroup();
-                        keys.append(subnetGroup);
-                        keys.append('-');
-                        keys.append(groupInfoRec.getGroupInfo().getTimestamp());
-                        separator = ',';
-                    } else {
-                        throw new RuntimeException(
-                                "groupConfigId is null in saveGroupInfos.");
-                    }
-                } else {
-                    throw new RuntimeException(
-                            "groupInfoId is null in saveGroupInfos.");
+                keys.append(key);
+                separator = ',';
+                pending += 1;
+                if (pending == BATCH_INSERT) {
+                    // send this JDBC batch and release the saved records
+                    flush();
+                    clear();
+                    pending = 0;
                 }
             }
-        }
-
-        try {
             commitTransaction();
         } catch (Exception e) {
             throw createPersistDatabaseException(e, GroupInfoRecord.class, keys);
@@ -330,49 +334,53 @@ public class GroupDAOImpl extends BaseDAO implements GroupDAO {
 
     @Override
     public int purgeGroupInfos(SubnetRecord subnet, Long ago) {
-        // Hibernate currently does not support cascading delete of
-        // ElementCollections for bulk deletes, we need then to delete record by
-        // record, which might be memory expensive. We batch deletions to
-        // improve performance.
-        int offset = 0;
-        int deleted = 0;
-        String select =
-                "select rec from GroupInfoRecord as rec where rec.id.groupId.fabricId = :subnetId and rec.id.sweepTimestamp < :stopTime";
-        TypedQuery<GroupInfoRecord> query =
-                em.createQuery(select, GroupInfoRecord.class);
-        query.setParameter("subnetId", subnet.getId());
+        // Buckets are stored in the GROUP_INFOS row itself, so there are no
+        // collection tables to cascade to and a bulk delete can be used.
+        String delete =
+                "delete from GroupInfoRecord as rec where rec.id.groupId.fabricId = :subnetId and rec.id.sweepTimestamp < :stopTime";
         long linuxTime = ago / 1000;
-        query.setParameter("stopTime", linuxTime);
-        query.setFirstResult(offset);
-        query.setMaxResults(BATCH_DELETE);
-        List<GroupInfoRecord> recs = query.getResultList();
+        startTransaction();
+        try {
+            int deleted =
+                    em.createQuery(delete)
+                            .setParameter("subnetId", subnet.getId())
+                            .setParameter("stopTime", linuxTime)
+                            .executeUpdate();
+            commitTransaction();
+            log.info("Deleted {} GroupInfo records before {}", deleted, ago);
+            return deleted;
+        } catch (Exception e) {
+            throw createPersistDatabaseException(e, GroupInfoRecord.class,
+                    subnet.getSubnetDescription().getName() + "|<" + ago);
+        }
+    }
 
-        while (recs.size() > 0) {
-            startTransaction();
-            StringBuffer keys = new StringBuffer();
-            char separator = '|';
-            for (GroupInfoRecord rec : recs) {
-                keys.append(separator);
-                keys.append(rec.getId().getGroupID().getSubnetGroup());
-                keys.append('-');
-                keys.append(rec.getGroupInfo().getTimestamp());
-                separator = ',';
-                em.remove(rec);
-            }
-            try {
-                deleted += recs.size();
-                flush();
-                clear();
-                commitTransaction();
-                log.info("Deleted {} GroupInfo records before {}", recs.size(),
-                        ago);
-                recs = query.getResultList();
-            } catch (Exception e) {
-                throw createPersistDatabaseException(e, GroupInfoRecord.class,
-                        keys);
-            }
+    private Set<String> getGroupInfoKeys(SubnetRecord subnet,
+            List<GroupInfoBean> groupInfoBeans) {
+        Set<String> res = new HashSet<String>();
+        if (groupInfoBeans.isEmpty()) {
+            return res;
+        }
+        long startTime = Long.MAX_VALUE;
+        long stopTime = Long.MIN_VALUE;
+        for (GroupInfoBean groupInfo : groupInfoBeans) {
+            startTime = Math.min(startTime, groupInfo.getTimestamp());
+            stopTime = Math.max(stopTime, groupInfo.getTimestamp());
+        }
+        String select =
+                "select rec.id.groupId.subnetGroup, rec.id.sweepTimestamp from GroupInfoRecord as rec where rec.id.groupId.fabricId = :subnetId and rec.id.sweepTimestamp between :startTime and :stopTime";
+        TypedQuery<Object[]> query = em.createQuery(select, Object[].class);
+        query.setParameter("subnetId", subnet.getId());
+        query.setParameter("startTime", startTime);
+        query.setParameter("stopTime", stopTime);
+        for (Object[] row : query.getResultList()) {
+            res.add(getGroupInfoKey((String) row[0], (Long) row[1]));
         }
-        return deleted;
+        return res;
+    }
+
+    private String getGroupInfoKey(String groupName, long timestamp) {
+        return groupName + '-' + timestamp;
     }
 
     /**
@@ -127,8 +127,9 @@ public class NoticeDAOImpl extends BaseDAO implements NoticeDAO {
          *    * If a record is already in the database, it must end up in the
          *      currTopoNodes set or the currLinks set, accordingly.
          *    * If any new TopologyNodeRecord or TopologyLinkRecord is created, a
-         *      copyTopology() is triggered (that is, a new topology is created);
-         *      otherwise, the database records are just updated.
+         *      applyTopologyChanges() is triggered (that is, the new records are
+         *      added to the current topology in place); otherwise, the database
+         *      records are just updated.
          */
         Set<NodeRecord> newNodes = new HashSet<NodeRecord>();
         Set<TopologyNodeRecord> newTopoNodes =
@@ -145,8 +146,8 @@ public class NoticeDAOImpl extends BaseDAO implements NoticeDAO {
                 (newTopoNodes.size() > 0 || newLinks.size() > 0);
 
         if (topologyChanged) {
-            subnetDAO.copyTopology(subnet, newTopoNodes, currTopoNodes,
-                    newLinks, currLinks);
+            subnetDAO.applyTopologyChanges(subnet, newTopoNodes,
+                    currTopoNodes, newLinks, currLinks);
         } else {
             updateTopology(newNodes, newTopoNodes, currTopoNodes, newLinks,
                     currLinks);
@@ -238,6 +239,33 @@ public class NoticeDAOImpl extends BaseDAO implements NoticeDAO {
         commitTransaction();
     }
 
+    @Override
+    public void updateNotices(SubnetRecord subnet, List<Long> noticeIds,
+            NoticeStatus noticeStatus) {
+        if (noticeIds.isEmpty()) {
+            return;
+        }
+        String update =
+                "update NoticeRecord as rec set rec.noticeStatus = :status where rec.id.fabricId = :subnetId and rec.id.noticeId in (:ids)";
+        startTransaction();
+        try {
+            for (int i = 0; i < noticeIds.size(); i += BATCH_SIZE) {
+                List<Long> ids =
+                        noticeIds.subList(i,
+                                Math.min(i + BATCH_SIZE, noticeIds.size()));
+                em.createQuery(update).setParameter("status", noticeStatus)
+                        .setParameter("subnetId", subnet.getId())
+                        .setParameter("ids", ids).executeUpdate();
+            }
+            // bulk updates bypass the persistence context
+            clear();
+            commitTransaction();
+        } catch (Exception e) {
+            throwPersistDatabaseException(e, "NoticeRecord", subnet
+                    .getSubnetDescription().getName() + "|" + noticeIds);
+        }
+    }
+
     private void prepareDatabaseData(TopologyRecord topology,
             List<NoticeProcess> notices, Set<NodeRecord> newNodes,
             Set<TopologyNodeRecord> newTopoNodes,
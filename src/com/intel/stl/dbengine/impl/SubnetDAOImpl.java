@@ -41,11 +41,8 @@ import static com.intel.stl.common.STLMessages.STL30033_NODE_NOT_FOUND_PORT_GUID
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.EnumMap;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.EntityManager;
@@ -64,17 +61,18 @@ import com.intel.stl.api.subnet.NodeRecordBean;
 import com.intel.stl.api.subnet.NodeType;
 import com.intel.stl.api.subnet.SubnetDataNotFoundException;
 import com.intel.stl.api.subnet.SubnetDescription;
+import com.intel.stl.common.LongObjectMap;
 import com.intel.stl.common.STLMessages;
 import com.intel.stl.datamanager.NodeRecord;
 import com.intel.stl.datamanager.NodeTypeRecord;
 import com.intel.stl.datamanager.SubnetRecord;
-import com.intel.stl.datamanager.TopologyLinkId;
 import com.intel.stl.datamanager.TopologyLinkRecord;
-import com.intel.stl.datamanager.TopologyNodeId;
 import com.intel.stl.datamanager.TopologyNodeRecord;
 import com.intel.stl.datamanager.TopologyRecord;
 import com.intel.stl.dbengine.DatabaseContext;
 import com.intel.stl.dbengine.SubnetDAO;
+import com.intel.stl.dbengine.impl.TopologyWriter.LinkRow;
+import com.intel.stl.dbengine.impl.TopologyWriter.NodeRow;
 
 public class SubnetDAOImpl extends BaseDAO implements SubnetDAO {
     private static Logger log = LoggerFactory.getLogger("org.hibernate.SQL");
@@ -348,35 +346,31 @@ public class SubnetDAOImpl extends BaseDAO implements SubnetDAO {
     public TopologyRecord saveTopology(String subnetName,
             List<NodeRecordBean> nodes, List<LinkRecordBean> links)
             throws SubnetDataNotFoundException {
+        return saveTopology(subnetName, nodes.iterator(), links.iterator());
+    }
+
+    @Override
+    public TopologyRecord saveTopology(String subnetName,
+            Iterator<NodeRecordBean> nodes, Iterator<LinkRecordBean> links)
+            throws SubnetDataNotFoundException {
         // To build the link set from the list of links, you need an updated
         // node set with updated LIDs, therefore we update first the node set
         // and then deal with the links
         SubnetRecord currSubnet = getSubnetWithException(subnetName);
-        TopologyRecord currTopo = currSubnet.getTopology();
-        if (currTopo == null) {
-            TopologyRecord newTopo = createTopology(currSubnet, nodes, links);
-            currTopo = newTopo;
-        } else {
-            TopologyRecord newTopo =
-                    createTopologyIfNeeded(currSubnet, nodes, links);
-            currTopo = newTopo;
-        }
-        return currTopo;
+        return writeTopology(currSubnet, nodes, links);
     }
 
     /**
      * 
-     * Description: Copy an existing topology into a new topology. Please note
-     * that this version of copyTopology is optimized for notice processing. In
-     * that processing, it is determined which nodes and links are new and which
-     * ones are already in the database. A more generic copyTopology would
-     * accept as parameters the name of the subnet and a LIST of nodes and a
-     * LIST of links, determine which ones need to be persisted (new) and which
-     * ones need to be merged (updated), but we'll leave that for when there is
-     * a need
+     * Description: applies changes to the current topology of a subnet in
+     * place. This is used by notice processing, which determines which nodes
+     * and links are new and which ones are already in the database. Only the
+     * new and updated nodes and links are written to the current topology, so
+     * the cost is proportional to the size of the change, not to the size of
+     * the fabric. No new topology version is created.
      * 
-     * @param subnetName
-     *            the name of the subnet whose topology is being copied
+     * @param subnet
+     *            the subnet whose current topology is updated
      * @param newNodes
      *            any new TopologyNodeRecords being added to the current
      *            topology
@@ -386,70 +380,65 @@ public class SubnetDAOImpl extends BaseDAO implements SubnetDAO {
      * @param newLinks
      *            any new TopologyLinkRecords being added to the current
      *            topology
-     * @param updNodes
+     * @param updLinks
      *            any existing TopologyLinkRecords that already exist in the
      *            database and need update
-     * @return
-     * @throws SubnetDataNotFoundException
+     * @return the updated topology
      */
     @Override
-    public TopologyRecord copyTopology(SubnetRecord subnet,
+    public TopologyRecord applyTopologyChanges(SubnetRecord subnet,
             Set<TopologyNodeRecord> newNodes, Set<TopologyNodeRecord> updNodes,
             Set<TopologyLinkRecord> newLinks, Set<TopologyLinkRecord> updLinks) {
 
         // SubnetRecord should have been verified previous to calling
-        // copyTopology so that a null doesn't happen here
+        // applyTopologyChanges so that a null doesn't happen here
         TopologyRecord topology = subnet.getTopology();
 
-        Set<TopologyNodeRecord> currNodes = topology.getNodes();
-        Set<TopologyLinkRecord> currLinks = topology.getLinks();
-        // The following two statements force an actual retrieval of nodes and
-        // links from the database
-        currNodes.size();
-        currLinks.size();
-        for (TopologyNodeRecord updNode : updNodes) {
-            currNodes.remove(updNode);
-            currNodes.add(updNode);
-            switch (updNode.getNode().getNode().getNodeType()) {
-                case HFI: {
-                    topology.setNumCAs(topology.getNumCAs() + 1);
-                    break;
-                }
-                case SWITCH: {
-                    topology.setNumSwitches(topology.getNumSwitches() + 1);
-                    break;
-                }
-                case ROUTER: {
-                    topology.setNumRouters(topology.getNumRouters() + 1);
-                    break;
-                }
-                case UNKNOWN: {
-                    topology.setNumUnknown(topology.getNumUnknown() + 1);
-                    break;
-                }
-                default:
-                    break;
+        startTransaction();
+        for (TopologyNodeRecord topoNode : newNodes) {
+            NodeRecord node = topoNode.getNode();
+            if (em.find(NodeRecord.class, node.getNodeGUID()) == null) {
+                em.persist(node);
             }
+            em.persist(topoNode);
+            addNodeCount(topology, node.getNode().getNodeType());
         }
-        for (TopologyLinkRecord updLink : updLinks) {
-            currLinks.remove(updLink);
-            currLinks.add(updLink);
+        for (TopologyNodeRecord topoNode : updNodes) {
+            em.merge(topoNode);
         }
-
-        startTransaction();
-
-        TopologyRecord newTopo = newTopology(topology);
-        em.persist(newTopo);
-        updateNodeSetWithTopology(currNodes, newTopo);
-        createNodeSet(newNodes, newTopo);
-        createLinkSet(currLinks, newTopo);
-        createLinkSet(newLinks, newTopo);
-
-        subnet.setTopology(newTopo);
-        em.merge(subnet);
-
+        for (TopologyLinkRecord topoLink : newLinks) {
+            em.persist(topoLink);
+        }
+        for (TopologyLinkRecord topoLink : updLinks) {
+            em.merge(topoLink);
+        }
+        em.merge(topology);
         commitTransaction();
-        return newTopo;
+        return topology;
+    }
+
+    private void addNodeCount(TopologyRecord topology, NodeType nodeType) {
+        topology.setNumNodes(topology.getNumNodes() + 1);
+        switch (nodeType) {
+            case HFI: {
+                topology.setNumCAs(topology.getNumCAs() + 1);
+                break;
+            }
+            case SWITCH: {
+                topology.setNumSwitches(topology.getNumSwitches() + 1);
+                break;
+            }
+            case ROUTER: {
+                topology.setNumRouters(topology.getNumRouters() + 1);
+                break;
+            }
+            case UNKNOWN: {
+                topology.setNumUnknown(topology.getNumUnknown() + 1);
+                break;
+            }
+            default:
+                break;
+        }
     }
 
     @Override
@@ -651,324 +640,173 @@ public class SubnetDAOImpl extends BaseDAO implements SubnetDAO {
         return currSubnet;
     }
 
-    private TopologyRecord createTopology(SubnetRecord subnet,
-            List<NodeRecordBean> nodes, List<LinkRecordBean> links) {
-        TopologyRecord topology = newTopology(null);
-        int size = nodes.size();
-        Map<Integer, Long> lidMap = new HashMap<Integer, Long>(size);
-        startTransaction();
-        em.persist(topology);
-        persistNodes(nodes, topology, lidMap);
-        persistLinks(links, topology, lidMap);
-        em.merge(topology);
-        subnet.setTopology(topology);
-        em.merge(subnet);
-        commitTransaction();
-        return topology;
-    }
-
     /**
      * 
-     * Description: For each node in a topology, create a TopologyNodeRecord and
-     * find a matching NodeRecord with the given nodeGUID from DB and if found,
-     * set it to the TopologyNodeRecord created. Otherwise, create a NodeRecord
-     * and save it to DB and set it to the TopologyNodeRecord created. Also set
-     * LID and other fields for this topology.
+     * Description: saves the topology of a subnet. Nodes and links are
+     * compared with the current topology (if any) using maps keyed by node
+     * GUID and link hash; a new topology is only created when nodes or links
+     * were added or removed. Otherwise only node LIDs and descriptions that
+     * changed are updated. Topology rows are read and written with JDBC
+     * batches through a TopologyWriter; only the topology record and new node
+     * records go through the entity manager.
      * 
-     * @param nodes
-     * @param topology
-     * @param lidMap
-     * @throws DatabaseException
+     * @param subnet
+     * @param nodeIt
+     * @param linkIt
+     * @return the current topology
      */
-    private void persistNodes(List<NodeRecordBean> nodes,
-            TopologyRecord topology, Map<Integer, Long> lidMap) {
-        long updates = 0;
-        long numNodes = 0;
+    private TopologyRecord writeTopology(SubnetRecord subnet,
+            Iterator<NodeRecordBean> nodeIt, Iterator<LinkRecordBean> linkIt) {
+        long start = System.currentTimeMillis();
+        TopologyRecord currTopology = subnet.getTopology();
+        TopologyWriter writer = new TopologyWriter(em);
+
+        // Phase 1: key the new nodes by GUID and LID, and the new links by the
+        // hash of their ends
+        LongObjectMap<NodeRow> newNodes = new LongObjectMap<NodeRow>();
+        LongObjectMap<NodeRow> lidMap = new LongObjectMap<NodeRow>();
         EnumMap<NodeType, Long> nodesTypeDist =
                 new EnumMap<NodeType, Long>(NodeType.class);
-
-        Iterator<NodeRecordBean> it = nodes.iterator();
-        while (it.hasNext()) {
-            // Create a TopologyNodeRecord (many to one) and find a matching
-            // NodeRecord with nodeGUID
-            // from DB and set it to the TopologyNodeRecord created.
-            TopologyNodeRecord topoNode = new TopologyNodeRecord();
-            topoNode.setTopology(topology);
-            NodeRecordBean node = it.next();
-            long nodeGUID = node.getNodeInfo().getNodeGUID();
-            int lid = node.getLid();
-            NodeRecord dbNode = em.find(NodeRecord.class, nodeGUID);
-            if (dbNode == null) {
-                NodeRecord nodeRec = new NodeRecord(node);
-                em.persist(nodeRec);
-                topoNode.setNode(nodeRec);
-                updates++;
-            } else {
-                topoNode.setNode(dbNode);
-            }
-            if (lidMap.containsKey(lid)) {
+        while (nodeIt.hasNext()) {
+            NodeRecordBean node = nodeIt.next();
+            NodeRow row = new NodeRow(node);
+            if (currTopology == null && lidMap.containsKey(row.getLid())) {
                 DatabaseException dbe =
                         new DatabaseException(STL30017_NODE_WITH_DUPLICATE_LID,
-                                nodeGUID, lid);
+                                row.getNodeGUID(), row.getLid());
                 log.error(dbe.getMessage());
                 log.error(node.toString());
                 throw dbe;
             }
-            lidMap.put(lid, nodeGUID);
-            topoNode.setLid(lid);
-            em.persist(topoNode);
-            updates++;
-            if (updates >= BATCH_SIZE) {
-                flush();
-                clear();
-                updates = 0;
+            lidMap.put(row.getLid(), row);
+            if (newNodes.containsKey(row.getNodeGUID())) {
+                continue;
             }
+            newNodes.put(row.getNodeGUID(), row);
             NodeType type = node.getNodeType();
             Long count = nodesTypeDist.get(type);
             nodesTypeDist.put(type, count == null ? 1 : (count + 1));
-            numNodes++;
         }
-        if (updates >= 0) {
-            flush();
-            clear();
-        }
-        topology.setNumNodes(numNodes);
-        Long numCAs = nodesTypeDist.get(NodeType.HFI);
-        topology.setNumCAs((numCAs == null) ? 0 : numCAs.longValue());
-        Long numSwitches = nodesTypeDist.get(NodeType.SWITCH);
-        topology.setNumSwitches((numSwitches == null) ? 0 : numSwitches
-                .longValue());
-        Long numRouters = nodesTypeDist.get(NodeType.ROUTER);
-        topology.setNumRouters((numRouters == null) ? 0 : numRouters.intValue());
-        Long numUnknown = nodesTypeDist.get(NodeType.UNKNOWN);
-        topology.setNumUnknown((numUnknown == null) ? 0 : numUnknown.intValue());
-    }
-
-    private void persistLinks(List<LinkRecordBean> links,
-            TopologyRecord topology, Map<Integer, Long> lidMap) {
-        long updates = 0;
-        Iterator<LinkRecordBean> it = links.iterator();
-        long topologyId = topology.getId();
-        while (it.hasNext()) {
-            LinkRecordBean link = it.next();
-            int fromLid = link.getFromLID();
-            int toLid = link.getToLID();
-            TopologyLinkRecord topoLink = new TopologyLinkRecord(link);
-            Long fromNode = getNodeGUIDByLid(fromLid, lidMap);
-            Long toNode = getNodeGUIDByLid(toLid, lidMap);
-            TopologyLinkId topoLinkId = topoLink.getId();
-            topoLinkId.setLinkTopology(topologyId);
-            topoLinkId.setSourceNode(fromNode.longValue());
-            topoLinkId.setTargetNode(toNode.longValue());
-            em.persist(topoLink);
-            updates++;
-            if (updates >= BATCH_SIZE) {
-                flush();
-                clear();
-                updates = 0;
+        LongObjectMap<LinkRow> newLinks = new LongObjectMap<LinkRow>();
+        int numNewLinks = 0;
+        while (linkIt.hasNext()) {
+            LinkRecordBean link = linkIt.next();
+            LinkRow row =
+                    new LinkRow(getNodeGUIDByLid(link.getFromLID(), lidMap),
+                            link.getFromPortIndex(), getNodeGUIDByLid(
+                                    link.getToLID(), lidMap),
+                            link.getToPortIndex(), link.isActive(), true);
+            if (LinkRow.add(newLinks, row)) {
+                numNewLinks += 1;
             }
         }
-        if (updates > 0) {
-            flush();
-            clear();
-        }
-    }
+        long parsed = System.currentTimeMillis();
 
-    private TopologyRecord createTopologyIfNeeded(SubnetRecord subnet,
-            List<NodeRecordBean> nodes, List<LinkRecordBean> links) {
-        int size = nodes.size();
-        TopologyRecord currTopology = subnet.getTopology();
-        Map<Integer, Long> lidMap = new HashMap<Integer, Long>(size);
-        Set<TopologyNodeRecord> newNodes =
-                getNodeSet(currTopology, nodes, lidMap);
-        Set<TopologyLinkRecord> newLinks =
-                getLinkSet(currTopology, links, lidMap);
-        Set<TopologyNodeRecord> currNodes = currTopology.getNodes();
-        Set<TopologyLinkRecord> currLinks = currTopology.getLinks();
-        Set<NodeRecord> updNodes = new HashSet<NodeRecord>();
-        boolean nodesNeedDeletion =
-                retainExistingNodes(currNodes, newNodes, updNodes);
-        boolean someNodesInTopology = newNodes.removeAll(currNodes);
-        boolean noNodeChanges =
-                !nodesNeedDeletion && someNodesInTopology
-                        && (newNodes.size() == 0);
-        boolean noLinkChanges;
-        if (currLinks.size() == 0 && newLinks.size() == 0) {
-            noLinkChanges = true;
+        // Phase 2: load the current topology
+        LongObjectMap<NodeRow> currNodes;
+        LongObjectMap<LinkRow> currLinks;
+        if (currTopology != null) {
+            currNodes = writer.loadNodes(currTopology.getId());
+            currLinks = writer.loadLinks(currTopology.getId());
         } else {
-            boolean linksNeedDeletion = currLinks.retainAll(newLinks);
-            boolean someLinksInTopology = newLinks.removeAll(currLinks);
-            noLinkChanges =
-                    !linksNeedDeletion && someLinksInTopology
-                            && (newLinks.size() == 0);
+            currNodes = new LongObjectMap<NodeRow>();
+            currLinks = new LongObjectMap<LinkRow>();
         }
-        startTransaction();
-        if (updNodes.size() > 0) {
-            for (NodeRecord node : updNodes) {
-                em.merge(node);
+        long loaded = System.currentTimeMillis();
+
+        // Phase 3: diff
+        boolean nodesRemoved = false;
+        int nodesKept = 0;
+        List<NodeRow> descUpdates = new ArrayList<NodeRow>();
+        List<NodeRow> lidUpdates = new ArrayList<NodeRow>();
+        for (NodeRow curr : currNodes.values()) {
+            NodeRow row = newNodes.get(curr.getNodeGUID());
+            if (row == null) {
+                nodesRemoved = true;
+                continue;
+            }
+            nodesKept += 1;
+            if (nodeDescNeedsUpdate(curr, row)) {
+                descUpdates.add(row);
+            }
+            if (curr.getLid() != row.getLid()) {
+                lidUpdates.add(row);
+            } else {
+                // unchanged nodes keep their state
+                row.setActive(curr.isActive());
+            }
+        }
+        boolean noNodeChanges =
+                !nodesRemoved && nodesKept > 0 && nodesKept == newNodes.size();
+
+        boolean linksRemoved = false;
+        int linksKept = 0;
+        for (LinkRow head : currLinks.values()) {
+            for (LinkRow curr = head; curr != null; curr = curr.getNext()) {
+                if (LinkRow.find(newLinks, curr) == null) {
+                    linksRemoved = true;
+                } else {
+                    linksKept += 1;
+                }
             }
         }
+        boolean noLinkChanges =
+                (currLinks.isEmpty() && newLinks.isEmpty())
+                        || (!linksRemoved && linksKept > 0 && linksKept == numNewLinks);
+        long diffed = System.currentTimeMillis();
+
+        // Phase 4: write
+        startTransaction();
+        writer.updateNodeDescs(descUpdates);
         if (noNodeChanges && noLinkChanges) {
             // Only update nodes whose LID have changed
-            updateNodeSet(currNodes);
+            writer.updateNodeLids(currTopology.getId(), lidUpdates);
         } else {
             TopologyRecord newTopo = newTopology(currTopology);
+            setTopologyCounts(newTopo, newNodes.size(), nodesTypeDist);
             em.persist(newTopo);
-            updateNodeSetWithTopology(currNodes, newTopo);
-            createNodeSet(newNodes, newTopo);
-            createLinkSet(currLinks, newTopo);
-            createLinkSet(newLinks, newTopo);
+            persistNewNodes(writer, newNodes, currNodes);
+            // the JDBC inserts below reference these records
+            flush();
+            writer.insertNodes(newTopo.getId(), newNodes.values());
+            writer.insertLinks(newTopo.getId(), newLinks.values());
             subnet.setTopology(newTopo);
             em.merge(subnet);
             currTopology = newTopo;
         }
         commitTransaction();
+        // rows were changed behind the entity manager's back
+        clear();
+        long written = System.currentTimeMillis();
+
+        log.info("Saved topology " + currTopology.getId() + " ("
+                + newNodes.size() + " nodes, " + numNewLinks + " links; "
+                + (noNodeChanges && noLinkChanges ? "unchanged" : "new")
+                + "): parse " + (parsed - start) + " ms, load "
+                + (loaded - parsed) + " ms, diff " + (diffed - loaded)
+                + " ms, write " + (written - diffed) + " ms");
         return currTopology;
     }
 
     /**
      * 
-     * Description: For a TopologyRecord, create a TopologyNodeRecord and a
-     * NodeRecord for each NodeRecordBean.
+     * Description: creates a NodeRecord for every node that has never been
+     * saved before
      * 
-     * @param topology
-     * @param nodes
-     * @param lidMap
-     * @return
      */
-    private Set<TopologyNodeRecord> getNodeSet(TopologyRecord topology,
-            List<NodeRecordBean> nodes, Map<Integer, Long> lidMap) {
-        int size = nodes.size();
-        Set<TopologyNodeRecord> set = new HashSet<TopologyNodeRecord>(size);
-        long numNodes = 0;
-        long numCAs = 0;
-        long numSwitches = 0;
-        int numRouters = 0;
-        int numUnknown = 0;
-        Iterator<NodeRecordBean> it = nodes.iterator();
-        while (it.hasNext()) {
-            NodeRecordBean node = it.next();
-            int lid = node.getLid();
-            long nodeGUID = node.getNodeInfo().getNodeGUID();
-            TopologyNodeRecord topoNode = new TopologyNodeRecord();
-            NodeRecord nodeRec = new NodeRecord(node);
-            topoNode.setTopology(topology);
-            topoNode.setNode(nodeRec);
-            topoNode.setLid(lid);
-            set.add(topoNode);
-            lidMap.put(new Integer(lid), new Long(nodeGUID));
-            switch (node.getNodeType()) {
-                case HFI: {
-                    numCAs++;
-                    break;
-                }
-                case SWITCH: {
-                    numSwitches++;
-                    break;
-                }
-                case ROUTER: {
-                    numRouters++;
-                    break;
-                }
-                case UNKNOWN: {
-                    numUnknown++;
-                    break;
-                }
-                default:
-                    break;
-            }
-            numNodes++;
-        }
-        topology.setNumNodes(numNodes);
-        topology.setNumCAs(numCAs);
-        topology.setNumSwitches(numSwitches);
-        topology.setNumRouters(numRouters);
-        topology.setNumUnknown(numUnknown);
-        return set;
-    }
-
-    private Set<TopologyLinkRecord> getLinkSet(TopologyRecord topology,
-            List<LinkRecordBean> links, Map<Integer, Long> lidMap) {
-        int size = links.size();
-        Set<TopologyLinkRecord> set = new HashSet<TopologyLinkRecord>(size);
-        Iterator<LinkRecordBean> it = links.iterator();
-        while (it.hasNext()) {
-            LinkRecordBean link = it.next();
-            int fromLid = link.getFromLID();
-            int toLid = link.getToLID();
-            TopologyLinkRecord topoLink = new TopologyLinkRecord(link);
-            topoLink.setTopology(topology);
-            Long fromNode = getNodeGUIDByLid(fromLid, lidMap);
-            Long toNode = getNodeGUIDByLid(toLid, lidMap);
-            TopologyLinkId id = topoLink.getId();
-            id.setSourceNode(fromNode.longValue());
-            id.setTargetNode(toNode.longValue());
-            set.add(topoLink);
-        }
-        return set;
-    }
-
-    private long getNodeGUIDByLid(int lid, Map<Integer, Long> lidMap) {
-        Integer targetLid = new Integer(lid);
-        Long nodeGUID = lidMap.get(targetLid);
-        if (nodeGUID == null) {
-            DatabaseException dbe =
-                    new DatabaseException(STL30018_NODE_NOT_FOUND_WITH_LID, lid);
-            throw dbe;
-        }
-        return nodeGUID.longValue();
-    }
-
-    private boolean retainExistingNodes(Set<TopologyNodeRecord> currNodes,
-            Set<TopologyNodeRecord> newNodes, Set<NodeRecord> updNodes) {
-        boolean nodesRemoved = false;
-        Iterator<TopologyNodeRecord> currit = currNodes.iterator();
-        while (currit.hasNext()) {
-            TopologyNodeRecord topoNode = currit.next();
-            Iterator<TopologyNodeRecord> newit = newNodes.iterator();
-            boolean found = false;
-            while (newit.hasNext()) {
-                TopologyNodeRecord newNode = newit.next();
-                if (topoNode.equals(newNode)) {
-                    if (nodeDescNeedsUpdate(topoNode, newNode)) {
-                        NodeRecord updNode = topoNode.getNode();
-                        updNode.getNode().setNodeDesc(
-                                newNode.getNode().getNode().getNodeDesc());
-                        updNodes.add(updNode);
-                    }
-                    if (topoNode.getLid() != newNode.getLid()) {
-                        topoNode.setLid(newNode.getLid());
-                        topoNode.setLidChanged(true);
-                        topoNode.setActive(newNode.isActive());
-                    }
-                    found = true;
-                    break;
-                }
+    private void persistNewNodes(TopologyWriter writer,
+            LongObjectMap<NodeRow> newNodes, LongObjectMap<NodeRow> currNodes) {
+        LongObjectMap<Boolean> savedNodes = null;
+        long updates = 0;
+        for (NodeRow row : newNodes.values()) {
+            if (currNodes.containsKey(row.getNodeGUID())) {
+                continue;
             }
-            if (!found) {
-                currit.remove();
-                nodesRemoved = true;
+            if (savedNodes == null) {
+                savedNodes = writer.loadNodeGUIDs();
             }
-
-        }
-        return nodesRemoved;
-    }
-
-    private boolean nodeDescNeedsUpdate(TopologyNodeRecord currNode,
-            TopologyNodeRecord newNode) {
-        NodeRecordBean currBean = currNode.getNode().getNode();
-        NodeRecordBean newBean = newNode.getNode().getNode();
-        return !currBean.getNodeDesc().equals(newBean.getNodeDesc());
-    }
-
-    private void updateNodeSet(Set<TopologyNodeRecord> nodes) {
-        log.debug("updateNodeSet - num nodes: " + nodes.size());
-        long updates = 0;
-        Iterator<TopologyNodeRecord> it = nodes.iterator();
-        while (it.hasNext()) {
-            TopologyNodeRecord topoNode = it.next();
-            if (topoNode.isLidChanged()) {
-                em.merge(topoNode);
+            if (!savedNodes.containsKey(row.getNodeGUID())) {
+                em.persist(new NodeRecord(row.getNode()));
                 updates++;
                 if (updates >= BATCH_SIZE) {
                     flush();
@@ -977,131 +815,36 @@ public class SubnetDAOImpl extends BaseDAO implements SubnetDAO {
                 }
             }
         }
-        if (updates > 0) {
-            flush();
-            clear();
-        }
     }
 
-    /**
-     * 
-     * Description: For a new topology, create a new set of TopologyNodeRecord
-     * using the set of TopologyNodeRecord in current topology and persist them.
-     * Note that only 'TopologyId' and 'Id' will be changed for a new
-     * ToplogyNodeRecord from current one.
-     * 
-     * 
-     * @param nodes
-     * @param topology
-     */
-    private void updateNodeSetWithTopology(Set<TopologyNodeRecord> nodes,
-            TopologyRecord topology) {
-        long newTopologyId = topology.getId();
-        log.debug("updateNodeSetWithTopology - topologyId: " + topology.getId()
-                + "; num nodes: " + nodes.size());
-        long updates = 0;
-        Iterator<TopologyNodeRecord> it = nodes.iterator();
-        while (it.hasNext()) {
-            TopologyNodeRecord topoNode = it.next();
-            TopologyNodeRecord newTopoNode = new TopologyNodeRecord();
-            TopologyNodeId newId = newTopoNode.getId();
-            newId.setTopologyId(newTopologyId);
-            newId.setTopologyNode(topoNode.getId().getTopologyNode());
-            newTopoNode.setId(newId);
-            newTopoNode.setLid(topoNode.getLid());
-            newTopoNode.setActive(topoNode.isActive());
-            em.persist(newTopoNode);
-            updates++;
-            if (updates >= BATCH_SIZE) {
-                flush();
-                clear();
-                updates = 0;
-            }
-        }
-        if (updates > 0) {
-            flush();
-            clear();
-        }
-    }
-
-    protected void createNodeSet(Set<TopologyNodeRecord> nodes,
-            TopologyRecord topology) {
-        log.debug("Number of new nodes being created: " + nodes.size());
-        long updates = 0;
-        Iterator<TopologyNodeRecord> it = nodes.iterator();
-        while (it.hasNext()) {
-            TopologyNodeRecord topoNode = it.next();
-            topoNode.setTopology(topology);
-            NodeRecord node = topoNode.getNode();
-            NodeRecord dbNode = em.find(NodeRecord.class, node.getNodeGUID());
-            if (dbNode != null) {
-                topoNode.setNode(dbNode);
-            } else {
-                em.persist(node);
-            }
-            em.persist(topoNode);
-            updates++;
-            if (updates >= BATCH_SIZE) {
-                flush();
-                clear();
-                updates = 0;
-            }
-        }
-        if (updates > 0) {
-            flush();
-            clear();
-        }
+    private boolean nodeDescNeedsUpdate(NodeRow currNode, NodeRow newNode) {
+        String currDesc = currNode.getNodeDesc();
+        return currDesc == null ? newNode.getNodeDesc() != null : !currDesc
+                .equals(newNode.getNodeDesc());
     }
 
-    protected void createNode(TopologyNodeRecord newNode,
-            TopologyRecord topology) {
-        log.debug("New node with LID = " + newNode.getLid()
-                + " being created: ");
-
-        newNode.setTopology(topology);
-        NodeRecord node = newNode.getNode();
-        NodeRecord dbNode = em.find(NodeRecord.class, node.getNodeGUID());
-        if (dbNode != null) {
-            newNode.setNode(dbNode);
-        } else {
-            em.persist(node);
-        }
-        em.persist(newNode);
-
+    private void setTopologyCounts(TopologyRecord topology, long numNodes,
+            EnumMap<NodeType, Long> nodesTypeDist) {
+        topology.setNumNodes(numNodes);
+        Long numCAs = nodesTypeDist.get(NodeType.HFI);
+        topology.setNumCAs((numCAs == null) ? 0 : numCAs.longValue());
+        Long numSwitches = nodesTypeDist.get(NodeType.SWITCH);
+        topology.setNumSwitches((numSwitches == null) ? 0 : numSwitches
+                .longValue());
+        Long numRouters = nodesTypeDist.get(NodeType.ROUTER);
+        topology.setNumRouters((numRouters == null) ? 0 : numRouters.intValue());
+        Long numUnknown = nodesTypeDist.get(NodeType.UNKNOWN);
+        topology.setNumUnknown((numUnknown == null) ? 0 : numUnknown.intValue());
     }
 
-    protected void createLinkSet(Set<TopologyLinkRecord> links,
-            TopologyRecord topology) {
-        long topologyId = topology.getId();
-        log.debug("createLinkSet - topologyId: " + topologyId + "; num nodes: "
-                + links.size());
-        long updates = 0;
-        Iterator<TopologyLinkRecord> it = links.iterator();
-        while (it.hasNext()) {
-            TopologyLinkRecord topoLink = it.next();
-            TopologyLinkId linkId = topoLink.getId();
-            NodeRecord fromNode =
-                    em.getReference(NodeRecord.class, linkId.getSourceNode());
-            NodeRecord toNode =
-                    em.getReference(NodeRecord.class, linkId.getTargetNode());
-            TopologyLinkRecord tlr = new TopologyLinkRecord();
-            tlr.setTopology(topology);
-            tlr.setFromNode(fromNode);
-            tlr.setFromPort(linkId.getSourcePort());
-            tlr.setToNode(toNode);
-            tlr.setToPort(topoLink.getToPort());
-            em.persist(tlr);
-            updates++;
-            if (updates >= BATCH_SIZE) {
-                flush();
-                clear();
-                updates = 0;
-            }
-        }
-        if (updates > 0) {
-            flush();
-            clear();
+    private long getNodeGUIDByLid(int lid, LongObjectMap<NodeRow> lidMap) {
+        NodeRow node = lidMap.get(lid);
+        if (node == null) {
+            DatabaseException dbe =
+                    new DatabaseException(STL30018_NODE_NOT_FOUND_WITH_LID, lid);
+            throw dbe;
         }
+        return node.getNodeGUID();
     }
 
     private TopologyRecord newTopology(TopologyRecord oldTopology) {
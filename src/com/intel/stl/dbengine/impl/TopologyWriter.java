@@ -0,0 +1,526 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.dbengine.impl;
+
+import static com.intel.stl.common.STLMessages.STL30006_SQLEXCEPTION;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.intel.stl.api.DatabaseException;
+import com.intel.stl.api.StringUtils;
+import com.intel.stl.api.subnet.NodeRecordBean;
+import com.intel.stl.common.LongObjectMap;
+
+/**
+ * Bulk reads and writes of topology nodes and links with plain JDBC. Topology
+ * rows are inserted and updated in bulk and are not needed as managed entities
+ * while a topology is saved, so they bypass Hibernate: reads go straight into
+ * maps with primitive keys, and inserts and updates are sent as JDBC batches
+ * on the connection of the current transaction. Anything else the statements rely on
+ * (the topology record, new node records) must be flushed before calling the
+ * write methods.
+ */
+public class TopologyWriter {
+    private static Logger log = LoggerFactory.getLogger(TopologyWriter.class);
+
+    public static final int BATCH_SIZE = 1000;
+
+    private static final String SELECT_NODES =
+            "SELECT tn.nodeGUID, tn.lid, tn.active, n.nodeDesc FROM TOPOLOGIES_NODES tn JOIN NODES n ON n.nodeGUID = tn.nodeGUID WHERE tn.topologyId = ?";
+
+    private static final String SELECT_LINKS =
+            "SELECT fromNodeGUID, fromPort, toNodeGUID, toPort, active, fromPortActive FROM TOPOLOGIES_LINKS WHERE topologyId = ?";
+
+    private static final String SELECT_NODE_GUIDS =
+            "SELECT nodeGUID FROM NODES";
+
+    private static final String INSERT_NODE =
+            "INSERT INTO TOPOLOGIES_NODES (topologyId, nodeGUID, lid, active) VALUES (?, ?, ?, ?)";
+
+    private static final String INSERT_LINK =
+            "INSERT INTO TOPOLOGIES_LINKS (topologyId, fromNodeGUID, fromPort, toNodeGUID, toPort, active, fromPortActive) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_NODE_LID =
+            "UPDATE TOPOLOGIES_NODES SET lid = ?, active = ? WHERE topologyId = ? AND nodeGUID = ?";
+
+    private static final String UPDATE_NODE_DESC =
+            "UPDATE NODES SET nodeDesc = ? WHERE nodeGUID = ?";
+
+    private final EntityManager em;
+
+    public TopologyWriter(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> loads the nodes of a topology, with their node
+     * descriptions
+     * 
+     * @param topologyId
+     * @return the nodes keyed by node GUID
+     */
+    public LongObjectMap<NodeRow> loadNodes(final long topologyId) {
+        final LongObjectMap<NodeRow> res = new LongObjectMap<NodeRow>();
+        execute(new Work() {
+            @Override
+            public void execute(Connection conn) throws SQLException {
+                PreparedStatement stmt = conn.prepareStatement(SELECT_NODES);
+                try {
+                    stmt.setLong(1, topologyId);
+                    ResultSet rs = stmt.executeQuery();
+                    while (rs.next()) {
+                        NodeRow row =
+                                new NodeRow(rs.getLong(1), rs.getInt(2),
+                                        rs.getBoolean(3), rs.getString(4));
+                        res.put(row.getNodeGUID(), row);
+                    }
+                    rs.close();
+                } finally {
+                    stmt.close();
+                }
+            }
+        });
+        return res;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> loads the links of a topology
+     * 
+     * @param topologyId
+     * @return the links keyed by {@link LinkRow#getKey()}
+     */
+    public LongObjectMap<LinkRow> loadLinks(final long topologyId) {
+        final LongObjectMap<LinkRow> res = new LongObjectMap<LinkRow>();
+        execute(new Work() {
+            @Override
+            public void execute(Connection conn) throws SQLException {
+                PreparedStatement stmt = conn.prepareStatement(SELECT_LINKS);
+                try {
+                    stmt.setLong(1, topologyId);
+                    ResultSet rs = stmt.executeQuery();
+                    while (rs.next()) {
+                        LinkRow row =
+                                new LinkRow(rs.getLong(1), rs.getShort(2),
+                                        rs.getLong(3), rs.getShort(4),
+                                        rs.getBoolean(5), rs.getBoolean(6));
+                        LinkRow.add(res, row);
+                    }
+                    rs.close();
+                } finally {
+                    stmt.close();
+                }
+            }
+        });
+        return res;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> loads the GUIDs of all nodes ever saved, to find out
+     * which nodes need a new NODES record
+     * 
+     * @return the node GUIDs as keys
+     */
+    public LongObjectMap<Boolean> loadNodeGUIDs() {
+        final LongObjectMap<Boolean> res = new LongObjectMap<Boolean>();
+        execute(new Work() {
+            @Override
+            public void execute(Connection conn) throws SQLException {
+                PreparedStatement stmt =
+                        conn.prepareStatement(SELECT_NODE_GUIDS);
+                try {
+                    ResultSet rs = stmt.executeQuery();
+                    while (rs.next()) {
+                        res.put(rs.getLong(1), Boolean.TRUE);
+                    }
+                    rs.close();
+                } finally {
+                    stmt.close();
+                }
+            }
+        });
+        return res;
+    }
+
+    public void insertNodes(final long topologyId,
+            final Collection<NodeRow> nodes) {
+        if (nodes.isEmpty()) {
+            return;
+        }
+        execute(new Work() {
+            @Override
+            public void execute(Connection conn) throws SQLException {
+                PreparedStatement stmt = conn.prepareStatement(INSERT_NODE);
+                try {
+                    int pending = 0;
+                    for (NodeRow node : nodes) {
+                        stmt.setLong(1, topologyId);
+                        stmt.setLong(2, node.getNodeGUID());
+                        stmt.setInt(3, node.getLid());
+                        stmt.setBoolean(4, node.isActive());
+                        pending = addBatch(stmt, pending);
+                    }
+                    if (pending > 0) {
+                        stmt.executeBatch();
+                    }
+                } finally {
+                    stmt.close();
+                }
+            }
+        });
+    }
+
+    public void insertLinks(final long topologyId,
+            final Collection<LinkRow> links) {
+        if (links.isEmpty()) {
+            return;
+        }
+        execute(new Work() {
+            @Override
+            public void execute(Connection conn) throws SQLException {
+                PreparedStatement stmt = conn.prepareStatement(INSERT_LINK);
+                try {
+                    int pending = 0;
+                    for (LinkRow link : links) {
+                        // links that collide on their hash key are chained
+                        for (LinkRow row = link; row != null; row = row.next) {
+                            stmt.setLong(1, topologyId);
+                            stmt.setLong(2, row.getFromNodeGUID());
+                            stmt.setShort(3, row.getFromPort());
+                            stmt.setLong(4, row.getToNodeGUID());
+                            stmt.setShort(5, row.getToPort());
+                            stmt.setBoolean(6, row.isActive());
+                            stmt.setBoolean(7, row.isFromPortActive());
+                            pending = addBatch(stmt, pending);
+                        }
+                    }
+                    if (pending > 0) {
+                        stmt.executeBatch();
+                    }
+                } finally {
+                    stmt.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * 
+     * <i>Description:</i> updates the LID and state of existing topology nodes
+     * 
+     * @param topologyId
+     * @param nodes
+     */
+    public void updateNodeLids(final long topologyId,
+            final Collection<NodeRow> nodes) {
+        if (nodes.isEmpty()) {
+            return;
+        }
+        execute(new Work() {
+            @Override
+            public void execute(Connection conn) throws SQLException {
+                PreparedStatement stmt =
+                        conn.prepareStatement(UPDATE_NODE_LID);
+                try {
+                    int pending = 0;
+                    for (NodeRow node : nodes) {
+                        stmt.setInt(1, node.getLid());
+                        stmt.setBoolean(2, node.isActive());
+                        stmt.setLong(3, topologyId);
+                        stmt.setLong(4, node.getNodeGUID());
+                        pending = addBatch(stmt, pending);
+                    }
+                    if (pending > 0) {
+                        stmt.executeBatch();
+                    }
+                } finally {
+                    stmt.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * 
+     * <i>Description:</i> updates the description of existing nodes
+     * 
+     * @param nodes
+     */
+    public void updateNodeDescs(final Collection<NodeRow> nodes) {
+        if (nodes.isEmpty()) {
+            return;
+        }
+        execute(new Work() {
+            @Override
+            public void execute(Connection conn) throws SQLException {
+                PreparedStatement stmt =
+                        conn.prepareStatement(UPDATE_NODE_DESC);
+                try {
+                    int pending = 0;
+                    for (NodeRow node : nodes) {
+                        stmt.setString(1, node.getNodeDesc());
+                        stmt.setLong(2, node.getNodeGUID());
+                        pending = addBatch(stmt, pending);
+                    }
+                    if (pending > 0) {
+                        stmt.executeBatch();
+                    }
+                } finally {
+                    stmt.close();
+                }
+            }
+        });
+    }
+
+    private int addBatch(PreparedStatement stmt, int pending)
+            throws SQLException {
+        stmt.addBatch();
+        pending += 1;
+        if (pending >= BATCH_SIZE) {
+            stmt.executeBatch();
+            pending = 0;
+        }
+        return pending;
+    }
+
+    private void execute(Work work) {
+        try {
+            em.unwrap(Session.class).doWork(work);
+        } catch (RuntimeException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                SQLException sqle = (SQLException) cause;
+                DatabaseException dbe =
+                        new DatabaseException(STL30006_SQLEXCEPTION, sqle,
+                                sqle.getErrorCode(),
+                                StringUtils.getErrorMessage(sqle));
+                log.error(dbe.getMessage(), sqle);
+                throw dbe;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A node of a topology
+     */
+    public static class NodeRow {
+        private final long nodeGUID;
+
+        private final int lid;
+
+        private boolean active;
+
+        private final String nodeDesc;
+
+        private final NodeRecordBean node;
+
+        public NodeRow(NodeRecordBean node) {
+            this.nodeGUID = node.getNodeInfo().getNodeGUID();
+            this.lid = node.getLid();
+            this.active = node.isActive();
+            this.nodeDesc = node.getNodeDesc();
+            this.node = node;
+        }
+
+        public NodeRow(long nodeGUID, int lid, boolean active, String nodeDesc) {
+            this.nodeGUID = nodeGUID;
+            this.lid = lid;
+            this.active = active;
+            this.nodeDesc = nodeDesc;
+            this.node = null;
+        }
+
+        public long getNodeGUID() {
+            return nodeGUID;
+        }
+
+        public int getLid() {
+            return lid;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public void setActive(boolean active) {
+            this.active = active;
+        }
+
+        public String getNodeDesc() {
+            return nodeDesc;
+        }
+
+        /**
+         * @return the node this row was created from; null for rows loaded
+         *         from the database
+         */
+        public NodeRecordBean getNode() {
+            return node;
+        }
+    }
+
+    /**
+     * A link of a topology. Links are keyed by a 64-bit hash of both ends;
+     * links whose hashes collide are chained through {@link #next}.
+     */
+    public static class LinkRow {
+        private final long fromNodeGUID;
+
+        private final short fromPort;
+
+        private final long toNodeGUID;
+
+        private final short toPort;
+
+        private final boolean active;
+
+        private final boolean fromPortActive;
+
+        private LinkRow next;
+
+        public LinkRow(long fromNodeGUID, short fromPort, long toNodeGUID,
+                short toPort, boolean active, boolean fromPortActive) {
+            this.fromNodeGUID = fromNodeGUID;
+            this.fromPort = fromPort;
+            this.toNodeGUID = toNodeGUID;
+            this.toPort = toPort;
+            this.active = active;
+            this.fromPortActive = fromPortActive;
+        }
+
+        public long getFromNodeGUID() {
+            return fromNodeGUID;
+        }
+
+        public short getFromPort() {
+            return fromPort;
+        }
+
+        public long getToNodeGUID() {
+            return toNodeGUID;
+        }
+
+        public short getToPort() {
+            return toPort;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public boolean isFromPortActive() {
+            return fromPortActive;
+        }
+
+        /**
+         * @return the next link with the same key, or null
+         */
+        public LinkRow getNext() {
+            return next;
+        }
+
+        public long getKey() {
+            long h = fromNodeGUID * 0x9E3779B97F4A7C15L + fromPort;
+            h = (h ^ (h >>> 29)) * 0xBF58476D1CE4E5B9L + toNodeGUID;
+            h = (h ^ (h >>> 32)) * 0x94D049BB133111EBL + toPort;
+            return h ^ (h >>> 31);
+        }
+
+        public boolean sameLink(LinkRow other) {
+            return fromNodeGUID == other.fromNodeGUID
+                    && fromPort == other.fromPort
+                    && toNodeGUID == other.toNodeGUID
+                    && toPort == other.toPort;
+        }
+
+        /**
+         * 
+         * <i>Description:</i> adds a link to a map of links; a link already in
+         * the map is not added again
+         * 
+         * @param links
+         *            the links keyed by {@link #getKey()}
+         * @param link
+         *            the link to add
+         * @return true if the link was added
+         */
+        public static boolean add(LongObjectMap<LinkRow> links, LinkRow link) {
+            long key = link.getKey();
+            LinkRow row = links.get(key);
+            if (row == null) {
+                links.put(key, link);
+                return true;
+            }
+            while (true) {
+                if (row.sameLink(link)) {
+                    return false;
+                }
+                if (row.next == null) {
+                    row.next = link;
+                    return true;
+                }
+                row = row.next;
+            }
+        }
+
+        /**
+         * 
+         * <i>Description:</i> finds the same link in a map of links
+         * 
+         * @param links
+         *            the links keyed by {@link #getKey()}
+         * @param link
+         *            the link to look for
+         * @return the link in the map, or null if it is not there
+         */
+        public static LinkRow find(LongObjectMap<LinkRow> links, LinkRow link) {
+            for (LinkRow row = links.get(link.getKey()); row != null; row =
+                    row.next) {
+                if (row.sameLink(link)) {
+                    return row;
+                }
+            }
+            return null;
+        }
+    }
+}
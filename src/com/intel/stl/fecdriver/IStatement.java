@@ -26,6 +26,7 @@
  */
 package com.intel.stl.fecdriver;
 
+import java.util.Iterator;
 import java.util.List;
 
 import com.intel.stl.api.subnet.SubnetDescription;
@@ -52,6 +53,36 @@ public interface IStatement {
     <F, E extends IResponse<F>> F execute(SingleResponseCommand<F, E> cmd)
             throws Exception;
 
+    /**
+     * 
+     * <i>Description:</i> streaming variant of
+     * {@link #execute(MultipleResponseCommand)}. Records are decoded one at a
+     * time as the returned iterator is consumed, so callers can process a
+     * record and drop it instead of holding the whole result list.
+     * 
+     * @param cmd
+     * @return an iterator over the results
+     * @throws Exception
+     */
+    <F, E extends IResponse<F>> Iterator<F> stream(
+            MultipleResponseCommand<F, E> cmd) throws Exception;
+
     <E extends IResponse<F>, F> void submit(ICommand<E, F> cmd)
             throws Exception;
+
+    /**
+     * 
+     * <i>Description:</i> waits for the result of a command previously sent
+     * through {@link #submit(ICommand)}, with the same timeout handling as
+     * {@link #execute(SingleResponseCommand)}. Submitting several commands
+     * before waiting on any of them lets them be pipelined across the
+     * connection pool.
+     * 
+     * @param cmd
+     *            a submitted command
+     * @return the result
+     * @throws Exception
+     */
+    <F, E extends IResponse<F>> F getResult(SingleResponseCommand<F, E> cmd)
+            throws Exception;
 }
@@ -27,6 +27,7 @@
 
 package com.intel.stl.fecdriver;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -37,4 +38,26 @@ public interface MultipleResponseCommand<F, E extends IResponse<F>> extends
 
     List<F> getResults(long timeout, TimeUnit unit) throws Exception;
 
+    /**
+     * 
+     * <i>Description:</i> asks the response to keep the raw records and decode
+     * them on iteration instead of building a result list. Must be set before
+     * the command is submitted.
+     * 
+     * @param streaming
+     */
+    void setStreaming(boolean streaming);
+
+    /**
+     * 
+     * <i>Description:</i> waits for the response and returns an iterator that
+     * decodes the records as they are consumed
+     * 
+     * @param timeout
+     * @param unit
+     * @return an iterator over the results
+     * @throws Exception
+     */
+    Iterator<F> getIterator(long timeout, TimeUnit unit) throws Exception;
+
 }
@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.fecdriver.dispatcher;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pooling policy that assigns each command to the least loaded connection and
+ * resizes the pool according to the observed request latency.
+ * 
+ * The base pool size follows the number of sessions like
+ * ConnectionPoolingPolicy. On top of that, when every connection is busy and
+ * requests take longer than the high watermark (for example, small port
+ * queries stuck behind a large topology response), one more connection is
+ * added. Extra connections are released one at a time when latency falls
+ * below the low watermark and some connections are idle. Idle connections
+ * without a response in the last adjust interval don't count towards the
+ * latency, so an idle pool releases its extra connections.
+ */
+public class AdaptivePoolingPolicy implements IPoolingPolicy<Connection> {
+    private static Logger log =
+            LoggerFactory.getLogger(AdaptivePoolingPolicy.class);
+
+    public static final long DEFAULT_HIGH_LATENCY = 1000; // ms
+
+    public static final long DEFAULT_LOW_LATENCY = 100; // ms
+
+    public static final long DEFAULT_ADJUST_INTERVAL = 5000; // ms
+
+    private final int maxPoolSize;
+
+    private final int minPoolSize;
+
+    private final long highLatency;
+
+    private final long lowLatency;
+
+    private final long adjustInterval;
+
+    private int extraConnections = 0;
+
+    private long lastAdjustTime = 0;
+
+    private int nextConnection = -1;
+
+    public AdaptivePoolingPolicy(int maxPoolSize, int minPoolSize) {
+        this(maxPoolSize, minPoolSize, DEFAULT_HIGH_LATENCY,
+                DEFAULT_LOW_LATENCY, DEFAULT_ADJUST_INTERVAL);
+    }
+
+    public AdaptivePoolingPolicy(int maxPoolSize, int minPoolSize,
+            long highLatency, long lowLatency, long adjustInterval) {
+        this.maxPoolSize = maxPoolSize;
+        this.minPoolSize = minPoolSize;
+        this.highLatency = highLatency;
+        this.lowLatency = lowLatency;
+        this.adjustInterval = adjustInterval;
+    }
+
+    @Override
+    public int calculateNumHandlers(int currNumConns, int currNumSessions) {
+        return getTargetPoolSize(currNumSessions) - currNumConns;
+    }
+
+    @Override
+    public int adjustNumHandlers(List<Connection> conns, int currNumSessions) {
+        long now = System.currentTimeMillis();
+        if (now - lastAdjustTime < adjustInterval) {
+            return 0;
+        }
+        lastAdjustTime = now;
+
+        int numConns = conns.size();
+        int connected = 0;
+        int busy = 0;
+        int sampled = 0;
+        double latency = 0;
+        for (int i = 0; i < numConns; i++) {
+            Connection conn = conns.get(i);
+            if (conn.isClosing() || !conn.isConnected()) {
+                continue;
+            }
+            connected += 1;
+            boolean inUse = conn.getInFlight() > 0;
+            if (inUse) {
+                busy += 1;
+            }
+            ConnectionStatistics stats = conn.getStatistics();
+            if (inUse || now - stats.getLastLatencyTime() < adjustInterval) {
+                // the average of a connection idle since then is out of date
+                latency += stats.getAverageLatency();
+                sampled += 1;
+            }
+        }
+        if (connected == 0 || connected < numConns) {
+            // pool is still being established; wait for it to settle
+            return 0;
+        }
+        if (sampled > 0) {
+            latency = latency / sampled;
+        }
+
+        int base = getBasePoolSize(currNumSessions);
+        if (latency > highLatency && busy == connected
+                && base + extraConnections < maxPoolSize) {
+            extraConnections += 1;
+            log.info("Average latency {}ms with all {} connections busy; "
+                    + "growing pool", (long) latency, connected);
+        } else if (latency < lowLatency && busy < connected
+                && extraConnections > 0) {
+            extraConnections -= 1;
+            log.info("Average latency {}ms with {} idle connections; "
+                    + "shrinking pool", (long) latency, connected - busy);
+        }
+        return getTargetPoolSize(currNumSessions) - numConns;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> returns the connection with the fewest commands
+     * waiting for a response. Ties are broken in favor of connected
+     * connections and of connections that are not in the middle of receiving
+     * a response; the scan starts at a rotating position so that idle
+     * connections share the load.
+     * 
+     */
+    @Override
+    public Connection nextHandler(List<Connection> conns) {
+        int size = conns.size();
+        nextConnection++;
+        if (nextConnection >= size) {
+            nextConnection = 0;
+        }
+        Connection res = null;
+        for (int i = 0; i < size; i++) {
+            Connection conn = conns.get((nextConnection + i) % size);
+            if (conn.isClosing()) {
+                continue;
+            }
+            if (res == null || compareLoad(conn, res) < 0) {
+                res = conn;
+            }
+        }
+        if (res == null) {
+            res = conns.get(nextConnection);
+        }
+        return res;
+    }
+
+    protected int getBasePoolSize(int currNumSessions) {
+        int totConn = Math.min(maxPoolSize, currNumSessions * 3);
+        return Math.max(minPoolSize, totConn);
+    }
+
+    protected int getTargetPoolSize(int currNumSessions) {
+        return Math.min(maxPoolSize,
+                getBasePoolSize(currNumSessions) + extraConnections);
+    }
+
+    private int compareLoad(Connection conn1, Connection conn2) {
+        int res = conn1.getInFlight() - conn2.getInFlight();
+        if (res != 0) {
+            return res;
+        }
+        if (conn1.isConnected() != conn2.isConnected()) {
+            return conn1.isConnected() ? -1 : 1;
+        }
+        boolean receiving1 = conn1.getInRemaining() > 0;
+        boolean receiving2 = conn2.getInRemaining() > 0;
+        if (receiving1 != receiving2) {
+            return receiving1 ? 1 : -1;
+        }
+        return 0;
+    }
+
+}
@@ -39,6 +39,8 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -61,7 +63,6 @@ import com.intel.stl.fecdriver.ICommand;
 import com.intel.stl.fecdriver.IResponse;
 import com.intel.stl.fecdriver.messages.adapter.CommonMad;
 import com.intel.stl.fecdriver.messages.adapter.NetHeader;
-import com.intel.stl.fecdriver.messages.adapter.NetPacket;
 import com.intel.stl.fecdriver.messages.adapter.OobPacket;
 import com.intel.stl.fecdriver.messages.adapter.RmppMad;
 import com.intel.stl.fecdriver.messages.adapter.SimpleDatagram;
@@ -77,20 +78,40 @@ import com.intel.stl.fecdriver.session.RequestCancelledByUserException;
  * through a SelectionKey. This SelectionKey is used only for read-only, to
  * drive processing of a event; it should never be modified by this handler for
  * it is the link between the dispatcher and this handler.
+ * 
+ * Outgoing packets are pipelined: every time the connection is writable, up to
+ * MAX_PACKETS_PER_WRITE pending packets are gathered behind pooled NetHeaders
+ * into a single write batch, so many requests can be in flight on the
+ * connection without waiting for a selector round trip between them.
  */
 public class Connection extends Handler<Void> implements IConnection {
     private static final int DEFAULT_IN_BUFFER_SIZE = 16921;
 
+    protected static int MAX_PACKETS_PER_WRITE = 64;
+
     protected static int CONN_TIMEOUT = 30000; // 30 secs
 
     protected static Logger log = LoggerFactory.getLogger(Connection.class);
 
     private final NetHeader netHeader;
 
+    private final ByteBuffer defaultInBuffer;
+
+    private final ResponseBufferPool bufferPool;
+
     private ByteBuffer inBuffer;
 
     private ByteBuffer[] outBuffers = null;
 
+    private final List<ByteBuffer> batchBuffers = new ArrayList<ByteBuffer>();
+
+    private final List<NetHeader> batchHeaders = new ArrayList<NetHeader>();
+
+    private final ArrayDeque<NetHeader> freeHeaders =
+            new ArrayDeque<NetHeader>();
+
+    private final ConnectionStatistics statistics = new ConnectionStatistics();
+
     private Thread connectionTimeoutThread = null;
 
     protected long outRemaining;
@@ -120,6 +141,9 @@ public class Connection extends Handler<Void> implements IConnection {
     private final ConcurrentHashMap<Long, ICommand<?, ?>> pendingCmds =
             new ConcurrentHashMap<Long, ICommand<?, ?>>();
 
+    private final ConcurrentHashMap<Long, Long> assignTimes =
+            new ConcurrentHashMap<Long, Long>();
+
     protected final IConnectionEventListener listener;
 
     protected final SocketChannel channel;
@@ -133,7 +157,9 @@ public class Connection extends Handler<Void> implements IConnection {
         this.listener = listener;
         netHeader = new NetHeader();
         netHeader.build(true);
-        inBuffer = ByteBuffer.allocate(DEFAULT_IN_BUFFER_SIZE);
+        bufferPool = ResponseBufferPool.getInstance();
+        defaultInBuffer = ByteBuffer.allocate(DEFAULT_IN_BUFFER_SIZE);
+        inBuffer = defaultInBuffer;
         inBuffer.limit(0);
         inRemaining = 0;
     }
@@ -145,6 +171,7 @@ public class Connection extends Handler<Void> implements IConnection {
 
     @Override
     public void close() throws IOException {
+        log.info("Closing connection {}. {}", this, statistics);
         closing = true;
         if (connectionTimeoutThread != null) {
             connectionTimeoutThread.interrupt();
@@ -166,6 +193,32 @@ public class Connection extends Handler<Void> implements IConnection {
         return closing;
     }
 
+    public ConnectionStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> the number of requests assigned to this connection
+     * that are still waiting for a response
+     * 
+     * @return number of requests in flight
+     */
+    public int getInFlight() {
+        return pendingCmds.size();
+    }
+
+    /**
+     * 
+     * <i>Description:</i> the number of bytes still expected for the response
+     * currently being received
+     * 
+     * @return the number of bytes remaining
+     */
+    public int getInRemaining() {
+        return inRemaining;
+    }
+
     protected void setProcessing(boolean processing) {
         this.processing = processing;
     }
@@ -202,7 +255,9 @@ public class Connection extends Handler<Void> implements IConnection {
         long id = cmd.getMessageID();
         OobPacket packet = cmd.getPacket();
         pendingCmds.putIfAbsent(id, cmd);
+        assignTimes.putIfAbsent(id, System.currentTimeMillis());
         pendingPackets.add(packet);
+        statistics.onInFlight(pendingCmds.size());
     }
 
     protected SelectionKey getSelectionKey() {
@@ -287,13 +342,15 @@ public class Connection extends Handler<Void> implements IConnection {
                     return; // keep reading until we get the full netHeader
                 }
                 if (netHeader.isValid()) {
-                    inBuffer.clear();
+                    releaseInBuffer();
                     inRemaining =
                             netHeader.getMsgLength() - netHeader.getLength();
                     if (inRemaining > inBuffer.capacity()) {
-                        inBuffer = ByteBuffer.allocate(inRemaining);
-                        log.info("Increased input buffer size to {}.",
-                                inRemaining);
+                        // Large responses borrow a buffer from the pool for
+                        // as long as it takes to decode them
+                        inBuffer = bufferPool.acquire(inRemaining);
+                        log.debug("Borrowed input buffer {} for {} bytes.",
+                                buffer2String(inBuffer), inRemaining);
                     } else {
                         inBuffer.clear();
                         inBuffer.limit(inRemaining);
@@ -308,44 +365,124 @@ public class Connection extends Handler<Void> implements IConnection {
                 }
             }
             if (inRemaining == 0) {
-                processResponse();
+                try {
+                    processResponse();
+                } finally {
+                    // Beans have been produced by the response at this point;
+                    // nothing references the buffer anymore
+                    releaseInBuffer();
+                }
             }
         } while (len > 0 && pendingCmds.size() > 0);
     }
 
     protected void handleWrite() throws IOException {
-        if (outRemaining == 0) {
-            if (arePacketsPending()) {
-                OobPacket packet = getNextPacket();
-                if (packet == null) {
-                    log.warn("packet is null!");
+        long len;
+        do {
+            if (outRemaining == 0) {
+                recycleBatch();
+                if (!prepareBatch()) {
                     return;
                 }
-                if (log.isDebugEnabled()) {
-                    log.debug("Sending request with message id '{}' ", packet
-                            .getRmppMad().getCommonMad().getTransactionId());
-                }
+            }
+            len = writeBuffers(outBuffers);
+            statistics.onWrite();
+            outRemaining -= len;
+            log.debug("Write {}, remaining {}.", len, outRemaining);
+            // Keep writing while the channel accepts data; once the current
+            // batch is out, gather the next one without waiting for the
+            // selector
+        } while (len > 0 && (outRemaining > 0 || arePacketsPending()));
+        if (outRemaining == 0) {
+            recycleBatch();
+        }
+    }
 
-                NetPacket netPacket = new NetPacket();
-                netPacket.build(true);
-                netPacket.setData(packet);
-                outBuffers = netPacket.getByteBuffers();
-                for (ByteBuffer buffer : outBuffers) {
-                    buffer.clear();
-                    outRemaining += buffer.capacity();
+    /**
+     * 
+     * <i>Description:</i> gathers up to MAX_PACKETS_PER_WRITE pending packets
+     * into outBuffers, each preceded by a pooled NetHeader
+     * 
+     * @return true if at least one packet is ready to be written
+     */
+    private boolean prepareBatch() {
+        batchBuffers.clear();
+        if (!arePacketsPending()) {
+            return false;
+        }
+        int numPackets = 0;
+        while (numPackets < MAX_PACKETS_PER_WRITE && arePacketsPending()) {
+            OobPacket packet = getNextPacket();
+            if (packet == null) {
+                if (numPackets == 0) {
+                    log.warn("packet is null!");
                 }
+                break;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Sending request with message id '{}' ", packet
+                        .getRmppMad().getCommonMad().getTransactionId());
+            }
+            NetHeader header = getNetHeader();
+            header.setMsgLength(header.getLength() + packet.getLength());
+            batchHeaders.add(header);
+            addBatchBuffers(header.getByteBuffers());
+            addBatchBuffers(packet.getByteBuffers());
+            if (log.isTraceEnabled()) {
+                header.dump("", System.out);
+                packet.dump("", System.out);
+            }
+            numPackets += 1;
+        }
+        if (numPackets == 0) {
+            return false;
+        }
+        outBuffers = batchBuffers.toArray(new ByteBuffer[batchBuffers.size()]);
+        statistics.onBatch(numPackets, outRemaining);
+        log.debug("Prepared batch of {} packets, {} bytes.", numPackets,
+                outRemaining);
+        return true;
+    }
+
+    private void addBatchBuffers(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            buffer.clear();
+            outRemaining += buffer.capacity();
+            batchBuffers.add(buffer);
+        }
+    }
 
-                if (log.isTraceEnabled()) {
-                    netPacket.dump("", System.out);
-                }
-                long len = writeBuffers(outBuffers);
-                outRemaining -= len;
-                log.debug("Write {}, remaining {}.", len, outRemaining);
+    private NetHeader getNetHeader() {
+        NetHeader header = freeHeaders.poll();
+        if (header == null) {
+            header = new NetHeader();
+            header.build(true);
+        }
+        return header;
+    }
+
+    private void recycleBatch() {
+        if (batchHeaders.isEmpty()) {
+            return;
+        }
+        for (NetHeader header : batchHeaders) {
+            if (freeHeaders.size() < MAX_PACKETS_PER_WRITE) {
+                freeHeaders.add(header);
+            }
+        }
+        batchHeaders.clear();
+        batchBuffers.clear();
+        outBuffers = null;
+    }
+
+    private void releaseInBuffer() {
+        if (inBuffer != defaultInBuffer) {
+            bufferPool.release(inBuffer);
+            inBuffer = defaultInBuffer;
+            inBuffer.limit(0);
+            if (log.isDebugEnabled()) {
+                log.debug("Returned input buffer. {}", bufferPool);
             }
-        } else {
-            long len = writeBuffers(outBuffers);
-            outRemaining -= len;
-            log.debug("Write {}, remaining {}.", len, outRemaining);
         }
     }
 
@@ -367,6 +504,7 @@ public class Connection extends Handler<Void> implements IConnection {
         // where it should be inserted.
         this.connected = true;
         outRemaining = 0;
+        recycleBatch();
         for (ICommand<?, ?> cmd : pendingCmds.values()) {
             cmd.setConnectionInProgress(false);
         }
@@ -432,18 +570,17 @@ public class Connection extends Handler<Void> implements IConnection {
     }
 
     protected OobPacket getNextPacket() {
-        OobPacket packet = null;
-        while (!pendingPackets.isEmpty()) {
-            packet = pendingPackets.poll();
+        OobPacket packet;
+        while ((packet = pendingPackets.poll()) != null) {
             long msgId = packet.getRmppMad().getCommonMad().getTransactionId();
             if (packet.getExpireTime() > System.currentTimeMillis()
                     && pendingCmds.containsKey(msgId)) {
-                break;
+                return packet;
             }
             log.info("Ignore packet id={} expire={} {}", msgId,
                     packet.getExpireTime(), (pendingCmds.containsKey(msgId)));
         }
-        return packet;
+        return null;
     }
 
     protected void processResponse() throws IOException {
@@ -453,6 +590,7 @@ public class Connection extends Handler<Void> implements IConnection {
             // here
             return;
         }
+        statistics.onResponse(limit);
         byte[] bytes = inBuffer.array();
         OobPacket packet = new OobPacket();
         int offset = inBuffer.arrayOffset();
@@ -474,6 +612,10 @@ public class Connection extends Handler<Void> implements IConnection {
         } else {
             setRmppData(mad, bytes, pos, remainingBytes);
             ICommand<?, ?> cmd = pendingCmds.remove(transId);
+            Long assignTime = assignTimes.remove(transId);
+            if (assignTime != null) {
+                statistics.onLatency(System.currentTimeMillis() - assignTime);
+            }
             if (cmd != null && cmd.getResponse() != null) {
                 IResponse<?> response = cmd.getResponse();
                 short status = comMad.getNSStatus();
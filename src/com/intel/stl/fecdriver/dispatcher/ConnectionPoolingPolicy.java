@@ -57,6 +57,11 @@ public class ConnectionPoolingPolicy implements IPoolingPolicy<Connection> {
         return (totConn - currNumConns);
     }
 
+    @Override
+    public int adjustNumHandlers(List<Connection> conns, int currNumSessions) {
+        return 0;
+    }
+
     @Override
     public Connection nextHandler(List<Connection> conns) {
         nextConnection++;
@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.fecdriver.dispatcher;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and latency counters for a Connection. Write counters are updated
+ * by the handler thread that owns the connection; they are read by any thread,
+ * so values are only guaranteed to be eventually consistent.
+ */
+public class ConnectionStatistics {
+
+    /**
+     * Number of most recent request latencies kept for percentile calculation
+     */
+    public static final int LATENCY_SAMPLES = 256;
+
+    /**
+     * Weight given to the latest sample in the moving average latency
+     */
+    private static final double LATENCY_ALPHA = 0.2;
+
+    private final AtomicLong packetsSent = new AtomicLong(0);
+
+    private final AtomicLong bytesSent = new AtomicLong(0);
+
+    private final AtomicLong batchesSent = new AtomicLong(0);
+
+    private final AtomicLong writeCalls = new AtomicLong(0);
+
+    private final AtomicLong responsesReceived = new AtomicLong(0);
+
+    private final AtomicLong bytesReceived = new AtomicLong(0);
+
+    private final AtomicInteger maxBatchSize = new AtomicInteger(0);
+
+    private final AtomicInteger maxInFlight = new AtomicInteger(0);
+
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+
+    private int latencyIndex = 0;
+
+    private long latencyCount = 0;
+
+    private volatile double avgLatency = 0;
+
+    private volatile long lastLatencyTime = 0;
+
+    protected void onBatch(int numPackets, long numBytes) {
+        batchesSent.incrementAndGet();
+        packetsSent.addAndGet(numPackets);
+        bytesSent.addAndGet(numBytes);
+        updateMax(maxBatchSize, numPackets);
+    }
+
+    protected void onWrite() {
+        writeCalls.incrementAndGet();
+    }
+
+    protected void onResponse(int numBytes) {
+        responsesReceived.incrementAndGet();
+        bytesReceived.addAndGet(numBytes);
+    }
+
+    protected void onInFlight(int inFlight) {
+        updateMax(maxInFlight, inFlight);
+    }
+
+    /**
+     * 
+     * <i>Description:</i> records the time between a request being assigned to
+     * the connection and its response being processed
+     * 
+     * @param latency
+     *            the request latency in milliseconds
+     */
+    protected synchronized void onLatency(long latency) {
+        latencies[latencyIndex] = latency;
+        latencyIndex = (latencyIndex + 1) % LATENCY_SAMPLES;
+        latencyCount += 1;
+        lastLatencyTime = System.currentTimeMillis();
+        if (latencyCount == 1) {
+            avgLatency = latency;
+        } else {
+            avgLatency = avgLatency + LATENCY_ALPHA * (latency - avgLatency);
+        }
+    }
+
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBatchesSent() {
+        return batchesSent.get();
+    }
+
+    public long getWriteCalls() {
+        return writeCalls.get();
+    }
+
+    public long getResponsesReceived() {
+        return responsesReceived.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * 
+     * <i>Description:</i> the largest number of packets gathered into one
+     * write batch
+     * 
+     * @return the max batch size
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    /**
+     * 
+     * <i>Description:</i> the largest number of requests that were waiting for
+     * a response at the same time on this connection
+     * 
+     * @return the max pipeline depth
+     */
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * 
+     * <i>Description:</i> the average number of packets sent per write batch
+     * 
+     * @return the average batch size
+     */
+    public double getAverageBatchSize() {
+        long batches = batchesSent.get();
+        return batches == 0 ? 0 : (double) packetsSent.get() / batches;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> exponential moving average of the request latency,
+     * weighted towards the most recent requests
+     * 
+     * @return the average latency in milliseconds
+     */
+    public double getAverageLatency() {
+        return avgLatency;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> the time the latest request latency was recorded.
+     * The average latency only changes when a response arrives, so it is
+     * stale for a connection that has been idle since.
+     * 
+     * @return the time in milliseconds, or 0 if no latency was recorded
+     */
+    public long getLastLatencyTime() {
+        return lastLatencyTime;
+    }
+
+    public synchronized long getLatencyCount() {
+        return latencyCount;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> copies the most recent request latencies, in no
+     * particular order
+     * 
+     * @return array with up to LATENCY_SAMPLES latencies in milliseconds
+     */
+    public synchronized long[] getLatencySamples() {
+        int size = (int) Math.min(latencyCount, LATENCY_SAMPLES);
+        long[] res = new long[size];
+        System.arraycopy(latencies, 0, res, 0, size);
+        return res;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> calculates a percentile over a set of latency
+     * samples using the nearest rank method. The array is sorted in place.
+     * 
+     * @param samples
+     *            the latency samples
+     * @param percentile
+     *            the percentile, between 0 and 100
+     * @return the latency at the given percentile, or 0 if there are no
+     *         samples
+     */
+    public static long getPercentile(long[] samples, double percentile) {
+        if (samples.length == 0) {
+            return 0;
+        }
+        Arrays.sort(samples);
+        int rank = (int) Math.ceil(percentile / 100 * samples.length);
+        rank = Math.max(1, Math.min(samples.length, rank));
+        return samples[rank - 1];
+    }
+
+    private void updateMax(AtomicInteger max, int value) {
+        int current = max.get();
+        while (value > current) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+            current = max.get();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionStatistics [packetsSent=" + packetsSent
+                + ", bytesSent=" + bytesSent + ", batchesSent=" + batchesSent
+                + ", writeCalls=" + writeCalls + ", responsesReceived="
+                + responsesReceived + ", bytesReceived=" + bytesReceived
+                + ", maxBatchSize=" + maxBatchSize + ", maxInFlight="
+                + maxInFlight + ", avgBatchSize=" + getAverageBatchSize()
+                + ", avgLatency=" + avgLatency + "]";
+    }
+
+}
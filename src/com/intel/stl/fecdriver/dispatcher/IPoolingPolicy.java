@@ -33,6 +33,19 @@ public interface IPoolingPolicy<H> {
 
     int calculateNumHandlers(int currNumHandlers, int currNumSessions);
 
+    /**
+     * 
+     * <i>Description:</i> periodically invoked by the dispatcher to let the
+     * policy resize the pool according to the load observed on the handlers
+     * 
+     * @param handlers
+     *            the current handlers
+     * @param currNumSessions
+     *            the current number of sessions
+     * @return the number of handlers to add (positive) or remove (negative)
+     */
+    int adjustNumHandlers(List<H> handlers, int currNumSessions);
+
     H nextHandler(List<H> handlers);
 
 }
@@ -31,6 +31,7 @@ import java.util.concurrent.TimeoutException;
 
 import javax.net.ssl.SSLEngine;
 
+import com.intel.stl.api.subnet.DispatcherStatisticsBean;
 import com.intel.stl.api.subnet.HostInfo;
 import com.intel.stl.api.subnet.SubnetDescription;
 import com.intel.stl.fecdriver.ICommand;
@@ -135,4 +136,13 @@ public interface IRequestDispatcher {
      * @return subnet description
      */
     SubnetDescription getSubnetDescription();
+
+    /**
+     *
+     * <i>Description:</i> returns a snapshot of the load on this dispatcher:
+     * queue depth, requests in flight per connection and request latency
+     *
+     * @return dispatcher statistics
+     */
+    DispatcherStatisticsBean getStatistics();
 }
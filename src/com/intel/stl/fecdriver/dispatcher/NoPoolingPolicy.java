@@ -36,6 +36,11 @@ public class NoPoolingPolicy implements IPoolingPolicy<Connection> {
         return 0;
     }
 
+    @Override
+    public int adjustNumHandlers(List<Connection> handlers, int currNumSessions) {
+        return 0;
+    }
+
     @Override
     public Connection nextHandler(List<Connection> handlers) {
         return null;
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.fecdriver.dispatcher;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-classed pool of receive buffers shared by all connections. Responses
+ * that do not fit in a connection's default input buffer (typically large RMPP
+ * responses like a full PortInfo or LFT dump) borrow a buffer from this pool
+ * and return it as soon as the response has been decoded.
+ * 
+ * Size classes are powers of two starting at MIN_CLASS_SIZE; requests larger
+ * than MAX_CLASS_SIZE are allocated on demand and never retained. Buffers are
+ * heap buffers because the MAD datagrams decode in place on the backing array.
+ */
+public class ResponseBufferPool {
+    public static final int MIN_CLASS_SIZE = 32 * 1024; // 32KB
+
+    public static final int MAX_CLASS_SIZE = 64 * 1024 * 1024; // 64MB
+
+    private static final int MIN_CLASS_SHIFT = Integer
+            .numberOfTrailingZeros(MIN_CLASS_SIZE);
+
+    private static final int NUM_CLASSES = Integer
+            .numberOfTrailingZeros(MAX_CLASS_SIZE) - MIN_CLASS_SHIFT + 1;
+
+    private static final int DEFAULT_BUFFERS_PER_CLASS = 4;
+
+    private static final long DEFAULT_MAX_POOLED_BYTES = 128 * 1024 * 1024;
+
+    private static final ResponseBufferPool instance = new ResponseBufferPool(
+            DEFAULT_BUFFERS_PER_CLASS, DEFAULT_MAX_POOLED_BYTES);
+
+    private final ConcurrentLinkedQueue<ByteBuffer>[] freeBuffers;
+
+    private final AtomicInteger[] freeCounts;
+
+    private final AtomicLong pooledBytes = new AtomicLong(0);
+
+    private final AtomicLong hits = new AtomicLong(0);
+
+    private final AtomicLong misses = new AtomicLong(0);
+
+    private final AtomicLong allocatedBytes = new AtomicLong(0);
+
+    private final int buffersPerClass;
+
+    private final long maxPooledBytes;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ResponseBufferPool(int buffersPerClass, long maxPooledBytes) {
+        this.buffersPerClass = buffersPerClass;
+        this.maxPooledBytes = maxPooledBytes;
+        freeBuffers = new ConcurrentLinkedQueue[NUM_CLASSES];
+        freeCounts = new AtomicInteger[NUM_CLASSES];
+        for (int i = 0; i < NUM_CLASSES; i++) {
+            freeBuffers[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+            freeCounts[i] = new AtomicInteger(0);
+        }
+    }
+
+    public static ResponseBufferPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> borrows a buffer with at least the specified
+     * capacity. The returned buffer is cleared and its limit set to size.
+     * 
+     * @param size
+     *            the number of bytes needed
+     * @return a buffer ready to be written to
+     */
+    public ByteBuffer acquire(int size) {
+        int sizeClass = getSizeClass(size);
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0) {
+            buffer = freeBuffers[sizeClass].poll();
+            if (buffer != null) {
+                freeCounts[sizeClass].decrementAndGet();
+                pooledBytes.addAndGet(-buffer.capacity());
+                hits.incrementAndGet();
+            } else {
+                buffer = allocate(MIN_CLASS_SIZE << sizeClass);
+            }
+        } else {
+            buffer = allocate(size);
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> returns a buffer obtained through
+     * {@link #acquire(int)} to the pool. The caller must not access the buffer
+     * (or any datagram wrapping it) after this call.
+     * 
+     * @param buffer
+     *            the buffer to return
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        int sizeClass = getSizeClass(capacity);
+        if (sizeClass < 0 || (MIN_CLASS_SIZE << sizeClass) != capacity) {
+            // Not one of ours
+            return;
+        }
+        if (freeCounts[sizeClass].incrementAndGet() > buffersPerClass) {
+            freeCounts[sizeClass].decrementAndGet();
+            return;
+        }
+        if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+            pooledBytes.addAndGet(-capacity);
+            freeCounts[sizeClass].decrementAndGet();
+            return;
+        }
+        freeBuffers[sizeClass].add(buffer);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        misses.incrementAndGet();
+        allocatedBytes.addAndGet(capacity);
+        return ByteBuffer.allocate(capacity);
+    }
+
+    private int getSizeClass(int size) {
+        if (size > MAX_CLASS_SIZE) {
+            return -1;
+        }
+        if (size <= MIN_CLASS_SIZE) {
+            return 0;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return shift - MIN_CLASS_SHIFT;
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseBufferPool [hits=" + hits + ", misses=" + misses
+                + ", allocatedBytes=" + allocatedBytes + ", pooledBytes="
+                + pooledBytes + "]";
+    }
+
+}
@@ -47,9 +47,12 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -74,6 +77,8 @@ import com.intel.stl.api.notice.NoticeBean;
 import com.intel.stl.api.notice.NoticeType;
 import com.intel.stl.api.notice.TrapType;
 import com.intel.stl.api.notice.impl.NoticeSaveTask;
+import com.intel.stl.api.subnet.ConnectionStatisticsBean;
+import com.intel.stl.api.subnet.DispatcherStatisticsBean;
 import com.intel.stl.api.subnet.GIDGlobal;
 import com.intel.stl.api.subnet.HostInfo;
 import com.intel.stl.api.subnet.SubnetDescription;
@@ -114,6 +119,11 @@ import com.intel.stl.fecdriver.session.Session;
  * allowed to access its state (except for the dispatcher, who can assign new
  * commands or close the connection).
  *
+ * By default, commands are assigned to the least loaded connection and the
+ * connection pool grows and shrinks with the observed request latency (see
+ * AdaptivePoolingPolicy). The handler thread pool follows the size of the
+ * connection pool so that every connection can be serviced concurrently.
+ *
  * WARNING: the mechanism to avoid a connection to be selected multiple times by
  * the Selector is to set the interest operations to 0 before it is dispatched.
  * The interest operations are then reset after the handler has finished
@@ -136,6 +146,8 @@ public class SubnetRequestDispatcher extends Reactor<Connection, Void>
 
     private static final String THREAD_NAME_PREFIX = "srdthread-";
 
+    private static final long THREAD_KEEP_ALIVE = 60000; // ms
+
     private boolean running;
 
     private boolean connectivityError = false;
@@ -148,6 +160,10 @@ public class SubnetRequestDispatcher extends Reactor<Connection, Void>
 
     private final AtomicInteger connCompleted = new AtomicInteger(0);
 
+    // whether the connection established notice was sent for the current
+    // connections; adaptive pool resizes don't send it again
+    private final AtomicBoolean connEstablished = new AtomicBoolean(false);
+
     private final AtomicReference<Connection> noticeConnection =
             new AtomicReference<Connection>(null);
 
@@ -186,9 +202,11 @@ public class SubnetRequestDispatcher extends Reactor<Connection, Void>
 
     private final Selector selector;
 
+    private final ThreadPoolExecutor handlerPool;
+
     public SubnetRequestDispatcher(SubnetDescription subnet, IAdapter adapter,
             DatabaseManager dbMgr) throws IOException {
-        this(subnet, adapter, dbMgr, new ConnectionPoolingPolicy(
+        this(subnet, adapter, dbMgr, new AdaptivePoolingPolicy(
                 MAX_CONN_POOL_SIZE, MIN_CONN_POOL_SIZE), Selector.open());
     }
 
@@ -201,8 +219,16 @@ public class SubnetRequestDispatcher extends Reactor<Connection, Void>
     protected SubnetRequestDispatcher(SubnetDescription subnet,
             IAdapter adapter, DatabaseManager dbMgr,
             IPoolingPolicy<Connection> poolingPolicy, Selector selector) {
-        super(Executors.newFixedThreadPool(THREAD_POOL_SIZE,
-                new DispatcherThreadFactory(THREAD_NAME_PREFIX, subnet)));
+        this(subnet, adapter, dbMgr, poolingPolicy, selector,
+                createHandlerPool(subnet));
+    }
+
+    private SubnetRequestDispatcher(SubnetDescription subnet,
+            IAdapter adapter, DatabaseManager dbMgr,
+            IPoolingPolicy<Connection> poolingPolicy, Selector selector,
+            ThreadPoolExecutor handlerPool) {
+        super(handlerPool);
+        this.handlerPool = handlerPool;
         this.subnet = subnet;
         this.adapter = adapter;
         this.dbMgr = dbMgr;
@@ -310,6 +336,8 @@ public class SubnetRequestDispatcher extends Reactor<Connection, Void>
                 }
                 if (lastNumSessions != sessions.size()) {
                     targetNumConnections += resizeConnectionPool();
+                } else {
+                    targetNumConnections += adjustConnectionPool();
                 }
                 processPendingConnections();
                 processPendingResults();
@@ -340,7 +368,8 @@ public class SubnetRequestDispatcher extends Reactor<Connection, Void>
                 connection.addNoticeListener(this);
             }
         }
-        if (numConn == targetNumConnections) {
+        if (numConn >= targetNumConnections
+                && connEstablished.compareAndSet(false, true)) {
             NoticeBean notice = createConnEstablishNotice();
             onNewEvent(new NoticeBean[] { notice });
         }
@@ -417,6 +446,45 @@ public class SubnetRequestDispatcher extends Reactor<Connection, Void>
         }
     }
 
+    @Override
+    public DispatcherStatisticsBean getStatistics() {
+        DispatcherStatisticsBean res = new DispatcherStatisticsBean();
+        res.setQueueDepth(pendingCmds.size());
+        res.setHandlerThreads(handlerPool.getCorePoolSize());
+        Connection noticeConn = noticeConnection.get();
+        List<ConnectionStatisticsBean> connStats =
+                new ArrayList<ConnectionStatisticsBean>();
+        long[] samples = new long[0];
+        synchronized (connPool) {
+            for (Connection conn : connPool) {
+                ConnectionStatistics stats = conn.getStatistics();
+                ConnectionStatisticsBean bean = new ConnectionStatisticsBean();
+                bean.setName(conn.toString());
+                bean.setConnected(conn.isConnected());
+                bean.setNoticeConnection(conn == noticeConn);
+                bean.setInFlight(conn.getInFlight());
+                bean.setMaxInFlight(stats.getMaxInFlight());
+                bean.setPacketsSent(stats.getPacketsSent());
+                bean.setResponsesReceived(stats.getResponsesReceived());
+                bean.setBytesReceived(stats.getBytesReceived());
+                bean.setAvgBatchSize(stats.getAverageBatchSize());
+                bean.setAvgLatency(stats.getAverageLatency());
+                connStats.add(bean);
+
+                long[] connSamples = stats.getLatencySamples();
+                long[] tmp = new long[samples.length + connSamples.length];
+                System.arraycopy(samples, 0, tmp, 0, samples.length);
+                System.arraycopy(connSamples, 0, tmp, samples.length,
+                        connSamples.length);
+                samples = tmp;
+            }
+        }
+        res.setConnections(connStats);
+        res.setP50Latency(ConnectionStatistics.getPercentile(samples, 50));
+        res.setP99Latency(ConnectionStatistics.getPercentile(samples, 99));
+        return res;
+    }
+
     @Override
     public SSLEngine getSSLEngine(HostInfo hostInfo) throws Exception {
         SSLEngine engine = adapter.getSSLEngine(hostInfo);
@@ -727,6 +795,7 @@ public class SubnetRequestDispatcher extends Reactor<Connection, Void>
         }
         connPool.clear();
         connCompleted.set(0);
+        connEstablished.set(false);
         // set noticeConnection to null, so we can reset notice listener to
         // next new connection
         noticeConnection.set(null);
@@ -851,16 +920,86 @@ public class SubnetRequestDispatcher extends Reactor<Connection, Void>
         int connections = connPool.size() + pendingConns.size();
         int delta =
                 poolingPolicy.calculateNumHandlers(connections, numSessions);
+        lastNumSessions = numSessions;
+        return applyPoolDelta(delta);
+    }
+
+    private int adjustConnectionPool() {
+        if (!pendingConns.isEmpty() || connectivityError) {
+            return 0;
+        }
+        int delta = poolingPolicy.adjustNumHandlers(connPool, sessions.size());
+        return applyPoolDelta(delta);
+    }
+
+    private int applyPoolDelta(int delta) {
         if (delta > 0) {
             for (int i = 0; i < delta; i++) {
                 Connection conn = createConnection(hostInfo, this, false);
                 addPendingConnection(conn);
             }
+        } else if (delta < 0) {
+            delta = -removeIdleConnections(-delta);
+        }
+        if (delta != 0) {
+            resizeHandlerPool(connPool.size() + pendingConns.size());
         }
-        lastNumSessions = numSessions;
         return delta;
     }
 
+    /**
+     * 
+     * <i>Description:</i> closes up to the specified number of connections
+     * that have no work assigned. The notice connection is never closed.
+     * 
+     * @param max
+     *            the maximum number of connections to close
+     * @return the number of connections closed
+     */
+    private int removeIdleConnections(int max) {
+        int removed = 0;
+        Connection noticeConn = noticeConnection.get();
+        synchronized (connPool) {
+            Iterator<Connection> it = connPool.iterator();
+            while (it.hasNext() && removed < max) {
+                Connection conn = it.next();
+                if (conn == noticeConn || !conn.isConnected()
+                        || conn.isClosing() || conn.isProcessing()
+                        || conn.areRepliesPending()
+                        || conn.arePacketsPending()) {
+                    continue;
+                }
+                log.info("Removing idle connection {} from pool", conn);
+                closeConnection(conn);
+                it.remove();
+                connCompleted.decrementAndGet();
+                removed += 1;
+            }
+        }
+        return removed;
+    }
+
+    private void resizeHandlerPool(int numConnections) {
+        int size = Math.max(THREAD_POOL_SIZE, numConnections);
+        if (size > handlerPool.getMaximumPoolSize()) {
+            handlerPool.setMaximumPoolSize(size);
+            handlerPool.setCorePoolSize(size);
+        } else if (size < handlerPool.getCorePoolSize()) {
+            handlerPool.setCorePoolSize(size);
+            handlerPool.setMaximumPoolSize(size);
+        }
+    }
+
+    private static ThreadPoolExecutor createHandlerPool(
+            SubnetDescription subnet) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(THREAD_POOL_SIZE,
+                THREAD_POOL_SIZE, THREAD_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new DispatcherThreadFactory(THREAD_NAME_PREFIX, subnet));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
     protected void wakeupDispatcher() {
         selector.wakeup();
     }
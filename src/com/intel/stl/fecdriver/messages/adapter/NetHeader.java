@@ -48,4 +48,8 @@ public class NetHeader extends SimpleDatagram<Void> {
 	public int getMsgLength() {
 		return buffer.getInt(4);
 	}
+
+	public void setMsgLength(int len) {
+		buffer.putInt(4, len);
+	}
 }
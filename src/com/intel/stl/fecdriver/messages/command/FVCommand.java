@@ -27,6 +27,7 @@
 
 package com.intel.stl.fecdriver.messages.command;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -142,4 +143,14 @@ public abstract class FVCommand<F> extends FVMessage implements
         return fvResponse.get(timeout, unit);
     }
 
+    public void setStreaming(boolean streaming) {
+        fvResponse.setStreaming(streaming);
+    }
+
+    public Iterator<F> getIterator(long timeout, TimeUnit unit)
+            throws Exception {
+        fvResponse.get(timeout, unit);
+        return fvResponse.iterator();
+    }
+
 }
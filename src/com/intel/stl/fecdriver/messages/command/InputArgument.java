@@ -177,4 +177,15 @@ public class InputArgument {
     public int getRange() {
         throw new UnsupportedOperationException();
     }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "InputArgument [type=" + getType() + "]";
+    }
+
 }
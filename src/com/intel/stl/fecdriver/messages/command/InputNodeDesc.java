@@ -51,6 +51,13 @@ public class InputNodeDesc extends InputArgument {
 	public String getNodeDesc() {
 		return description;
 	}
-	
-	
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "InputNodeDesc [description=" + description + "]";
+	}
+
 }
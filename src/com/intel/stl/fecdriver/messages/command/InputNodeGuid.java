@@ -26,6 +26,8 @@
  */
 package com.intel.stl.fecdriver.messages.command;
 
+import com.intel.stl.api.StringUtils;
+
 /**
  */
 public class InputNodeGuid extends InputArgument {
@@ -51,6 +53,14 @@ public class InputNodeGuid extends InputArgument {
 	public long getNodeGuid() {
 		return guid;
 	}
-	
-	
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "InputNodeGuid [guid=" + StringUtils.longHexString(guid)
+				+ "]";
+	}
+
 }
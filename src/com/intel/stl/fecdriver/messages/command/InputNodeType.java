@@ -58,4 +58,14 @@ public class InputNodeType extends InputArgument {
         return nodeType;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "InputNodeType [nodeType=" + nodeType + "]";
+    }
+
 }
@@ -72,4 +72,14 @@ public class InputPKey extends InputArgument {
         return key;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "InputPKey [sourceGid=" + sourceGid + ", key=" + key + "]";
+    }
+
 }
@@ -55,4 +55,14 @@ public class InputPortGid extends InputArgument {
         return portGid;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "InputPortGid [portGid=" + portGid + "]";
+    }
+
 }
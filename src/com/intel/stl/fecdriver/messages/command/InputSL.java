@@ -72,4 +72,14 @@ public class InputSL extends InputArgument {
         return sl;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "InputSL [sourceGid=" + sourceGid + ", sl=" + sl + "]";
+    }
+
 }
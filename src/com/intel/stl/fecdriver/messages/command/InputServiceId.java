@@ -26,6 +26,7 @@
  */
 package com.intel.stl.fecdriver.messages.command;
 
+import com.intel.stl.api.StringUtils;
 import com.intel.stl.fecdriver.messages.adapter.sa.GID;
 
 /**
@@ -73,4 +74,15 @@ public class InputServiceId extends InputArgument {
         return serviceId;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "InputServiceId [sourceGid=" + sourceGid + ", serviceId="
+                + StringUtils.longHexString(serviceId) + "]";
+    }
+
 }
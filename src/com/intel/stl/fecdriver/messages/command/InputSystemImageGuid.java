@@ -26,6 +26,8 @@
  */
 package com.intel.stl.fecdriver.messages.command;
 
+import com.intel.stl.api.StringUtils;
+
 /**
  */
 public class InputSystemImageGuid extends InputArgument {
@@ -51,6 +53,14 @@ public class InputSystemImageGuid extends InputArgument {
 	public long getSystemImageGuid() {
 		return guid;
 	}
-	
-	
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "InputSystemImageGuid [guid="
+				+ StringUtils.longHexString(guid) + "]";
+	}
+
 }
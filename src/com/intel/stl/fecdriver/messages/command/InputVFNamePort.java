@@ -77,8 +77,8 @@ public class InputVFNamePort extends InputLidPortNumber {
     @Override
     public String toString() {
         return "InputVFNamePort [vfName=" + vfName + ", getLid()=" + getLid()
-                + ", getPortNumber()=" + getPortNumber() + ", getImageId()="
-                + getImageId() + "]";
+                + ", getPortNumber()=" + getPortNumber() + ", isDelta()="
+                + isDelta() + ", getImageId()=" + getImageId() + "]";
     }
 
 }
@@ -31,6 +31,9 @@ package com.intel.stl.fecdriver.messages.response;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -59,6 +62,8 @@ public abstract class FVResponse<E> extends FVMessage implements IResponse<E> {
 
     private boolean oneMoreTime = false;
 
+    private boolean streaming = false;
+
     /**
      * @return the description
      */
@@ -80,10 +85,40 @@ public abstract class FVResponse<E> extends FVMessage implements IResponse<E> {
         this.results = results;
     }
 
+    /**
+     * 
+     * <i>Description:</i> when streaming is on, records are not decoded into
+     * a result list when the response arrives; they are decoded one at a time
+     * through {@link #iterator()} instead.
+     * 
+     * @param streaming
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> returns an iterator over the results of this
+     * response. Call it only after the response is done.
+     * 
+     * @return an iterator over the results
+     */
+    public Iterator<E> iterator() {
+        if (results == null) {
+            return Collections.<E> emptyList().iterator();
+        }
+        return results.iterator();
+    }
+
     @Override
     public synchronized void setError(Exception e) {
         this.error = e;
-        this.notify();
+        this.notifyAll();
     }
 
     /**
@@ -108,10 +143,17 @@ public abstract class FVResponse<E> extends FVMessage implements IResponse<E> {
             e.printStackTrace();
             error = e;
         } finally {
-            this.notify();
+            this.notifyAll();
         }
     }
 
+    /**
+     * The returned mad wraps the receive buffer the response was decoded from.
+     * Large responses are decoded from buffers borrowed from a pool that are
+     * reused once processMad returns, so the contents are only meaningful
+     * while the response is being processed; use the results from
+     * {@link #get()} afterwards.
+     */
     public RmppMad getMad() throws IOException {
         if (error != null) {
             throw new IOException(error);
@@ -120,6 +162,38 @@ public abstract class FVResponse<E> extends FVMessage implements IResponse<E> {
         return rmppMad;
     }
 
+    /**
+     * 
+     * <i>Description:</i> completes this response with the outcome of another
+     * response to the same query. Used when identical in-flight requests are
+     * coalesced, so that callers waiting on this response get the same
+     * results without a request of its own being sent to the FE. The result
+     * list is copied; the result beans are shared.
+     * 
+     * @param other
+     *            a response that is done
+     */
+    public void complete(FVResponse<E> other) {
+        List<E> otherResults;
+        RmppMad otherMad;
+        Exception otherError;
+        synchronized (other) {
+            otherResults = other.results;
+            otherMad = other.rmppMad;
+            otherError = other.error;
+        }
+        synchronized (this) {
+            this.results =
+                    otherResults == null ? null : new ArrayList<E>(otherResults);
+            this.rmppMad = otherMad;
+            this.error = otherError;
+            if (rmppMad == null && error == null) {
+                error = new IOException("Coalesced request has no response");
+            }
+            this.notifyAll();
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -182,7 +256,7 @@ public abstract class FVResponse<E> extends FVMessage implements IResponse<E> {
             // its timeout since the time the connection is completed.
             this.oneMoreTime = true;
         }
-        this.notify();
+        this.notifyAll();
     }
 
     protected synchronized void waitForResponse(long timeoutInMs)
@@ -256,6 +330,8 @@ public abstract class FVResponse<E> extends FVMessage implements IResponse<E> {
     private void setCancel() {
         error = new RequestCancelledByUserException();
         canceled = true;
+        // wake up coalesced commands waiting for this response
+        this.notifyAll();
     }
 
     public void dump(PrintStream out) {
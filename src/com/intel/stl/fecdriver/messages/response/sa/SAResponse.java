@@ -27,7 +27,11 @@
 package com.intel.stl.fecdriver.messages.response.sa;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import com.intel.stl.fecdriver.messages.adapter.ComposedDatagram;
 import com.intel.stl.fecdriver.messages.adapter.IDatagram;
@@ -40,6 +44,12 @@ public abstract class SAResponse<V, E extends IDatagram<V>> extends
         FVResponse<V> {
     private static boolean DEBUG = false;
 
+    private byte[] recordBytes;
+
+    private int recordSize;
+
+    private int numRecords;
+
     /*
      * (non-Javadoc)
      * 
@@ -53,6 +63,15 @@ public abstract class SAResponse<V, E extends IDatagram<V>> extends
         int numRecs =
                 (isSingleRecord() || recSize == 0) ? 1 : (totalLength - pos)
                         / recSize;
+        if (isStreaming() && recSize > 0) {
+            // Keep only the raw records; the receive buffer is reused once
+            // this method returns, and records are decoded on iteration
+            recordBytes = Arrays.copyOfRange(bytes, pos, totalLength);
+            recordSize = recSize;
+            numRecords = numRecs;
+            setResults(Collections.<V> emptyList());
+            return saData;
+        }
         IDatagram<?>[] records = new IDatagram<?>[numRecs];
         List<V> results = new ArrayList<V>();
         for (int i = 0; i < numRecs; i++) {
@@ -72,10 +91,67 @@ public abstract class SAResponse<V, E extends IDatagram<V>> extends
         return saData;
     }
 
+    /**
+     * In streaming mode, the returned iterator decodes one record per call to
+     * next() and releases the raw records when it has been exhausted. The
+     * records can be iterated only once.
+     */
+    @Override
+    public Iterator<V> iterator() {
+        if (recordBytes == null) {
+            return super.iterator();
+        }
+        Iterator<V> res =
+                new RecordIterator(recordBytes, recordSize, numRecords);
+        recordBytes = null;
+        return res;
+    }
+
     protected boolean isSingleRecord() {
         return false;
     }
 
     protected abstract E createRecord();
 
+    private class RecordIterator implements Iterator<V> {
+        private byte[] bytes;
+
+        private final int recSize;
+
+        private final int numRecs;
+
+        private int next = 0;
+
+        public RecordIterator(byte[] bytes, int recSize, int numRecs) {
+            this.bytes = bytes;
+            this.recSize = recSize;
+            this.numRecs = numRecs;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < numRecs;
+        }
+
+        @Override
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            E record = createRecord();
+            record.wrap(bytes, next * recSize);
+            next += 1;
+            V res = record.toObject();
+            if (next == numRecs) {
+                bytes = null;
+            }
+            return res;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
 }
@@ -28,6 +28,7 @@
 package com.intel.stl.fecdriver.session;
 
 import com.intel.stl.api.performance.impl.PAHelper;
+import com.intel.stl.api.subnet.DispatcherStatisticsBean;
 import com.intel.stl.api.subnet.SubnetDescription;
 import com.intel.stl.api.subnet.impl.SAHelper;
 import com.intel.stl.fecdriver.IStatement;
@@ -48,4 +49,16 @@ public interface ISession {
 
     void cancelFailover();
 
+    DispatcherStatisticsBean getDispatcherStatistics();
+
+    /**
+     * 
+     * <i>Description:</i> returns the single-flight layer shared by all
+     * statements of this session, which also keeps count of how many requests
+     * were answered without going to the FE
+     * 
+     * @return the request coalescer
+     */
+    RequestCoalescer getRequestCoalescer();
+
 }
@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.fecdriver.session;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.intel.stl.fecdriver.ICommand;
+import com.intel.stl.fecdriver.messages.command.InputArgument;
+import com.intel.stl.fecdriver.messages.response.FVResponse;
+
+/**
+ * Single-flight layer for FE queries. When a command is executed while an
+ * identical command (same command type and same input) is still waiting for
+ * its response, the second command is not sent to the FE; it waits for the
+ * first one and is completed with a copy of its results.
+ * 
+ * Two commands are identical when they are of the same class and their input
+ * arguments have the same string representation. Every InputArgument
+ * describes all its fields in toString, which is also what the response uses
+ * as its description.
+ */
+public class RequestCoalescer {
+    private static Logger log = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    private final ConcurrentHashMap<String, ICommand<?, ?>> inFlight =
+            new ConcurrentHashMap<String, ICommand<?, ?>>();
+
+    private final AtomicLong hits = new AtomicLong(0);
+
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * 
+     * <i>Description:</i> tries to complete a command from an identical
+     * command already in flight. If there is none, the command is registered
+     * as in flight and the caller must submit it and call
+     * {@link #leave(ICommand)} once its response has been received.
+     * 
+     * @param cmd
+     *            the command to be executed
+     * @param timeout
+     *            the maximum time to wait for the in-flight command, in
+     *            milliseconds
+     * @return true if the command has been completed with the results of the
+     *         in-flight command; false if the caller must submit it
+     * @throws TimeoutException
+     *             if the in-flight command did not complete within the
+     *             timeout. The caller may process the timeout and join again.
+     * @throws RequestCancelledByUserException
+     *             if the calling thread was interrupted while waiting. Only
+     *             this command is cancelled, not the in-flight one.
+     */
+    public <F> boolean join(ICommand<FVResponse<F>, F> cmd, long timeout)
+            throws Exception {
+        String key = getKey(cmd);
+        ICommand<?, ?> leader = inFlight.putIfAbsent(key, cmd);
+        if (leader == null || leader.getClass() != cmd.getClass()) {
+            misses.incrementAndGet();
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        FVResponse<F> leaderResponse = (FVResponse<F>) leader.getResponse();
+        try {
+            awaitResponse(leaderResponse, timeout);
+        } catch (RequestCancelledByUserException e) {
+            cmd.getResponse().cancel(true);
+            throw e;
+        }
+        if (leaderResponse.isCancelled()) {
+            // The command we are waiting for was cancelled by its caller;
+            // that does not apply to this one, so send it
+            log.debug("Coalesced command {} was cancelled; resubmitting",
+                    leader);
+            misses.incrementAndGet();
+            return false;
+        }
+        hits.incrementAndGet();
+        cmd.getResponse().complete(leaderResponse);
+        return true;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> waits for a response that another thread is waiting
+     * for too. We don't wait through FVResponse#get here because an interrupt
+     * would cancel that response for its owner as well.
+     * 
+     * @param response
+     *            the in-flight response
+     * @param timeout
+     *            the maximum time to wait, in milliseconds
+     * @throws TimeoutException
+     *             if the response is not done within the timeout
+     */
+    protected void awaitResponse(FVResponse<?> response, long timeout)
+            throws TimeoutException {
+        long expireTime = System.currentTimeMillis() + timeout;
+        synchronized (response) {
+            long remaining = timeout;
+            while (!response.isDone()) {
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                try {
+                    response.wait(remaining);
+                } catch (InterruptedException e) {
+                    throw new RequestCancelledByUserException();
+                }
+                remaining = expireTime - System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * 
+     * <i>Description:</i> unregisters a command once its response has been
+     * received (or it failed), so that later commands are sent to the FE
+     * again
+     * 
+     * @param cmd
+     *            the command passed to {@link #join(ICommand, long)}
+     */
+    public void leave(ICommand<?, ?> cmd) {
+        inFlight.remove(getKey(cmd), cmd);
+    }
+
+    /**
+     * @return the number of commands answered from an identical in-flight
+     *         command
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of commands that had to be sent to the FE
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    protected String getKey(ICommand<?, ?> cmd) {
+        InputArgument input = cmd.getInput();
+        if (input == null) {
+            return cmd.getClass().getName();
+        }
+        return cmd.getClass().getName() + ":" + input.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "RequestCoalescer [hits=" + hits + ", misses=" + misses
+                + ", inFlight=" + inFlight.size() + "]";
+    }
+
+}
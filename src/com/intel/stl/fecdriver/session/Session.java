@@ -33,7 +33,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeoutException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.intel.stl.api.performance.impl.PAHelper;
+import com.intel.stl.api.subnet.DispatcherStatisticsBean;
 import com.intel.stl.api.subnet.SubnetDescription;
 import com.intel.stl.api.subnet.impl.SAHelper;
 import com.intel.stl.fecdriver.ICommand;
@@ -42,6 +46,7 @@ import com.intel.stl.fecdriver.IStatement;
 import com.intel.stl.fecdriver.dispatcher.IRequestDispatcher;
 
 public class Session implements ISession {
+    private static Logger log = LoggerFactory.getLogger(Session.class);
 
     private final List<WeakReference<Statement>> statements =
             new ArrayList<WeakReference<Statement>>();
@@ -52,6 +57,8 @@ public class Session implements ISession {
 
     private PAHelper paHelper;
 
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+
     public Session(IRequestDispatcher dispatcher) {
         this.dispatcher = dispatcher;
     }
@@ -120,6 +127,7 @@ public class Session implements ISession {
         if (paHelper != null) {
             paHelper.close();
         }
+        log.info("Closing session. {}", coalescer);
         dispatcher.removeSession(this);
     }
 
@@ -128,6 +136,16 @@ public class Session implements ISession {
         return dispatcher.getSubnetDescription();
     }
 
+    @Override
+    public DispatcherStatisticsBean getDispatcherStatistics() {
+        return dispatcher.getStatistics();
+    }
+
+    @Override
+    public RequestCoalescer getRequestCoalescer() {
+        return coalescer;
+    }
+
     protected void addStatement(Statement statement) {
         statements.add(new WeakReference<Statement>(statement));
     }
@@ -27,6 +27,7 @@
 
 package com.intel.stl.fecdriver.session;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -47,6 +48,7 @@ import com.intel.stl.fecdriver.MultipleResponseCommand;
 import com.intel.stl.fecdriver.SingleResponseCommand;
 import com.intel.stl.fecdriver.messages.adapter.OobPacket;
 import com.intel.stl.fecdriver.messages.adapter.RmppMad;
+import com.intel.stl.fecdriver.messages.response.FVResponse;
 
 public class Statement implements IStatement {
     private static Logger log = LoggerFactory.getLogger(Statement.class);
@@ -103,19 +105,54 @@ public class Statement implements IStatement {
         }
 
         List<F> result = null;
+        RequestCoalescer coalescer = session.getRequestCoalescer();
+        if (join(coalescer, cmd)) {
+            result = cmd.getResults(getTimeout(), TimeUnit.MILLISECONDS);
+        } else {
+            try {
+                submit(cmd);
+                try {
+                    result =
+                            cmd.getResults(getTimeout(), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException toe) {
+                    if (processTimeout(cmd)) {
+                        // This timeout will be reset by FailoverManager. If it
+                        // times out again, caller will get it
+                        result = cmd.getResults(getTimeout(),
+                                TimeUnit.MILLISECONDS);
+                    } else {
+                        throw toe;
+                    }
+                }
+            } finally {
+                coalescer.leave(cmd);
+            }
+        }
+        debugResponse(cmd);
+        return result;
+    }
+
+    @Override
+    public <F, E extends IResponse<F>> Iterator<F> stream(
+            MultipleResponseCommand<F, E> cmd) throws Exception {
+        if (FMGuiPlugin.IS_DEV && SwingUtilities.isEventDispatchThread()) {
+            new Exception("Query FM from EDT!").printStackTrace();
+        }
+
+        Iterator<F> result = null;
+        cmd.setStreaming(true);
         submit(cmd);
         try {
-            result = cmd.getResults(getTimeout(), TimeUnit.MILLISECONDS);
+            result = cmd.getIterator(getTimeout(), TimeUnit.MILLISECONDS);
         } catch (TimeoutException toe) {
             if (processTimeout(cmd)) {
                 // This timeout will be reset by FailoverManager. If it
                 // times out again, caller will get it
-                result = cmd.getResults(getTimeout(), TimeUnit.MILLISECONDS);
+                result = cmd.getIterator(getTimeout(), TimeUnit.MILLISECONDS);
             } else {
                 throw toe;
             }
         }
-        debugResponse(cmd);
         return result;
     }
 
@@ -127,7 +164,54 @@ public class Statement implements IStatement {
         }
 
         F result = null;
-        submit(cmd);
+        RequestCoalescer coalescer = session.getRequestCoalescer();
+        if (join(coalescer, cmd)) {
+            result = cmd.getResult(getTimeout(), TimeUnit.MILLISECONDS);
+        } else {
+            try {
+                submit(cmd);
+                result = getResult(cmd);
+            } finally {
+                coalescer.leave(cmd);
+            }
+        }
+        debugResponse(cmd);
+        return result;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> joins an identical in-flight command. A timeout is
+     * handled the same way as for a command we sent ourselves.
+     * 
+     * @param coalescer
+     *            the session's request coalescer
+     * @param cmd
+     *            the command to be executed
+     * @return true if the command has been completed; false if it must be
+     *         submitted
+     * @throws Exception
+     */
+    protected <F> boolean join(RequestCoalescer coalescer,
+            ICommand<FVResponse<F>, F> cmd) throws Exception {
+        try {
+            return coalescer.join(cmd, getTimeout());
+        } catch (TimeoutException toe) {
+            if (processTimeout(cmd)) {
+                // This timeout will be reset by FailoverManager. If it
+                // times out again, caller will get it. If the command is no
+                // longer in flight, we submit our own.
+                return coalescer.join(cmd, getTimeout());
+            } else {
+                throw toe;
+            }
+        }
+    }
+
+    @Override
+    public <F, E extends IResponse<F>> F getResult(
+            SingleResponseCommand<F, E> cmd) throws Exception {
+        F result = null;
         try {
             result = cmd.getResult(getTimeout(), TimeUnit.MILLISECONDS);
         } catch (TimeoutException toe) {
@@ -139,7 +223,6 @@ public class Statement implements IStatement {
                 throw toe;
             }
         }
-        debugResponse(cmd);
         return result;
     }
 
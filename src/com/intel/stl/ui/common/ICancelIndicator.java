@@ -28,6 +28,9 @@
 
 package com.intel.stl.ui.common;
 
-public interface ICancelIndicator {
+import com.intel.stl.api.ICancelChecker;
+
+public interface ICancelIndicator extends ICancelChecker {
+    @Override
     boolean isCancelled();
 }
@@ -826,6 +826,8 @@ public enum STLConstants {
     K1039_SM_STATE(1039),
     K1040_PORT_ERROR_ACTION(1040),
     K1041_PORT_ERROR_ACTIONS(1041),
+    K1042_TOPOLOGY_STALE(1042),
+    K1043_TOPOLOGY_STALE_DESCRIPTION(1043),
     K1044_COMMAND_TITLE(1044),
     K1045_SEND(1045),
     K1046_CURRENT_TAB(1046),
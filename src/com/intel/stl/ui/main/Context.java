@@ -27,6 +27,8 @@
 
 package com.intel.stl.ui.main;
 
+import static com.intel.stl.configuration.AppSettings.UI_SCHEDULER_IMAGEALIGNED;
+
 import java.awt.Component;
 import java.beans.PropertyChangeListener;
 import java.security.UnrecoverableKeyException;
@@ -151,15 +153,19 @@ public class Context implements ISubnetEventListener, IConnectionAssistant {
 
         PMConfigBean pmConf = getPerformanceApi().getPMConfig();
         int refreshRate = userPreference.getRefreshRateInSeconds();
+        boolean imageAligned = Boolean.parseBoolean(subnetContext
+                .getAppSetting(UI_SCHEDULER_IMAGEALIGNED, "false"));
         if (pmConf != null) {
             int sweepInterval = pmConf.getSweepInterval();
             if (refreshRate > sweepInterval) {
-                this.scheduler = new TaskScheduler(this, refreshRate);
+                this.scheduler =
+                        new TaskScheduler(this, refreshRate, imageAligned);
             } else {
-                this.scheduler = new TaskScheduler(this, sweepInterval);
+                this.scheduler =
+                        new TaskScheduler(this, sweepInterval, imageAligned);
             }
         } else {
-            this.scheduler = new TaskScheduler(this, refreshRate);
+            this.scheduler = new TaskScheduler(this, refreshRate, imageAligned);
         }
 
         this.emailNotifier =
@@ -346,6 +346,7 @@ public class HomePage implements IPageController, IStateChangeListener {
 
             groupStatistics = new GroupStatistics(
                     subnetApi.getConnectionDescription(), imageInfo, sms);
+            groupStatistics.setTopologyStale(subnetApi.isTopologyStale());
 
             isRefreshing = isRefreshing || lastImageInfo == null
                     || lastImageInfo.hasChange(imageInfo);
@@ -142,7 +142,15 @@ public class StatisticsCard
         Util.runInEDT(new Runnable() {
             @Override
             public void run() {
-                view.setTitle(getTitle(sta));
+                if (sta.isTopologyStale()) {
+                    String stale =
+                            STLConstants.K1042_TOPOLOGY_STALE.getValue();
+                    view.setTitle(getTitle(sta) + " (" + stale + ")",
+                            STLConstants.K1043_TOPOLOGY_STALE_DESCRIPTION
+                                    .getValue());
+                } else {
+                    view.setTitle(getTitle(sta));
+                }
                 view.setDuration(sta.getMsmUptimeInSeconds(), TimeUnit.SECONDS);
                 long numLinks = sta.getNumLinks();
                 long numHostLinks = sta.getNodeTypesDist().get(NodeType.HFI);
@@ -63,6 +63,8 @@ public class GroupStatistics {
 
     private long msmUptimeInSeconds;
 
+    private boolean topologyStale;
+
     public GroupStatistics(SubnetDescription subnet, ImageInfoBean imageInfo,
             List<SMInfoDataBean> sms) {
         this.subnet = subnet;
@@ -120,6 +122,22 @@ public class GroupStatistics {
         this.msmUptimeInSeconds = msmUptimeInSeconds;
     }
 
+    /**
+     * @return true if the topology was restored from the last snapshot and
+     *         may be out of date
+     */
+    public boolean isTopologyStale() {
+        return topologyStale;
+    }
+
+    /**
+     * @param topologyStale
+     *            the topologyStale to set
+     */
+    public void setTopologyStale(boolean topologyStale) {
+        this.topologyStale = topologyStale;
+    }
+
     /**
      * @return the numLinks
      */
@@ -260,7 +278,8 @@ public class GroupStatistics {
                 + numNoRespNodes + ", numNoRespPorts=" + numNoRespPorts
                 + ", numSkippedNodes=" + numSkippedNodes + ", numSkippedPorts="
                 + numSkippedPorts + ", numSMs=" + numSMs + ", SMInfo=" + smInfo
-                + ", msmUptimeInSeconds=" + msmUptimeInSeconds + "]";
+                + ", msmUptimeInSeconds=" + msmUptimeInSeconds
+                + ", topologyStale=" + topologyStale + "]";
     }
 
 }
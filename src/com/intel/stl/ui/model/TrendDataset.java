@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.ui.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.Range;
+import org.jfree.data.xy.AbstractIntervalXYDataset;
+
+/**
+ * An interval XY dataset over {@link TrendSeries}. The x value of an item is
+ * the middle of its time period, as in a TimePeriodValuesCollection.
+ * <p>
+ * Series do not notify the dataset when they change; whoever updates them
+ * calls {@link #notifyChanged()} once after a batch of updates, so a chart is
+ * repainted once per batch instead of once per value.
+ */
+public class TrendDataset extends AbstractIntervalXYDataset implements
+        DomainInfo {
+
+    private static final long serialVersionUID = -1683524375027845812L;
+
+    private final List<TrendSeries> data = new ArrayList<TrendSeries>();
+
+    public TrendSeries getSeries(int series) {
+        return data.get(series);
+    }
+
+    public void addSeries(TrendSeries series) {
+        data.add(series);
+        fireDatasetChanged();
+    }
+
+    public void removeSeries(TrendSeries series) {
+        if (data.remove(series)) {
+            fireDatasetChanged();
+        }
+    }
+
+    public void removeSeries(int index) {
+        removeSeries(getSeries(index));
+    }
+
+    /**
+     * 
+     * <i>Description:</i> notifies the listeners, typically a chart plot,
+     * that the content of the series has changed
+     * 
+     */
+    public void notifyChanged() {
+        fireDatasetChanged();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jfree.data.general.AbstractSeriesDataset#getSeriesCount()
+     */
+    @Override
+    public int getSeriesCount() {
+        return data.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jfree.data.general.AbstractSeriesDataset#getSeriesKey(int)
+     */
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Comparable getSeriesKey(int series) {
+        return data.get(series).getKey();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jfree.data.xy.XYDataset#getItemCount(int)
+     */
+    @Override
+    public int getItemCount(int series) {
+        return data.get(series).getItemCount();
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        TrendSeries ts = data.get(series);
+        long start = ts.getStartTime(item);
+        return start + (ts.getEndTime(item) - start) / 2;
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return Double.valueOf(getXValue(series, item));
+    }
+
+    @Override
+    public double getStartXValue(int series, int item) {
+        return data.get(series).getStartTime(item);
+    }
+
+    @Override
+    public Number getStartX(int series, int item) {
+        return Double.valueOf(getStartXValue(series, item));
+    }
+
+    @Override
+    public double getEndXValue(int series, int item) {
+        return data.get(series).getEndTime(item);
+    }
+
+    @Override
+    public Number getEndX(int series, int item) {
+        return Double.valueOf(getEndXValue(series, item));
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        return data.get(series).getValue(item);
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        return Double.valueOf(getYValue(series, item));
+    }
+
+    @Override
+    public double getStartYValue(int series, int item) {
+        return getYValue(series, item);
+    }
+
+    @Override
+    public Number getStartY(int series, int item) {
+        return getY(series, item);
+    }
+
+    @Override
+    public double getEndYValue(int series, int item) {
+        return getYValue(series, item);
+    }
+
+    @Override
+    public Number getEndY(int series, int item) {
+        return getY(series, item);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jfree.data.DomainInfo#getDomainLowerBound(boolean)
+     */
+    @Override
+    public double getDomainLowerBound(boolean includeInterval) {
+        Range range = getDomainBounds(includeInterval);
+        return range == null ? Double.NaN : range.getLowerBound();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jfree.data.DomainInfo#getDomainUpperBound(boolean)
+     */
+    @Override
+    public double getDomainUpperBound(boolean includeInterval) {
+        Range range = getDomainBounds(includeInterval);
+        return range == null ? Double.NaN : range.getUpperBound();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jfree.data.DomainInfo#getDomainBounds(boolean)
+     */
+    @Override
+    public Range getDomainBounds(boolean includeInterval) {
+        double lower = Double.POSITIVE_INFINITY;
+        double upper = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < data.size(); i++) {
+            int count = data.get(i).getItemCount();
+            for (int j = 0; j < count; j++) {
+                if (includeInterval) {
+                    lower = Math.min(lower, getStartXValue(i, j));
+                    upper = Math.max(upper, getEndXValue(i, j));
+                } else {
+                    double x = getXValue(i, j);
+                    lower = Math.min(lower, x);
+                    upper = Math.max(upper, x);
+                }
+            }
+        }
+        if (lower > upper) {
+            return null;
+        }
+        return new Range(lower, upper);
+    }
+}
@@ -1,9 +1,9 @@
 /**
- * Copyright (c) 2016, Intel Corporation
- *
+ * Copyright (c) 2015, Intel Corporation
+ * 
  * Redistribution and use in source and binary forms, with or without
  * modification, are permitted provided that the following conditions are met:
- *
+ * 
  *     * Redistributions of source code must retain the above copyright notice,
  *       this list of conditions and the following disclaimer.
  *     * Redistributions in binary form must reproduce the above copyright
@@ -12,7 +12,7 @@
  *     * Neither the name of Intel Corporation nor the names of its contributors
  *       may be used to endorse or promote products derived from this software
  *       without specific prior written permission.
- *
+ * 
  * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
  * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
  * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
@@ -25,75 +25,293 @@
  * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+
 package com.intel.stl.ui.model;
 
-import java.util.TreeMap;
+/**
+ * A fixed capacity series of time period values kept in primitive ring
+ * buffers. Adding a value to a full series evicts the oldest one. The min and
+ * max values over the window are tracked with two monotonic queues, so they
+ * are available in constant time without boxing.
+ * <p>
+ * A series is not thread safe; it is meant to be updated and read on the EDT.
+ */
+public class TrendSeries {
 
-import org.jfree.data.time.TimePeriod;
-import org.jfree.data.time.TimePeriodValues;
+    private final String key;
 
-public class TrendSeries extends TimePeriodValues {
+    private int capacity;
 
-    /**
-     *
-     */
-    private static final long serialVersionUID = -5075886854486506762L;
+    private long[] starts;
+
+    private long[] ends;
+
+    private double[] values;
+
+    // position of the oldest item in the ring buffers
+    private int head;
+
+    private int count;
+
+    // sequence number of the oldest item; the item with sequence number seq
+    // is at position (head + seq - first) % capacity
+    private long first;
 
-    private final TreeMap<Double, Integer> minMaxMap;
+    // monotonic queues of sequence numbers: values increasing in minQueue and
+    // decreasing in maxQueue, so the head of each is the current min/max
+    private long[] minQueue;
+
+    private int minHead;
+
+    private int minSize;
+
+    private long[] maxQueue;
+
+    private int maxHead;
+
+    private int maxSize;
+
+    public TrendSeries(String key, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        this.key = key;
+        allocate(capacity);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
 
     /**
-     * Description:
-     *
-     * @param name
+     * 
+     * <i>Description:</i> changes the capacity of the series. If the series
+     * holds more items than the new capacity, the oldest ones are discarded.
+     * 
+     * @param capacity
+     *            the new capacity
      */
-    public TrendSeries(String name) {
-        super(name);
-        minMaxMap = new TreeMap<Double, Integer>();
+    public void setCapacity(int capacity) {
+        if (capacity == this.capacity || capacity <= 0) {
+            return;
+        }
+        long[] oldStarts = starts;
+        long[] oldEnds = ends;
+        double[] oldValues = values;
+        int oldCapacity = this.capacity;
+        int oldHead = head;
+        int oldCount = count;
+
+        allocate(capacity);
+        for (int i = Math.max(0, oldCount - capacity); i < oldCount; i++) {
+            int pos = (oldHead + i) % oldCapacity;
+            add(oldStarts[pos], oldEnds[pos], oldValues[pos]);
+        }
+    }
+
+    public int getItemCount() {
+        return count;
+    }
+
+    public long getStartTime(int index) {
+        return starts[position(index)];
+    }
+
+    public long getEndTime(int index) {
+        return ends[position(index)];
+    }
+
+    public double getValue(int index) {
+        return values[position(index)];
     }
 
     public long getMinY() {
-        if (!minMaxMap.isEmpty()) {
-            Double val = minMaxMap.firstKey();
-            return val.longValue();
+        if (minSize == 0) {
+            return 0;
         }
-        return 0;
+        return (long) valueOf(minQueue[minHead]);
     }
 
     public long getMaxY() {
-        if (!minMaxMap.isEmpty()) {
-            Double val = minMaxMap.lastKey();
-            return val.longValue();
+        if (maxSize == 0) {
+            return 0;
         }
-        return 0;
+        return (long) valueOf(maxQueue[maxHead]);
     }
 
-    @Override
-    public void add(TimePeriod tp, double value) {
-        super.add(tp, value);
-        int counter = 1;
-        if (minMaxMap.containsKey(value)) {
-            counter = minMaxMap.get(value);
-            counter += 1;
+    /**
+     * 
+     * <i>Description:</i> appends a value. If the series is full, the oldest
+     * value is evicted first.
+     * 
+     * @param start
+     *            the start of the time period, in milliseconds
+     * @param end
+     *            the end of the time period, in milliseconds
+     * @param value
+     *            the value
+     * @return true if the oldest value was evicted
+     */
+    public boolean add(long start, long end, double value) {
+        boolean evicted = false;
+        if (count == capacity) {
+            removeFirst();
+            evicted = true;
         }
-        minMaxMap.put(value, counter);
+        long seq = first + count;
+        int pos = (head + count) % capacity;
+        starts[pos] = start;
+        ends[pos] = end;
+        values[pos] = value;
+        count += 1;
+
+        while (minSize > 0
+                && valueOf(queueLast(minQueue, minHead, minSize)) >= value) {
+            minSize -= 1;
+        }
+        minQueue[(minHead + minSize) % capacity] = seq;
+        minSize += 1;
+        while (maxSize > 0
+                && valueOf(queueLast(maxQueue, maxHead, maxSize)) <= value) {
+            maxSize -= 1;
+        }
+        maxQueue[(maxHead + maxSize) % capacity] = seq;
+        maxSize += 1;
+        return evicted;
     }
 
-    @Override
-    public void delete(int start, int end) {
-        if (getItemCount() > end && end >= start) {
-            for (int i = start; i <= end; i++) {
-                double value = getValue(i).doubleValue();
-                if (minMaxMap.containsKey(value)) {
-                    int counter = minMaxMap.get(value);
-                    counter -= 1;
-                    if (counter > 0) {
-                        minMaxMap.put(value, counter);
-                    } else {
-                        minMaxMap.remove(value);
-                    }
-                }
+    /**
+     * 
+     * <i>Description:</i> removes the values whose time period is within the
+     * given one
+     * 
+     * @param start
+     *            the start of the time period, in milliseconds
+     * @param end
+     *            the end of the time period, in milliseconds
+     * @return the number of values removed
+     */
+    public int removeWithin(long start, long end) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int pos = position(i);
+            if (starts[pos] >= start && ends[pos] <= end) {
+                continue;
             }
+            if (kept != i) {
+                int dest = position(kept);
+                starts[dest] = starts[pos];
+                ends[dest] = ends[pos];
+                values[dest] = values[pos];
+            }
+            kept += 1;
+        }
+        int removed = count - kept;
+        if (removed > 0) {
+            count = kept;
+            rebuildQueues();
+        }
+        return removed;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> removes the oldest values whose time period starts
+     * at or before the given time
+     * 
+     * @param start
+     *            the time, in milliseconds
+     * @return the number of values removed
+     */
+    public int removeUpTo(long start) {
+        int removed = 0;
+        while (count > 0 && starts[head] <= start) {
+            removeFirst();
+            removed += 1;
+        }
+        return removed;
+    }
+
+    public void clear() {
+        head = 0;
+        count = 0;
+        first = 0;
+        minHead = 0;
+        minSize = 0;
+        maxHead = 0;
+        maxSize = 0;
+    }
+
+    public TrendSeries copy() {
+        TrendSeries res = new TrendSeries(key, capacity);
+        for (int i = 0; i < count; i++) {
+            int pos = position(i);
+            res.add(starts[pos], ends[pos], values[pos]);
+        }
+        return res;
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        starts = new long[capacity];
+        ends = new long[capacity];
+        values = new double[capacity];
+        minQueue = new long[capacity];
+        maxQueue = new long[capacity];
+        clear();
+    }
+
+    private void removeFirst() {
+        if (minSize > 0 && minQueue[minHead] == first) {
+            minHead = (minHead + 1) % capacity;
+            minSize -= 1;
+        }
+        if (maxSize > 0 && maxQueue[maxHead] == first) {
+            maxHead = (maxHead + 1) % capacity;
+            maxSize -= 1;
+        }
+        head = (head + 1) % capacity;
+        first += 1;
+        count -= 1;
+    }
+
+    private void rebuildQueues() {
+        int size = count;
+        count = 0;
+        minHead = 0;
+        minSize = 0;
+        maxHead = 0;
+        maxSize = 0;
+        // re-adding in place keeps the positions and sequence numbers
+        for (int i = 0; i < size; i++) {
+            int pos = (head + i) % capacity;
+            add(starts[pos], ends[pos], values[pos]);
+        }
+    }
+
+    private int position(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index
+                    + " out of [0, " + count + ")");
         }
-        super.delete(start, end);
+        return (head + index) % capacity;
+    }
+
+    private double valueOf(long seq) {
+        return values[(int) ((head + seq - first) % capacity)];
+    }
+
+    private long queueLast(long[] queue, int queueHead, int queueSize) {
+        return queue[(queueHead + queueSize - 1) % capacity];
+    }
+
+    @Override
+    public String toString() {
+        return "TrendSeries [key=" + key + ", count=" + count + ", capacity="
+                + capacity + "]";
     }
 }
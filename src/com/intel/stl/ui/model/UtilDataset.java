@@ -27,23 +27,17 @@
 
 package com.intel.stl.ui.model;
 
-import org.jfree.data.time.TimePeriodValues;
-import org.jfree.data.time.TimePeriodValuesCollection;
-
 import com.intel.stl.ui.performance.PmaNoRespGroupSource;
 import com.intel.stl.ui.performance.TopoNoRespGroupSource;
 
-public class UtilDataset extends TimePeriodValuesCollection {
+public class UtilDataset extends TrendDataset {
     private static final long serialVersionUID = 7676929820872719510L;
 
-    private final TimePeriodValuesCollection utilDataset =
-            new TimePeriodValuesCollection();
+    private final TrendDataset utilDataset = new TrendDataset();
 
-    private final TimePeriodValuesCollection pmaDataset =
-            new TimePeriodValuesCollection();
+    private final TrendDataset pmaDataset = new TrendDataset();
 
-    private final TimePeriodValuesCollection topoDataset =
-            new TimePeriodValuesCollection();
+    private final TrendDataset topoDataset = new TrendDataset();
 
     public UtilDataset() {
         super();
@@ -53,13 +47,13 @@ public class UtilDataset extends TimePeriodValuesCollection {
      * (non-Javadoc)
      *
      * @see
-     * org.jfree.data.time.TimeSeriesCollection#addSeries(org.jfree.data.time.
-     * TimeSeries)
+     * com.intel.stl.ui.model.TrendDataset#addSeries(com.intel.stl.ui.model.
+     * TrendSeries)
      */
     @Override
-    public void addSeries(TimePeriodValues series) {
+    public void addSeries(TrendSeries series) {
         super.addSeries(series);
-        String name = (String) series.getKey();
+        String name = series.getKey();
         if (PmaNoRespGroupSource.isPmaNoResp(name)) {
             pmaDataset.addSeries(series);
         } else if (TopoNoRespGroupSource.isTopoNoResp(name)) {
@@ -73,35 +67,48 @@ public class UtilDataset extends TimePeriodValuesCollection {
      * (non-Javadoc)
      *
      * @see
-     * org.jfree.data.time.TimeSeriesCollection#removeSeries(org.jfree.data.time
-     * .TimeSeries)
+     * com.intel.stl.ui.model.TrendDataset#removeSeries(com.intel.stl.ui.model
+     * .TrendSeries)
      */
     @Override
-    public void removeSeries(TimePeriodValues series) {
+    public void removeSeries(TrendSeries series) {
         super.removeSeries(series);
         pmaDataset.removeSeries(series);
         topoDataset.removeSeries(series);
         utilDataset.removeSeries(series);
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.intel.stl.ui.model.TrendDataset#notifyChanged()
+     */
+    @Override
+    public void notifyChanged() {
+        super.notifyChanged();
+        utilDataset.notifyChanged();
+        pmaDataset.notifyChanged();
+        topoDataset.notifyChanged();
+    }
+
     /**
      * @return the utilDataset
      */
-    public TimePeriodValuesCollection getUtilDataset() {
+    public TrendDataset getUtilDataset() {
         return utilDataset;
     }
 
     /**
      * @return the pmaDataset
      */
-    public TimePeriodValuesCollection getPmaDataset() {
+    public TrendDataset getPmaDataset() {
         return pmaDataset;
     }
 
     /**
      * @return the topoDataset
      */
-    public TimePeriodValuesCollection getTopoDataset() {
+    public TrendDataset getTopoDataset() {
         return topoDataset;
     }
 
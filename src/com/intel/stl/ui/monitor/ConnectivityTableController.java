@@ -31,9 +31,11 @@ import java.awt.Point;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import javax.swing.ListSelectionModel;
 
@@ -43,7 +45,10 @@ import org.slf4j.LoggerFactory;
 
 import com.intel.stl.api.Utils;
 import com.intel.stl.api.configuration.LinkQuality;
+import com.intel.stl.api.performance.IPortCountersListener;
+import com.intel.stl.api.performance.PerformanceRequestCancelledException;
 import com.intel.stl.api.performance.PortCountersBean;
+import com.intel.stl.api.performance.PortId;
 import com.intel.stl.api.performance.VFPortCountersBean;
 import com.intel.stl.api.subnet.ISubnetApi;
 import com.intel.stl.api.subnet.LinkRecordBean;
@@ -88,6 +93,23 @@ public class ConnectivityTableController {
 
     private final Map<Point, PortSchedule<?>> schedules;
 
+    /**
+     * port counter schedules whose first counters have not been requested yet
+     */
+    private final Map<PortId, PortSchedule<PortCountersBean>> pendingCounters;
+
+    /**
+     * background port counter fetches, cancelled when the table is cleared or
+     * replaced
+     */
+    private final List<Future<?>> counterFetches;
+
+    /**
+     * incremented whenever the table is cleared or replaced, so counters
+     * arriving late from a previous table are dropped
+     */
+    private int counterGeneration;
+
     private final SingleTaskManager taskMgr;
 
     private int currentLid;
@@ -113,6 +135,9 @@ public class ConnectivityTableController {
         this.model = model;
         this.view = view;
         schedules = new HashMap<Point, PortSchedule<?>>();
+        pendingCounters =
+                new LinkedHashMap<PortId, PortSchedule<PortCountersBean>>();
+        counterFetches = new ArrayList<Future<?>>();
         taskMgr = new SingleTaskManager();
     }
 
@@ -180,6 +205,7 @@ public class ConnectivityTableController {
                     public void onDone(List<ConnectivityTableData> result) {
                         if (result != null) {
                             updateTable(result);
+                            fetchPortCounters();
                         }
                     }
 
@@ -255,6 +281,7 @@ public class ConnectivityTableController {
                     public void onDone(List<ConnectivityTableData> result) {
                         if (result != null) {
                             updateTable(result);
+                            fetchPortCounters();
                         }
                     }
 
@@ -475,15 +502,15 @@ public class ConnectivityTableController {
         // Give the cableInfo a value so the icon will appear
         nodeData.setCableInfo("");
 
-        PortSchedule<?> schedule = null;
         if (vfName == null) {
-            schedule =
-                    schedulePortPerformanceTask(index, nodeData, lid, portNum);
+            // counters are requested for all rows at once once the table is
+            // shown; see fetchPortCounters
+            schedulePortPerformanceTask(index, nodeData, lid, portNum);
         } else {
-            schedule = scheduleVFPortPerformanceTask(index, nodeData, lid,
-                    vfName, portNum);
+            PortSchedule<?> schedule = scheduleVFPortPerformanceTask(index,
+                    nodeData, lid, vfName, portNum);
+            schedule.refresh();
         }
-        schedule.refresh();
 
         return nodeData;
     }
@@ -584,10 +611,86 @@ public class ConnectivityTableController {
 
         synchronized (schedules) {
             schedules.put(new Point(lid, portNum), ps);
+            pendingCounters.put(new PortId(lid, portNum), ps);
         }
         return ps;
     }
 
+    /**
+     *
+     * Description: requests the counters for all rows added since the last
+     * call in one batch, in the background. Rows are updated one by one as
+     * their counters arrive, so the table fills progressively instead of
+     * waiting for one round trip per row. The fetch is cancelled when the
+     * table is cleared or replaced.
+     *
+     */
+    protected void fetchPortCounters() {
+        final Map<PortId, PortSchedule<PortCountersBean>> toFetch =
+                new LinkedHashMap<PortId, PortSchedule<PortCountersBean>>();
+        final int generation;
+        synchronized (schedules) {
+            toFetch.putAll(pendingCounters);
+            pendingCounters.clear();
+            generation = counterGeneration;
+        }
+        if (toFetch.isEmpty()) {
+            return;
+        }
+
+        Future<?> future = taskScheduler.submitToBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    taskScheduler.getPerformanceApi().getPortCounters(
+                            toFetch.keySet(), new IPortCountersListener() {
+
+                                @Override
+                                public void onPortCounters(PortId port,
+                                        PortCountersBean counters) {
+                                    synchronized (schedules) {
+                                        if (generation != counterGeneration) {
+                                            // table was cleared or replaced
+                                            return;
+                                        }
+                                    }
+                                    toFetch.get(port).onDone(counters);
+                                }
+
+                                @Override
+                                public void onError(PortId port,
+                                        Exception error) {
+                                    log.warn("Failed to get counters for {}",
+                                            port, error);
+                                }
+                            });
+                } catch (PerformanceRequestCancelledException e) {
+                    // table was cleared or replaced
+                } catch (Exception e) {
+                    log.error("Failed to get port counters", e);
+                }
+            }
+        });
+        if (future == null) {
+            return;
+        }
+
+        synchronized (schedules) {
+            if (generation != counterGeneration) {
+                // cleared while submitting
+                future.cancel(true);
+                return;
+            }
+            Iterator<Future<?>> it = counterFetches.iterator();
+            while (it.hasNext()) {
+                if (it.next().isDone()) {
+                    it.remove();
+                }
+            }
+            counterFetches.add(future);
+        }
+    }
+
     protected PortSchedule<VFPortCountersBean> scheduleVFPortPerformanceTask(
             final int index, final ConnectivityTableData dataEntrty,
             final int lid, final String vfName, final short portNum) {
@@ -666,6 +769,12 @@ public class ConnectivityTableController {
                 schedule.clear();
             }
             schedules.clear();
+            pendingCounters.clear();
+            counterGeneration += 1;
+            for (Future<?> future : counterFetches) {
+                future.cancel(true);
+            }
+            counterFetches.clear();
         }
     }
 
@@ -724,6 +833,10 @@ public class ConnectivityTableController {
             this.task = task;
         }
 
+        public void onDone(E result) {
+            callback.onDone(result);
+        }
+
         public abstract void refresh();
 
         public abstract void clear();
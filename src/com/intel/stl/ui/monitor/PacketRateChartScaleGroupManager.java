@@ -27,14 +27,13 @@
 
 package com.intel.stl.ui.monitor;
 
-import org.jfree.data.time.TimePeriodValuesCollection;
-
 import com.intel.stl.ui.main.view.IChartRangeUpdater;
 import com.intel.stl.ui.main.view.PacketRateChartRangeUpdater;
+import com.intel.stl.ui.model.TrendDataset;
 import com.intel.stl.ui.model.TrendSeries;
 
 public class PacketRateChartScaleGroupManager
-        extends ChartScaleGroupManager<TimePeriodValuesCollection> {
+        extends ChartScaleGroupManager<TrendDataset> {
     private final static PacketRateChartScaleGroupManager instance =
             new PacketRateChartScaleGroupManager();
 
@@ -64,12 +63,12 @@ public class PacketRateChartScaleGroupManager
      * .general.Dataset)
      */
     @Override
-    long[] getMinMax(TimePeriodValuesCollection dataset) {
+    long[] getMinMax(TrendDataset dataset) {
         long lower = Long.MAX_VALUE;
         long upper = Long.MIN_VALUE;
 
         for (int i = 0; i < dataset.getSeriesCount(); i++) {
-            TrendSeries series = (TrendSeries) dataset.getSeries(i);
+            TrendSeries series = dataset.getSeries(i);
             lower = Math.min(lower, series.getMinY());
             upper = Math.max(upper, series.getMaxY());
         }
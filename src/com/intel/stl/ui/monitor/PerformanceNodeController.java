@@ -32,6 +32,7 @@ import static com.intel.stl.ui.common.PageWeight.MEDIUM;
 import java.awt.Component;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -47,6 +48,7 @@ import com.intel.stl.api.configuration.LinkQuality;
 import com.intel.stl.api.performance.IPerformanceApi;
 import com.intel.stl.api.performance.PerformanceRequestCancelledException;
 import com.intel.stl.api.performance.PortCountersBean;
+import com.intel.stl.api.performance.PortId;
 import com.intel.stl.api.performance.VFPortCountersBean;
 import com.intel.stl.api.subnet.NodeType;
 import com.intel.stl.ui.common.IPerfSubpageController;
@@ -294,10 +296,17 @@ public class PerformanceNodeController implements IPerfSubpageController,
 
                     IPerformanceApi perfApi = taskScheduler.getPerformanceApi();
                     if (vfName == null) {
+                        List<PortId> portIds =
+                                new ArrayList<PortId>(ports.length);
+                        for (Short port : ports) {
+                            portIds.add(new PortId(lid, port));
+                        }
+                        Map<PortId, PortCountersBean> counters =
+                                perfApi.getPortCounters(portIds);
                         PortCountersBean[] res =
                                 new PortCountersBean[ports.length];
                         for (int i = 0; i < res.length; i++) {
-                            res[i] = perfApi.getPortCounters(lid, ports[i]);
+                            res[i] = counters.get(portIds.get(i));
                         }
                         portCounterCallback.onDone(res);
                     } else {
@@ -53,7 +53,6 @@ import com.intel.stl.ui.common.UILabels;
 import com.intel.stl.ui.framework.IAppEvent;
 import com.intel.stl.ui.monitor.tree.FVResourceNode;
 import com.intel.stl.ui.monitor.tree.FVTreeManager;
-import com.intel.stl.ui.monitor.tree.FVTreeManager.TreeManagementModel;
 import com.intel.stl.ui.monitor.tree.FVTreeModel;
 import com.intel.stl.ui.monitor.tree.SearchResult;
 import com.intel.stl.ui.monitor.tree.SearchResultNode;
@@ -80,8 +79,6 @@ public class SearchController implements TreeSelectionListener,
 
     private TreeTypeEnum treeType;
 
-    private int treeNodeCount;
-
     private int totalNodeCount;
 
     private FVTreeModel treeModel;
@@ -219,12 +216,8 @@ public class SearchController implements TreeSelectionListener,
                             return null;
                         }
 
-                        for (TreeManagementModel model : treeSearcher
-                                .getMgrModels().values()) {
-                            if (model.getTree() != null) {
-                                totalNodeCount += getNodeCount(model.getTree());
-                            }
-                        }
+                        totalNodeCount =
+                                treeSearcher.getNumSearchableNodes();
 
                         if (totalNodeCount > 0) {
                             observer =
@@ -307,20 +300,6 @@ public class SearchController implements TreeSelectionListener,
         worker.execute();
     }
 
-    public int getNodeCount(FVResourceNode root) {
-
-        if (root.isNode()) {
-            treeNodeCount = 1;
-        } else {
-            treeNodeCount = 0;
-            for (FVResourceNode child : root.getChildren()) {
-                treeNodeCount += getNodeCount(child);
-            }
-        }
-
-        return treeNodeCount;
-    }
-
     protected void buildTree(EnumMap<TreeTypeEnum, SearchResult> resultTrees) {
         for (Entry<TreeTypeEnum, SearchResult> entry : resultTrees.entrySet()) {
             SearchResultNode root = entry.getValue().getResultTree();
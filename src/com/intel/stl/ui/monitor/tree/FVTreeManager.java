@@ -224,10 +224,10 @@ public class FVTreeManager implements IContextAware {
         SearchResult result = null;
 
         if (model != null && model.isValid()) {
-            FVResourceNode treeRoot = model.getTree();
             result =
                     searchBuilder.searchAndBuildTree(treeType, searchType,
-                            searchKey, treeRoot, observer, cancelIndicator);
+                            searchKey, model.getSearchIndex(), observer,
+                            cancelIndicator);
         } else if (treeType != TreeTypeEnum.TOP_10_CONGESTED_TREE) {
             throw new RuntimeException("Tree is under change " + model);
         }
@@ -235,6 +235,22 @@ public class FVTreeManager implements IContextAware {
         return result;
     }
 
+    /**
+     * 
+     * <i>Description:</i> the number of device nodes a search goes through
+     * 
+     * @return the number of device nodes in all trees
+     */
+    public synchronized int getNumSearchableNodes() {
+        int res = 0;
+        for (TreeManagementModel model : mgrModels.values()) {
+            if (!model.isEmpty()) {
+                res += model.getSearchIndex().size();
+            }
+        }
+        return res;
+    }
+
     public void addMonitor(TreeTypeEnum treeType, ITreeMonitor monitor) {
         TreeManagementModel model = mgrModels.get(treeType);
         if (model != null) {
@@ -347,6 +363,7 @@ public class FVTreeManager implements IContextAware {
             FVResourceNode tree = model.getTree();
             List<ITreeMonitor> monitors = model.getMonitors();
             treeUpdater.updateNode(lid, tree, monitors);
+            model.invalidateSearchIndex();
         }
     }
 
@@ -426,6 +443,7 @@ public class FVTreeManager implements IContextAware {
             FVResourceNode tree = model.getTree();
             List<ITreeMonitor> monitors = model.getMonitors();
             treeUpdater.updateNode(lid, tree, monitors);
+            model.invalidateSearchIndex();
         }
     }
 
@@ -503,12 +521,15 @@ public class FVTreeManager implements IContextAware {
             VirtualFabricsTreeUpdater treeUpdater =
                     new VirtualFabricsTreeUpdater(mSubnetApi, mPerformanceApi);
             treeUpdater.updateNode(lid, model.getTree(), model.getMonitors());
+            model.invalidateSearchIndex();
         }
     }
 
     public class TreeManagementModel {
         private FVResourceNode tree;
 
+        private SearchIndex searchIndex;
+
         private boolean isDirty = true;
 
         private final List<ITreeMonitor> monitors =
@@ -528,6 +549,22 @@ public class FVTreeManager implements IContextAware {
         public void setTree(FVResourceNode tree) {
             this.tree = tree;
             isDirty = false;
+            searchIndex = tree == null ? null : new SearchIndex(tree);
+        }
+
+        /**
+         * @return the search index of the tree, created if the tree changed
+         *         since the last search
+         */
+        public SearchIndex getSearchIndex() {
+            if (searchIndex == null && tree != null) {
+                searchIndex = new SearchIndex(tree);
+            }
+            return searchIndex;
+        }
+
+        public void invalidateSearchIndex() {
+            searchIndex = null;
         }
 
         /**
@@ -543,6 +580,8 @@ public class FVTreeManager implements IContextAware {
          */
         public void setDirty(boolean isDirty) {
             this.isDirty = isDirty;
+            // the tree is, or has been, synchronized with the fabric
+            searchIndex = null;
         }
 
         public void addTreeMonitor(ITreeMonitor monitor) {
@@ -571,6 +610,7 @@ public class FVTreeManager implements IContextAware {
         public void reset() {
             tree = null;
             isDirty = true;
+            searchIndex = null;
         }
 
     }
@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.ui.monitor.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.intel.stl.ui.monitor.TreeSearchType;
+
+/**
+ * Index over the device nodes of a resource tree for searching. Names and
+ * GUIDs are indexed by their 3-grams, so a substring search only needs to
+ * check the nodes that have the least frequent 3-gram of the search key, and
+ * LIDs are hashed. The index is a snapshot of the tree; it must be recreated
+ * when the tree changes.
+ */
+public class SearchIndex {
+    private static final int GRAM_SIZE = 3;
+
+    private static final int[] NONE = new int[0];
+
+    private final FVResourceNode root;
+
+    // device nodes in tree order
+    private final FVResourceNode[] nodes;
+
+    private final GramIndex nameIndex = new GramIndex();
+
+    private final GramIndex guidIndex = new GramIndex();
+
+    private final Map<Integer, int[]> lidIndex =
+            new HashMap<Integer, int[]>();
+
+    public SearchIndex(FVResourceNode root) {
+        this.root = root;
+        List<FVResourceNode> nodeList = new ArrayList<FVResourceNode>();
+        collectNodes(root, nodeList);
+        nodes = nodeList.toArray(new FVResourceNode[nodeList.size()]);
+
+        for (int i = 0; i < nodes.length; i++) {
+            FVResourceNode node = nodes[i];
+            nameIndex.add(node.getName(), i);
+            guidIndex.add(node.getGuidStr(), i);
+            int[] entries = lidIndex.get(node.getId());
+            if (entries == null) {
+                entries = new int[] { i };
+            } else {
+                entries = Arrays.copyOf(entries, entries.length + 1);
+                entries[entries.length - 1] = i;
+            }
+            lidIndex.put(node.getId(), entries);
+        }
+        nameIndex.trim();
+        guidIndex.trim();
+    }
+
+    private void collectNodes(FVResourceNode node, List<FVResourceNode> res) {
+        if (node.isNode()) {
+            res.add(node);
+            return;
+        }
+
+        if (node.getChildren() != null) {
+            for (FVResourceNode child : node.getChildren()) {
+                collectNodes(child, res);
+            }
+        }
+    }
+
+    /**
+     * @return the root of the indexed tree
+     */
+    public FVResourceNode getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the number of device nodes in the tree
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    public FVResourceNode getNode(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * 
+     * <i>Description:</i> finds the device nodes that may match a search. The
+     * candidates still need to be checked with the node matcher of the search
+     * type.
+     * 
+     * @param type
+     *            the search type
+     * @param searchKey
+     *            the trimmed search key
+     * @return the indices of the candidates in tree order, or null if every
+     *         node is a candidate
+     */
+    public int[] getCandidates(TreeSearchType type, String searchKey) {
+        switch (type) {
+            case NAME:
+                return nameIndex.getCandidates(searchKey);
+            case GUID:
+                return guidIndex.getCandidates(searchKey);
+            case LID:
+                try {
+                    int[] res = lidIndex.get(Integer.parseInt(searchKey));
+                    return res == null ? NONE : res;
+                } catch (NumberFormatException e) {
+                    // let the matcher report it
+                    return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    private static long getGram(String text, int start) {
+        return ((long) text.charAt(start) << 32)
+                | ((long) text.charAt(start + 1) << 16)
+                | text.charAt(start + 2);
+    }
+
+    private static class GramIndex {
+        private final Map<Long, int[]> postings = new HashMap<Long, int[]>();
+
+        // number of entries in each postings array while building
+        private final Map<Long, Integer> sizes = new HashMap<Long, Integer>();
+
+        void add(String text, int entry) {
+            if (text == null) {
+                return;
+            }
+
+            for (int i = 0; i + GRAM_SIZE <= text.length(); i++) {
+                Long gram = getGram(text, i);
+                int[] entries = postings.get(gram);
+                if (entries == null) {
+                    postings.put(gram, new int[] { entry, 0 });
+                    sizes.put(gram, 1);
+                    continue;
+                }
+
+                int size = sizes.get(gram);
+                if (entries[size - 1] == entry) {
+                    // the gram repeats in the text
+                    continue;
+                }
+                if (size == entries.length) {
+                    entries = Arrays.copyOf(entries, size * 2);
+                    postings.put(gram, entries);
+                }
+                entries[size] = entry;
+                sizes.put(gram, size + 1);
+            }
+        }
+
+        void trim() {
+            for (Map.Entry<Long, int[]> posting : postings.entrySet()) {
+                int size = sizes.get(posting.getKey());
+                if (size < posting.getValue().length) {
+                    posting.setValue(Arrays.copyOf(posting.getValue(), size));
+                }
+            }
+            sizes.clear();
+        }
+
+        int[] getCandidates(String searchKey) {
+            if (searchKey.length() < GRAM_SIZE) {
+                return null;
+            }
+
+            int[] res = null;
+            for (int i = 0; i + GRAM_SIZE <= searchKey.length(); i++) {
+                int[] entries = postings.get(getGram(searchKey, i));
+                if (entries == null) {
+                    return NONE;
+                }
+                if (res == null || entries.length < res.length) {
+                    res = entries;
+                }
+            }
+            return res;
+        }
+    }
+}
@@ -27,6 +27,9 @@
 
 package com.intel.stl.ui.monitor.tree;
 
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.IdentityHashMap;
 
 import com.intel.stl.ui.common.ICancelIndicator;
@@ -36,6 +39,9 @@ import com.intel.stl.ui.monitor.TreeTypeEnum;
 
 /**
  * Search in device node level in a tree and build a new tree with the results.
+ * The candidates are looked up in the {@link SearchIndex} of the tree. When
+ * a name or GUID search extends the previous search key on the same tree,
+ * only the previous matches are checked again.
  */
 public class SearchTreeBuilder {
 
@@ -49,8 +55,11 @@ public class SearchTreeBuilder {
 
     private ICancelIndicator cancelIndicator;
 
+    private final EnumMap<TreeTypeEnum, LastSearch> lastSearches =
+            new EnumMap<TreeTypeEnum, LastSearch>(TreeTypeEnum.class);
+
     public SearchResult searchAndBuildTree(TreeTypeEnum treeType,
-            TreeSearchType searchType, String searchKey, FVResourceNode root,
+            TreeSearchType searchType, String searchKey, SearchIndex index,
             TimeDrivenProgressObserver observer,
             ICancelIndicator cancelIndicator) {
         this.observer = observer;
@@ -59,59 +68,86 @@ public class SearchTreeBuilder {
         nodeMap = new IdentityHashMap<SearchResultNode, FVResourceNode>();
         nodeMatcher = NodeMatcherFactory.createNodeMatcher(searchType);
         String trimmed = searchKey.trim();
-        if (!trimmed.isEmpty()) {
-            resultTree = createResultNode(root);
-            navigateTree(root, trimmed, resultTree);
+        if (!trimmed.isEmpty() && nodeMatcher != null) {
+            int[] matches = findMatches(treeType, searchType, trimmed, index);
+            if (matches != null) {
+                resultTree = createResultNode(index.getRoot());
+                buildResultTree(index, matches);
+            }
         }
 
         return (resultTree == null || resultTree.getChildCount() == 0) ? null
                 : new SearchResult(treeType, resultTree, nodeMap);
     }
 
-    protected void navigateTree(FVResourceNode node, String searchKey,
-            FVResourceNode result) {
+    /**
+     * 
+     * <i>Description:</i> finds the device nodes matching a search
+     * 
+     * @return the indices of the matched nodes in tree order, or null if the
+     *         search is cancelled
+     */
+    protected int[] findMatches(TreeTypeEnum treeType,
+            TreeSearchType searchType, String searchKey, SearchIndex index) {
+        int[] candidates = null;
+        LastSearch last = lastSearches.get(treeType);
+        if (last != null && last.isRefinedBy(index, searchType, searchKey)) {
+            candidates = last.matches;
+        } else {
+            candidates = index.getCandidates(searchType, searchKey);
+        }
 
-        // Test purpose.
-        // try {
-        // Thread.sleep(10);
-        // } catch (InterruptedException e) {
-        // e.printStackTrace();
-        // }
+        int numCandidates = candidates == null ? index.size()
+                : candidates.length;
+        int[] res = new int[numCandidates];
+        int numMatches = 0;
+        for (int i = 0; i < numCandidates; i++) {
+            if (cancelIndicator.isCancelled()) {
+                lastSearches.remove(treeType);
+                return null;
+            }
 
-        if (cancelIndicator.isCancelled()) {
-            resultTree = null;
-            return;
+            int entry = candidates == null ? i : candidates[i];
+            if (nodeMatcher.isMatched(index.getNode(entry), searchKey)) {
+                res[numMatches++] = entry;
+            }
         }
+        res = Arrays.copyOf(res, numMatches);
+        // the nodes that were not checked count as searched as well
+        observer.publishProgress(index.size());
 
-        if (node.isNode()) {
-            if (nodeMatcher != null && nodeMatcher.isMatched(node, searchKey)) {
-                SearchResultNode leaf = createResultNode(node);
-                result.addChild(leaf);
-                nodeMap.put(leaf, node);
-            }
-            observer.publishProgress(1);
-            return;
+        lastSearches.put(treeType,
+                new LastSearch(index, searchType, searchKey, res));
+        return res;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> copies the matched nodes and their ancestors into
+     * the result tree. The matches are in tree order, so the copies keep the
+     * order of the original tree.
+     */
+    protected void buildResultTree(SearchIndex index, int[] matches) {
+        IdentityHashMap<FVResourceNode, FVResourceNode> copies =
+                new IdentityHashMap<FVResourceNode, FVResourceNode>();
+        copies.put(index.getRoot(), resultTree);
+        for (int match : matches) {
+            FVResourceNode node = index.getNode(match);
+            SearchResultNode leaf = createResultNode(node);
+            getResultNode(node.getParent(), copies).addChild(leaf);
+            nodeMap.put(leaf, node);
         }
+    }
 
-        if (node.getChildren() != null) {
-            for (FVResourceNode child : node.getChildren()) {
-
-                if (cancelIndicator.isCancelled()) {
-                    resultTree = null;
-                    return;
-                }
-
-                if (child.isNode()) {
-                    navigateTree(child, searchKey, result);
-                } else {
-                    FVResourceNode copy = createResultNode(child);
-                    navigateTree(child, searchKey, copy);
-                    if (copy.getChildCount() > 0) {
-                        result.addChild(copy);
-                    }
-                }
-            }
+    private FVResourceNode getResultNode(FVResourceNode node,
+            IdentityHashMap<FVResourceNode, FVResourceNode> copies) {
+        FVResourceNode copy = copies.get(node);
+        if (copy == null) {
+            copy = createResultNode(node);
+            copies.put(node, copy);
+            getResultNode(node.getParent(), copies).addChild(copy);
         }
+        return copy;
     }
 
     private SearchResultNode createResultNode(FVResourceNode node) {
@@ -127,4 +163,36 @@ public class SearchTreeBuilder {
     public SearchResultNode getResultTree() {
         return resultTree;
     }
+
+    private static class LastSearch {
+        // weak, so a search doesn't keep an invalidated index and its tree
+        private final WeakReference<SearchIndex> index;
+
+        private final TreeSearchType searchType;
+
+        private final String searchKey;
+
+        private final int[] matches;
+
+        public LastSearch(SearchIndex index, TreeSearchType searchType,
+                String searchKey, int[] matches) {
+            this.index = new WeakReference<SearchIndex>(index);
+            this.searchType = searchType;
+            this.searchKey = searchKey;
+            this.matches = matches;
+        }
+
+        /**
+         * 
+         * <i>Description:</i> whether the matches of a search are a subset of
+         * the matches of this search. That's the case for a substring search
+         * on the same tree with a key containing the key of this search.
+         */
+        boolean isRefinedBy(SearchIndex index, TreeSearchType searchType,
+                String searchKey) {
+            return this.index.get() == index && this.searchType == searchType
+                    && searchType != TreeSearchType.LID
+                    && searchKey.contains(this.searchKey);
+        }
+    }
 }
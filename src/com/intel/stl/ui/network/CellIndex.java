@@ -0,0 +1,469 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.ui.network;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.mxgraph.model.mxIGraphModel;
+import com.mxgraph.util.mxEvent;
+import com.mxgraph.util.mxEventObject;
+import com.mxgraph.util.mxEventSource.mxIEventListener;
+import com.mxgraph.util.mxPoint;
+import com.mxgraph.util.mxRectangle;
+import com.mxgraph.view.mxCellState;
+import com.mxgraph.view.mxGraph;
+import com.mxgraph.view.mxGraphView;
+
+/**
+ * Uniform grid over the bounds of the top level cells of a graph, for hit
+ * testing and viewport culling. Bounds are kept in graph coordinates, so
+ * zooming and panning don't invalidate the index; it is rebuilt lazily after
+ * the graph model changes. Vertices are registered in every bucket their
+ * bounds overlap, edges only in the buckets their segments cross.
+ */
+class CellIndex implements mxIEventListener {
+    private static final double MIN_BUCKET_SIZE = 64;
+
+    private static final int MAX_BUCKETS = 1 << 18;
+
+    private static final int INITIAL_BUCKET_CAPACITY = 4;
+
+    private mxGraph graph;
+
+    private mxIGraphModel indexedModel;
+
+    private boolean dirty = true;
+
+    // top level cells in drawing order
+    private Object[] cells = new Object[0];
+
+    private boolean[] vertices;
+
+    // vertex bounds as x, y, width, height; edge points as x0, y0, x1, y1...
+    private double[][] shapes;
+
+    private double[][] boxes;
+
+    private double originX;
+
+    private double originY;
+
+    private double bucketSize;
+
+    private int cols;
+
+    private int rows;
+
+    private int[][] buckets;
+
+    private int[] bucketSizes;
+
+    private int[] stamps;
+
+    private int stamp;
+
+    public synchronized void setGraph(mxGraph graph) {
+        if (this.graph != graph) {
+            this.graph = graph;
+            dirty = true;
+        }
+    }
+
+    public synchronized void invalidate() {
+        dirty = true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.mxgraph.util.mxEventSource.mxIEventListener#invoke(java.lang.Object,
+     * com.mxgraph.util.mxEventObject)
+     */
+    @Override
+    public void invoke(Object sender, mxEventObject evt) {
+        invalidate();
+    }
+
+    /**
+     * 
+     * <i>Description:</i> finds the top most visible cell at a point
+     * 
+     * @param x
+     *            x in view coordinates
+     * @param y
+     *            y in view coordinates
+     * @param tolerance
+     *            the tolerance in pixels for hitting an edge
+     * @param vertex
+     *            whether to look for a vertex or an edge
+     * @return the cell, or null if there is no cell at the point
+     */
+    public synchronized Object getCellAt(int x, int y, int tolerance,
+            boolean vertex) {
+        if (!validate()) {
+            return null;
+        }
+
+        mxGraphView view = graph.getView();
+        double scale = view.getScale();
+        mxPoint trans = view.getTranslate();
+        double px = x / scale - trans.getX();
+        double py = y / scale - trans.getY();
+        Rectangle2D hit = new Rectangle2D.Double(px, py, 1 / scale, 1 / scale);
+        Rectangle2D edgeHit =
+                new Rectangle2D.Double(px - tolerance / scale, py - tolerance
+                        / scale, (1 + 2 * tolerance) / scale,
+                        (1 + 2 * tolerance) / scale);
+
+        int best = -1;
+        stamp += 1;
+        int col0 = Math.max(0, getCol(edgeHit.getMinX()) - 1);
+        int col1 = Math.min(cols - 1, getCol(edgeHit.getMaxX()) + 1);
+        int row0 = Math.max(0, getRow(edgeHit.getMinY()) - 1);
+        int row1 = Math.min(rows - 1, getRow(edgeHit.getMaxY()) + 1);
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int bucket = row * cols + col;
+                int[] entries = buckets[bucket];
+                for (int k = 0; k < bucketSizes[bucket]; k++) {
+                    int entry = entries[k];
+                    if (entry <= best || stamps[entry] == stamp
+                            || vertices[entry] != vertex) {
+                        continue;
+                    }
+                    stamps[entry] = stamp;
+                    if (hits(entry, vertex ? hit : edgeHit)
+                            && graph.isCellVisible(cells[entry])) {
+                        best = entry;
+                    }
+                }
+            }
+        }
+        return best < 0 ? null : cells[best];
+    }
+
+    /**
+     * 
+     * <i>Description:</i> finds the cells whose bounds intersect a region
+     * 
+     * @param region
+     *            the region in view coordinates
+     * @return the cells in drawing order, or null if the graph has no indexed
+     *         cells
+     */
+    public synchronized List<Object> getCells(Rectangle region) {
+        if (!validate()) {
+            return null;
+        }
+
+        mxGraphView view = graph.getView();
+        double scale = view.getScale();
+        mxPoint trans = view.getTranslate();
+        double minX = region.getX() / scale - trans.getX();
+        double minY = region.getY() / scale - trans.getY();
+        double maxX = region.getMaxX() / scale - trans.getX();
+        double maxY = region.getMaxY() / scale - trans.getY();
+
+        int[] found = new int[16];
+        int numFound = 0;
+        stamp += 1;
+        int col0 = Math.max(0, getCol(minX) - 1);
+        int col1 = Math.min(cols - 1, getCol(maxX) + 1);
+        int row0 = Math.max(0, getRow(minY) - 1);
+        int row1 = Math.min(rows - 1, getRow(maxY) + 1);
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int bucket = row * cols + col;
+                int[] entries = buckets[bucket];
+                for (int k = 0; k < bucketSizes[bucket]; k++) {
+                    int entry = entries[k];
+                    if (stamps[entry] == stamp) {
+                        continue;
+                    }
+                    stamps[entry] = stamp;
+                    double[] box = boxes[entry];
+                    if (box[0] <= maxX && box[2] >= minX && box[1] <= maxY
+                            && box[3] >= minY) {
+                        if (numFound == found.length) {
+                            found = Arrays.copyOf(found, numFound * 2);
+                        }
+                        found[numFound++] = entry;
+                    }
+                }
+            }
+        }
+        Arrays.sort(found, 0, numFound);
+        List<Object> res = new ArrayList<Object>(numFound);
+        for (int k = 0; k < numFound; k++) {
+            res.add(cells[found[k]]);
+        }
+        return res;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> the bounds in view coordinates of a set of cells
+     * 
+     * @param cellsToFind
+     * @return the union of the cell bounds, or null if none of the cells has a
+     *         state
+     */
+    public synchronized Rectangle getBounds(List<Object> cellsToFind) {
+        if (graph == null) {
+            return null;
+        }
+
+        mxGraphView view = graph.getView();
+        Rectangle res = null;
+        for (Object cell : cellsToFind) {
+            mxCellState state = view.getState(cell);
+            if (state != null) {
+                mxRectangle box = state.getBoundingBox();
+                Rectangle rec =
+                        box == null ? state.getRectangle() : box
+                                .getRectangle();
+                if (res == null) {
+                    res = rec;
+                } else {
+                    res.add(rec);
+                }
+            }
+        }
+        return res;
+    }
+
+    private boolean hits(int entry, Rectangle2D hit) {
+        double[] shape = shapes[entry];
+        if (vertices[entry]) {
+            return hit.intersects(shape[0], shape[1], shape[2], shape[3]);
+        }
+        for (int i = 2; i < shape.length; i += 2) {
+            if (hit.intersectsLine(shape[i - 2], shape[i - 1], shape[i],
+                    shape[i + 1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int getCol(double x) {
+        return (int) Math.floor((x - originX) / bucketSize);
+    }
+
+    private int getRow(double y) {
+        return (int) Math.floor((y - originY) / bucketSize);
+    }
+
+    /**
+     * 
+     * <i>Description:</i> rebuilds the index if the graph model has changed
+     * 
+     * @return true if there are indexed cells
+     */
+    private boolean validate() {
+        if (graph == null) {
+            return false;
+        }
+
+        mxIGraphModel model = graph.getModel();
+        if (model != indexedModel) {
+            if (indexedModel != null) {
+                indexedModel.removeListener(this);
+            }
+            model.addListener(mxEvent.CHANGE, this);
+            indexedModel = model;
+            dirty = true;
+        }
+        if (dirty) {
+            rebuild();
+            dirty = false;
+        }
+        return cells.length > 0;
+    }
+
+    private void rebuild() {
+        mxIGraphModel model = graph.getModel();
+        mxGraphView view = graph.getView();
+        double scale = view.getScale();
+        mxPoint trans = view.getTranslate();
+        Object parent = graph.getDefaultParent();
+        int childCount = parent == null ? 0 : model.getChildCount(parent);
+
+        List<Object> cellList = new ArrayList<Object>(childCount);
+        List<double[]> shapeList = new ArrayList<double[]>(childCount);
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        double area = 0;
+        for (int i = 0; i < childCount; i++) {
+            Object cell = model.getChildAt(parent, i);
+            mxCellState state = view.getState(cell);
+            if (state == null) {
+                continue;
+            }
+            double[] shape = null;
+            if (model.isVertex(cell)) {
+                mxRectangle bounds = new mxRectangle(state);
+                if (state.getLabelBounds() != null) {
+                    bounds.add(state.getLabelBounds());
+                }
+                shape =
+                        new double[] { bounds.getX() / scale - trans.getX(),
+                                bounds.getY() / scale - trans.getY(),
+                                bounds.getWidth() / scale,
+                                bounds.getHeight() / scale };
+                area += shape[2] * shape[3];
+            } else {
+                int numPoints = state.getAbsolutePointCount();
+                if (numPoints == 0) {
+                    continue;
+                }
+                shape = new double[numPoints * 2];
+                for (int k = 0; k < numPoints; k++) {
+                    mxPoint point = state.getAbsolutePoint(k);
+                    shape[k * 2] = point.getX() / scale - trans.getX();
+                    shape[k * 2 + 1] = point.getY() / scale - trans.getY();
+                }
+            }
+            cellList.add(cell);
+            shapeList.add(shape);
+        }
+
+        int size = cellList.size();
+        cells = cellList.toArray();
+        vertices = new boolean[size];
+        shapes = shapeList.toArray(new double[size][]);
+        boxes = new double[size][];
+        stamps = new int[size];
+        stamp = 0;
+        for (int i = 0; i < size; i++) {
+            vertices[i] = model.isVertex(cells[i]);
+            boxes[i] = getBox(vertices[i], shapes[i]);
+            minX = Math.min(minX, boxes[i][0]);
+            minY = Math.min(minY, boxes[i][1]);
+            maxX = Math.max(maxX, boxes[i][2]);
+            maxY = Math.max(maxY, boxes[i][3]);
+        }
+        if (size == 0) {
+            buckets = new int[0][];
+            bucketSizes = new int[0];
+            cols = rows = 0;
+            return;
+        }
+
+        // about one vertex per bucket, within a limit on the number of buckets
+        double width = maxX - minX;
+        double height = maxY - minY;
+        bucketSize = Math.max(MIN_BUCKET_SIZE, Math.sqrt(area / size) * 2);
+        while ((width / bucketSize + 1) * (height / bucketSize + 1)
+                > MAX_BUCKETS) {
+            bucketSize *= 2;
+        }
+        originX = minX;
+        originY = minY;
+        cols = (int) (width / bucketSize) + 1;
+        rows = (int) (height / bucketSize) + 1;
+        buckets = new int[cols * rows][];
+        bucketSizes = new int[cols * rows];
+        for (int i = 0; i < size; i++) {
+            if (vertices[i]) {
+                double[] box = boxes[i];
+                int col1 = getCol(box[2]);
+                int row1 = getRow(box[3]);
+                for (int row = getRow(box[1]); row <= row1; row++) {
+                    for (int col = getCol(box[0]); col <= col1; col++) {
+                        add(row * cols + col, i);
+                    }
+                }
+            } else {
+                addSegments(i, shapes[i]);
+            }
+        }
+    }
+
+    private double[] getBox(boolean vertex, double[] shape) {
+        if (vertex) {
+            return new double[] { shape[0], shape[1], shape[0] + shape[2],
+                    shape[1] + shape[3] };
+        }
+        double[] box =
+                new double[] { shape[0], shape[1], shape[0], shape[1] };
+        for (int k = 2; k < shape.length; k += 2) {
+            box[0] = Math.min(box[0], shape[k]);
+            box[1] = Math.min(box[1], shape[k + 1]);
+            box[2] = Math.max(box[2], shape[k]);
+            box[3] = Math.max(box[3], shape[k + 1]);
+        }
+        return box;
+    }
+
+    private void addSegments(int entry, double[] shape) {
+        int last = -1;
+        double step = bucketSize / 2;
+        for (int k = 2; k < shape.length; k += 2) {
+            double x0 = shape[k - 2];
+            double y0 = shape[k - 1];
+            double dx = shape[k] - x0;
+            double dy = shape[k + 1] - y0;
+            double length = Math.max(Math.abs(dx), Math.abs(dy));
+            int numSteps = (int) Math.ceil(length / step);
+            for (int s = 0; s <= numSteps; s++) {
+                double f = numSteps == 0 ? 0 : (double) s / numSteps;
+                int bucket =
+                        getRow(y0 + dy * f) * cols + getCol(x0 + dx * f);
+                if (bucket != last) {
+                    add(bucket, entry);
+                    last = bucket;
+                }
+            }
+        }
+    }
+
+    private void add(int bucket, int entry) {
+        int[] entries = buckets[bucket];
+        int size = bucketSizes[bucket];
+        if (entries == null) {
+            entries = new int[INITIAL_BUCKET_CAPACITY];
+            buckets[bucket] = entries;
+        } else if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size * 2);
+            buckets[bucket] = entries;
+        } else if (size > 0 && entries[size - 1] == entry) {
+            return;
+        }
+        entries[size] = entry;
+        bucketSizes[bucket] = size + 1;
+    }
+}
@@ -28,7 +28,7 @@
 package com.intel.stl.ui.network;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -42,6 +42,7 @@ import org.slf4j.LoggerFactory;
 import com.intel.stl.api.subnet.LinkRecordBean;
 import com.intel.stl.api.subnet.NodeRecordBean;
 import com.intel.stl.api.subnet.NodeType;
+import com.intel.stl.ui.common.ICancelIndicator;
 import com.intel.stl.ui.common.UIImages;
 import com.intel.stl.ui.model.GraphNode;
 import com.mxgraph.model.mxCell;
@@ -62,7 +63,27 @@ public class GraphBuilder {
 
     public TopologyTreeModel build(TopGraph graph, List<NodeRecordBean> nodes,
             List<LinkRecordBean> links) {
-        long t = System.currentTimeMillis();
+        return build(graph, nodes, links, null);
+    }
+
+    /**
+     * 
+     * <i>Description:</i> builds the graph in stages: the graph nodes and
+     * their links, the ranks computed over a {@link GraphIndex}, the cells of
+     * each rank, and a single commit of all cells into the graph model. The
+     * time spent in each stage is logged.
+     * 
+     * @param graph
+     * @param nodes
+     * @param links
+     * @param cancelIndicator
+     *            checked between stages and while the cells are created
+     * @return the tree model, or null if the build is cancelled or fails
+     */
+    public TopologyTreeModel build(TopGraph graph, List<NodeRecordBean> nodes,
+            List<LinkRecordBean> links, ICancelIndicator cancelIndicator) {
+        long t0 = System.currentTimeMillis();
+        long t = t0;
         log.info("Create graph with " + nodes.size() + " nodes, " + links.size()
                 + " links");
         Map<Integer, GraphNode> nodesMap = new HashMap<Integer, GraphNode>();
@@ -79,8 +100,16 @@ public class GraphBuilder {
             nodesMap.put(node.getLid(), gn);
         }
         fillLinks(nodesMap, links);
-        List<GraphNode> roots = endNodes.isEmpty() ? getRoots(nodesMap.values())
-                : getRoots(nodesMap.values(), endNodes);
+        GraphIndex index = new GraphIndex(nodesMap.values());
+        t = logStage("prepare", t);
+        if (isCancelled(cancelIndicator)) {
+            log.info("Graph build cancelled");
+            return null;
+        }
+
+        List<GraphNode> roots =
+                endNodes.isEmpty() ? getRoots(index) : getRoots(index,
+                        endNodes);
         if (DEBUG) {
             for (GraphNode node : nodesMap.values()) {
                 node.dump(System.out);
@@ -90,14 +119,46 @@ public class GraphBuilder {
         if (DEBUG) {
             System.out.println("Roots: " + roots);
         }
-        graph.clear();
-        TopologyTreeModel model = fillGraph(graph, roots);
+        t = logStage("rank", t);
+        if (isCancelled(cancelIndicator)) {
+            log.info("Graph build cancelled");
+            return null;
+        }
+
+        List<mxCell> cells = new ArrayList<mxCell>();
+        TopologyTreeModel model = null;
+        try {
+            model = createCells(graph, index, roots, cells, cancelIndicator);
+            if (model == null) {
+                log.info("Graph build cancelled");
+                return null;
+            }
+            t = logStage("cells", t);
+
+            graph.clear();
+            graph.addCells(cells.toArray(), graph.getDefaultParent());
+            logStage("commit", t);
+        } catch (Exception e) {
+            log.error("Failed to create graph", e);
+            return null;
+        }
         log.info("Created graph " + graph + " in "
-                + (System.currentTimeMillis() - t) + " ms "
+                + (System.currentTimeMillis() - t0) + " ms "
                 + Thread.currentThread());
         return model;
     }
 
+    private long logStage(String stage, long start) {
+        long now = System.currentTimeMillis();
+        log.info("Graph build stage '" + stage + "' took " + (now - start)
+                + " ms");
+        return now;
+    }
+
+    protected boolean isCancelled(ICancelIndicator cancelIndicator) {
+        return cancelIndicator == null ? false : cancelIndicator.isCancelled();
+    }
+
     /**
      * <i>Description:</i> exclude switches that are unlikely to be leaf
      * switches
@@ -177,35 +238,68 @@ public class GraphBuilder {
         }
     }
 
-    protected List<GraphNode> getRoots(Collection<GraphNode> nodes,
+    protected List<GraphNode> getRoots(GraphIndex index,
             Set<GraphNode> endNodes) {
-        Set<GraphNode> workingNodes = new HashSet<GraphNode>(nodes);
-        workingNodes.removeAll(endNodes);
-        Set<GraphNode> nextRef =
-                new HashSet<GraphNode>(screenEndNodes(endNodes));
+        int size = index.size();
+        boolean[] working = new boolean[size];
+        Arrays.fill(working, true);
+        int numWorking = size;
+        for (GraphNode node : endNodes) {
+            int i = index.indexOf(node.getLid());
+            if (i >= 0 && working[i]) {
+                working[i] = false;
+                numWorking -= 1;
+            }
+        }
+
+        int[] refs = new int[size];
+        int numRefs = 0;
+        for (GraphNode node : screenEndNodes(endNodes)) {
+            int i = index.indexOf(node.getLid());
+            if (i >= 0) {
+                refs[numRefs++] = i;
+            }
+        }
 
+        // breadth first search from the end nodes; the nodes found last are
+        // the roots
+        int[] nextRefs = new int[size];
         boolean hasChange = true;
-        while (!workingNodes.isEmpty() && hasChange) {
-            Set<GraphNode> refNodes = nextRef;
-            nextRef = new HashSet<GraphNode>();
+        while (numWorking > 0 && hasChange) {
+            int numNext = 0;
             hasChange = false;
-            for (GraphNode ref : refNodes) {
-                for (GraphNode gn : ref.getMiddleNeighbor()) {
-                    boolean success = workingNodes.remove(gn);
-                    if (success) {
-                        nextRef.add(gn);
-                        gn.setDepth(ref.getDepth() + 1);
-                    }
-                    if (!hasChange) {
-                        hasChange = true;
+            for (int k = 0; k < numRefs; k++) {
+                int ref = refs[k];
+                int depth = index.getNode(ref).getDepth() + 1;
+                int end = index.getMiddleEnd(ref);
+                for (int pos = index.getMiddleStart(ref); pos < end; pos++) {
+                    int nbr = index.getMiddleNeighbor(pos);
+                    if (working[nbr]) {
+                        working[nbr] = false;
+                        numWorking -= 1;
+                        nextRefs[numNext++] = nbr;
+                        index.getNode(nbr).setDepth(depth);
                     }
+                    hasChange = true;
                 }
             }
+            int[] tmp = refs;
+            refs = nextRefs;
+            nextRefs = tmp;
+            numRefs = numNext;
         }
-        List<GraphNode> res = new ArrayList<GraphNode>(nextRef);
-        if (!workingNodes.isEmpty()) {
-            res.addAll(workingNodes);
-            log.warn("Found isolated nodes " + workingNodes.size());
+
+        List<GraphNode> res = new ArrayList<GraphNode>(numRefs + numWorking);
+        for (int k = 0; k < numRefs; k++) {
+            res.add(index.getNode(refs[k]));
+        }
+        if (numWorking > 0) {
+            for (int i = 0; i < size; i++) {
+                if (working[i]) {
+                    res.add(index.getNode(i));
+                }
+            }
+            log.warn("Found isolated nodes " + numWorking);
         }
         Collections.sort(res);
         return res;
@@ -216,102 +310,142 @@ public class GraphBuilder {
      * Description: if a subnet has no end nodes, we try switches one by one to
      * figure out the root(s)
      *
-     * @param nodes
+     * @param index
      * @return
      */
-    protected List<GraphNode> getRoots(Collection<GraphNode> nodes) {
+    protected List<GraphNode> getRoots(GraphIndex index) {
         // simple heuristic: using the switches with least links
         // TODO: test and revisit the approach
         Set<GraphNode> refNodes = new HashSet<GraphNode>();
         int minNumLinks = Integer.MAX_VALUE;
-        for (GraphNode node : nodes) {
-            int links = node.getMiddleNeighbor().size();
+        for (int i = 0; i < index.size(); i++) {
+            int links = index.getMiddleEnd(i) - index.getMiddleStart(i);
             if (links < minNumLinks) {
                 refNodes.clear();
-                refNodes.add(node);
+                refNodes.add(index.getNode(i));
             } else if (links == minNumLinks) {
-                refNodes.add(node);
+                refNodes.add(index.getNode(i));
             }
         }
-        return getRoots(nodes, refNodes);
+        return getRoots(index, refNodes);
     }
 
-    protected TopologyTreeModel fillGraph(TopGraph graph,
-            List<GraphNode> roots) {
+    /**
+     * 
+     * <i>Description:</i> creates the vertices and edges of the graph rank by
+     * rank, starting from the roots, without adding them to the graph model.
+     * The cells are collected in insertion order so they can be added to the
+     * model at once.
+     * 
+     * @param graph
+     * @param index
+     * @param roots
+     * @param cells
+     *            the list collecting the created cells
+     * @param cancelIndicator
+     * @return the tree model, or null if cancelled
+     */
+    protected TopologyTreeModel createCells(TopGraph graph, GraphIndex index,
+            List<GraphNode> roots, List<mxCell> cells,
+            ICancelIndicator cancelIndicator) {
+        int size = index.size();
         List<List<Integer>> ranks = new ArrayList<List<Integer>>();
         int maxRankSize = 0;
         int numNodes = 0;
-        Set<GraphNode> processed = new HashSet<GraphNode>();
+        mxCell[] vertices = new mxCell[size];
+        boolean[] processed = new boolean[size];
+        // the rank a node was queued for, -1 if not queued yet
+        int[] queued = new int[size];
+        Arrays.fill(queued, -1);
 
         Object parent = graph.getDefaultParent();
-        graph.getModel().beginUpdate();
-        try {
-            for (GraphNode node : roots) {
-                insertVertex(graph, parent, node);
-            }
+        int[] workingNodes = new int[size];
+        int numWorking = 0;
+        for (GraphNode node : roots) {
+            int i = index.indexOf(node.getLid());
+            vertices[i] = createVertex(graph, parent, node);
+            cells.add(vertices[i]);
+            queued[i] = 0;
+            workingNodes[numWorking++] = i;
+        }
 
-            List<GraphNode> nextNodes = new ArrayList<GraphNode>(roots);
-            while (!nextNodes.isEmpty()) {
-                List<Integer> rank = new ArrayList<Integer>();
-                for (GraphNode node : nextNodes) {
-                    rank.add(node.getLid());
-                }
-                ranks.add(Collections.unmodifiableList(rank));
-                numNodes += rank.size();
-                if (nextNodes.size() > maxRankSize) {
-                    maxRankSize = nextNodes.size();
+        int[] nextNodes = new int[size];
+        int rankNum = 0;
+        while (numWorking > 0) {
+            if (isCancelled(cancelIndicator)) {
+                return null;
+            }
+            List<Integer> rank = new ArrayList<Integer>(numWorking);
+            for (int k = 0; k < numWorking; k++) {
+                rank.add(index.getLid(workingNodes[k]));
+            }
+            ranks.add(Collections.unmodifiableList(rank));
+            numNodes += numWorking;
+            if (numWorking > maxRankSize) {
+                maxRankSize = numWorking;
+            }
+            int numNext = 0;
+            for (int k = 0; k < numWorking; k++) {
+                int node = workingNodes[k];
+                mxCell vertex = vertices[node];
+                int end = index.getMiddleEnd(node);
+                for (int pos = index.getMiddleStart(node); pos < end; pos++) {
+                    int nbr = index.getMiddleNeighbor(pos);
+                    if (processed[nbr]) {
+                        continue;
+                    }
+                    if (vertices[nbr] == null) {
+                        vertices[nbr] =
+                                createVertex(graph, parent, index.getNode(nbr));
+                        cells.add(vertices[nbr]);
+                    }
+                    cells.add(createEdge(graph, parent, vertex, vertices[nbr]));
+                    if (queued[nbr] != rankNum && queued[nbr] != rankNum + 1) {
+                        queued[nbr] = rankNum + 1;
+                        nextNodes[numNext++] = nbr;
+                    }
                 }
-                List<GraphNode> workingNodes = nextNodes;
-                nextNodes = new ArrayList<GraphNode>();
-                for (GraphNode node : workingNodes) {
-                    mxCell vertex = graph.getVertex(node.getLid());
-                    Set<GraphNode> neighbor = node.getMiddleNeighbor();
-                    for (GraphNode nbr : neighbor) {
-                        if (processed.contains(nbr)) {
-                            continue;
-                        }
-                        mxCell nbrVertex = graph.getVertex(nbr.getLid());
-                        if (nbrVertex == null) {
-                            nbrVertex = insertVertex(graph, parent, nbr);
-                        }
-                        String edgeId = TopGraph.getEdgeId(vertex, nbrVertex);
-                        graph.insertEdge(parent, edgeId, null, vertex,
-                                nbrVertex);
-                        if (!nextNodes.contains(nbr)
-                                && !workingNodes.contains(nbr)) {
-                            nextNodes.add(nbr);
-                        }
+                end = index.getEndEnd(node);
+                numNodes += end - index.getEndStart(node);
+                for (int pos = index.getEndStart(node); pos < end; pos++) {
+                    int nbr = index.getEndNeighbor(pos);
+                    if (processed[nbr]) {
+                        continue;
                     }
-                    neighbor = node.getEndNeighbor();
-                    numNodes += neighbor.size();
-                    for (GraphNode nbr : neighbor) {
-                        if (processed.contains(nbr)) {
-                            continue;
-                        }
-                        mxCell nbrVertex = graph.getVertex(nbr.getLid());
-                        if (nbrVertex == null) {
-                            nbrVertex = insertVertex(graph, parent, nbr);
-                        }
-                        String edgeId = TopGraph.getEdgeId(vertex, nbrVertex);
-                        graph.insertEdge(parent, edgeId, null, vertex,
-                                nbrVertex);
+                    if (vertices[nbr] == null) {
+                        vertices[nbr] =
+                                createVertex(graph, parent, index.getNode(nbr));
+                        cells.add(vertices[nbr]);
                     }
+                    cells.add(createEdge(graph, parent, vertex, vertices[nbr]));
                 }
-                processed.addAll(workingNodes);
             }
-            TopologyTreeModel model = new TopologyTreeModel(ranks, maxRankSize,
-                    new ArrayList<Integer>(), numNodes);
-            return model;
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            graph.getModel().endUpdate();
+            for (int k = 0; k < numWorking; k++) {
+                processed[workingNodes[k]] = true;
+            }
+            int[] tmp = workingNodes;
+            workingNodes = nextNodes;
+            nextNodes = tmp;
+            numWorking = numNext;
+            rankNum += 1;
         }
+        return new TopologyTreeModel(ranks, maxRankSize,
+                new ArrayList<Integer>(), numNodes);
+    }
 
-        return null;
+    protected mxCell createEdge(TopGraph graph, Object parent, mxCell source,
+            mxCell target) {
+        String edgeId = TopGraph.getEdgeId(source, target);
+        mxCell edge =
+                (mxCell) graph.createEdge(parent, edgeId, null, source, target,
+                        null);
+        // the model connects the edge to its terminals when it is added
+        edge.setSource(source);
+        edge.setTarget(target);
+        return edge;
     }
 
-    protected mxCell insertVertex(mxGraph graph, Object parent, GraphNode nbr) {
+    protected mxCell createVertex(mxGraph graph, Object parent, GraphNode nbr) {
         NodeType type = NodeType.getNodeType(nbr.getType());
         int w = type == NodeType.HFI ? HFI_SIZE : SWITCH_SIZE;
         int h = type == NodeType.HFI ? HFI_SIZE : SWITCH_SIZE;
@@ -319,7 +453,7 @@ public class GraphBuilder {
                 ? "shape=image;image=" + UIImages.HFI_IMG.getFileName()
                 : "shape=image;image="
                         + UIImages.SWITCH_EXPANDED_IMG.getFileName();
-        Object vertex = graph.insertVertex(parent,
+        Object vertex = graph.createVertex(parent,
                 TopGraph.getVertexId(nbr.getLid()), nbr, 0, 0, w, h, style);
         return (mxCell) vertex;
     }
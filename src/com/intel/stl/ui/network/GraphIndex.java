@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.ui.network;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+import com.intel.stl.ui.model.GraphNode;
+
+/**
+ * Immutable adjacency of a set of GraphNodes in compressed form: nodes are
+ * identified by their position in LID order, and the middle and end
+ * neighbors of node i are stored in consecutive slots of an int array. This
+ * lets graph traversals use arrays instead of hash sets of GraphNodes. The
+ * neighbors of a node keep the order of {@link GraphNode#getMiddleNeighbor()}
+ * and {@link GraphNode#getEndNeighbor()}.
+ */
+class GraphIndex {
+    private final GraphNode[] nodes;
+
+    private final int[] lids;
+
+    private final int[] middleStart;
+
+    private final int[] middleNbrs;
+
+    private final int[] endStart;
+
+    private final int[] endNbrs;
+
+    public GraphIndex(Collection<GraphNode> graphNodes) {
+        nodes = graphNodes.toArray(new GraphNode[graphNodes.size()]);
+        Arrays.sort(nodes);
+        lids = new int[nodes.length];
+        int numMiddle = 0;
+        int numEnd = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            lids[i] = nodes[i].getLid();
+            numMiddle += nodes[i].getMiddleNeighbor().size();
+            numEnd += nodes[i].getEndNeighbor().size();
+        }
+
+        middleStart = new int[nodes.length + 1];
+        middleNbrs = new int[numMiddle];
+        endStart = new int[nodes.length + 1];
+        endNbrs = new int[numEnd];
+        int middlePos = 0;
+        int endPos = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            middleStart[i] = middlePos;
+            middlePos = fill(nodes[i].getMiddleNeighbor(), middleNbrs,
+                    middlePos);
+            endStart[i] = endPos;
+            endPos = fill(nodes[i].getEndNeighbor(), endNbrs, endPos);
+        }
+        middleStart[nodes.length] = middlePos;
+        endStart[nodes.length] = endPos;
+    }
+
+    private int fill(Set<GraphNode> neighbors, int[] target, int pos) {
+        for (GraphNode nbr : neighbors) {
+            int index = indexOf(nbr.getLid());
+            // neighbors should always be in the node set
+            if (index >= 0) {
+                target[pos++] = index;
+            }
+        }
+        return pos;
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * @param lid
+     * @return the index of the node with the given LID, or a negative value if
+     *         there is no such node
+     */
+    public int indexOf(int lid) {
+        return Arrays.binarySearch(lids, lid);
+    }
+
+    public GraphNode getNode(int index) {
+        return nodes[index];
+    }
+
+    public int getLid(int index) {
+        return lids[index];
+    }
+
+    public int getMiddleStart(int index) {
+        return middleStart[index];
+    }
+
+    public int getMiddleEnd(int index) {
+        return middleStart[index + 1];
+    }
+
+    /**
+     * @param pos
+     *            a position between getMiddleStart(i) and getMiddleEnd(i)
+     * @return the index of the middle neighbor at the given position
+     */
+    public int getMiddleNeighbor(int pos) {
+        return middleNbrs[pos];
+    }
+
+    public int getEndStart(int index) {
+        return endStart[index];
+    }
+
+    public int getEndEnd(int index) {
+        return endStart[index + 1];
+    }
+
+    /**
+     * @param pos
+     *            a position between getEndStart(i) and getEndEnd(i)
+     * @return the index of the end neighbor at the given position
+     */
+    public int getEndNeighbor(int pos) {
+        return endNbrs[pos];
+    }
+}
@@ -321,13 +321,40 @@ public class TopGraph extends mxGraph {
             } else {
                 dehighlight(edge);
             }
+            updateEdgeState(edge);
         }
-        refresh();
+        repaint();
     }
 
     public synchronized void clearHighlightedEdges() {
+        List<String> cellIds =
+                new ArrayList<String>(highlightedEdges.keySet());
         highlightedEdges.clear();
-        refresh();
+        mxGraphModel model = (mxGraphModel) getModel();
+        for (String cellId : cellIds) {
+            Object edge = model.getCell(cellId);
+            if (edge != null) {
+                updateEdgeState(edge);
+            }
+        }
+        repaint();
+    }
+
+    /**
+     * 
+     * <i>Description:</i> applies the highlight style of an edge to its
+     * existing cell state, so changing highlights doesn't reload the whole
+     * view
+     * 
+     * @param edge
+     */
+    private void updateEdgeState(Object edge) {
+        mxCellState state = view.getState(edge);
+        if (state != null) {
+            Map<String, Object> style =
+                    highlightedEdges.get(((mxCell) edge).getId());
+            state.setStyle(style != null ? style : getCellStyle(edge));
+        }
     }
 
     private void mark(mxCell cell) {
@@ -442,102 +469,96 @@ public class TopGraph extends mxGraph {
     }
 
     public TopGraph getGraphCopy(int modelId, ICancelIndicator indicator) {
-        mxIGraphModel org = getModel();
-        Object[] rootCopy =
-                org.cloneCells(new Object[] { org.getRoot() }, true);
-        mxCell rootCell = (mxCell) rootCopy[0];
-        rootCell.setId(getModelName(modelId));
-        int childCount = rootCell.getChildCount();
-        for (int i = 0; i < childCount; i++) {
-            if (indicator != null && indicator.isCancelled()) {
-                throw new CancellationException();
-            }
-            mxCell child = (mxCell) rootCell.getChildAt(i);
-            resetId(child);
-        }
-        mxIGraphModel newModel = new mxGraphModel(rootCopy[0]);
-
-        TopGraph newGraph = createGraph();
-        newGraph.setModel(newModel);
-        cloneGraphNodes(newGraph, indicator);
-
-        return newGraph;
-    }
-
-    protected void resetId(mxCell cell) {
-        cell.setId(getPreferedId(cell));
-        int childCount = cell.getChildCount();
-        for (int i = 0; i < childCount; i++) {
-            mxCell child = (mxCell) cell.getChildAt(i);
-            resetId(child);
-        }
+        return filterBy(modelId, null, false, indicator);
     }
 
+    /**
+     * 
+     * <i>Description:</i> creates a graph that shows a part of this graph.
+     * Only the cells of the selected nodes are copied, each of them once, so
+     * the cost is proportional to the selection rather than to the fabric.
+     * The copies share the immutable data, such as values and styles, with
+     * this graph, and only carry the state a view changes, i.e. geometry,
+     * visibility and the collapse state of their nodes.
+     * 
+     * @param modelId
+     *            the id of the new model
+     * @param members
+     *            the lids of the nodes to show, null to show all nodes
+     * @param includeNeighbors
+     *            whether to include the neighbors of the members
+     * @param indicator
+     * @return the new graph
+     */
     public TopGraph filterBy(int modelId, Collection<Integer> members,
             boolean includeNeighbors, ICancelIndicator indicator) {
-        if (members == null) {
-            return getGraphCopy(modelId, indicator);
-        } else if (members.isEmpty()) {
+        if (members != null && members.isEmpty()) {
             return createGraph();
         }
 
         mxGraphModel org = (mxGraphModel) getModel();
+        List<mxCell> memberCells = new ArrayList<mxCell>();
+        if (members == null) {
+            for (Object cell : getVertices()) {
+                memberCells.add((mxCell) cell);
+            }
+        } else {
+            for (int lid : members) {
+                mxCell cell = (mxCell) org.getCell(getVertexId(lid));
+                if (cell != null) {
+                    memberCells.add(cell);
+                }
+            }
+        }
 
         mxCell rootCell = new mxCell();
         rootCell.setId(getModelName(modelId));
         mxCell baseCell = new mxCell();
         rootCell.insert(baseCell);
 
+        Map<Integer, mxCell> newCells =
+                new HashMap<Integer, mxCell>(memberCells.size() * 2);
         try {
-            Map<String, mxCell> newCells = new HashMap<String, mxCell>();
             // copy vertices
-            for (int lid : members) {
+            for (mxCell cell : memberCells) {
                 if (indicator != null && indicator.isCancelled()) {
                     throw new CancellationException();
                 }
-                String cellId = getVertexId(lid);
-                mxCell cell = (mxCell) org.getCell(cellId);
-                mxCell copy = (mxCell) cell.clone();
-                copy.setId(cellId);
-                baseCell.insert(copy);
-                newCells.put(cellId, copy);
+                copyVertex(cell, baseCell, newCells);
             }
 
-            // copy edges
-            for (int lid : members) {
+            // copy edges. An edge between two members is reached from both
+            // of them, but only copied the first time.
+            Set<mxCell> copiedEdges = new HashSet<mxCell>();
+            for (mxCell cell : memberCells) {
                 if (indicator != null && indicator.isCancelled()) {
                     throw new CancellationException();
                 }
-                mxCell cell = (mxCell) org.getCell(getVertexId(lid));
                 int numEdges = cell.getEdgeCount();
-                if (numEdges > 0) {
-                    for (int i = 0; i < numEdges; i++) {
-                        mxCell edge = (mxCell) cell.getEdgeAt(i);
+                for (int i = 0; i < numEdges; i++) {
+                    mxCell edge = (mxCell) cell.getEdgeAt(i);
+                    if (!copiedEdges.add(edge)) {
+                        continue;
+                    }
+
+                    mxCell source = (mxCell) edge.getTerminal(true);
+                    mxCell cloneSource = newCells.get(getLid(source));
+                    if (cloneSource == null && includeNeighbors) {
+                        cloneSource = copyVertex(source, baseCell, newCells);
+                    }
+
+                    mxCell target = (mxCell) edge.getTerminal(false);
+                    mxCell cloneTarget = newCells.get(getLid(target));
+                    if (cloneTarget == null && includeNeighbors) {
+                        cloneTarget = copyVertex(target, baseCell, newCells);
+                    }
+
+                    if (cloneSource != null && cloneTarget != null) {
                         mxCell cloneEdge = (mxCell) edge.clone();
                         cloneEdge.setId(edge.getId());
-
-                        mxCell source = (mxCell) edge.getTerminal(true);
-                        mxCell cloneSource = newCells.get(source.getId());
-                        if (cloneSource == null && includeNeighbors) {
-                            cloneSource = (mxCell) source.clone();
-                            cloneSource.setId(source.getId());
-                            baseCell.insert(cloneSource);
-                            newCells.put(source.getId(), cloneSource);
-                        }
-
-                        mxCell target = (mxCell) edge.getTerminal(false);
-                        mxCell cloneTarget = newCells.get(target.getId());
-                        if (cloneTarget == null && includeNeighbors) {
-                            cloneTarget = (mxCell) target.clone();
-                            cloneTarget.setId(target.getId());
-                            baseCell.insert(cloneTarget);
-                            newCells.put(target.getId(), cloneTarget);
-                        }
-                        if (cloneSource != null && cloneTarget != null) {
-                            baseCell.insert(cloneEdge);
-                            cloneSource.insertEdge(cloneEdge, true);
-                            cloneTarget.insertEdge(cloneEdge, false);
-                        }
+                        baseCell.insert(cloneEdge);
+                        cloneSource.insertEdge(cloneEdge, true);
+                        cloneTarget.insertEdge(cloneEdge, false);
                     }
                 }
             }
@@ -546,15 +567,53 @@ public class TopGraph extends mxGraph {
             e.printStackTrace();
         }
 
+        // point the neighbor maps at the node copies of the new graph
+        Map<Integer, GraphNode> newNodes =
+                new HashMap<Integer, GraphNode>(newCells.size() * 2);
+        for (Map.Entry<Integer, mxCell> entry : newCells.entrySet()) {
+            newNodes.put(entry.getKey(),
+                    (GraphNode) entry.getValue().getValue());
+        }
+        for (GraphNode gNode : newNodes.values()) {
+            if (indicator != null && indicator.isCancelled()) {
+                throw new CancellationException();
+            }
+            TreeMap<GraphNode, TreeMap<Integer, Integer>> middleNodes =
+                    gNode.getMiddleNodes();
+            if (middleNodes != null) {
+                gNode.setMiddleNodes(updateNodeMap(middleNodes, newNodes));
+            }
+
+            TreeMap<GraphNode, TreeMap<Integer, Integer>> endNodes =
+                    gNode.getEndNodes();
+            if (endNodes != null) {
+                gNode.setEndNodes(updateNodeMap(endNodes, newNodes));
+            }
+        }
+
         mxIGraphModel newModel = new mxGraphModel(rootCell);
         TopGraph newGraph = createGraph();
         newGraph.setModel(newModel);
-        cloneGraphNodes(newGraph, indicator);
         // dump("", rootCell);
 
         return newGraph;
     }
 
+    protected mxCell copyVertex(mxCell cell, mxCell parent,
+            Map<Integer, mxCell> newCells) throws CloneNotSupportedException {
+        GraphNode gNode = (GraphNode) cell.getValue();
+        mxCell copy = (mxCell) cell.clone();
+        copy.setId(cell.getId());
+        copy.setValue(gNode.copy());
+        parent.insert(copy);
+        newCells.put(gNode.getLid(), copy);
+        return copy;
+    }
+
+    protected int getLid(mxCell cell) {
+        return ((GraphNode) cell.getValue()).getLid();
+    }
+
     protected void dump(String prefix, mxCell cell) {
         System.out.println(prefix + cell.getId() + " edges="
                 + cell.getEdgeCount() + " " + cell.getSource() + "->"
@@ -573,54 +632,16 @@ public class TopGraph extends mxGraph {
         return "Model " + modelId;
     }
 
-    protected void cloneGraphNodes(TopGraph graph, ICancelIndicator indicator) {
-        Object[] children =
-                mxGraphModel.getChildCells(graph.getModel(),
-                        graph.getDefaultParent(), true, false);
-        // clone graph node
-        for (Object child : children) {
-            if (indicator != null && indicator.isCancelled()) {
-                throw new CancellationException();
-            }
-            mxCell cell = (mxCell) child;
-            GraphNode gNode = (GraphNode) (cell.getValue());
-            cell.setValue(gNode.copy());
-        }
-
-        // restore graph node neighbors
-        for (Object child : children) {
-            if (indicator != null && indicator.isCancelled()) {
-                throw new CancellationException();
-            }
-            mxCell cell = (mxCell) child;
-            GraphNode gNode = (GraphNode) (cell.getValue());
-            TreeMap<GraphNode, TreeMap<Integer, Integer>> middleNodes =
-                    gNode.getMiddleNodes();
-            if (middleNodes != null) {
-                TreeMap<GraphNode, TreeMap<Integer, Integer>> newMiddleNodes =
-                        updateNodeMap(middleNodes, graph);
-                gNode.setMiddleNodes(newMiddleNodes);
-            }
-
-            TreeMap<GraphNode, TreeMap<Integer, Integer>> endNodes =
-                    gNode.getEndNodes();
-            if (endNodes != null) {
-                TreeMap<GraphNode, TreeMap<Integer, Integer>> newEndNodes =
-                        updateNodeMap(endNodes, graph);
-                gNode.setEndNodes(newEndNodes);
-            }
-        }
-    }
-
     protected TreeMap<GraphNode, TreeMap<Integer, Integer>> updateNodeMap(
-            TreeMap<GraphNode, TreeMap<Integer, Integer>> target, TopGraph graph) {
+            TreeMap<GraphNode, TreeMap<Integer, Integer>> target,
+            Map<Integer, GraphNode> nodes) {
         TreeMap<GraphNode, TreeMap<Integer, Integer>> res =
                 new TreeMap<GraphNode, TreeMap<Integer, Integer>>();
-        for (GraphNode node : target.keySet()) {
-            mxCell cell = graph.getVertex(node.getLid());
-            if (cell != null) {
-                GraphNode newNode = (GraphNode) cell.getValue();
-                res.put(newNode, target.get(node));
+        for (Map.Entry<GraphNode, TreeMap<Integer, Integer>> entry : target
+                .entrySet()) {
+            GraphNode newNode = nodes.get(entry.getKey().getLid());
+            if (newNode != null) {
+                res.put(newNode, entry.getValue());
             }
         }
         return res;
@@ -27,6 +27,9 @@
 
 package com.intel.stl.ui.network;
 
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Graphics;
@@ -37,7 +40,12 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -53,6 +61,10 @@ import org.slf4j.LoggerFactory;
 
 import com.intel.stl.ui.common.IBackgroundService;
 import com.intel.stl.ui.common.UIConstants;
+import com.intel.stl.ui.model.GraphNode;
+import com.intel.stl.ui.model.NodeTypeViz;
+import com.mxgraph.canvas.mxGraphics2DCanvas;
+import com.mxgraph.canvas.mxICanvas;
 import com.mxgraph.model.mxCell;
 import com.mxgraph.model.mxIGraphModel;
 import com.mxgraph.swing.mxGraphComponent;
@@ -61,6 +73,7 @@ import com.mxgraph.swing.handler.mxGraphHandler;
 import com.mxgraph.swing.handler.mxPanningHandler;
 import com.mxgraph.swing.handler.mxSelectionCellsHandler;
 import com.mxgraph.swing.util.mxSwingConstants;
+import com.mxgraph.util.mxConstants;
 import com.mxgraph.util.mxEvent;
 import com.mxgraph.util.mxEventSource.mxIEventListener;
 import com.mxgraph.util.mxPoint;
@@ -98,6 +111,14 @@ public class TopGraphComponent extends mxGraphComponent {
 
     private final IBackgroundService updateService;
 
+    private final CellIndex cellIndex = new CellIndex();
+
+    /**
+     * below this scale the graph is drawn with simplified shapes and without
+     * labels
+     */
+    private double lowDetailScale = 0.3;
+
     /**
      * Description:
      *
@@ -121,6 +142,7 @@ public class TopGraphComponent extends mxGraphComponent {
 
         ((SelectionCellsHandler) getSelectionCellsHandler())
                 .setUpdateService(updateService);
+        cellIndex.setGraph(graph);
     }
 
     /**
@@ -138,6 +160,26 @@ public class TopGraphComponent extends mxGraphComponent {
         this.graphBuffered = graphBuffered;
     }
 
+    /**
+     * @return the lowDetailScale
+     */
+    public double getLowDetailScale() {
+        return lowDetailScale;
+    }
+
+    /**
+     * @param lowDetailScale
+     *            the scale below which the graph is drawn in low detail. 0
+     *            always draws the full detail.
+     */
+    public void setLowDetailScale(double lowDetailScale) {
+        this.lowDetailScale = lowDetailScale;
+    }
+
+    protected boolean isLowDetail() {
+        return view != null && view.getScale() < lowDetailScale;
+    }
+
     /**
      * @param margin
      *            the margin to set
@@ -345,6 +387,12 @@ public class TopGraphComponent extends mxGraphComponent {
             parent = graph.getDefaultParent();
         }
 
+        if (parent != null && parent == graph.getDefaultParent()) {
+            // top level cells are looked up in the spatial index instead of
+            // testing each of them
+            return cellIndex.getCellAt(x, y, getTolerance(), vertex);
+        }
+
         if (parent != null) {
             mxPoint previousTranslate = canvas.getTranslate();
             double previousScale = canvas.getScale();
@@ -418,6 +466,10 @@ public class TopGraphComponent extends mxGraphComponent {
             }
 
             view = value.getView();
+            if (cellIndex != null) {
+                // null when called from the super constructor
+                cellIndex.setGraph(value);
+            }
             Dimension viewSize = getViewport().getSize();
             if (viewSize.width > 0 && viewSize.height > 0) {
                 Rectangle rec = view.getGraphBounds().getRectangle();
@@ -443,9 +495,23 @@ public class TopGraphComponent extends mxGraphComponent {
     // }
 
     public void updateGraph() {
+        updateGraph(null);
+    }
+
+    /**
+     * 
+     * <i>Description:</i> updates the graph image. When only a part of the
+     * graph changed and the view wasn't zoomed or moved, only the cells in the
+     * dirty region are redrawn onto the current image.
+     * 
+     * @param dirty
+     *            the changed region in view coordinates, or null to redraw the
+     *            whole graph
+     */
+    public void updateGraph(Rectangle dirty) {
         Dimension viewSize = getViewport().getSize();
         ((GraphControl) graphControl).updateBuffer(viewSize.width,
-                viewSize.height);
+                viewSize.height, dirty);
     }
 
     /**
@@ -635,7 +701,7 @@ public class TopGraphComponent extends mxGraphComponent {
     }
 
     class GraphHandler extends mxGraphHandler {
-        private boolean hasHighlight;
+        private mxCell highlightedCell;
 
         /**
          * Description:
@@ -723,22 +789,68 @@ public class TopGraphComponent extends mxGraphComponent {
                         return;
                     }
 
+                    TopGraph topGraph = (TopGraph) graph;
                     if (cell != null && cell.isVertex()) {
-                        if (hasHighlight) {
-                            ((TopGraph) graph).clearHighlightedEdges();
+                        if (cell == highlightedCell) {
+                            return;
+                        }
+
+                        Rectangle dirty = getHighlightBounds(highlightedCell);
+                        if (highlightedCell != null) {
+                            topGraph.clearHighlightedEdges();
+                        }
+                        topGraph.highlightConnections(cell, true);
+                        highlightedCell = cell;
+                        Rectangle newDirty = getHighlightBounds(cell);
+                        if (dirty.isEmpty()) {
+                            dirty = newDirty;
+                        } else if (!newDirty.isEmpty()) {
+                            dirty = dirty.union(newDirty);
                         }
-                        ((TopGraph) graph).highlightConnections(cell, true);
-                        hasHighlight = true;
-                        updateGraph();
-                    } else if (hasHighlight) {
-                        ((TopGraph) graph).clearHighlightedEdges();
-                        hasHighlight = false;
-                        updateGraph();
+                        updateGraph(dirty);
+                    } else if (highlightedCell != null) {
+                        Rectangle dirty = getHighlightBounds(highlightedCell);
+                        topGraph.clearHighlightedEdges();
+                        highlightedCell = null;
+                        updateGraph(dirty);
                     }
                 }
             });
         }
 
+        /**
+         * 
+         * <i>Description:</i> the region covered by the highlighted
+         * connections of a vertex
+         * 
+         * @param cell
+         *            the vertex
+         * @return the region in view coordinates, empty if there is nothing
+         *         to highlight
+         */
+        protected Rectangle getHighlightBounds(mxCell cell) {
+            if (cell == null) {
+                return new Rectangle();
+            }
+
+            int numEdges = cell.getEdgeCount();
+            List<Object> edges = new ArrayList<Object>(numEdges);
+            for (int i = 0; i < numEdges; i++) {
+                edges.add(cell.getEdgeAt(i));
+            }
+            Rectangle res = cellIndex.getBounds(edges);
+            if (res == null) {
+                return new Rectangle();
+            }
+            // the highlight stroke is wider than the one the bounds are based
+            // on
+            int grow = (int) Math.ceil(Double
+                    .parseDouble(UIConstants.EDGE_HIGHLIGHT_STROKE_STR)
+                    * view.getScale()) + 2;
+            res.grow(grow, grow);
+            return res;
+        }
+
     }
 
     class GraphControl extends mxGraphControl {
@@ -747,12 +859,36 @@ public class TopGraphComponent extends mxGraphComponent {
         private final AtomicReference<GraphBuffer> graphBufferRef =
                 new AtomicReference<GraphBuffer>(null);
 
+        /**
+         * id of the latest requested full redraw. A dirty region update can't
+         * patch the buffer while a newer full redraw is still pending, so it
+         * does the full redraw instead
+         */
+        private final AtomicInteger fullRequestId = new AtomicInteger();
+
+        private volatile int fullRenderId;
+
+        /**
+         * edges drawn in the current low detail pass keyed by their end
+         * points, so parallel edges between two nodes are drawn only once
+         */
+        private Map<Long, Map<String, Object>> drawnEdges;
+
         public void updateBuffer(final int maxW, final int maxH) {
+            updateBuffer(maxW, maxH, null);
+        }
+
+        public void updateBuffer(final int maxW, final int maxH,
+                final Rectangle dirty) {
             final int id = imageId.incrementAndGet();
+            if (dirty == null) {
+                fullRequestId.set(id);
+            }
             updateService.submit(new Runnable() {
                 @Override
                 public void run() {
-                    GraphBuffer graphBuffer = createGraphBuffer(id, maxW, maxH);
+                    GraphBuffer graphBuffer =
+                            createGraphBuffer(id, maxW, maxH, dirty);
                     graphBufferRef.set(graphBuffer);
                     repaint();
                 }
@@ -760,11 +896,21 @@ public class TopGraphComponent extends mxGraphComponent {
         }
 
         protected GraphBuffer createGraphBuffer(int id, int maxW, int maxH) {
+            return createGraphBuffer(id, maxW, maxH, null);
+        }
+
+        protected GraphBuffer createGraphBuffer(int id, int maxW, int maxH,
+                Rectangle dirty) {
             if (id < imageId.get()) {
                 // System.out.println("GraphView: Ignore image " + id + "<"
                 // + imageId.get());
                 return graphBufferRef.get();
             }
+            if (dirty != null && fullRenderId < fullRequestId.get()) {
+                // a full redraw was skipped in favor of this update, so the
+                // old buffer is stale
+                dirty = null;
+            }
 
             long t = System.currentTimeMillis();
             BufferedImage img = null;
@@ -780,16 +926,30 @@ public class TopGraphComponent extends mxGraphComponent {
                     width = maxW;
                     height = maxH;
                 }
+                GraphBuffer oldBuffer = graphBufferRef.get();
+                if (dirty != null && oldBuffer != null
+                        && oldBuffer.isReusable(view, width, height)) {
+                    if (dirty.isEmpty()) {
+                        return oldBuffer;
+                    }
+                    img = patchImage(oldBuffer.image, dirty);
+                    return new GraphBuffer(view, img, newTrans, newScale);
+                }
+
                 img = mxUtils.createBufferedImage(width, height, null);
                 Graphics2D g2d = img.createGraphics();
                 try {
+                    // clip to the image so only visible cells are drawn
+                    g2d.setClip(0, 0, width, height);
                     super.paint(g2d);
                 } finally {
                     g2d.dispose();
                 }
+                fullRenderId = id;
             } finally {
                 log.info(
                         "Create GraphBuffer-" + id + " "
+                                + (dirty == null ? "" : "dirty=" + dirty + " ")
                                 + (img == null ? ""
                                         : img.getWidth() + "x"
                                                 + img.getHeight())
@@ -799,6 +959,225 @@ public class TopGraphComponent extends mxGraphComponent {
             return new GraphBuffer(view, img, newTrans, newScale);
         }
 
+        /**
+         * 
+         * <i>Description:</i> redraws a region on a copy of an image. The
+         * image on display is left untouched because it may be painted at the
+         * same time.
+         * 
+         * @param image
+         *            the current graph image
+         * @param dirty
+         *            the region to redraw
+         * @return the new image
+         */
+        protected BufferedImage patchImage(BufferedImage image,
+                Rectangle dirty) {
+            BufferedImage img = mxUtils.createBufferedImage(image.getWidth(),
+                    image.getHeight(), null);
+            Graphics2D g2d = img.createGraphics();
+            try {
+                g2d.drawImage(image, 0, 0, null);
+                g2d.setComposite(AlphaComposite.Clear);
+                g2d.fill(dirty);
+                g2d.setComposite(AlphaComposite.SrcOver);
+                g2d.setClip(dirty);
+                super.paint(g2d);
+            } finally {
+                g2d.dispose();
+            }
+            return img;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see
+         * com.mxgraph.swing.mxGraphComponent.mxGraphControl#drawGraph(java.awt
+         * .Graphics2D, boolean)
+         */
+        @Override
+        public void drawGraph(Graphics2D g, boolean drawLabels) {
+            boolean lowDetail = isLowDetail();
+            if (lowDetail) {
+                drawnEdges = new HashMap<Long, Map<String, Object>>();
+            }
+            try {
+                super.drawGraph(g, drawLabels && !lowDetail);
+            } finally {
+                drawnEdges = null;
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see
+         * com.mxgraph.swing.mxGraphComponent.mxGraphControl#drawFromRootCell()
+         */
+        @Override
+        protected void drawFromRootCell() {
+            Rectangle clip = canvas.getGraphics().getClipBounds();
+            List<Object> cells = clip == null ? null : cellIndex.getCells(clip);
+            if (cells == null) {
+                super.drawFromRootCell();
+                return;
+            }
+
+            for (Object cell : cells) {
+                drawCell(canvas, cell);
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see
+         * com.mxgraph.swing.mxGraphComponent.mxGraphControl#drawCell(com.mxgraph
+         * .canvas.mxICanvas, java.lang.Object)
+         */
+        @Override
+        public void drawCell(mxICanvas canvas, Object cell) {
+            if (isLowDetail() && canvas instanceof mxGraphics2DCanvas
+                    && graph.getModel().getChildCount(cell) == 0) {
+                mxGraphics2DCanvas g2dCanvas = (mxGraphics2DCanvas) canvas;
+                mxCellState state = view.getState(cell);
+                if (state != null && isCellDisplayable(cell)) {
+                    if (!hitClip(g2dCanvas, state)
+                            || drawSimpleCell(g2dCanvas.getGraphics(), state)) {
+                        return;
+                    }
+                }
+            }
+            super.drawCell(canvas, cell);
+        }
+
+        /**
+         * 
+         * <i>Description:</i> draws a cell in low detail. Vertices are drawn
+         * as filled shapes in the color of their node type instead of scaled
+         * images, and edges as plain lines. Edges shorter than a pixel are
+         * skipped.
+         * 
+         * @param g
+         *            the graphics to draw on
+         * @param state
+         *            the cell state
+         * @return true if the cell is drawn, false if it needs to be drawn in
+         *         full detail
+         */
+        protected boolean drawSimpleCell(Graphics2D g, mxCellState state) {
+            mxIGraphModel model = graph.getModel();
+            Object cell = state.getCell();
+            if (model.isVertex(cell)) {
+                Object value = model.getValue(cell);
+                if (!(value instanceof GraphNode)) {
+                    return false;
+                }
+
+                NodeTypeViz viz =
+                        NodeTypeViz.getNodeTypeViz(((GraphNode) value)
+                                .getType());
+                if (viz == null) {
+                    return false;
+                }
+
+                Rectangle rec = state.getRectangle();
+                Graphics2D g2d = (Graphics2D) g.create();
+                try {
+                    g2d.setColor(viz.getColor());
+                    if (viz == NodeTypeViz.HFI) {
+                        g2d.fillOval(rec.x, rec.y, rec.width, rec.height);
+                    } else {
+                        g2d.fillRect(rec.x, rec.y, rec.width, rec.height);
+                    }
+                } finally {
+                    g2d.dispose();
+                }
+                return true;
+            } else if (model.isEdge(cell)) {
+                int numPoints = state.getAbsolutePointCount();
+                if (numPoints < 2) {
+                    return false;
+                }
+
+                if (state.getWidth() < 1 && state.getHeight() < 1) {
+                    return true;
+                }
+
+                Map<String, Object> style = state.getStyle();
+                if (isParallelEdgeDrawn(cell, style)) {
+                    return true;
+                }
+                Color color = mxUtils.getColor(style,
+                        mxConstants.STYLE_STROKECOLOR, Color.GRAY);
+                float opacity =
+                        mxUtils.getFloat(style, mxConstants.STYLE_OPACITY, 100);
+                if (opacity < 100) {
+                    color = new Color(color.getRed(), color.getGreen(),
+                            color.getBlue(), (int) (opacity * 2.55f));
+                }
+                float width = (float) (mxUtils.getFloat(style,
+                        mxConstants.STYLE_STROKEWIDTH, 1) * view.getScale());
+
+                Path2D path = new Path2D.Double();
+                mxPoint point = state.getAbsolutePoint(0);
+                path.moveTo(point.getX(), point.getY());
+                for (int i = 1; i < numPoints; i++) {
+                    point = state.getAbsolutePoint(i);
+                    path.lineTo(point.getX(), point.getY());
+                }
+                Graphics2D g2d = (Graphics2D) g.create();
+                try {
+                    g2d.setColor(color);
+                    g2d.setStroke(new BasicStroke(Math.max(1, width)));
+                    g2d.draw(path);
+                } finally {
+                    g2d.dispose();
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 
+         * <i>Description:</i> checks whether an edge with the same end nodes
+         * and style was already drawn in the current low detail pass. The
+         * graph has an edge per link, so switches connected by several links
+         * have parallel edges that overlap exactly when drawn as plain lines.
+         * 
+         * @param edge
+         *            the edge to draw
+         * @param style
+         *            the edge style
+         * @return true if an identical parallel edge is already drawn
+         */
+        protected boolean isParallelEdgeDrawn(Object edge,
+                Map<String, Object> style) {
+            if (drawnEdges == null) {
+                return false;
+            }
+
+            mxIGraphModel model = graph.getModel();
+            Object source = model.getValue(model.getTerminal(edge, true));
+            Object target = model.getValue(model.getTerminal(edge, false));
+            if (!(source instanceof GraphNode)
+                    || !(target instanceof GraphNode)) {
+                return false;
+            }
+
+            long lid1 = ((GraphNode) source).getLid() & 0xffffffffL;
+            long lid2 = ((GraphNode) target).getLid() & 0xffffffffL;
+            Long key = lid1 < lid2 ? (lid1 << 32) | lid2 : (lid2 << 32) | lid1;
+            Map<String, Object> drawnStyle = drawnEdges.get(key);
+            if (drawnStyle != null && drawnStyle.equals(style)) {
+                return true;
+            }
+            drawnEdges.put(key, style);
+            return false;
+        }
+
         /*
          * (non-Javadoc)
          *
@@ -865,6 +1244,23 @@ public class TopGraphComponent extends mxGraphComponent {
                 this.scale = scale;
             }
 
+            /**
+             * 
+             * <i>Description:</i> whether a region of this buffer can be
+             * redrawn instead of creating a new one
+             * 
+             * @return true if the buffer has the given size and was drawn with
+             *         the current scale and translate of the view
+             */
+            boolean isReusable(mxGraphView view, int width, int height) {
+                mxPoint curTrans = view.getTranslate();
+                return graphView == view && image != null
+                        && image.getWidth() == width
+                        && image.getHeight() == height
+                        && scale == view.getScale()
+                        && trans.getX() == curTrans.getX()
+                        && trans.getY() == curTrans.getY();
+            }
         }
     }
 }
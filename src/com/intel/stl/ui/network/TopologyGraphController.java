@@ -154,6 +154,7 @@ public class TopologyGraphController implements ITopologyListener {
             observer.onFinish();
             return;
         }
+        updateStaleIndicator();
 
         subObservers[1].onFinish();
         if (observer.isCancelled()) {
@@ -167,14 +168,17 @@ public class TopologyGraphController implements ITopologyListener {
 
         GraphBuilder builder = new GraphBuilder();
         fullTopTreeModel =
-                topTreeModel = builder.build(fullGraph, nodes, links);
+                topTreeModel = builder.build(fullGraph, nodes, links, observer);
         if (topTreeModel == null || observer.isCancelled()) {
             return;
         }
         fullGraph.expandAll();
         TreeLayout layout =
                 new TreeLayout(fullGraph, fullTopTreeModel, Style.SLASH);
-        layout.execute(fullGraph.getDefaultParent());
+        layout.execute(fullGraph.getDefaultParent(), observer);
+        if (observer.isCancelled()) {
+            return;
+        }
         Util.runInEDT(new Runnable() {
             @Override
             public void run() {
@@ -211,6 +215,7 @@ public class TopologyGraphController implements ITopologyListener {
             public void onSuccess(ICancelIndicator indicator, TopGraph graph) {
                 updateCtrl.setGraph(graph);
                 super.onSuccess(indicator, graph);
+                updateStaleIndicator();
                 if (callback != null) {
                     callback.onDone(null);
                 } else {
@@ -222,6 +227,16 @@ public class TopologyGraphController implements ITopologyListener {
         updateCtrl.update(task);
     }
 
+    protected void updateStaleIndicator() {
+        final boolean stale = subnetApi != null && subnetApi.isTopologyStale();
+        Util.runInEDT(new Runnable() {
+            @Override
+            public void run() {
+                graphView.showTopologyStale(stale);
+            }
+        });
+    }
+
     /**
      * @return the subnetApi
      */
@@ -29,9 +29,12 @@ package com.intel.stl.ui.network;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -58,6 +61,11 @@ public class TopologyTreeModel {
 
     private final List<Integer> unclassifiedNodes;
 
+    /**
+     * rank and position in the rank of each ranked node, created on first use
+     */
+    private Map<Integer, long[]> positions;
+
     public TopologyTreeModel(List<List<Integer>> ranks, int maxRankSize,
             List<Integer> unclassifiedNodes, int numTotalNodes) {
         this.ranks = Collections.unmodifiableList(ranks);
@@ -98,26 +106,55 @@ public class TopologyTreeModel {
         return unclassifiedNodes;
     }
 
+    /**
+     * 
+     * <i>Description:</i> creates the tree model for a graph that shows a part
+     * of the nodes of this model. The cost is proportional to the number of
+     * nodes in the graph rather than to the size of this model.
+     * 
+     * @param graph
+     *            the filtered graph
+     * @return the tree model of the graph
+     */
     public TopologyTreeModel filterBy(TopGraph graph) {
         Object[] allNodes = graph.getVertices();
+        Map<Integer, long[]> positions = getPositions();
         Set<Integer> allLids = new HashSet<Integer>();
+        // per rank, the position in the rank and the lid of the nodes found
+        long[][] found = new long[ranks.size()][];
+        int[] numFound = new int[ranks.size()];
+        List<GraphNode> rankedNodes = new ArrayList<GraphNode>();
         for (Object node : allNodes) {
-            allLids.add(((GraphNode) ((mxCell) node).getValue()).getLid());
+            GraphNode gNode = (GraphNode) ((mxCell) node).getValue();
+            int lid = gNode.getLid();
+            allLids.add(lid);
+            long[] pos = positions.get(lid);
+            if (pos != null) {
+                int rank = (int) pos[0];
+                if (found[rank] == null) {
+                    found[rank] = new long[ranks.get(rank).size()];
+                }
+                // sorts by position, and keeps the lid in the lower bits
+                found[rank][numFound[rank]++] =
+                        (pos[1] << 32) | (lid & 0xffffffffL);
+                rankedNodes.add(gNode);
+            }
         }
+        for (GraphNode node : rankedNodes) {
+            allLids.remove(node.getLid());
+            for (GraphNode nbr : node.getEndNeighbor()) {
+                allLids.remove(nbr.getLid());
+            }
+        }
+
         List<List<Integer>> newRanks = new ArrayList<List<Integer>>();
         int newMaxWidth = 0;
-        for (List<Integer> rank : ranks) {
-            List<Integer> newRank = new ArrayList<Integer>();
-            for (Integer nodeId : rank) {
-                mxCell cell = graph.getVertex(nodeId);
-                if (cell != null) {
-                    newRank.add(nodeId);
-                    allLids.remove(nodeId);
-                    Set<GraphNode> neighbors =
-                            ((GraphNode) cell.getValue()).getEndNeighbor();
-                    for (GraphNode nbr : neighbors) {
-                        allLids.remove(nbr.getLid());
-                    }
+        for (int i = 0; i < found.length; i++) {
+            List<Integer> newRank = new ArrayList<Integer>(numFound[i]);
+            if (numFound[i] > 0) {
+                Arrays.sort(found[i], 0, numFound[i]);
+                for (int j = 0; j < numFound[i]; j++) {
+                    newRank.add((int) found[i][j]);
                 }
             }
             newRanks.add(newRank);
@@ -129,6 +166,19 @@ public class TopologyTreeModel {
                 new ArrayList<Integer>(allLids), allNodes.length);
     }
 
+    protected synchronized Map<Integer, long[]> getPositions() {
+        if (positions == null) {
+            positions = new HashMap<Integer, long[]>();
+            for (int i = 0; i < ranks.size(); i++) {
+                List<Integer> rank = ranks.get(i);
+                for (int j = 0; j < rank.size(); j++) {
+                    positions.put(rank.get(j), new long[] { i, j });
+                }
+            }
+        }
+        return positions;
+    }
+
     public void dump(PrintStream out) {
         out.println(ranks.size() + " tiers");
         for (int i = 0; i < ranks.size(); i++) {
@@ -28,11 +28,18 @@
 package com.intel.stl.ui.network;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +63,24 @@ public class TreeLayout extends mxGraphLayout {
 
     public static final double CIRCLE_ANGLE = Math.PI / 3;
 
+    private static final String THREAD_PREFIX = "layoutthread-";
+
+    // ranks are laid out in parallel; the results are applied to the graph
+    // model on the calling thread
+    private static final ExecutorService layoutService =
+            Executors.newFixedThreadPool(Runtime.getRuntime()
+                    .availableProcessors(), new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r,
+                            THREAD_PREFIX + threadCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     public enum Style {
         CIRCLE,
         SLASH,
@@ -100,6 +125,11 @@ public class TreeLayout extends mxGraphLayout {
 
     private int[] numOpenNodes;
 
+    // vertices sorted by LID, so they are looked up without building cell ids
+    private int[] vertexLids;
+
+    private mxCell[] vertexCells;
+
     public TreeLayout(TopGraph graph, TopologyTreeModel model) {
         this(graph, model, Style.CIRCLE);
     }
@@ -204,21 +234,41 @@ public class TreeLayout extends mxGraphLayout {
         execute(parent, null);
     }
 
+    /**
+     * 
+     * <i>Description:</i> lays out the graph in three timed stages: the graph
+     * size, the placement of each rank, computed in parallel without touching
+     * the graph model, and a single model update that applies the placements.
+     * 
+     * @param parent
+     * @param cancelIndicator
+     */
     public void execute(Object parent, ICancelIndicator cancelIndicator) {
         log.info("layout start @ " + topGraph + " " + Thread.currentThread());
         super.execute(parent);
+        long t = System.currentTimeMillis();
         mxIGraphModel gModel = graph.getModel();
         r = (intraCellSpacing + GraphBuilder.SWITCH_SIZE);
+        indexVertices();
         prefRec = calculateSize(cancelIndicator);
         if (prefRec == null || isCancelled(cancelIndicator)) {
             log.info("layout execute cancelled " + topGraph + " "
                     + Thread.currentThread());
             return;
         }
+        t = logStage("size", t);
+
+        List<RankLayout> rankLayouts = layoutRanks(cancelIndicator);
+        if (rankLayouts == null || isCancelled(cancelIndicator)) {
+            log.info("layout execute cancelled " + topGraph + " "
+                    + Thread.currentThread());
+            return;
+        }
+        t = logStage("ranks", t);
 
         gModel.beginUpdate();
         try {
-            placeMiddleNodes(cancelIndicator);
+            placeMiddleNodes(rankLayouts, cancelIndicator);
             log.info("layout finished " + topGraph + " "
                     + Thread.currentThread());
         } catch (Exception e) {
@@ -226,6 +276,42 @@ public class TreeLayout extends mxGraphLayout {
         } finally {
             gModel.endUpdate();
         }
+        logStage("apply", t);
+    }
+
+    private long logStage(String stage, long start) {
+        long now = System.currentTimeMillis();
+        log.info("Layout stage '" + stage + "' took " + (now - start) + " ms");
+        return now;
+    }
+
+    protected void indexVertices() {
+        Object[] vertices = topGraph.getVertices();
+        List<mxCell> cells = new ArrayList<mxCell>(vertices.length);
+        for (Object vertex : vertices) {
+            if (((mxCell) vertex).getValue() instanceof GraphNode) {
+                cells.add((mxCell) vertex);
+            }
+        }
+        vertexCells = cells.toArray(new mxCell[cells.size()]);
+        Arrays.sort(vertexCells, new Comparator<mxCell>() {
+            @Override
+            public int compare(mxCell o1, mxCell o2) {
+                int lid1 = ((GraphNode) o1.getValue()).getLid();
+                int lid2 = ((GraphNode) o2.getValue()).getLid();
+                return lid1 > lid2 ? 1 : (lid1 < lid2 ? -1 : 0);
+            }
+        });
+        vertexLids = new int[vertexCells.length];
+        for (int i = 0; i < vertexCells.length; i++) {
+            vertexLids[i] = ((GraphNode) vertexCells[i].getValue()).getLid();
+        }
+    }
+
+    protected mxCell getVertex(int lid) {
+        int index =
+                vertexLids == null ? -1 : Arrays.binarySearch(vertexLids, lid);
+        return index >= 0 ? vertexCells[index] : topGraph.getVertex(lid);
     }
 
     protected boolean isCancelled(ICancelIndicator cancelIndicator) {
@@ -278,8 +364,11 @@ public class TreeLayout extends mxGraphLayout {
                         + intraCellSpacing * 2;
                 numOpenNodes[i] = 0;
                 for (Integer nodeLid : nodeLids) {
-                    GraphNode node =
-                            (GraphNode) topGraph.getVertex(nodeLid).getValue();
+                    mxCell cell = getVertex(nodeLid);
+                    if (cell == null) {
+                        continue;
+                    }
+                    GraphNode node = (GraphNode) cell.getValue();
                     if (!node.isCollapsed()) {
                         numOpenNodes[i] += 1;
                     }
@@ -295,111 +384,199 @@ public class TreeLayout extends mxGraphLayout {
         return rec;
     }
 
-    protected void placeMiddleNodes(ICancelIndicator cancelIndicator) {
-        List<List<Integer>> rwen = model.getRanks();
-        Set<GraphNode> sharedEndNodes = new HashSet<GraphNode>();
-        Set<Object> collapsedVertices = new HashSet<Object>();
-        Set<Object> expandedVertices = new HashSet<Object>();
-        double x0 = prefRec.getX();
-        double y0 = prefRec.getY();
-        double stepX = 0;
-        double stepY = prefRec.getHeight() / (rwen.size() - 1);
-        double x = x0, y = y0;
+    /**
+     * 
+     * <i>Description:</i> computes the placement of all ranks in parallel
+     * 
+     * @param cancelIndicator
+     * @return the rank placements, or null if cancelled or failed
+     */
+    protected List<RankLayout> layoutRanks(
+            final ICancelIndicator cancelIndicator) {
+        List<List<Integer>> ranks = model.getRanks();
+        List<Future<RankLayout>> futures =
+                new ArrayList<Future<RankLayout>>(ranks.size());
+        for (int i = 0; i < ranks.size(); i++) {
+            final List<Integer> rank = ranks.get(i);
+            final int numOpen = numOpenNodes[i];
+            futures.add(layoutService.submit(new Callable<RankLayout>() {
+                @Override
+                public RankLayout call() throws Exception {
+                    return layoutRank(rank, numOpen, cancelIndicator);
+                }
+            }));
+        }
+
+        List<RankLayout> res = new ArrayList<RankLayout>(ranks.size());
+        try {
+            for (Future<RankLayout> future : futures) {
+                RankLayout rankLayout = future.get();
+                if (rankLayout == null) {
+                    cancelAll(futures);
+                    return null;
+                }
+                res.add(rankLayout);
+            }
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            cancelAll(futures);
+            log.error("Failed to lay out ranks", e.getCause());
+            return null;
+        }
+        return res;
+    }
+
+    private void cancelAll(List<Future<RankLayout>> futures) {
+        for (Future<RankLayout> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * 
+     * <i>Description:</i> computes the placement of the nodes of one rank.
+     * Only reads the graph, so ranks can be laid out concurrently. Vertical
+     * positions are relative to the rank, since they depend on the expansion
+     * of the ranks above it.
+     * 
+     * @param rank
+     *            the LIDs of the rank
+     * @param numOpen
+     *            the number of expanded nodes in the rank
+     * @param cancelIndicator
+     * @return the rank placement, or null if cancelled
+     */
+    protected RankLayout layoutRank(List<Integer> rank, int numOpen,
+            ICancelIndicator cancelIndicator) {
+        RankLayout res = new RankLayout(rank.size());
+        double stepX = (prefRec.getWidth() - numOpen * 2 * r) / rank.size();
+        double x = prefRec.getX() + stepX / 2;
         // circle layout for switches
-        boolean circleLayout;
+        res.circleLayout = hasInternalConnection(rank);
         double startAngle = (Math.PI - CIRCLE_ANGLE) / 2;
         double startCircleHeight = Math.sin(startAngle);
         double angleStep = 0;
         double circleR = 0;
-        for (int i = 0; i < rwen.size(); i++) {
-            List<Integer> rank = rwen.get(i);
-            stepX = (prefRec.getWidth() - numOpenNodes[i] * 2 * r)
-                    / rank.size();
-            x = x0 + stepX / 2;
-            circleLayout = hasInternalConnection(rank);
-            if (circleLayout) {
-                angleStep = CIRCLE_ANGLE / (rank.size() - 1);
-                circleR =
-                        stepX * (rank.size() - 1) / (2 * Math.cos(startAngle));
+        if (res.circleLayout) {
+            angleStep = CIRCLE_ANGLE / (rank.size() - 1);
+            circleR = stepX * (rank.size() - 1) / (2 * Math.cos(startAngle));
+        }
+        for (int j = 0; j < rank.size(); j++) {
+            if (isCancelled(cancelIndicator)) {
+                log.info("layoutRank cancelled");
+                return null;
+            }
+
+            mxCell cell = getVertex(rank.get(j));
+            if (cell == null) {
+                log.warn("Couldn't find vertex lid=" + rank.get(j));
+                continue;
+            }
+            GraphNode node = (GraphNode) cell.getValue();
+            if (node == null) {
+                continue;
+            }
+            if (style == Style.CIRCLE && !node.isCollapsed()) {
+                x += r;
+            }
+            double dy = 0;
+            if (res.circleLayout) {
+                dy = -(Math.sin(startAngle + angleStep * j) - startCircleHeight)
+                        * circleR;
+            }
+            NodePlacement placement = new NodePlacement(cell, node, x, dy);
+            res.nodes.add(placement);
+            if (style == Style.CIRCLE && !node.isCollapsed()) {
+                x += r;
+            }
+            x += stepX;
+
+            if (!node.hasEndNodes() || node.isEndNode()) {
+                continue;
             }
-            Map<Object, List<GraphNode>> endNodes =
-                    new LinkedHashMap<Object, List<GraphNode>>();
-            for (int j = 0; j < rank.size(); j++) {
-                if (isCancelled(cancelIndicator)) {
-                    log.info("placeMiddleNodes cancelled");
-                    return;
-                }
 
-                mxCell cell = topGraph.getVertex(rank.get(j));
-                GraphNode node = null;
-                if (cell == null) {
-                    System.out
-                            .println("Couldn't find vertex lid=" + rank.get(j));
+            placement.hasEndNodes = true;
+            List<mxCell> toPlace = new ArrayList<mxCell>();
+            for (GraphNode endNode : node.getEndNeighbor()) {
+                mxCell enVertex = getVertex(endNode.getLid());
+                if (enVertex == null) {
                     continue;
-                } else {
-                    node = (GraphNode) cell.getValue();
                 }
-                Object vertex = null;
-                if (node != null) {
-                    if (style == Style.CIRCLE && !node.isCollapsed()) {
-                        x += r;
-                    }
-                    vertex = topGraph.getVertex(node.getLid());
+                if (endNode.getMiddleNeighbor().size() > 1) {
+                    res.sharedEndNodes.add(endNode);
+                    placement.toShow.add(enVertex);
+                } else if (!node.isCollapsed()) {
+                    toPlace.add(enVertex);
+                    placement.toShow.add(enVertex);
                 } else {
-                    continue;
+                    placement.toHide.add(enVertex);
+                }
+            }
+            if (!toPlace.isEmpty()) {
+                placement.endNodes =
+                        toPlace.toArray(new mxCell[toPlace.size()]);
+            }
+        }
+        res.expand = placeEndNodes(res.nodes);
+        return res;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> applies the rank placements to the graph model
+     * 
+     * @param rankLayouts
+     * @param cancelIndicator
+     */
+    protected void placeMiddleNodes(List<RankLayout> rankLayouts,
+            ICancelIndicator cancelIndicator) {
+        mxGraphModel gModel = (mxGraphModel) graph.getModel();
+        Set<GraphNode> sharedEndNodes = new HashSet<GraphNode>();
+        Set<Object> collapsedVertices = new HashSet<Object>();
+        Set<Object> expandedVertices = new HashSet<Object>();
+        double stepY = prefRec.getHeight() / (rankLayouts.size() - 1);
+        double y = prefRec.getY();
+        for (RankLayout rankLayout : rankLayouts) {
+            for (NodePlacement placement : rankLayout.nodes) {
+                if (isCancelled(cancelIndicator)) {
+                    log.info("placeMiddleNodes cancelled");
+                    return;
                 }
 
+                mxCell vertex = placement.vertex;
                 if (isVertexMovable(vertex)) {
-                    if (circleLayout) {
-                        double circleY =
-                                y - (Math.sin(startAngle + angleStep * j)
-                                        - startCircleHeight) * circleR;
-                        setVertexLocation(vertex, x, (int) (circleY + 0.5));
+                    if (rankLayout.circleLayout) {
+                        setVertexLocation(vertex, placement.x,
+                                (int) (y + placement.dy + 0.5));
                     } else {
-                        setVertexLocation(vertex, x, y);
+                        setVertexLocation(vertex, placement.x, y);
                     }
                 }
-                if (style == Style.CIRCLE && node != null
-                        && !node.isCollapsed()) {
-                    x += r;
-                }
-                x += stepX;
-
-                if (node != null && (!node.hasEndNodes() || node.isEndNode())) {
+                if (!placement.hasEndNodes) {
                     continue;
                 }
 
-                mxGraphModel gModel = (mxGraphModel) graph.getModel();
-                // check node type for the special b2b case
-                if (node != null && !node.isEndNode()) {
-                    if (node.isCollapsed()) {
-                        collapsedVertices.add(vertex);
-                    } else {
-                        expandedVertices.add(vertex);
-                    }
+                GraphNode node = placement.node;
+                if (node.isCollapsed()) {
+                    collapsedVertices.add(vertex);
+                } else {
+                    expandedVertices.add(vertex);
                 }
 
                 boolean hasChange = false;
-                List<GraphNode> toPlace = new ArrayList<GraphNode>();
-                if (node != null) {
-                    for (GraphNode endNode : node.getEndNeighbor()) {
-                        Object enVertex = topGraph.getVertex(endNode.getLid());
-                        if (endNode.getMiddleNeighbor().size() > 1) {
-                            sharedEndNodes.add(endNode);
-                            if (!gModel.isVisible(enVertex)) {
-                                gModel.setVisible(enVertex, true);
-                                hasChange = true;
-                            }
-                        } else if (!node.isCollapsed()) {
-                            toPlace.add(endNode);
-                            if (!gModel.isVisible(enVertex)) {
-                                gModel.setVisible(enVertex, true);
-                                hasChange = true;
-                            }
-                        } else if (gModel.isVisible(enVertex)) {
-                            gModel.setVisible(enVertex, false);
-                            hasChange = true;
-                        }
+                for (mxCell enVertex : placement.toShow) {
+                    if (!gModel.isVisible(enVertex)) {
+                        gModel.setVisible(enVertex, true);
+                        hasChange = true;
+                    }
+                }
+                for (mxCell enVertex : placement.toHide) {
+                    if (gModel.isVisible(enVertex)) {
+                        gModel.setVisible(enVertex, false);
+                        hasChange = true;
                     }
                 }
                 // hack to include node collapse into currentEdit
@@ -410,13 +587,15 @@ public class TreeLayout extends mxGraphLayout {
                     gModel.execute(collapseChange);
                     collapseChange.setPrevious(!node.isCollapsed());
                 }
+            }
 
-                if (!toPlace.isEmpty()) {
-                    endNodes.put(vertex, toPlace);
+            for (NodePlacement placement : rankLayout.nodes) {
+                if (placement.endNodes != null) {
+                    moveEndNodes(placement);
                 }
             }
-            double expand = placeEndNodes(endNodes);
-            y += Math.max(stepY, expand + interRankCellSpacing);
+            y += Math.max(stepY, rankLayout.expand + interRankCellSpacing);
+            sharedEndNodes.addAll(rankLayout.sharedEndNodes);
         }
         for (GraphNode node : sharedEndNodes) {
             if (isCancelled(cancelIndicator)) {
@@ -434,11 +613,19 @@ public class TreeLayout extends mxGraphLayout {
     }
 
     protected boolean hasInternalConnection(List<Integer> rank) {
+        int[] lids = new int[rank.size()];
+        for (int i = 0; i < lids.length; i++) {
+            lids[i] = rank.get(i);
+        }
+        Arrays.sort(lids);
         for (Integer id : rank) {
-            mxCell cell = topGraph.getVertex(id);
+            mxCell cell = getVertex(id);
+            if (cell == null) {
+                continue;
+            }
             GraphNode node = (GraphNode) cell.getValue();
             for (GraphNode peer : node.getMiddleNeighbor()) {
-                if (rank.contains(peer.getLid())) {
+                if (Arrays.binarySearch(lids, peer.getLid()) >= 0) {
                     return true;
                 }
             }
@@ -447,99 +634,114 @@ public class TreeLayout extends mxGraphLayout {
     }
 
     /**
-     * Description:
+     * Description: computes the positions of the end nodes of each node
+     * relative to the node's center
      *
-     * @param endNodes
-     * @return
+     * @param placements
+     * @return the vertical space taken by the end nodes
      */
-    protected double placeEndNodes(Map<Object, List<GraphNode>> endNodes) {
+    protected double placeEndNodes(List<NodePlacement> placements) {
         double expand = 0;
-        for (Object vertex : endNodes.keySet()) {
-            List<GraphNode> toPlace = endNodes.get(vertex);
-            mxRectangle rec = getVertexBounds(vertex);
-            double x0 = rec.getCenterX();
-            double y0 = rec.getCenterY() + interRankCellSpacing * 2
-                    + GraphBuilder.HFI_SIZE;
+        double y0 = interRankCellSpacing * 2 + GraphBuilder.HFI_SIZE;
+        for (NodePlacement placement : placements) {
+            if (placement.endNodes == null) {
+                continue;
+            }
+            int size = placement.endNodes.length;
+            placement.endX = new double[size];
+            placement.endY = new double[size];
             if (style == Style.CIRCLE) {
-                circleNodes(toPlace, x0, y0, r - intraCellSpacing);
+                circleNodes(size, 0, y0, r - intraCellSpacing, placement.endX,
+                        placement.endY);
                 if (expand == 0) {
                     expand = r;
                 }
             } else if (style == Style.SLASH) {
                 double height = 0;
-                if (toPlace.size() * GraphBuilder.HFI_SIZE > r) {
-                    height = toPlace.size() * GraphBuilder.HFI_SIZE;
+                if (size * GraphBuilder.HFI_SIZE > r) {
+                    height = size * GraphBuilder.HFI_SIZE;
                 }
-                slashNodes(toPlace, x0, y0, r - intraCellSpacing, height);
+                slashNodes(size, 0, y0, r - intraCellSpacing, height,
+                        placement.endX, placement.endY);
                 expand = Math.max(expand, height);
             } else if (style == Style.LINE) {
                 expand += intraCellSpacing + GraphBuilder.HFI_SIZE;
-                lineNodes(toPlace, x0, y0, expand);
+                lineNodes(size, 0, y0, expand, placement.endX,
+                        placement.endY);
+                placement.keepInside = true;
             }
         }
         return expand;
     }
 
-    protected void circleNodes(List<GraphNode> nodes, double x0, double y0,
-            double r) {
-        int size = nodes.size();
+    protected void circleNodes(int size, double x0, double y0, double r,
+            double[] xs, double[] ys) {
         double step = Math.PI / (size + 1);
         double alpha = Math.PI;
-        double x = x0;
-        double y = y0;
         double weight = 1;
         for (int i = 0; i < size; i++) {
-            Object v = topGraph.getVertex(nodes.get(i).getLid());
             alpha += step;
             weight = i % 2 == 0 ? 0.8 : 1.2;
-            if (isVertexMovable(v)) {
-                setVertexLocation(v, x + r * Math.cos(alpha) * weight,
-                        y - r * Math.sin(alpha) * weight);
-            }
+            xs[i] = x0 + r * Math.cos(alpha) * weight;
+            ys[i] = y0 - r * Math.sin(alpha) * weight;
         }
     }
 
-    protected void slashNodes(List<GraphNode> nodes, double x0, double y0,
-            double w, double h) {
-        int size = nodes.size();
+    protected void slashNodes(int size, double x0, double y0, double w,
+            double h, double[] xs, double[] ys) {
         double xStep = size < 1 ? w : w / (size - 1);
         double yStep = size < 1 ? 0 : h / (size - 1);
         double x = x0 - w / 2;
         double y = y0;
         for (int i = 0; i < size; i++) {
-            Object v = topGraph.getVertex(nodes.get(i).getLid());
-            if (isVertexMovable(v)) {
-                setVertexLocation(v, x, y);
-            }
+            xs[i] = x;
+            ys[i] = y;
             x += xStep;
             y += yStep;
         }
     }
 
-    protected void lineNodes(List<GraphNode> nodes, double x0, double y0,
-            double h) {
-        int size = nodes.size();
+    protected void lineNodes(int size, double x0, double y0, double h,
+            double[] xs, double[] ys) {
         double xStep = GraphBuilder.HFI_SIZE + intraCellSpacing;
-        double x = x0 - xStep * (nodes.size() - 1) / 2;
-        if (x < intraCellSpacing) {
-            x = intraCellSpacing;
-        }
+        double x = x0 - xStep * (size - 1) / 2;
         double y = y0 + h;
         for (int i = 0; i < size; i++) {
-            Object v = topGraph.getVertex(nodes.get(i).getLid());
+            xs[i] = x;
+            ys[i] = y;
+            x += xStep;
+        }
+    }
+
+    /**
+     * 
+     * <i>Description:</i> moves the end nodes of a node around the node's
+     * current center
+     * 
+     * @param placement
+     */
+    protected void moveEndNodes(NodePlacement placement) {
+        mxRectangle rec = getVertexBounds(placement.vertex);
+        double x0 = rec.getCenterX();
+        double y0 = rec.getCenterY();
+        if (placement.keepInside && x0 + placement.endX[0] < intraCellSpacing) {
+            x0 = intraCellSpacing - placement.endX[0];
+        }
+        for (int i = 0; i < placement.endNodes.length; i++) {
+            mxCell v = placement.endNodes[i];
             if (isVertexMovable(v)) {
-                setVertexLocation(v, x, y);
+                setVertexLocation(v, x0 + placement.endX[i],
+                        y0 + placement.endY[i]);
             }
-            x += xStep;
         }
     }
 
     protected void placeSharedNode(GraphNode node) {
-        Object vertex = topGraph.getVertex(node.getLid());
+        Object vertex = getVertex(node.getLid());
         double x = 0, y = 0;
         Set<GraphNode> neighbor = node.getMiddleNeighbor();
         for (GraphNode gn : neighbor) {
-            Object v = topGraph.getVertex(gn.getLid());
+            Object v = getVertex(gn.getLid());
             mxRectangle rec = getVertexBounds(v);
             x += rec.getX();
             y += rec.getY();
@@ -567,4 +769,59 @@ public class TreeLayout extends mxGraphLayout {
         return null;
     }
 
+    /**
+     * Placement of the nodes of one rank
+     */
+    protected static class RankLayout {
+        private final List<NodePlacement> nodes;
+
+        private final Set<GraphNode> sharedEndNodes = new HashSet<GraphNode>();
+
+        private boolean circleLayout;
+
+        private double expand;
+
+        public RankLayout(int size) {
+            nodes = new ArrayList<NodePlacement>(size);
+        }
+    }
+
+    /**
+     * Placement of a node, and of the end nodes placed around it
+     */
+    protected static class NodePlacement {
+        private final mxCell vertex;
+
+        private final GraphNode node;
+
+        private final double x;
+
+        // vertical offset from the rank
+        private final double dy;
+
+        private boolean hasEndNodes;
+
+        private final List<mxCell> toShow = new ArrayList<mxCell>();
+
+        private final List<mxCell> toHide = new ArrayList<mxCell>();
+
+        private mxCell[] endNodes;
+
+        // end node positions relative to the node's center
+        private double[] endX;
+
+        private double[] endY;
+
+        // whether the end nodes must not start left of the graph
+        private boolean keepInside;
+
+        public NodePlacement(mxCell vertex, GraphNode node, double x,
+                double dy) {
+            this.vertex = vertex;
+            this.node = node;
+            this.x = x;
+            this.dy = dy;
+        }
+    }
+
 }
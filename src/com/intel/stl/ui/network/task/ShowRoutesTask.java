@@ -227,16 +227,28 @@ public class ShowRoutesTask extends TopologyUpdateTask {
         Map<GraphEdge, List<GraphEdge>> traceMap =
                 new LinkedHashMap<GraphEdge, List<GraphEdge>>();
 
+        List<Integer> lids = new ArrayList<Integer>(nodes.size());
+        for (GraphNode node : nodes) {
+            lids.add(node.getLid());
+        }
+        // all pairs are traced at once, mostly from cached forwarding tables
+        Map<Integer, Map<Integer, List<TraceRecordBean>>> traces =
+                subnetApi.getTraces(lids, indicator);
+        // many routes go through the same switches
+        Map<Long, NodeRecordBean> hopNodes = new HashMap<Long, NodeRecordBean>();
+
         for (int i = 0; i < nodes.size() - 1; i++) {
             GraphNode source = nodes.get(i);
+            Map<Integer, List<TraceRecordBean>> sourceTraces =
+                    traces.get(source.getLid());
             for (int j = i + 1; j < nodes.size(); j++) {
                 if (indicator.isCancelled()) {
                     log.info("getTraceMap cancelled " + nodes);
                     return null;
                 }
                 GraphNode target = nodes.get(j);
-                List<TraceRecordBean> trace =
-                        subnetApi.getTrace(source.getLid(), target.getLid());
+                List<TraceRecordBean> trace = sourceTraces == null ? null
+                        : sourceTraces.get(target.getLid());
                 if (trace == null) {
                     log.warn("No trace found on link Lid "
                             + StringUtils.intHexString(source.getLid())
@@ -261,12 +273,15 @@ public class ShowRoutesTask extends TopologyUpdateTask {
                     if (indicator.isCancelled()) {
                         return null;
                     }
-                    NodeRecordBean node = null;
-                    try {
-                        node = subnetApi.getNode(bean.getNodeId());
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        continue;
+                    NodeRecordBean node = hopNodes.get(bean.getNodeId());
+                    if (node == null) {
+                        try {
+                            node = subnetApi.getNode(bean.getNodeId());
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                            continue;
+                        }
+                        hopNodes.put(bean.getNodeId(), node);
                     }
                     if (start == null) {
                         start = bean;
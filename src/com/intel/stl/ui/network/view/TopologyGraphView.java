@@ -87,6 +87,8 @@ public class TopologyGraphView extends JPanel implements MouseWheelListener {
 
     private JToolBar toolbar;
 
+    private JLabel staleLabel;
+
     private JButton zoomInBtn;
 
     private JButton zoomOutBtn;
@@ -154,6 +156,14 @@ public class TopologyGraphView extends JPanel implements MouseWheelListener {
             installNavButtons(toolbar);
             ctrPanel.add(toolbar, BorderLayout.WEST);
 
+            staleLabel = ComponentFactory.getH5Label(
+                    STLConstants.K1042_TOPOLOGY_STALE.getValue(), Font.PLAIN);
+            staleLabel.setIcon(UIImages.WARNING_ICON.getImageIcon());
+            staleLabel.setToolTipText(
+                    STLConstants.K1043_TOPOLOGY_STALE_DESCRIPTION.getValue());
+            staleLabel.setVisible(false);
+            ctrPanel.add(staleLabel, BorderLayout.CENTER);
+
             if (showExtraButtons) {
                 JPanel panel = createAlgorithmPanel();
                 ctrPanel.add(panel, BorderLayout.EAST);
@@ -428,6 +438,19 @@ public class TopologyGraphView extends JPanel implements MouseWheelListener {
         }
     }
 
+    /**
+     * 
+     * <i>Description:</i> shows or hides the indicator telling the topology
+     * was restored from the last snapshot and may be out of date
+     * 
+     * @param b
+     *            true if the topology may be out of date
+     */
+    public void showTopologyStale(boolean b) {
+        getControlPanel();
+        staleLabel.setVisible(b);
+    }
+
     public void showLayoutUpdating(boolean b) {
         if (algorithmLabel != null) {
             algorithmLabel.setIcon(b ? UIImages.RUNNING.getImageIcon() : null);
@@ -32,8 +32,6 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
-import org.jfree.data.time.TimePeriodValuesCollection;
-
 import com.intel.stl.ui.common.ChartsCard;
 import com.intel.stl.ui.common.STLConstants;
 import com.intel.stl.ui.common.view.ChartsView;
@@ -44,6 +42,7 @@ import com.intel.stl.ui.main.UndoHandler;
 import com.intel.stl.ui.main.view.IDataTypeListener;
 import com.intel.stl.ui.model.DatasetDescription;
 import com.intel.stl.ui.model.HistoryType;
+import com.intel.stl.ui.model.TrendDataset;
 import com.intel.stl.ui.monitor.ChartScaleGroupManager;
 import com.intel.stl.ui.monitor.DataChartScaleGroupManager;
 import com.intel.stl.ui.monitor.PacketChartScaleGroupManager;
@@ -91,7 +90,7 @@ public class PortCounterGroupController
             packetScaleManager.addChart(
                     portCounterChartCard.getView()
                             .getChart(packetItem.getName()),
-                    (TimePeriodValuesCollection) packetItem.getDataset());
+                    (TrendDataset) packetItem.getDataset());
         }
         packetItem.setScaleManager(packetScaleManager);
 
@@ -99,7 +98,7 @@ public class PortCounterGroupController
         if (portCounterChartCard != null) {
             dataScaleManager.addChart(
                     portCounterChartCard.getView().getChart(dataItem.getName()),
-                    (TimePeriodValuesCollection) dataItem.getDataset());
+                    (TrendDataset) dataItem.getDataset());
         }
         dataItem.setScaleManager(dataScaleManager);
     }
@@ -178,7 +177,7 @@ public class PortCounterGroupController
             IPerformanceItem<PortCounterSourceName> pinItem) {
         super.clearPin(pinCard, pinItem);
         // remove from scale manager
-        ChartScaleGroupManager<TimePeriodValuesCollection> scaleMgr =
+        ChartScaleGroupManager<TrendDataset> scaleMgr =
                 ((PortCounterFieldItem) pinItem).getScaleManager();
         if (scaleMgr != null) {
             scaleMgr.removeChart(pinCard.getView().getChart(pinItem.getName()));
@@ -200,7 +199,7 @@ public class PortCounterGroupController
         // set scale manager
         PortCounterFieldItem pinItem = (PortCounterFieldItem) pinItems.get(arg);
         if (pinItem != null) {
-            ChartScaleGroupManager<TimePeriodValuesCollection> scaleMgr =
+            ChartScaleGroupManager<TrendDataset> scaleMgr =
                     pinItem.getScaleManager();
             if (scaleMgr == null) {
                 if (source.getName().equals(allItems[2].getName())) {
@@ -210,7 +209,7 @@ public class PortCounterGroupController
                 }
                 if (scaleMgr != null) {
                     scaleMgr.addChart(res.getView().getChart(arg.getName()),
-                            (TimePeriodValuesCollection) pinItem.getDataset());
+                            (TrendDataset) pinItem.getDataset());
                     pinItem.setScaleManager(scaleMgr);
                     scaleMgr.updateChartsRange();
                 }
@@ -32,14 +32,13 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
-import org.jfree.data.time.TimePeriodValuesCollection;
-
 import com.intel.stl.ui.common.ChartsCard;
 import com.intel.stl.ui.common.view.ChartsView;
 import com.intel.stl.ui.common.view.IChartCreator;
 import com.intel.stl.ui.framework.IAppEvent;
 import com.intel.stl.ui.model.DatasetDescription;
 import com.intel.stl.ui.model.HistoryType;
+import com.intel.stl.ui.model.TrendDataset;
 import com.intel.stl.ui.monitor.ChartScaleGroupManager;
 import com.intel.stl.ui.monitor.DataRateChartScaleGroupManager;
 import com.intel.stl.ui.monitor.PacketRateChartScaleGroupManager;
@@ -71,12 +70,12 @@ public class PortGroupController
         if (rxCard != null) {
             packetScaleManager.addChart(
                     rxCard.getView().getChart(rxPktItem.getName()),
-                    (TimePeriodValuesCollection) rxPktItem.getDataset());
+                    (TrendDataset) rxPktItem.getDataset());
         }
         if (txCard != null) {
             packetScaleManager.addChart(
                     txCard.getView().getChart(txPktItem.getName()),
-                    (TimePeriodValuesCollection) txPktItem.getDataset());
+                    (TrendDataset) txPktItem.getDataset());
         }
         rxPktItem.setScaleManager(packetScaleManager);
         txPktItem.setScaleManager(packetScaleManager);
@@ -85,12 +84,12 @@ public class PortGroupController
         if (rxCard != null) {
             dataScaleManager.addChart(
                     rxCard.getView().getChart(rxDataItem.getName()),
-                    (TimePeriodValuesCollection) rxDataItem.getDataset());
+                    (TrendDataset) rxDataItem.getDataset());
         }
         if (txCard != null) {
             dataScaleManager.addChart(
                     txCard.getView().getChart(txDataItem.getName()),
-                    (TimePeriodValuesCollection) txDataItem.getDataset());
+                    (TrendDataset) txDataItem.getDataset());
         }
         rxDataItem.setScaleManager(dataScaleManager);
         txDataItem.setScaleManager(dataScaleManager);
@@ -170,7 +169,7 @@ public class PortGroupController
             IPerformanceItem<PortSourceName> pinItem) {
         super.clearPin(pinCard, pinItem);
         // remove from scale manager
-        ChartScaleGroupManager<TimePeriodValuesCollection> scaleMgr =
+        ChartScaleGroupManager<TrendDataset> scaleMgr =
                 ((PortCountersItem) pinItem).getScaleManager();
         scaleMgr.removeChart(pinCard.getView().getChart(pinItem.getName()));
     }
@@ -190,7 +189,7 @@ public class PortGroupController
         // set scale manager
         PortCountersItem pinItem = (PortCountersItem) pinItems.get(arg);
         if (pinItem != null) {
-            ChartScaleGroupManager<TimePeriodValuesCollection> scaleMgr =
+            ChartScaleGroupManager<TrendDataset> scaleMgr =
                     pinItem.getScaleManager();
             if (scaleMgr == null) {
                 if (source.getName().equals(allItems[0].getName())
@@ -202,7 +201,7 @@ public class PortGroupController
                 }
                 if (scaleMgr != null) {
                     scaleMgr.addChart(res.getView().getChart(arg.getName()),
-                            (TimePeriodValuesCollection) pinItem.getDataset());
+                            (TrendDataset) pinItem.getDataset());
                     pinItem.setScaleManager(scaleMgr);
                     scaleMgr.updateChartsRange();
                 }
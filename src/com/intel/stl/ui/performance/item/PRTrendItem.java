@@ -29,10 +29,9 @@ package com.intel.stl.ui.performance.item;
 
 import java.util.List;
 
-import org.jfree.data.time.TimePeriodValuesCollection;
-
 import com.intel.stl.api.performance.UtilStatsBean;
 import com.intel.stl.ui.common.STLConstants;
+import com.intel.stl.ui.model.TrendDataset;
 import com.intel.stl.ui.model.TrendSeries;
 import com.intel.stl.ui.model.UtilDataset;
 import com.intel.stl.ui.performance.GroupSource;
@@ -102,7 +101,7 @@ public class PRTrendItem extends TrendItem<GroupSource> {
      * @see com.intel.stl.ui.performance.item.TrendItem#createTrendDataset()
      */
     @Override
-    protected TimePeriodValuesCollection createTrendDataset() {
+    protected TrendDataset createTrendDataset() {
         return new UtilDataset();
     }
 
@@ -28,13 +28,11 @@
 package com.intel.stl.ui.performance.item;
 
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.intel.stl.ui.common.Util;
 import com.intel.stl.ui.model.TrendSeries;
 import com.intel.stl.ui.performance.PortCounterSourceName;
 
@@ -92,7 +90,8 @@ public abstract class PortCounterFieldItem
         List<TrendSeries> res = new ArrayList<TrendSeries>();
         if (series != null) {
             for (PortCounterSourceName serie : series) {
-                TrendSeries ts = new TrendSeries(serie.getPrettyName());
+                TrendSeries ts = new TrendSeries(serie.getPrettyName(),
+                        maxDataPoints);
                 res.add(ts);
             }
         }
@@ -102,25 +101,14 @@ public abstract class PortCounterFieldItem
     /*
      * (non-Javadoc)
      *
-     * @see com.intel.stl.ui.performance.item.TrendItem#updateTrend(double,
-     * java.util.Date, com.intel.stl.ui.performance.ISource)
+     * @see
+     * com.intel.stl.ui.performance.item.TrendItem#onMissingSeries(com.intel
+     * .stl.ui.performance.ISource)
      */
     @Override
-    public void updateTrend(final double value, final Date date,
-            final int interval, final PortCounterSourceName name) {
-        Util.runInEDT(new Runnable() {
-            @Override
-            public void run() {
-                TrendSeries series = getTimeSeries(name);
-                if (series != null) {
-                    PortCounterFieldItem.super.updateTrend(value, date,
-                            interval, name);
-                } else {
-                    // the shared observer is working on a field name that this
-                    // item doesn't support. So we just ignore it.
-                }
-            }
-        });
+    protected void onMissingSeries(PortCounterSourceName name) {
+        // the shared observer is working on a field name that this item
+        // doesn't support. So we just ignore it.
     }
 
     /*
@@ -137,7 +125,7 @@ public abstract class PortCounterFieldItem
                 for (int i = 0; i < dataset.getSeriesCount(); i++) {
                     if (sn.getPrettyName()
                             .equals(dataset.getSeries(i).getKey())) {
-                        return (TrendSeries) dataset.getSeries(i);
+                        return dataset.getSeries(i);
                     }
                 }
             }
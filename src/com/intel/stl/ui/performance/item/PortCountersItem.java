@@ -90,7 +90,8 @@ public abstract class PortCountersItem extends TrendItem<PortSourceName> {
         List<TrendSeries> res = new ArrayList<TrendSeries>();
         if (series != null) {
             for (PortSourceName serie : series) {
-                TrendSeries all = new TrendSeries(serie.getPrettyName());
+                TrendSeries all = new TrendSeries(serie.getPrettyName(),
+                        maxDataPoints);
                 res.add(all);
             }
         }
@@ -110,7 +111,7 @@ public abstract class PortCountersItem extends TrendItem<PortSourceName> {
                 for (int i = 0; i < dataset.getSeriesCount(); i++) {
                     if (sn.getPrettyName()
                             .equals(dataset.getSeries(i).getKey())) {
-                        return (TrendSeries) dataset.getSeries(i);
+                        return dataset.getSeries(i);
                     }
                 }
             }
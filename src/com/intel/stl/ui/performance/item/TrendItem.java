@@ -31,19 +31,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-
-import javax.swing.SwingUtilities;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.jfree.data.general.Dataset;
-import org.jfree.data.time.SimpleTimePeriod;
-import org.jfree.data.time.TimePeriod;
-import org.jfree.data.time.TimePeriodValue;
-import org.jfree.data.time.TimePeriodValuesCollection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.intel.stl.ui.common.STLConstants;
-import com.intel.stl.ui.common.Util;
+import com.intel.stl.ui.model.TrendDataset;
 import com.intel.stl.ui.model.TrendSeries;
 import com.intel.stl.ui.monitor.ChartScaleGroupManager;
 import com.intel.stl.ui.performance.ISource;
@@ -62,6 +58,9 @@ import com.intel.stl.ui.performance.ISource;
  * <li>Set sources to specify the target data sources, such as Device Groups or
  * VFabrics, from which where we will collect data
  * </ol>
+ * Updates to the dataset are queued and applied on the EDT by the
+ * TrendUpdateBatcher, together with the updates of all other trend items, so
+ * each chart is repainted once per refresh.
  */
 public abstract class TrendItem<S extends ISource>
         extends AbstractPerformanceItem<S> {
@@ -69,14 +68,18 @@ public abstract class TrendItem<S extends ISource>
 
     private final static boolean DEBUG = false;
 
-    private ChartScaleGroupManager<TimePeriodValuesCollection> scaleManager;
+    private ChartScaleGroupManager<TrendDataset> scaleManager;
 
-    protected TimePeriodValuesCollection dataset;
+    protected TrendDataset dataset;
 
     protected List<TrendSeries> trendSeries;
 
     private final Object copyCritical = new Object();
 
+    // dataset updates waiting to be applied on the EDT, in order
+    private final Queue<Runnable> pendingUpdates =
+            new ConcurrentLinkedQueue<Runnable>();
+
     public TrendItem(String shortName, String fullName) {
         this(shortName, fullName, DEFAULT_DATA_POINTS);
     }
@@ -121,13 +124,7 @@ public abstract class TrendItem<S extends ISource>
         // need to sync with the data update in the item to be copied
         synchronized (trendItem.copyCritical) {
             for (TrendSeries ts : trendItem.trendSeries) {
-                TrendSeries copy = new TrendSeries((String) ts.getKey());
-                for (int i = 0; i < ts.getItemCount(); i++) {
-                    TimePeriodValue val = ts.getDataItem(i);
-                    TimePeriodValue valClone = (TimePeriodValue) val.clone();
-                    copy.add(valClone);
-                }
-                trendSeries.add(copy);
+                trendSeries.add(ts.copy());
             }
         }
         for (int i = trendSeries.size() - 1; i >= 0; i--) {
@@ -149,15 +146,16 @@ public abstract class TrendItem<S extends ISource>
         }
     }
 
-    protected TimePeriodValuesCollection createTrendDataset() {
-        return new TimePeriodValuesCollection();
+    protected TrendDataset createTrendDataset() {
+        return new TrendDataset();
     }
 
     protected List<TrendSeries> createTrendSeries(S[] series) {
         List<TrendSeries> res = new ArrayList<TrendSeries>();
         if (series != null) {
             for (S serie : series) {
-                TrendSeries ts = new TrendSeries(serie.sourceName());
+                TrendSeries ts =
+                        new TrendSeries(serie.sourceName(), maxDataPoints);
                 res.add(ts);
             }
         }
@@ -167,7 +165,7 @@ public abstract class TrendItem<S extends ISource>
     protected TrendSeries getTimeSeries(S name) {
         for (int i = 0; i < dataset.getSeriesCount(); i++) {
             if (name.sourceName().equals(dataset.getSeries(i).getKey())) {
-                return (TrendSeries) dataset.getSeries(i);
+                return dataset.getSeries(i);
             }
         }
         return null;
@@ -208,7 +206,7 @@ public abstract class TrendItem<S extends ISource>
                     currentProviderName + ":" + getName() + " " + getFullName()
                             + ": sourcesRemoved " + Arrays.toString(names));
         }
-        Util.runInEDT(new Runnable() {
+        queueUpdate(new Runnable() {
             @Override
             public void run() {
                 int seriesCount = dataset.getSeriesCount();
@@ -233,15 +231,13 @@ public abstract class TrendItem<S extends ISource>
                     currentProviderName + ":" + getName() + " " + getFullName()
                             + ": sourcesToAdd " + Arrays.toString(names));
         }
-        Util.runInEDT(new Runnable() {
+        queueUpdate(new Runnable() {
             @Override
             public void run() {
                 if (names != null && names.length > 0) {
-                    synchronized (copyCritical) {
-                        trendSeries = createTrendSeries(names);
-                        for (int i = trendSeries.size() - 1; i >= 0; i--) {
-                            dataset.addSeries(trendSeries.get(i));
-                        }
+                    trendSeries = createTrendSeries(names);
+                    for (int i = trendSeries.size() - 1; i >= 0; i--) {
+                        dataset.addSeries(trendSeries.get(i));
                     }
                 }
             }
@@ -253,14 +249,14 @@ public abstract class TrendItem<S extends ISource>
      *            the scaleManager to set
      */
     public void setScaleManager(
-            ChartScaleGroupManager<TimePeriodValuesCollection> scaleManager) {
+            ChartScaleGroupManager<TrendDataset> scaleManager) {
         this.scaleManager = scaleManager;
     }
 
     /**
      * @return the scaleManager
      */
-    public ChartScaleGroupManager<TimePeriodValuesCollection> getScaleManager() {
+    public ChartScaleGroupManager<TrendDataset> getScaleManager() {
         return scaleManager;
     }
 
@@ -270,86 +266,86 @@ public abstract class TrendItem<S extends ISource>
             return;
         }
 
-        Util.runInEDT(new Runnable() {
+        final long start = date.getTime();
+        final long end = start + interval * 1000L;
+        queueUpdate(new Runnable() {
             @Override
             public void run() {
-                // need to sync with the dataset copy
-                synchronized (copyCritical) {
-                    TrendSeries series = getTimeSeries(name);
-                    long time = date.getTime();
-                    time += (interval * 1000);
-                    if (series != null) {
-                        removeTimePeriod(series, date.getTime(), time);
-                        series.add(new SimpleTimePeriod(date, new Date(time)),
-                                value);
-
-                        if (series.getItemCount() > maxDataPoints) {
-                            // Delete the oldest item from the current series
-                            series.delete(0, 0);
-                            // Also delete the item from other series whose
-                            // Time stamp is equal or older the current series
-                            // that's been deleted.
-                            deleteOldSeries(series.getDataItem(0));
-                        }
-
-                        series.fireSeriesChanged();
+                TrendSeries series = getTimeSeries(name);
+                if (series != null) {
+                    // the history type may have changed the number of points
+                    series.setCapacity(maxDataPoints);
+                    series.removeWithin(start, end);
+                    if (series.getItemCount() == series.getCapacity()) {
+                        // Delete the oldest item from the current series and
+                        // also delete the items from other series whose time
+                        // stamp is equal or older than the one deleted.
+                        long oldest = series.getStartTime(0);
+                        series.add(start, end, value);
+                        deleteOldSeries(oldest);
                     } else {
-                        log.warn(currentProviderName + ":" + getName() + " "
-                                + getFullName() + ": Couldn't find TimeSeries '"
-                                + name + "'");
-                        // throw new
-                        // RuntimeException("Couldn't find TimeSeries '"
-                        // + name + "'");
+                        series.add(start, end, value);
                     }
+                } else {
+                    onMissingSeries(name);
                 }
             }
         });
-        if (scaleManager != null) {
-            SwingUtilities.invokeLater(new Runnable() {
-                @Override
-                public void run() {
-                    scaleManager.updateChartsRange();
-                }
-            });
-        }
     }
 
-    protected void removeTimePeriod(TrendSeries values, long startTime,
-            long endTime) {
-        int size = values.getItemCount();
-        if (size == 0) {
-            return;
-        }
+    /**
+     *
+     * <i>Description:</i> called when a value arrives for a source this item
+     * has no series for
+     *
+     * @param name
+     *            the source
+     */
+    protected void onMissingSeries(S name) {
+        log.warn(currentProviderName + ":" + getName() + " " + getFullName()
+                + ": Couldn't find TimeSeries '" + name + "'");
+    }
 
-        for (int i = size - 1; i >= 0; i--) {
-            TimePeriod tp = values.getTimePeriod(i);
-            if (tp.getStart().getTime() >= startTime
-                    && tp.getEnd().getTime() <= endTime) {
-                values.delete(i, i);
-            }
+    private void deleteOldSeries(long start) {
+        for (int i = 0; i < dataset.getSeriesCount(); i++) {
+            dataset.getSeries(i).removeUpTo(start);
         }
     }
 
     /**
      *
-     * <i>Description:</i>
+     * <i>Description:</i> queues an update of the dataset. Updates are applied
+     * on the EDT, in the order they were queued.
      *
-     * @param tpv
+     * @param update
      */
-    private void deleteOldSeries(TimePeriodValue tpv) {
-        for (int i = 0; i < dataset.getSeriesCount(); i++) {
-            Date start = tpv.getPeriod().getStart();
-            TrendSeries ts = (TrendSeries) dataset.getSeries(i);
-            while (ts.getItemCount() > 0) {
-                TimePeriod tp = ts.getTimePeriod(0);
-                if (null != tp && (tp.getStart().equals(start)
-                        || tp.getStart().before(start))) {
-                    ts.delete(0, 0);
-                } else {
-                    break;
-                }
+    protected void queueUpdate(Runnable update) {
+        pendingUpdates.add(update);
+        TrendUpdateBatcher.getInstance().itemUpdated(this);
+    }
+
+    /**
+     *
+     * <i>Description:</i> applies the queued updates and notifies the chart
+     * once. Must be called on the EDT.
+     *
+     * @return true if any update was applied
+     */
+    boolean applyPendingUpdates() {
+        boolean updated = false;
+        // need to sync with the dataset copy
+        synchronized (copyCritical) {
+            Runnable update = pendingUpdates.poll();
+            while (update != null) {
+                update.run();
+                updated = true;
+                update = pendingUpdates.poll();
             }
         }
+        if (updated && dataset != null) {
+            dataset.notifyChanged();
+        }
+        return updated;
     }
 
     /*
@@ -359,15 +355,12 @@ public abstract class TrendItem<S extends ISource>
      */
     @Override
     public void clear() {
-        Util.runInEDT(new Runnable() {
+        queueUpdate(new Runnable() {
             @Override
             public void run() {
-                synchronized (copyCritical) {
-                    if (dataset != null) {
-                        for (int i = 0; i < dataset.getSeriesCount(); i++) {
-                            int itemCount = dataset.getSeries(i).getItemCount();
-                            dataset.getSeries(i).delete(0, itemCount - 1);
-                        }
+                if (dataset != null) {
+                    for (int i = 0; i < dataset.getSeriesCount(); i++) {
+                        dataset.getSeries(i).clear();
                     }
                 }
             }
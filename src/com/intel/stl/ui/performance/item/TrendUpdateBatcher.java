@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.ui.performance.item;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.SwingUtilities;
+
+import com.intel.stl.ui.monitor.ChartScaleGroupManager;
+
+/**
+ * Coalesces the updates of all TrendItems into one EDT task per refresh tick.
+ * Data observers queue updates on the items from their own threads; the first
+ * update queued after a flush schedules a flush on the EDT that applies
+ * everything queued so far, and then repaints each updated chart and updates
+ * each affected chart scale group once.
+ */
+class TrendUpdateBatcher {
+    private static final TrendUpdateBatcher instance = new TrendUpdateBatcher();
+
+    private final Set<TrendItem<?>> pendingItems =
+            new LinkedHashSet<TrendItem<?>>();
+
+    private boolean flushScheduled;
+
+    static TrendUpdateBatcher getInstance() {
+        return instance;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> marks an item as having queued updates
+     * 
+     * @param item
+     */
+    void itemUpdated(TrendItem<?> item) {
+        synchronized (this) {
+            pendingItems.add(item);
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        // always deferred, even on the EDT, so that the updates of a tick
+        // have a chance to be coalesced
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+    }
+
+    private void flush() {
+        List<TrendItem<?>> items;
+        synchronized (this) {
+            items = new ArrayList<TrendItem<?>>(pendingItems);
+            pendingItems.clear();
+            flushScheduled = false;
+        }
+
+        Set<ChartScaleGroupManager<?>> scaleManagers =
+                new LinkedHashSet<ChartScaleGroupManager<?>>();
+        for (TrendItem<?> item : items) {
+            if (item.applyPendingUpdates() && item.getScaleManager() != null) {
+                scaleManagers.add(item.getScaleManager());
+            }
+        }
+        for (ChartScaleGroupManager<?> scaleManager : scaleManagers) {
+            scaleManager.updateChartsRange();
+        }
+    }
+}
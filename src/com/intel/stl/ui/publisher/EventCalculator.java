@@ -36,14 +36,17 @@ import static com.intel.stl.ui.model.HealthScoreAttribute.NUM_PORTS;
 import static com.intel.stl.ui.model.HealthScoreAttribute.NUM_SWITCHES;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.EnumMap;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
@@ -106,7 +109,22 @@ public class EventCalculator
 
     private volatile int timeWindow;
 
-    private LinkedList<NodeEvents> events;
+    /**
+     * Nodes with events in the time window, indexed by LID
+     */
+    private final Map<Integer, NodeEvents> events;
+
+    /**
+     * One entry per event in arrival order, so expired events are found from
+     * the head without scanning the nodes
+     */
+    private final ArrayDeque<TimelineEntry> timeline;
+
+    /**
+     * Nodes in {@link #events} grouped by their overall severity, indexed by
+     * severity ordinal
+     */
+    private final List<Set<NodeEvents>> severityNodes;
 
     private final int[] switchStates;
 
@@ -116,6 +134,9 @@ public class EventCalculator
 
     private List<NodeEvents> eventsImage;
 
+    // whether events changed since eventsImage was taken, guarded by events
+    private boolean eventsChanged = true;
+
     private int[] switchStatesImage;
 
     private int[] hfiStatesImage;
@@ -165,7 +186,12 @@ public class EventCalculator
         setNumWorstNodes(userPreference.getNumWorstNodes());
         switchStates = new int[NoticeSeverity.values().length];
         hfiStates = new int[NoticeSeverity.values().length];
-        events = new LinkedList<NodeEvents>();
+        events = new HashMap<Integer, NodeEvents>();
+        timeline = new ArrayDeque<TimelineEntry>();
+        severityNodes = new ArrayList<Set<NodeEvents>>();
+        for (int i = 0; i < NoticeSeverity.values().length; i++) {
+            severityNodes.add(new LinkedHashSet<NodeEvents>());
+        }
         weightSettings = new EnumMap<HealthScoreAttribute, Integer>(
                 HealthScoreAttribute.class);
         values = new EnumMap<HealthScoreAttribute, Long>(
@@ -254,19 +280,24 @@ public class EventCalculator
     protected void addEvent(NodeSource nodeSource, long time, EventType type,
             NoticeSeverity severity) {
         synchronized (events) {
-            NodeEvents ne = new NodeEvents(nodeSource);
+            NodeEvents ne = events.get(nodeSource.getLid());
             NoticeSeverity oldSeverity = null;
-            int index = events.indexOf(ne);
-            if (index >= 0) {
-                ne = events.get(index);
+            if (ne != null) {
                 oldSeverity = ne.getOverallSeverity();
             } else {
-                events.add(ne);
+                ne = new NodeEvents(nodeSource);
+                events.put(ne.getLid(), ne);
             }
             NoticeSeverity newSeverity = ne.addEvent(time, type, severity);
+            timeline.add(new TimelineEntry(time, ne));
+            eventsChanged = true;
             // System.out.println("AddEvent "+oldSeverity+" "+newSeverity+"
             // "+ne);
-            updateStates(nodeSource.getNodeType(), oldSeverity, newSeverity);
+            if (newSeverity != oldSeverity) {
+                updateStates(nodeSource.getNodeType(), oldSeverity,
+                        newSeverity);
+                moveNode(ne, oldSeverity, newSeverity);
+            }
         }
     }
 
@@ -286,11 +317,16 @@ public class EventCalculator
      */
     public void clear() {
 
-        if (events != null && !events.isEmpty()) {
+        if (!events.isEmpty()) {
             synchronized (events) {
                 events.clear();
+                timeline.clear();
+                for (Set<NodeEvents> nodes : severityNodes) {
+                    nodes.clear();
+                }
+                eventsChanged = true;
                 synchronized (critical) {
-                    eventsImage.clear();
+                    eventsImage = null;
 
                     for (int i = 0; i < switchStatesImage.length; i++) {
                         switchStatesImage[i] = 0;
@@ -331,11 +367,27 @@ public class EventCalculator
         // System.out.println("hfiStates "+Arrays.toString(hfiStates));
     }
 
+    /**
+     * 
+     * <i>Description:</i> moves a node to the severity group matching its new
+     * overall severity
+     * 
+     */
+    protected void moveNode(NodeEvents ne, NoticeSeverity oldSeverity,
+            NoticeSeverity newSeverity) {
+        if (oldSeverity != null) {
+            severityNodes.get(oldSeverity.ordinal()).remove(ne);
+        }
+        if (newSeverity != null) {
+            severityNodes.get(newSeverity.ordinal()).add(ne);
+        }
+    }
+
     protected void clearEvents(long cutTime) {
         synchronized (events) {
-            while (!events.isEmpty()
-                    && events.get(0).getEarlistTime() < cutTime) {
-                NodeEvents ne = events.remove(0);
+            while (!timeline.isEmpty() && timeline.peek().time < cutTime) {
+                NodeEvents ne = timeline.poll().node;
+                eventsChanged = true;
                 NoticeSeverity oldSeverity = ne.getOverallSeverity();
                 NoticeSeverity newSeverity = ne.clear(cutTime);
                 if (DEBUG) {
@@ -350,16 +402,12 @@ public class EventCalculator
 
                 if (newSeverity != oldSeverity) {
                     updateStates(ne.getNodeType(), oldSeverity, newSeverity);
+                    moveNode(ne, oldSeverity, newSeverity);
                 }
-                if (newSeverity != null) {
-                    // re-organize the list to put the NodeEvents in correct
-                    // position
-                    int index = Collections.binarySearch(events, ne);
-                    if (index >= 0) {
-                        events.add(index, ne);
-                    } else {
-                        events.add(-index - 1, ne);
-                    }
+                // the node may already be replaced if its events expired
+                // earlier and it got new ones
+                if (newSeverity == null && events.get(ne.getLid()) == ne) {
+                    events.remove(ne.getLid());
                 }
             }
         }
@@ -378,10 +426,6 @@ public class EventCalculator
         sweepTime = time;
         synchronized (events) {
             clearEvents(sweepTime - timeWindow);
-            List<NodeEvents> eventsCopy = new ArrayList<NodeEvents>();
-            for (NodeEvents ne : events) {
-                eventsCopy.add(ne.copy());
-            }
 
             int[] switchStatesCopy = new int[switchStates.length];
             System.arraycopy(switchStates, 0, switchStatesCopy, 0,
@@ -391,7 +435,6 @@ public class EventCalculator
                     hfiStatesCopy.length);
 
             synchronized (critical) {
-                eventsImage = eventsCopy;
                 switchStatesImage = switchStatesCopy;
                 hfiStatesImage = hfiStatesCopy;
             }
@@ -505,28 +548,65 @@ public class EventCalculator
         return res;
     }
 
+    /**
+     * 
+     * <i>Description:</i> the nodes with the highest overall severity. Nodes
+     * are taken from the severity groups starting from the most severe one, so
+     * this only touches the returned nodes.
+     * 
+     * @param size
+     *            the max number of nodes to return
+     * @return the worst nodes sorted by health score
+     */
     public NodeScore[] getWorstNodes(int size) {
         if (!hasSweep) {
             return null;
         }
 
-        List<NodeEvents> nodes = null;
-        synchronized (critical) {
-            nodes = new ArrayList<NodeEvents>(eventsImage);
-        }
-        size = Math.min(size, nodes.size());
-        NodeScore[] res = new NodeScore[size];
-        for (int i = 0; i < size; i++) {
-            NodeEvents ne = nodes.get(i);
-            EventItem item = ne.getLatestEvent();
-            if (item != null) {
-                res[i] = new NodeScore(ne.getName(), ne.getNodeType(),
-                        ne.getLid(), item.getType(), sweepTime,
-                        item.getHealthScore());
+        List<NodeScore> res = new ArrayList<NodeScore>(size);
+        synchronized (events) {
+            for (int i = severityNodes.size() - 1; i >= 0
+                    && res.size() < size; i--) {
+                for (NodeEvents ne : severityNodes.get(i)) {
+                    if (res.size() >= size) {
+                        break;
+                    }
+                    EventItem item = ne.getLatestEvent();
+                    if (item != null) {
+                        res.add(new NodeScore(ne.getName(), ne.getNodeType(),
+                                ne.getLid(), item.getType(), sweepTime,
+                                item.getHealthScore()));
+                    }
+                }
             }
         }
-        Arrays.sort(res);
-        return res;
+        NodeScore[] scores = res.toArray(new NodeScore[res.size()]);
+        Arrays.sort(scores);
+        return scores;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> copy of the node events for a state summary. The copy
+     * is only taken again when events changed since the last one.
+     * 
+     * @return the node events in the time window
+     */
+    protected List<NodeEvents> getEventsImage() {
+        synchronized (events) {
+            if (eventsChanged || eventsImage == null) {
+                List<NodeEvents> eventsCopy =
+                        new ArrayList<NodeEvents>(events.size());
+                for (NodeEvents ne : events.values()) {
+                    eventsCopy.add(ne.copy());
+                }
+                synchronized (critical) {
+                    eventsImage = Collections.unmodifiableList(eventsCopy);
+                }
+                eventsChanged = false;
+            }
+            return eventsImage;
+        }
     }
 
     @Override
@@ -540,9 +620,10 @@ public class EventCalculator
 
         sweep();
         StateSummary res = new StateSummary(baseNodesDist);
+        List<NodeEvents> image = getEventsImage();
         if (DEBUG) {
             System.out.println("All Events");
-            for (NodeEvents ne : eventsImage) {
+            for (NodeEvents ne : image) {
                 System.out.println(" " + ne);
             }
         }
@@ -551,7 +632,7 @@ public class EventCalculator
             res.setSwitchStates(getSwitchStates());
             res.setHfiStates(getHFIStates());
             res.setWorstNodes(getWorstNodes(numWorstNodes));
-            res.setEvents(eventsImage);
+            res.setEvents(image);
         }
         if (DEBUG) {
             System.out.println("HealthScore " + res.getHealthScore());
@@ -562,7 +643,7 @@ public class EventCalculator
                 System.out.println(" " + ns);
             }
             System.out.println("All Events");
-            for (NodeEvents ne : eventsImage) {
+            for (NodeEvents ne : image) {
                 System.out.println(" " + ne);
             }
         }
@@ -714,8 +795,17 @@ public class EventCalculator
     }
 
     public void cleanup() {
-        events = null;
-        eventsImage = null;
+        synchronized (events) {
+            events.clear();
+            timeline.clear();
+            for (Set<NodeEvents> nodes : severityNodes) {
+                nodes.clear();
+            }
+            eventsChanged = true;
+        }
+        synchronized (critical) {
+            eventsImage = null;
+        }
     }
 
     protected void setHealthScoreWeights(UserPreference userPreference) {
@@ -742,4 +832,15 @@ public class EventCalculator
     protected int getTotalWeight() {
         return totalWeight;
     }
+
+    private static class TimelineEntry {
+        private final long time;
+
+        private final NodeEvents node;
+
+        public TimelineEntry(long time, NodeEvents node) {
+            this.time = time;
+            this.node = node;
+        }
+    }
 }
@@ -27,7 +27,21 @@
 
 package com.intel.stl.ui.publisher;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.intel.stl.api.ITimestamped;
 import com.intel.stl.api.performance.IPerformanceApi;
@@ -36,8 +50,44 @@ import com.intel.stl.api.performance.ImageInfoBean;
 import com.intel.stl.ui.common.ICancelIndicator;
 import com.intel.stl.ui.model.HistoryType;
 
+/**
+ * Backfills a history chart by walking back from the latest image. Queries for
+ * the next offsets are sent ahead of time, up to {@link #QUERY_WINDOW} per
+ * task, on a thread pool shared by all history tasks, while data points are
+ * still delivered to the callback in order. Data points saved in the local
+ * database are used in place of a PA query when there is one at the expected
+ * time.
+ */
 public abstract class HistoryQueryTask<E extends ITimestamped>
         extends CancellableCall<Void> {
+    private final static Logger log =
+            LoggerFactory.getLogger(HistoryQueryTask.class);
+
+    /**
+     * Max number of outstanding history queries per task
+     */
+    public static final int QUERY_WINDOW = 8;
+
+    /**
+     * Max number of history queries running at the same time over all tasks
+     */
+    public static final int QUERY_THREADS = 16;
+
+    private static final String THREAD_PREFIX = "histthread-";
+
+    private static final ExecutorService queryService =
+            Executors.newFixedThreadPool(QUERY_THREADS, new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r,
+                            THREAD_PREFIX + threadCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     private final IPerformanceApi perfApi;
 
     private int lastImageInterval;
@@ -88,7 +138,7 @@ public abstract class HistoryQueryTask<E extends ITimestamped>
 
         ImageIdBean[] imageIdBeans = queryImageId();
         int imageIdBeanLength = imageIdBeans.length;
-        long[] imageIds = new long[imageIdBeanLength];
+        final long[] imageIds = new long[imageIdBeanLength];
         for (int j = 0; j < imageIdBeanLength; j++) {
             imageIds[j] = imageIdBeans[j].getImageNumber();
         }
@@ -97,39 +147,60 @@ public abstract class HistoryQueryTask<E extends ITimestamped>
         long lastTimePoint = queryImageTime(imageIds[0], 0);
         int lastOffset = 0;
         double tmpOffset = 0;
-        for (int i = 0; i < getMaxDataPoints()
-                && !cancelIndicator.isCancelled(); i++) {
-            tmpOffset -= step;
-            int offset = (int) tmpOffset;
-            E[] datapoints = queryHistory(imageIds, offset);
-            if (datapoints != null && datapoints.length > 0) {
-                E datapoint = datapoints[0];
-                long time = datapoint.getTimestamp();
-                if (firstTime == -1) {
-                    firstTime = time;
-                } else if (firstTime - time > getLengthInSeconds()) {
-                    break;
+        TreeMap<Long, E[]> stored = getStoredHistory(lastTimePoint);
+        Deque<HistoryPoint> window = new ArrayDeque<HistoryPoint>();
+        int requested = 0;
+        try {
+            for (int i = 0; i < getMaxDataPoints()
+                    && !cancelIndicator.isCancelled(); i++) {
+                while (window.size() < QUERY_WINDOW
+                        && requested < getMaxDataPoints()) {
+                    tmpOffset -= step;
+                    int offset = (int) tmpOffset;
+                    long expectedTime = lastTimePoint
+                            + (long) (offset - lastOffset) * lastImageInterval;
+                    window.add(new HistoryPoint(imageIds, offset,
+                            findStored(stored, expectedTime)));
+                    requested += 1;
                 }
-                int curInterval = datapoint.getImageInterval();
-                if (curInterval != lastImageInterval) {
-                    offset = adjustOffset(imageIds[0], lastTimePoint,
-                            lastOffset, cancelIndicator);
-                    datapoints = queryHistory(imageIds, offset);
-                    if (datapoints == null || datapoints.length == 0) {
+                HistoryPoint point = window.poll();
+                int offset = point.offset;
+                E[] datapoints = point.get();
+                if (datapoints != null && datapoints.length > 0) {
+                    E datapoint = datapoints[0];
+                    long time = datapoint.getTimestamp();
+                    if (firstTime == -1) {
+                        firstTime = time;
+                    } else if (firstTime - time > getLengthInSeconds()) {
                         break;
                     }
-                    tmpOffset = offset;
-                    time = datapoints[0].getTimestamp();
-                    lastImageInterval = datapoints[0].getImageInterval();
-                    step = getHistoryStep(lastImageInterval, refreshRate);
+                    int curInterval = datapoint.getImageInterval();
+                    if (curInterval != lastImageInterval) {
+                        // the offsets sent ahead are based on the old
+                        // interval
+                        cancel(window);
+                        offset = adjustOffset(imageIds[0], lastTimePoint,
+                                lastOffset, cancelIndicator);
+                        datapoints = queryHistory(imageIds, offset);
+                        if (datapoints == null || datapoints.length == 0) {
+                            break;
+                        }
+                        tmpOffset = offset;
+                        requested = i + 1;
+                        time = datapoints[0].getTimestamp();
+                        lastImageInterval = datapoints[0].getImageInterval();
+                        step = getHistoryStep(lastImageInterval, refreshRate);
+                    }
+                    callback.onDone(datapoints);
+                    lastTimePoint = time;
+                    lastOffset = offset;
+                } else {
+                    break;
                 }
-                callback.onDone(datapoints);
-                lastTimePoint = time;
-                lastOffset = offset;
-            } else {
-                break;
+                Thread.yield();
             }
-            Thread.yield();
+        } finally {
+            cancel(window);
         }
         return null;
     }
@@ -203,7 +274,148 @@ public abstract class HistoryQueryTask<E extends ITimestamped>
         return step;
     }
 
+    /**
+     * 
+     * <i>Description:</i> loads the data points saved in the local database
+     * that are within the history length before the given time
+     * 
+     * @param lastTime
+     *            the time of the latest image
+     * @return the saved data points by time; empty if there are none
+     */
+    private TreeMap<Long, E[]> getStoredHistory(long lastTime) {
+        TreeMap<Long, E[]> res = new TreeMap<Long, E[]>();
+        if (lastTime <= 0) {
+            return res;
+        }
+
+        try {
+            List<E[]> datapoints = queryStoredHistory(
+                    lastTime - getLengthInSeconds(), lastTime);
+            if (datapoints != null) {
+                for (E[] datapoint : datapoints) {
+                    if (datapoint != null && datapoint.length > 0) {
+                        res.put(datapoint[0].getTimestamp(), datapoint);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Couldn't read saved history; querying PA only", e);
+        }
+        return res;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> finds the saved data point of the image expected at
+     * the given time, i.e. the closest one within half an image interval that
+     * was taken with the current image interval
+     * 
+     * @param stored
+     *            the saved data points
+     * @param expectedTime
+     *            the expected time of the image
+     * @return the saved data point or null if there is none
+     */
+    private E[] findStored(TreeMap<Long, E[]> stored, long expectedTime) {
+        if (stored.isEmpty()) {
+            return null;
+        }
+
+        long tolerance = lastImageInterval / 2;
+        Map.Entry<Long, E[]> floor = stored.floorEntry(expectedTime);
+        Map.Entry<Long, E[]> ceiling = stored.ceilingEntry(expectedTime);
+        Map.Entry<Long, E[]> closest = floor;
+        if (closest == null || (ceiling != null && ceiling.getKey()
+                - expectedTime < expectedTime - closest.getKey())) {
+            closest = ceiling;
+        }
+        if (closest != null
+                && Math.abs(closest.getKey() - expectedTime) <= tolerance
+                && closest.getValue()[0]
+                        .getImageInterval() == lastImageInterval) {
+            return closest.getValue();
+        }
+        return null;
+    }
+
+    private void cancel(Deque<HistoryPoint> window) {
+        for (HistoryPoint point : window) {
+            point.cancel();
+        }
+        window.clear();
+    }
+
     protected abstract ImageIdBean[] queryImageId();
 
+    /**
+     * 
+     * <i>Description:</i> returns the data points saved in the local database
+     * between the given times. The default implementation returns null, so
+     * all data points are queried from the PA.
+     * 
+     * @param startTime
+     *            the start time in seconds
+     * @param stopTime
+     *            the stop time in seconds
+     * @return the saved data points; each one is an array in the same format
+     *         as the one returned by {@link #queryHistory(long[], int)}
+     */
+    protected List<E[]> queryStoredHistory(long startTime, long stopTime) {
+        return null;
+    }
+
     protected abstract E[] queryHistory(long[] imageIDs, int offset);
+
+    /**
+     * A data point in the query window; either a saved one or a PA query that
+     * is running or queued on the shared query thread pool
+     */
+    private class HistoryPoint {
+        private final int offset;
+
+        private final E[] stored;
+
+        private final Future<E[]> future;
+
+        public HistoryPoint(final long[] imageIds, final int offset,
+                E[] stored) {
+            this.offset = offset;
+            this.stored = stored;
+            if (stored == null) {
+                future = queryService.submit(new Callable<E[]>() {
+                    @Override
+                    public E[] call() throws Exception {
+                        return queryHistory(imageIds, offset);
+                    }
+                });
+            } else {
+                future = null;
+            }
+        }
+
+        public E[] get() throws Exception {
+            if (future == null) {
+                return stored;
+            }
+
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+        }
+
+        public void cancel() {
+            if (future != null) {
+                // let running queries finish; their results are shared with
+                // other charts through the PA history cache
+                future.cancel(false);
+            }
+        }
+    }
 }
@@ -0,0 +1,338 @@
+/**
+ * Copyright (c) 2015, Intel Corporation
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Intel Corporation nor the names of its contributors
+ *       may be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.intel.stl.ui.publisher;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.intel.stl.api.StringUtils;
+import com.intel.stl.api.performance.IPerformanceApi;
+import com.intel.stl.api.performance.ImageIdBean;
+import com.intel.stl.api.performance.ImageInfoBean;
+import com.intel.stl.api.performance.PAConstants;
+
+/**
+ * Runs the subscriber tasks of a TaskScheduler in image aligned mode. Instead
+ * of one fixed rate schedule per task, the latest ImageInfo is polled once per
+ * refresh and the tasks are only run when the PM has produced a new image.
+ * The runs are spread over a worker pool with a random delay so they don't
+ * hit the PA all at once. ImageInfo tasks get the polled ImageInfo directly.
+ */
+class ImageAlignedDispatcher {
+    private static Logger log =
+            LoggerFactory.getLogger(ImageAlignedDispatcher.class);
+
+    /**
+     * Max delay in milliseconds before a task is run on a new image. The
+     * actual max is also limited to a quarter of the refresh rate.
+     */
+    private static final long MAX_JITTER = 1000;
+
+    private final TaskScheduler scheduler;
+
+    private final IPerformanceApi perfApi;
+
+    private final ExecutorService workers;
+
+    private final List<Registration<?>> registrations =
+            new CopyOnWriteArrayList<Registration<?>>();
+
+    private final Random random = new Random();
+
+    private volatile ScheduledExecutorService service;
+
+    private volatile long jitter;
+
+    private ScheduledFuture<?> pollFuture;
+
+    private long lastImageNumber = -1;
+
+    public ImageAlignedDispatcher(TaskScheduler scheduler,
+            IPerformanceApi perfApi, ExecutorService workers) {
+        this.scheduler = scheduler;
+        this.perfApi = perfApi;
+        this.workers = workers;
+    }
+
+    /**
+     * 
+     * <i>Description:</i> starts polling on the given service. Called again
+     * with a new service when the refresh rate changes.
+     * 
+     * @param service
+     *            the service the polling is scheduled on
+     * @param refreshRate
+     *            the refresh rate in seconds
+     */
+    public synchronized void start(ScheduledExecutorService service,
+            int refreshRate) {
+        if (pollFuture != null) {
+            pollFuture.cancel(false);
+        }
+        this.service = service;
+        jitter = Math.min(MAX_JITTER,
+                TimeUnit.SECONDS.toMillis(refreshRate) / 4);
+        pollFuture = service.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, refreshRate, refreshRate, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (pollFuture != null) {
+            pollFuture.cancel(false);
+            pollFuture = null;
+        }
+        registrations.clear();
+    }
+
+    /**
+     * 
+     * <i>Description:</i> registers a task. The task is run once right away
+     * and then whenever there is a new image until the returned future is
+     * cancelled.
+     * 
+     * @param task
+     *            the task
+     * @param caller
+     *            the query of the task
+     * @return the future that stops the task when cancelled
+     */
+    public <E> ScheduledFuture<?> register(Task<E> task, Callable<E> caller) {
+        Registration<E> registration = new Registration<E>(task, caller);
+        registrations.add(registration);
+        registration.run(0, null);
+        return registration;
+    }
+
+    protected void poll() {
+        ImageInfoBean imageInfo = null;
+        try {
+            imageInfo = perfApi.getLatestImageInfo();
+        } catch (Exception e) {
+            log.warn("Couldn't poll ImageInfo: {}",
+                    StringUtils.getErrorMessage(e));
+            return;
+        }
+        if (imageInfo == null || imageInfo.getImageId() == null) {
+            return;
+        }
+
+        ImageIdBean imageId = imageInfo.getImageId();
+        synchronized (this) {
+            if (imageId.getImageNumber() == lastImageNumber) {
+                // nothing new since the last poll
+                return;
+            }
+            lastImageNumber = imageId.getImageNumber();
+        }
+
+        for (Registration<?> registration : registrations) {
+            long delay = jitter > 0 ? (long) (random.nextDouble() * jitter) : 0;
+            registration.run(delay, imageInfo);
+        }
+    }
+
+    private class Registration<E> implements ScheduledFuture<Object> {
+        private final Task<E> task;
+
+        private final Callable<E> caller;
+
+        private final AtomicBoolean running = new AtomicBoolean(false);
+
+        private volatile boolean cancelled;
+
+        private volatile Future<?> current;
+
+        public Registration(Task<E> task, Callable<E> caller) {
+            this.task = task;
+            this.caller = caller;
+        }
+
+        /**
+         * 
+         * <i>Description:</i> runs the task after the given delay unless the
+         * previous run is still going
+         * 
+         * @param delay
+         *            the delay in milliseconds
+         * @param imageInfo
+         *            the new image; null for the first run
+         */
+        public void run(long delay, final ImageInfoBean imageInfo) {
+            if (cancelled || !running.compareAndSet(false, true)) {
+                return;
+            }
+
+            final Runnable work = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!cancelled) {
+                            execute(imageInfo);
+                        }
+                    } finally {
+                        running.set(false);
+                    }
+                }
+            };
+            try {
+                if (delay > 0) {
+                    current = service.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            submit(work);
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } else {
+                    current = workers.submit(work);
+                }
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                running.set(false);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void execute(ImageInfoBean imageInfo) {
+            if (imageInfo != null
+                    && task.getType() == PAConstants.STL_PA_ATTRID_GET_IMAGE_INFO) {
+                // the poll already has what this task would query
+                scheduler.runTask(task, new ImageInfoCaller<E>(
+                        (E) imageInfo));
+            } else {
+                scheduler.runTask(task, caller);
+            }
+        }
+
+        private void submit(Runnable work) {
+            try {
+                current = workers.submit(work);
+            } catch (RejectedExecutionException e) {
+                running.set(false);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            registrations.remove(this);
+            Future<?> future = current;
+            if (future != null) {
+                future.cancel(mayInterruptIfRunning);
+            }
+            synchronized (this) {
+                notifyAll();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return cancelled;
+        }
+
+        /**
+         * Like a fixed rate schedule, a registration never completes normally;
+         * this waits until it is cancelled.
+         */
+        @Override
+        public synchronized Object get() throws InterruptedException {
+            while (!cancelled) {
+                wait();
+            }
+            throw new CancellationException();
+        }
+
+        @Override
+        public synchronized Object get(long timeout, TimeUnit unit)
+                throws InterruptedException, TimeoutException {
+            long end = System.currentTimeMillis() + unit.toMillis(timeout);
+            long remain = unit.toMillis(timeout);
+            while (!cancelled && remain > 0) {
+                wait(remain);
+                remain = end - System.currentTimeMillis();
+            }
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            throw new TimeoutException();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return 0;
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            long diff = getDelay(TimeUnit.MILLISECONDS)
+                    - o.getDelay(TimeUnit.MILLISECONDS);
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    }
+
+    private static class ImageInfoCaller<E> implements Callable<E> {
+        private final E imageInfo;
+
+        public ImageInfoCaller(E imageInfo) {
+            this.imageInfo = imageInfo;
+        }
+
+        @Override
+        public E call() throws Exception {
+            return imageInfo;
+        }
+    }
+}
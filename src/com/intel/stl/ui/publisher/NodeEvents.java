@@ -28,8 +28,7 @@
 package com.intel.stl.ui.publisher;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.LinkedList;
 
 import com.intel.stl.api.configuration.EventType;
 import com.intel.stl.api.notice.NodeSource;
@@ -45,7 +44,10 @@ public class NodeEvents implements Serializable, Comparable<NodeEvents> {
 
     private NodeType nodeType;
 
-    private List<EventItem> events = new ArrayList<EventItem>();
+    private LinkedList<EventItem> events = new LinkedList<EventItem>();
+
+    // number of events of each severity, indexed by severity ordinal
+    private int[] severityCounts = new int[NoticeSeverity.values().length];
 
     private NoticeSeverity overallSeverity;
 
@@ -81,7 +83,7 @@ public class NodeEvents implements Serializable, Comparable<NodeEvents> {
 
     public synchronized long getEarlistTime() {
         if (!events.isEmpty()) {
-            return events.get(0).getTime();
+            return events.getFirst().getTime();
         } else {
             return -1;
         }
@@ -100,8 +102,10 @@ public class NodeEvents implements Serializable, Comparable<NodeEvents> {
 
     public synchronized NoticeSeverity clear(long earliestTime) {
         boolean recalculateSeverity = false;
-        while (!events.isEmpty() && events.get(0).getTime() < earliestTime) {
-            NoticeSeverity severity = events.remove(0).getSeverity();
+        while (!events.isEmpty()
+                && events.getFirst().getTime() < earliestTime) {
+            NoticeSeverity severity = events.removeFirst().getSeverity();
+            severityCounts[severity.ordinal()] -= 1;
             if (!recalculateSeverity && severity == overallSeverity) {
                 recalculateSeverity = true;
             }
@@ -116,6 +120,7 @@ public class NodeEvents implements Serializable, Comparable<NodeEvents> {
             NoticeSeverity severity) {
         EventItem item = new EventItem(time, type, severity);
         events.add(item);
+        severityCounts[severity.ordinal()] += 1;
         if (overallSeverity == null
                 || severity.ordinal() > overallSeverity.ordinal()) {
             overallSeverity = severity;
@@ -124,14 +129,12 @@ public class NodeEvents implements Serializable, Comparable<NodeEvents> {
     }
 
     protected NoticeSeverity calculateSeverity() {
-        NoticeSeverity res = null;
-        for (EventItem item : events) {
-            NoticeSeverity severity = item.getSeverity();
-            if (res == null || severity.ordinal() > res.ordinal()) {
-                res = severity;
+        for (int i = severityCounts.length - 1; i >= 0; i--) {
+            if (severityCounts[i] > 0) {
+                return NoticeSeverity.values()[i];
             }
         }
-        return res;
+        return null;
     }
 
     /**
@@ -150,7 +153,7 @@ public class NodeEvents implements Serializable, Comparable<NodeEvents> {
 
     public synchronized EventItem getLatestEvent() {
         if (!events.isEmpty()) {
-            return events.get(events.size() - 1);
+            return events.getLast();
         } else {
             return null;
         }
@@ -162,13 +165,14 @@ public class NodeEvents implements Serializable, Comparable<NodeEvents> {
      * 
      * @return
      */
-    public NodeEvents copy() {
+    public synchronized NodeEvents copy() {
         NodeEvents res = new NodeEvents();
         res.lid = this.lid;
         res.name = new String(this.name);
         res.nodeType = this.nodeType;
         // shallow copy
-        res.events = new ArrayList<EventItem>(this.events);
+        res.events = new LinkedList<EventItem>(this.events);
+        res.severityCounts = this.severityCounts.clone();
         res.overallSeverity = this.overallSeverity;
         return res;
     }
@@ -61,6 +61,13 @@ public class Task<E> {
         this.description = description;
     }
 
+    /**
+     * @return the type
+     */
+    public int getType() {
+        return type;
+    }
+
     /**
      * @return the name
      */
@@ -83,6 +83,8 @@ public class TaskScheduler implements IRegisterTask {
 
     private static final String TSS_THREAD_PREFIX = "tssthread-";
 
+    private static final String TSW_THREAD_PREFIX = "tswthread-";
+
     private final String name;
 
     private final Context context;
@@ -97,6 +99,12 @@ public class TaskScheduler implements IRegisterTask {
 
     private final BaseFailureEvaluator failureEvaluator;
 
+    private final ExecutorService alignedWorkers;
+
+    // not null in image aligned mode, where tasks run when the PM produces a
+    // new image instead of on their own fixed rate schedules
+    private final ImageAlignedDispatcher alignedDispatcher;
+
     private int refreshRate; // seconds
 
     private boolean shutdownInProgress = false;
@@ -110,10 +118,20 @@ public class TaskScheduler implements IRegisterTask {
             new HashMap<SubscriberType, Subscriber<?>>();
 
     public TaskScheduler(Context context, int refreshRate) {
-        this(context, POOL_SIZE, refreshRate);
+        this(context, POOL_SIZE, refreshRate, false);
+    }
+
+    public TaskScheduler(Context context, int refreshRate,
+            boolean imageAligned) {
+        this(context, POOL_SIZE, refreshRate, imageAligned);
     }
 
     public TaskScheduler(Context context, int poolSize, int refreshRate) {
+        this(context, poolSize, refreshRate, false);
+    }
+
+    public TaskScheduler(Context context, int poolSize, int refreshRate,
+            boolean imageAligned) {
         this.context = context;
         this.perfApi = context.getPerformanceApi();
         this.name = context.getSubnetDescription().getName();
@@ -125,6 +143,18 @@ public class TaskScheduler implements IRegisterTask {
         ThreadFactory tsbFactory = new ServiceThreadFactory(TSB_THREAD_PREFIX);
         backgroundService =
                 Executors.newFixedThreadPool(poolSize * 2, tsbFactory);
+        if (imageAligned) {
+            ThreadFactory tswFactory =
+                    new ServiceThreadFactory(TSW_THREAD_PREFIX);
+            alignedWorkers =
+                    Executors.newFixedThreadPool(poolSize * 2, tswFactory);
+            alignedDispatcher =
+                    new ImageAlignedDispatcher(this, perfApi, alignedWorkers);
+            alignedDispatcher.start(scheduledService, refreshRate);
+        } else {
+            alignedWorkers = null;
+            alignedDispatcher = null;
+        }
 
         failureEvaluator = new BaseFailureEvaluator();
         failureEvaluator.setRecoverableErrors(RuntimeException.class,
@@ -151,7 +181,8 @@ public class TaskScheduler implements IRegisterTask {
         subscriberPool.put(SubscriberType.EVENT, new EventSubscriber(this,
                 context.getEvtCal()));
 
-        log.info("Refresh Rate = " + refreshRate);
+        log.info("Refresh Rate = " + refreshRate + (imageAligned
+                ? " (image aligned)" : ""));
     }
 
     /**
@@ -207,6 +238,9 @@ public class TaskScheduler implements IRegisterTask {
         // create an new ExecutorService, the new registered tasks will be
         // scheduled on it
         scheduledService = Executors.newScheduledThreadPool(POOL_SIZE);
+        if (alignedDispatcher != null) {
+            alignedDispatcher.start(scheduledService, refreshRate);
+        }
         // call subscriber to move its tasks to the new created ExecutorService
         for (Subscriber<?> subscriber : subscriberPool.values()) {
             subscriber.rescheduleTasks();
@@ -293,34 +327,18 @@ public class TaskScheduler implements IRegisterTask {
                 final Task<E> taskFinal = task;
                 log.debug("Schedule task " + task + " with rate " + refreshRate
                         + " sec.");
-                ScheduledFuture<?> future =
-                        scheduledService.scheduleAtFixedRate(new Runnable() {
-                            @Override
-                            public void run() {
-                                try {
-                                    E result = caller.call();
-                                    taskFinal.onDone(result);
-                                } catch (PerformanceRequestCancelledException e) {
-                                    log.info(e.getMessage());
-                                    try {
-                                        taskFinal.onError(e);
-                                    } finally {
-                                        handleFailure(taskFinal, e);
-                                    }
-                                } catch (Exception e) {
-                                    log.error(
-                                            "Scheduled task had an error: {}",
-                                            StringUtils.getErrorMessage(e), e);
-                                    try {
-                                        taskFinal.onError(e);
-                                    } finally {
-                                        handleFailure(taskFinal, e);
-                                    }
+                ScheduledFuture<?> future = null;
+                if (alignedDispatcher != null) {
+                    future = alignedDispatcher.register(taskFinal, caller);
+                } else {
+                    future = scheduledService.scheduleAtFixedRate(
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    runTask(taskFinal, caller);
                                 }
-                                // Util.showErrorMessage(context.getOwner(),
-                                // "TTTTTTTTTTTTTTTT");
-                            }
-                        }, 0, refreshRate, TimeUnit.SECONDS);
+                            }, 0, refreshRate, TimeUnit.SECONDS);
+                }
                 task.setFuture(future);
                 tasks.add(task);
             }
@@ -328,6 +346,38 @@ public class TaskScheduler implements IRegisterTask {
         }
     }
 
+    /**
+     * 
+     * <i>Description:</i> runs a task once and hands the result or the error
+     * to its callbacks
+     * 
+     * @param task
+     *            the task
+     * @param caller
+     *            the query of the task
+     */
+    protected <E> void runTask(Task<E> task, Callable<E> caller) {
+        try {
+            E result = caller.call();
+            task.onDone(result);
+        } catch (PerformanceRequestCancelledException e) {
+            log.info(e.getMessage());
+            try {
+                task.onError(e);
+            } finally {
+                handleFailure(task, e);
+            }
+        } catch (Exception e) {
+            log.error("Scheduled task had an error: {}",
+                    StringUtils.getErrorMessage(e), e);
+            try {
+                task.onError(e);
+            } finally {
+                handleFailure(task, e);
+            }
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -469,9 +519,18 @@ public class TaskScheduler implements IRegisterTask {
                 failureMgr.cleanup();
             } finally {
                 try {
+                    if (alignedDispatcher != null) {
+                        alignedDispatcher.stop();
+                    }
                     shutdownService(scheduledService);
                 } finally {
-                    shutdownService(backgroundService);
+                    try {
+                        shutdownService(backgroundService);
+                    } finally {
+                        if (alignedWorkers != null) {
+                            shutdownService(alignedWorkers);
+                        }
+                    }
                 }
             }
         }
@@ -514,6 +573,10 @@ public class TaskScheduler implements IRegisterTask {
         }
     }
 
+    public boolean isImageAligned() {
+        return alignedDispatcher != null;
+    }
+
     // Register refresh rate listeners.
     public void addListener(IRefreshRateListener listener) {
         refreshRateChangeListeners.add(listener);
@@ -28,7 +28,9 @@
 package com.intel.stl.ui.publisher.subscriber;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 
@@ -40,6 +42,7 @@ import com.intel.stl.api.performance.IPerformanceApi;
 import com.intel.stl.api.performance.ImageIdBean;
 import com.intel.stl.api.performance.PAConstants;
 import com.intel.stl.api.performance.PMConfigBean;
+import com.intel.stl.api.performance.PerformanceDataNotFoundException;
 import com.intel.stl.ui.common.UILabels;
 import com.intel.stl.ui.model.HistoryType;
 import com.intel.stl.ui.publisher.BatchedCallback;
@@ -152,6 +155,40 @@ public class GroupInfoSubscriber extends Subscriber<GroupInfoBean> {
                         return res;
                     }
 
+                    @Override
+                    protected List<GroupInfoBean[]> queryStoredHistory(
+                            long startTime, long stopTime) {
+                        String subnetName =
+                                perfApi.getConnectionDescription().getName();
+                        // data points by time; only the times saved for all
+                        // groups are usable
+                        Map<Long, GroupInfoBean[]> points =
+                                new HashMap<Long, GroupInfoBean[]>();
+                        for (int i = 0; i < groups.length; i++) {
+                            List<GroupInfoBean> infos = null;
+                            try {
+                                infos = perfApi.getGroupInfo(subnetName,
+                                        groups[i], startTime, stopTime);
+                            } catch (PerformanceDataNotFoundException e) {
+                                return null;
+                            }
+                            Map<Long, GroupInfoBean[]> groupPoints =
+                                    new HashMap<Long, GroupInfoBean[]>();
+                            for (GroupInfoBean info : infos) {
+                                Long time = info.getTimestamp();
+                                GroupInfoBean[] point = i == 0
+                                        ? new GroupInfoBean[groups.length]
+                                        : points.get(time);
+                                if (point != null) {
+                                    point[i] = info;
+                                    groupPoints.put(time, point);
+                                }
+                            }
+                            points = groupPoints;
+                        }
+                        return new ArrayList<GroupInfoBean[]>(points.values());
+                    }
+
                     @Override
                     protected ImageIdBean[] queryImageId() {
                         ImageIdBean[] imageIdBeans =